@@ -0,0 +1,31 @@
+/*
+ * Copyright 2015 Fabian Prasser
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.linearbits.newtonraphson;
+
+/**
+ * This interface defines consumers of the results of batch solves
+ * @author Fabian Prasser
+ */
+public interface BatchConsumer2D {
+
+    /**
+     * Consumes the result for a problem of the batch
+     * @param index index of the problem in the batch
+     * @param solution the solution, containing NaN values if no solution has been found
+     * @param measures
+     */
+    public void consume(int index, Vector2D solution, NewtonRaphsonMeasures measures);
+}
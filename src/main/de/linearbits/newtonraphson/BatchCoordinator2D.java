@@ -0,0 +1,376 @@
+/*
+ * Copyright 2015 Fabian Prasser
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.linearbits.newtonraphson;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * This class distributes batches of problems across {@link BatchWorker2D}s, which may run in other processes
+ * or on other hosts. Each problem consists of a start value, followed by parameters, which are passed to a
+ * factory creating the according solver on the worker. The batch is split into chunks, which are partitioned
+ * across the workers. Workers, which run out of chunks, steal chunks from the end of the partitions of other
+ * workers, and chunks assigned to workers, which fail, are reassigned to the remaining workers. Results are
+ * passed to the consumer in the order of the problems, as soon as all previous results are available.<br>
+ * <br>
+ * Each worker address is served by a single connection. Addresses can be given multiple times, to solve
+ * several chunks on a worker in parallel.
+ *
+ * @author Fabian Prasser
+ */
+public class BatchCoordinator2D {
+
+    /**
+     * The state of a batch, which is shared between the connections
+     * @author Fabian Prasser
+     */
+    private static class Batch {
+
+        /** Number of chunks completed */
+        private int                          completed;
+        /** Completed chunks */
+        private final boolean[]              done;
+        /** The last failure */
+        private IOException                  failure;
+        /** Whether the batch has been finished or aborted */
+        private boolean                      finished;
+        /** Number of connections alive */
+        private int                          alive;
+        /** Results */
+        private final NewtonRaphsonMeasures[][] measures;
+        /** Chunks of failed connections */
+        private final ArrayDeque<Integer>    orphans = new ArrayDeque<Integer>();
+        /** Partitions */
+        private final List<ArrayDeque<Integer>> partitions;
+        /** Results */
+        private final Vector2D[][]           solutions;
+
+        /**
+         * Creates a new instance
+         * @param chunks
+         * @param connections
+         */
+        Batch(int chunks, int connections) {
+            this.done = new boolean[chunks];
+            this.measures = new NewtonRaphsonMeasures[chunks][];
+            this.solutions = new Vector2D[chunks][];
+            this.partitions = new ArrayList<ArrayDeque<Integer>>(connections);
+            this.alive = connections;
+            for (int i = 0; i < connections; i++) {
+                ArrayDeque<Integer> partition = new ArrayDeque<Integer>();
+                for (int chunk = (int) ((long) i * chunks / connections); chunk < (int) ((long) (i + 1) * chunks / connections); chunk++) {
+                    partition.add(chunk);
+                }
+                partitions.add(partition);
+            }
+        }
+
+        /**
+         * Stores the results of a chunk
+         * @param chunk
+         * @param solutions
+         * @param measures
+         */
+        synchronized void complete(int chunk, Vector2D[] solutions, NewtonRaphsonMeasures[] measures) {
+            if (!done[chunk]) {
+                done[chunk] = true;
+                this.solutions[chunk] = solutions;
+                this.measures[chunk] = measures;
+                completed++;
+                notifyAll();
+            }
+        }
+
+        /**
+         * Marks a connection as failed and reassigns its chunks
+         * @param connection
+         * @param pending
+         * @param failure
+         */
+        synchronized void fail(int connection, ArrayDeque<Integer> pending, IOException failure) {
+            alive--;
+            orphans.addAll(pending);
+            orphans.addAll(partitions.get(connection));
+            partitions.get(connection).clear();
+            this.failure = failure;
+            notifyAll();
+        }
+
+        /**
+         * Marks the batch as finished
+         */
+        synchronized void finish() {
+            finished = true;
+            notifyAll();
+        }
+
+        /**
+         * Returns the next chunk for the given connection, stealing from other partitions if required.
+         * Returns null if no chunk is available.
+         * @param connection
+         * @param wait whether to wait for chunks being reassigned
+         * @return
+         * @throws InterruptedException
+         */
+        synchronized Integer next(int connection, boolean wait) throws InterruptedException {
+            while (true) {
+                if (finished || completed == done.length) {
+                    return null;
+                }
+
+                // Own or reassigned chunks
+                Integer chunk = orphans.poll();
+                if (chunk == null) {
+                    chunk = partitions.get(connection).pollFirst();
+                }
+
+                // Steal from the largest partition
+                if (chunk == null) {
+                    ArrayDeque<Integer> victim = null;
+                    for (ArrayDeque<Integer> partition : partitions) {
+                        if (victim == null || partition.size() > victim.size()) {
+                            victim = partition;
+                        }
+                    }
+                    chunk = victim.pollLast();
+                }
+                if (chunk != null && done[chunk]) {
+                    continue;
+                }
+                if (chunk != null || !wait) {
+                    return chunk;
+                }
+                wait();
+            }
+        }
+
+        /**
+         * Waits for the results of the given chunk
+         * @param chunk
+         * @throws IOException
+         * @throws InterruptedException
+         */
+        synchronized void await(int chunk) throws IOException, InterruptedException {
+            while (!done[chunk]) {
+                if (alive == 0) {
+                    throw new IOException("No workers available", failure);
+                }
+                wait();
+            }
+        }
+    }
+
+    /** Constant */
+    public static final int             DEFAULT_CHUNK_SIZE = 64;
+    /** Constant */
+    public static final int             DEFAULT_TIMEOUT    = 60000;
+    /** Number of chunks sent to a worker before waiting for results */
+    private static final int            PIPELINE           = 2;
+
+    /** Number of problems per chunk */
+    private int                         chunkSize          = DEFAULT_CHUNK_SIZE;
+    /** Configuration */
+    private final NewtonRaphsonConfiguration<?> configuration;
+    /** Name of the factory */
+    private final String                factory;
+    /** Timeout in milliseconds */
+    private int                         timeout            = DEFAULT_TIMEOUT;
+    /** Workers */
+    private final InetSocketAddress[]   workers;
+
+    /**
+     * Creates a new instance. The factory must be available on the class path of all workers.
+     * @param factory
+     * @param configuration
+     * @param workers
+     */
+    public BatchCoordinator2D(Class<? extends Function<double[], NewtonRaphson2D>> factory,
+                              NewtonRaphsonConfiguration<?> configuration,
+                              InetSocketAddress... workers) {
+        if (factory == null || configuration == null || workers == null || workers.length == 0) {
+            throw new IllegalArgumentException("Invalid arguments");
+        }
+        this.factory = factory.getName();
+        this.configuration = configuration.copy();
+        this.workers = workers.clone();
+    }
+
+    /**
+     * Number of problems per chunk. Smaller chunks improve load balancing, larger chunks reduce
+     * communication overhead. Default is 64.
+     * @param chunkSize
+     */
+    public BatchCoordinator2D chunkSize(int chunkSize) {
+        if (chunkSize < 1) {
+            throw new IllegalArgumentException("Invalid chunk size");
+        }
+        this.chunkSize = chunkSize;
+        return this;
+    }
+
+    /**
+     * Solves the given problems and passes the results to the consumer in order. Each problem consists of
+     * the start value followed by the parameters passed to the factory. The consumer is called by the
+     * calling thread.
+     * @param problems
+     * @param consumer
+     * @throws IOException if all workers failed
+     */
+    public void solve(final double[][] problems, BatchConsumer2D consumer) throws IOException {
+
+        // Check
+        for (double[] problem : problems) {
+            if (problem == null || problem.length < 2) {
+                throw new IllegalArgumentException("Invalid problem");
+            }
+        }
+
+        // Prepare
+        final int chunks = (problems.length + chunkSize - 1) / chunkSize;
+        final Batch batch = new Batch(chunks, workers.length);
+        Thread[] threads = new Thread[workers.length];
+        final Socket[] sockets = new Socket[workers.length];
+        for (int i = 0; i < workers.length; i++) {
+            final int connection = i;
+            sockets[i] = new Socket();
+            threads[i] = new Thread(new Runnable() {
+                public void run() {
+                    ArrayDeque<Integer> pending = new ArrayDeque<Integer>();
+                    try {
+                        serve(sockets[connection], workers[connection], batch, connection, problems, pending);
+                    } catch (IOException e) {
+                        batch.fail(connection, pending, e);
+                    } catch (InterruptedException e) {
+                        batch.fail(connection, pending, new IOException("Interrupted", e));
+                    }
+                }
+            }, "BatchCoordinator2D-" + workers[i]);
+            threads[i].setDaemon(true);
+            threads[i].start();
+        }
+
+        // Deliver results in order
+        try {
+            for (int chunk = 0; chunk < chunks; chunk++) {
+                batch.await(chunk);
+                Vector2D[] solutions = batch.solutions[chunk];
+                NewtonRaphsonMeasures[] measures = batch.measures[chunk];
+                for (int i = 0; i < solutions.length; i++) {
+                    consumer.consume(chunk * chunkSize + i, solutions[i], measures[i]);
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted", e);
+        } finally {
+            batch.finish();
+            for (Socket socket : sockets) {
+                try {
+                    socket.close();
+                } catch (IOException e) {
+                    // Ignore
+                }
+            }
+        }
+    }
+
+    /**
+     * Timeout in milliseconds for connecting to workers and for waiting for results. Workers, which
+     * exceed the timeout, are considered failed. Default is 60000.
+     * @param timeout
+     */
+    public BatchCoordinator2D timeout(int timeout) {
+        if (timeout < 0) {
+            throw new IllegalArgumentException("Invalid timeout");
+        }
+        this.timeout = timeout;
+        return this;
+    }
+
+    /**
+     * Serves a connection to a worker
+     * @param socket
+     * @param address
+     * @param batch
+     * @param connection
+     * @param problems
+     * @param pending chunks sent, but not completed
+     * @throws IOException
+     * @throws InterruptedException
+     */
+    private void serve(Socket socket, InetSocketAddress address, Batch batch, int connection, double[][] problems, ArrayDeque<Integer> pending) throws IOException, InterruptedException {
+
+        // Connect
+        socket.connect(address, timeout);
+        socket.setSoTimeout(timeout);
+        socket.setTcpNoDelay(true);
+        DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+
+        // Hello
+        out.writeInt(BatchProtocol.MAGIC);
+        out.writeInt(BatchProtocol.VERSION);
+        out.writeUTF(factory);
+        BatchProtocol.writeConfiguration(out, configuration);
+
+        while (true) {
+
+            // Send chunks, waiting for reassigned chunks only if nothing is pending
+            while (pending.size() < PIPELINE) {
+                Integer chunk = batch.next(connection, pending.isEmpty());
+                if (chunk == null) {
+                    break;
+                }
+                int offset = chunk * chunkSize;
+                out.writeByte(BatchProtocol.TASK);
+                out.writeInt(chunk);
+                BatchProtocol.writeProblems(out, problems, offset, Math.min(chunkSize, problems.length - offset));
+                pending.add(chunk);
+            }
+            if (pending.isEmpty()) {
+                break;
+            }
+            out.flush();
+
+            // Receive results
+            if (in.readByte() != BatchProtocol.RESULT) {
+                throw new IOException("Invalid message");
+            }
+            int chunk = in.readInt();
+            if (!pending.remove(chunk)) {
+                throw new IOException("Invalid chunk");
+            }
+            int count = Math.min(chunkSize, problems.length - chunk * chunkSize);
+            Vector2D[] solutions = new Vector2D[count];
+            NewtonRaphsonMeasures[] measures = new NewtonRaphsonMeasures[count];
+            BatchProtocol.readResults(in, solutions, measures);
+            batch.complete(chunk, solutions, measures);
+        }
+
+        // Done
+        out.writeByte(BatchProtocol.SHUTDOWN);
+        out.flush();
+        socket.close();
+    }
+}
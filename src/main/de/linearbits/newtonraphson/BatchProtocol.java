@@ -0,0 +1,184 @@
+/*
+ * Copyright 2015 Fabian Prasser
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.linearbits.newtonraphson;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputFilter;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+
+/**
+ * The binary protocol used between coordinators and workers. All values are written in network byte order.
+ * <pre>
+ * Coordinator to worker:
+ *   hello    := int magic, int version, utf factory, int length, byte[length] configuration
+ *   task     := byte TASK, int chunk, int count, count * (int length, double[length] problem)
+ *   shutdown := byte SHUTDOWN
+ * Worker to coordinator:
+ *   result   := byte RESULT, int chunk, int count, count * (byte solved, double x, double y, int tries,
+ *               int iterations, int evaluations, int singularities, int time, double quality)
+ * </pre>
+ * The configuration is a serialized {@link NewtonRaphsonConfiguration}. A problem consists of the start
+ * value followed by the parameters passed to the factory.
+ *
+ * @author Fabian Prasser
+ */
+final class BatchProtocol {
+
+    /** Constant */
+    static final int    MAGIC    = 0x4E523244;
+    /** Constant */
+    static final byte   RESULT   = 2;
+    /** Constant */
+    static final byte   SHUTDOWN = 3;
+    /** Constant */
+    static final byte   TASK     = 1;
+    /** Constant */
+    static final int    VERSION  = 1;
+
+    /** Classes, which may be deserialized */
+    private static final ObjectInputFilter FILTER = ObjectInputFilter.Config.createFilter("maxdepth=8;de.linearbits.newtonraphson.*;java.lang.Enum;[D;[[D;!*");
+
+    /**
+     * No instances
+     */
+    private BatchProtocol() {
+        // Empty by design
+    }
+
+    /**
+     * Reads a configuration
+     * @param in
+     * @return
+     * @throws IOException
+     */
+    static NewtonRaphsonConfiguration<?> readConfiguration(DataInputStream in) throws IOException {
+        byte[] bytes = new byte[in.readInt()];
+        in.readFully(bytes);
+        try (ObjectInputStream stream = new ObjectInputStream(new ByteArrayInputStream(bytes))) {
+            stream.setObjectInputFilter(FILTER);
+            return (NewtonRaphsonConfiguration<?>) stream.readObject();
+        } catch (ClassNotFoundException | ClassCastException e) {
+            throw new IOException("Invalid configuration", e);
+        }
+    }
+
+    /**
+     * Reads the problems of a task
+     * @param in
+     * @return
+     * @throws IOException
+     */
+    static double[][] readProblems(DataInputStream in) throws IOException {
+        double[][] problems = new double[in.readInt()][];
+        for (int i = 0; i < problems.length; i++) {
+            int length = in.readInt();
+            if (length < 2) {
+                throw new IOException("Invalid problem");
+            }
+            problems[i] = new double[length];
+            for (int j = 0; j < length; j++) {
+                problems[i][j] = in.readDouble();
+            }
+        }
+        return problems;
+    }
+
+    /**
+     * Reads the results of a task
+     * @param in
+     * @param solutions
+     * @param measures
+     * @throws IOException
+     */
+    static void readResults(DataInputStream in, Vector2D[] solutions, NewtonRaphsonMeasures[] measures) throws IOException {
+        int count = in.readInt();
+        if (count != solutions.length) {
+            throw new IOException("Invalid number of results");
+        }
+        for (int i = 0; i < count; i++) {
+            boolean solved = in.readBoolean();
+            double x = in.readDouble();
+            double y = in.readDouble();
+            solutions[i] = solved ? new Vector2D(x, y) : new Vector2D(Double.NaN, Double.NaN);
+            int tries = in.readInt();
+            int iterations = in.readInt();
+            int evaluations = in.readInt();
+            int singularities = in.readInt();
+            int time = in.readInt();
+            measures[i] = new NewtonRaphsonMeasures(iterations, tries, evaluations, singularities, time, in.readDouble());
+        }
+    }
+
+    /**
+     * Writes a configuration
+     * @param out
+     * @param configuration
+     * @throws IOException
+     */
+    static void writeConfiguration(DataOutputStream out, NewtonRaphsonConfiguration<?> configuration) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ObjectOutputStream stream = new ObjectOutputStream(bytes)) {
+            stream.writeObject(configuration);
+        }
+        out.writeInt(bytes.size());
+        bytes.writeTo(out);
+    }
+
+    /**
+     * Writes the problems of a task
+     * @param out
+     * @param problems
+     * @param offset
+     * @param count
+     * @throws IOException
+     */
+    static void writeProblems(DataOutputStream out, double[][] problems, int offset, int count) throws IOException {
+        out.writeInt(count);
+        for (int i = offset; i < offset + count; i++) {
+            out.writeInt(problems[i].length);
+            for (double value : problems[i]) {
+                out.writeDouble(value);
+            }
+        }
+    }
+
+    /**
+     * Writes the results of a task
+     * @param out
+     * @param solutions
+     * @param measures
+     * @throws IOException
+     */
+    static void writeResults(DataOutputStream out, Vector2D[] solutions, NewtonRaphsonMeasures[] measures) throws IOException {
+        out.writeInt(solutions.length);
+        for (int i = 0; i < solutions.length; i++) {
+            out.writeBoolean(!solutions[i].isNaN());
+            out.writeDouble(solutions[i].x);
+            out.writeDouble(solutions[i].y);
+            out.writeInt(measures[i].getTries());
+            out.writeInt(measures[i].getIterations());
+            out.writeInt(measures[i].getEvaluations());
+            out.writeInt(measures[i].getSingularities());
+            out.writeInt(measures[i].getTime());
+            out.writeDouble(measures[i].getQuality());
+        }
+    }
+}
@@ -0,0 +1,226 @@
+/*
+ * Copyright 2015 Fabian Prasser
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.linearbits.newtonraphson;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * This class implements workers, which solve batches of problems on behalf of a {@link BatchCoordinator2D}.
+ * Each connection is served by a separate thread. Solvers are created by a factory, which must be available
+ * on the class path of the worker and implement <code>Function&lt;double[], NewtonRaphson2D&gt;</code> with
+ * a public default constructor. The factory is called with the parameters of each problem, and the solvers
+ * created are configured with the configuration sent by the coordinator. For problems without parameters,
+ * a single solver is reused per connection.<br>
+ * <br>
+ * Workers can be run as separate processes with <code>java de.linearbits.newtonraphson.BatchWorker2D &lt;port&gt;</code>.
+ * As workers instantiate factories named by coordinators, they must only be reachable from trusted networks.
+ *
+ * @author Fabian Prasser
+ */
+public class BatchWorker2D implements Closeable {
+
+    /**
+     * Runs a worker, which listens on the given port
+     * @param args
+     * @throws IOException
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length != 1) {
+            System.out.println("Usage: java " + BatchWorker2D.class.getName() + " <port>");
+            return;
+        }
+        BatchWorker2D worker = new BatchWorker2D(Integer.parseInt(args[0]));
+        worker.run();
+    }
+
+    /** Open connections */
+    private final Set<Socket>  connections = new HashSet<Socket>();
+    /** Server */
+    private final ServerSocket server;
+
+    /**
+     * Creates a new instance, which listens on the given port. Pass 0 for an ephemeral port.
+     * @param port
+     * @throws IOException
+     */
+    public BatchWorker2D(int port) throws IOException {
+        this.server = new ServerSocket(port);
+    }
+
+    /**
+     * Stops accepting connections and closes all open connections
+     */
+    @Override
+    public void close() throws IOException {
+        server.close();
+        synchronized (connections) {
+            for (Socket socket : connections) {
+                socket.close();
+            }
+            connections.clear();
+        }
+    }
+
+    /**
+     * Returns the port, on which this worker listens
+     * @return
+     */
+    public int getPort() {
+        return server.getLocalPort();
+    }
+
+    /**
+     * Accepts connections until this worker is closed
+     */
+    public void run() {
+        while (!server.isClosed()) {
+            final Socket socket;
+            try {
+                socket = server.accept();
+            } catch (IOException e) {
+                return;
+            }
+            synchronized (connections) {
+                if (server.isClosed()) {
+                    try {
+                        socket.close();
+                    } catch (IOException e) {
+                        // Ignore
+                    }
+                    return;
+                }
+                connections.add(socket);
+            }
+            Thread thread = new Thread(new Runnable() {
+                public void run() {
+                    try {
+                        serve(socket);
+                    } catch (IOException e) {
+                        // The coordinator will reassign the work
+                    } finally {
+                        synchronized (connections) {
+                            connections.remove(socket);
+                        }
+                        try {
+                            socket.close();
+                        } catch (IOException e) {
+                            // Ignore
+                        }
+                    }
+                }
+            }, "BatchWorker2D-" + socket.getRemoteSocketAddress());
+            thread.setDaemon(true);
+            thread.start();
+        }
+    }
+
+    /**
+     * Accepts connections in a background thread until this worker is closed
+     * @return this worker
+     */
+    public BatchWorker2D start() {
+        Thread thread = new Thread(new Runnable() {
+            public void run() {
+                BatchWorker2D.this.run();
+            }
+        }, "BatchWorker2D-" + getPort());
+        thread.setDaemon(true);
+        thread.start();
+        return this;
+    }
+
+    /**
+     * Creates the factory with the given name
+     * @param name
+     * @return
+     * @throws IOException
+     */
+    @SuppressWarnings("unchecked")
+    private Function<double[], NewtonRaphson2D> getFactory(String name) throws IOException {
+        try {
+            // Check the type before running any code of the class
+            Class<?> type = Class.forName(name, false, BatchWorker2D.class.getClassLoader());
+            if (!Function.class.isAssignableFrom(type)) {
+                throw new IOException("Invalid factory: " + name);
+            }
+            return (Function<double[], NewtonRaphson2D>) type.getDeclaredConstructor().newInstance();
+        } catch (ReflectiveOperationException e) {
+            throw new IOException("Invalid factory: " + name, e);
+        }
+    }
+
+    /**
+     * Serves a connection
+     * @param socket
+     * @throws IOException
+     */
+    private void serve(Socket socket) throws IOException {
+
+        socket.setTcpNoDelay(true);
+        DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+
+        // Hello
+        if (in.readInt() != BatchProtocol.MAGIC || in.readInt() != BatchProtocol.VERSION) {
+            throw new IOException("Invalid protocol");
+        }
+        Function<double[], NewtonRaphson2D> factory = getFactory(in.readUTF());
+        NewtonRaphsonConfiguration<?> configuration = BatchProtocol.readConfiguration(in);
+        NewtonRaphson2D shared = null;
+
+        // Tasks
+        while (true) {
+            byte type = in.readByte();
+            if (type == BatchProtocol.SHUTDOWN) {
+                return;
+            } else if (type != BatchProtocol.TASK) {
+                throw new IOException("Invalid message");
+            }
+            int chunk = in.readInt();
+            double[][] problems = BatchProtocol.readProblems(in);
+            Vector2D[] solutions = new Vector2D[problems.length];
+            NewtonRaphsonMeasures[] measures = new NewtonRaphsonMeasures[problems.length];
+            for (int i = 0; i < problems.length; i++) {
+                double[] problem = problems[i];
+                NewtonRaphson2D solver;
+                if (problem.length == 2) {
+                    if (shared == null) {
+                        shared = factory.evaluate(new double[0]).configure(configuration);
+                    }
+                    solver = shared;
+                } else {
+                    solver = factory.evaluate(Arrays.copyOfRange(problem, 2, problem.length)).configure(configuration);
+                }
+                solutions[i] = solver.solve(new Vector2D(problem[0], problem[1]));
+                measures[i] = solver.getMeasures();
+            }
+            out.writeByte(BatchProtocol.RESULT);
+            out.writeInt(chunk);
+            BatchProtocol.writeResults(out, solutions, measures);
+            out.flush();
+        }
+    }
+}
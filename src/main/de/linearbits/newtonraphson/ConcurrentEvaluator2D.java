@@ -0,0 +1,292 @@
+/*
+ * Copyright 2015 Fabian Prasser
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.linearbits.newtonraphson;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * This class evaluates the object functions, the probes needed for finite differences and the
+ * derivative functions concurrently on an executor. Each evaluation is performed at a separate
+ * probe point, which is owned by a task. One task is run by the calling thread, the remaining
+ * tasks are submitted to the executor. The tasks are reused across evaluations.
+ *
+ * @author Fabian Prasser
+ */
+class ConcurrentEvaluator2D {
+
+    /**
+     * An evaluation of a single function at a single point
+     * @author Fabian Prasser
+     */
+    private final class Task implements Runnable {
+
+        /** Derivative functions */
+        private Function<Vector2D, SquareMatrix2D> derivativeFunction;
+        /** Result of the derivative functions */
+        private final SquareMatrix2D               derivatives = new SquareMatrix2D();
+        /** First and second function */
+        private Function<Vector2D, Vector2D>       objectFunction;
+        /** Single function */
+        private Function2D                         objectFunction1;
+        /** Result */
+        private final Vector2D                     object      = new Vector2D();
+        /** Point */
+        private final Vector2D                     point       = new Vector2D();
+
+        @Override
+        public void run() {
+            try {
+                if (objectFunction1 != null) {
+                    object.x = objectFunction1.evaluate(point);
+                } else if (objectFunction != null) {
+                    Vector2D result = objectFunction.evaluate(point);
+                    object.x = result.x;
+                    object.y = result.y;
+                } else {
+                    SquareMatrix2D result = derivativeFunction.evaluate(point);
+                    derivatives.x1 = result.x1;
+                    derivatives.x2 = result.x2;
+                    derivatives.y1 = result.y1;
+                    derivatives.y2 = result.y2;
+                }
+            } catch (RuntimeException e) {
+                fail(e);
+            } catch (Error e) {
+                fail(e);
+            } finally {
+                done();
+            }
+        }
+
+        /**
+         * Prepares this task
+         * @param objectFunction1
+         * @param objectFunction
+         * @param derivativeFunction
+         * @param x
+         * @param y
+         * @return
+         */
+        private Task prepare(Function2D objectFunction1,
+                             Function<Vector2D, Vector2D> objectFunction,
+                             Function<Vector2D, SquareMatrix2D> derivativeFunction,
+                             double x, double y) {
+            this.objectFunction1 = objectFunction1;
+            this.objectFunction = objectFunction;
+            this.derivativeFunction = derivativeFunction;
+            this.point.x = x;
+            this.point.y = y;
+            return this;
+        }
+    }
+
+    /** Maximal number of tasks: two objectives and four probes */
+    private static final int                         TASKS = 6;
+
+    /** Derivative functions */
+    private final Function<Vector2D, SquareMatrix2D> derivativeFunction;
+    /** Executor */
+    private final Executor                           executor;
+    /** The first failure of the current evaluation */
+    private Throwable                                failure;
+    /** First and second function */
+    private final Function<Vector2D, Vector2D>       objectFunction;
+    /** First function */
+    private final Function2D                         objectFunction1;
+    /** Second function */
+    private final Function2D                         objectFunction2;
+    /** Number of tasks running */
+    private int                                      running;
+    /** Tasks */
+    private final Task[]                             tasks = new Task[TASKS];
+
+    /**
+     * Creates a new instance
+     * @param executor
+     * @param objectFunction1
+     * @param objectFunction2
+     * @param objectFunction
+     * @param derivativeFunction
+     */
+    ConcurrentEvaluator2D(Executor executor,
+                          Function2D objectFunction1,
+                          Function2D objectFunction2,
+                          Function<Vector2D, Vector2D> objectFunction,
+                          Function<Vector2D, SquareMatrix2D> derivativeFunction) {
+        this.executor = executor;
+        this.objectFunction1 = objectFunction1;
+        this.objectFunction2 = objectFunction2;
+        this.objectFunction = objectFunction;
+        this.derivativeFunction = derivativeFunction;
+        for (int i = 0; i < TASKS; i++) {
+            tasks[i] = new Task();
+        }
+    }
+
+    /**
+     * Returns the executor
+     * @return
+     */
+    Executor getExecutor() {
+        return executor;
+    }
+
+    /**
+     * Evaluates the object functions and the derivatives at the given point concurrently
+     * @param point
+     * @param object the values of the object functions, which are evaluated or, if not, used for finite differences
+     * @param derivatives
+     * @param objectives whether to evaluate the object functions
+     * @param strategy FINITE_DIFFERENCES or DERIVATIVES for deriving, null otherwise
+     * @return the number of function evaluations
+     */
+    int evaluate(Vector2D point, Vector2D object, SquareMatrix2D derivatives, boolean objectives, NewtonRaphsonStrategy strategy) {
+
+        // Prepare
+        int count = 0;
+        if (objectives) {
+            if (objectFunction1 != null) {
+                tasks[count++].prepare(objectFunction1, null, null, point.x, point.y);
+                tasks[count++].prepare(objectFunction2, null, null, point.x, point.y);
+            } else {
+                tasks[count++].prepare(null, objectFunction, null, point.x, point.y);
+            }
+        }
+        int probes = count;
+        double deltaX = Derivation2D.delta(point.x);
+        double deltaY = Derivation2D.delta(point.y);
+        if (strategy == NewtonRaphsonStrategy.DERIVATIVES) {
+            tasks[count++].prepare(null, null, derivativeFunction, point.x, point.y);
+        } else if (strategy == NewtonRaphsonStrategy.FINITE_DIFFERENCES) {
+            if (objectFunction1 != null) {
+                tasks[count++].prepare(objectFunction1, null, null, point.x + deltaX, point.y);
+                tasks[count++].prepare(objectFunction1, null, null, point.x, point.y + deltaY);
+                tasks[count++].prepare(objectFunction2, null, null, point.x + deltaX, point.y);
+                tasks[count++].prepare(objectFunction2, null, null, point.x, point.y + deltaY);
+            } else {
+                tasks[count++].prepare(null, objectFunction, null, point.x + deltaX, point.y);
+                tasks[count++].prepare(null, objectFunction, null, point.x, point.y + deltaY);
+            }
+        }
+
+        // Evaluate
+        run(count);
+
+        // Collect
+        if (objectives) {
+            if (objectFunction1 != null) {
+                object.x = tasks[0].object.x;
+                object.y = tasks[1].object.x;
+            } else {
+                object.x = tasks[0].object.x;
+                object.y = tasks[0].object.y;
+            }
+        }
+        if (strategy == NewtonRaphsonStrategy.DERIVATIVES) {
+            SquareMatrix2D result = tasks[probes].derivatives;
+            derivatives.x1 = result.x1;
+            derivatives.x2 = result.x2;
+            derivatives.y1 = result.y1;
+            derivatives.y2 = result.y2;
+        } else if (strategy == NewtonRaphsonStrategy.FINITE_DIFFERENCES) {
+            if (objectFunction1 != null) {
+                derivatives.x1 = (tasks[probes].object.x - object.x) / deltaX;
+                derivatives.x2 = (tasks[probes + 1].object.x - object.x) / deltaY;
+                derivatives.y1 = (tasks[probes + 2].object.x - object.y) / deltaX;
+                derivatives.y2 = (tasks[probes + 3].object.x - object.y) / deltaY;
+            } else {
+                derivatives.x1 = (tasks[probes].object.x - object.x) / deltaX;
+                derivatives.y1 = (tasks[probes].object.y - object.y) / deltaX;
+                derivatives.x2 = (tasks[probes + 1].object.x - object.x) / deltaY;
+                derivatives.y2 = (tasks[probes + 1].object.y - object.y) / deltaY;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Marks a task as done
+     */
+    private synchronized void done() {
+        running--;
+        if (running == 0) {
+            notifyAll();
+        }
+    }
+
+    /**
+     * Records a failure
+     * @param failure
+     */
+    private synchronized void fail(Throwable failure) {
+        if (this.failure == null) {
+            this.failure = failure;
+        }
+    }
+
+    /**
+     * Runs the first tasks, one of which in the calling thread, and waits for all of them to complete.
+     * Failures of the functions are rethrown.
+     * @param count
+     */
+    private void run(int count) {
+
+        // Submit
+        if (count == 0) {
+            return;
+        }
+        synchronized (this) {
+            running = count;
+            failure = null;
+        }
+        for (int i = 1; i < count; i++) {
+            try {
+                executor.execute(tasks[i]);
+            } catch (RejectedExecutionException e) {
+                tasks[i].run();
+            }
+        }
+        tasks[0].run();
+
+        // Wait
+        boolean interrupted = false;
+        synchronized (this) {
+            while (running != 0) {
+                try {
+                    wait();
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+
+        // Rethrow
+        Throwable failure;
+        synchronized (this) {
+            failure = this.failure;
+            this.failure = null;
+        }
+        if (failure instanceof RuntimeException) {
+            throw (RuntimeException) failure;
+        } else if (failure != null) {
+            throw (Error) failure;
+        }
+    }
+}
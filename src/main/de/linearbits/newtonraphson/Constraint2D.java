@@ -16,10 +16,20 @@
 package de.linearbits.newtonraphson;
 
 /**
- * A constraint for the solver
+ * A constraint for the solver. Solvers check constraints with the primitive predicate
+ * isSatisfied(), which can be overridden to avoid unboxing and null checks.
  * 
  * @author Fabian Prasser
  */
 public interface Constraint2D extends Function<Vector2D, Boolean> {
 
+    /**
+     * Returns whether the given point satisfies this constraint. The default implementation
+     * delegates to evaluate().
+     * @param point
+     * @return
+     */
+    default boolean isSatisfied(Vector2D point) {
+        return evaluate(point);
+    }
 }
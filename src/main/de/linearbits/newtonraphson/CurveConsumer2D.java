@@ -0,0 +1,30 @@
+/*
+ * Copyright 2015 Fabian Prasser
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.linearbits.newtonraphson;
+
+/**
+ * This interface defines consumers of the points of traced curves
+ * @author Fabian Prasser
+ */
+public interface CurveConsumer2D {
+
+    /**
+     * Consumes the next point of the polyline
+     * @param index index of the point in the polyline
+     * @param point the point, which is reused and must not be retained
+     */
+    public void consume(int index, Vector2D point);
+}
@@ -0,0 +1,619 @@
+/*
+ * Copyright 2015 Fabian Prasser
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.linearbits.newtonraphson;
+
+/**
+ * This class traces the zero set f(x, y) = 0 of a function RxR -> R with pseudo-arclength continuation and
+ * streams it to a consumer as a polyline. To trace the solutions of an equation g(x, p) = 0 under a parameter p,
+ * pass the parameter as the second argument. The start value is first projected onto the curve. The curve is then
+ * walked by predictor steps along the tangent, each of which is corrected with Newton-Raphson steps on the system
+ * f(x) = 0, t * (x - x0) = h, where t is the tangent at the last point x0 and h is the step length:
+ * <ul>
+ * <li>Steps, whose tangent turns by more than the maximal angle, are rejected and repeated with half the step
+ * length, such that points are dense where the curve is curved. Otherwise, the step length is adapted to reach
+ * half the maximal angle.</li>
+ * <li>Tracing ends, when the curve passes the first point again, when it leaves the domain, in which case the
+ * intersection with the boundary is the last point, or when the step length falls below the minimum, e.g. at
+ * singular points.</li>
+ * </ul>
+ * The gradient is approximated with finite differences, if it is not provided. The accuracy refers to the function.
+ * The method, the strategy, the profiling interval, termination policies and samplers are not supported.
+ * Instances are not thread-safe and do not allocate any memory once warmed up, as long as the functions and the
+ * consumer do not allocate memory either.
+ *
+ * @author Fabian Prasser
+ */
+public class CurveTracer2D extends NewtonRaphsonConfiguration<CurveTracer2D> {
+
+    /**
+     * The reason, for which tracing has ended
+     * @author Fabian Prasser
+     */
+    public static enum Outcome {
+        /** The curve has been closed */
+        CLOSED,
+        /** The curve has left the domain */
+        LEFT_DOMAIN,
+        /** The start value could not be projected onto the curve */
+        NOT_ON_CURVE,
+        /** The maximal number of points has been reached */
+        POINTS_EXHAUSTED,
+        /** The step length fell below the minimum */
+        STEP_TOO_SMALL,
+        /** The time limit has been reached */
+        TIME_EXHAUSTED
+    }
+
+    /** Constant */
+    public static final int                    DEFAULT_CORRECTIONS = 3;
+    /** Constant */
+    public static final double                 DEFAULT_MAX_ANGLE   = 0.1d;
+    /** Constant */
+    public static final int                    DEFAULT_MAX_POINTS  = 10000;
+    /** Constant */
+    public static final double                 DEFAULT_MAX_STEP    = 1d;
+    /** Constant */
+    public static final double                 DEFAULT_MIN_STEP    = 1e-6;
+    /** Constant */
+    public static final double                 DEFAULT_STEP        = 0.1d;
+    /** SVUID */
+    private static final long                  serialVersionUID    = -6036478517207340421L;
+
+    /** Maximal number of corrector iterations per step */
+    private int                                corrections         = DEFAULT_CORRECTIONS;
+    /** Function */
+    private final Function2D                   function;
+    /** Gradient */
+    private final Function<Vector2D, Vector2D> gradientFunction;
+    /** Maximal angle in radians between the tangents at consecutive points */
+    private double                             maxAngle            = DEFAULT_MAX_ANGLE;
+    /** Maximal number of points */
+    private int                                maxPoints           = DEFAULT_MAX_POINTS;
+    /** Maximal step length */
+    private double                             maxStep             = DEFAULT_MAX_STEP;
+    /** Maximal x of the domain */
+    private double                             maxX                = Double.POSITIVE_INFINITY;
+    /** Maximal y of the domain */
+    private double                             maxY                = Double.POSITIVE_INFINITY;
+    /** Measures of the last run */
+    private NewtonRaphsonMeasures              measures;
+    /** Minimal step length */
+    private double                             minStep             = DEFAULT_MIN_STEP;
+    /** Minimal x of the domain */
+    private double                             minX                = Double.NEGATIVE_INFINITY;
+    /** Minimal y of the domain */
+    private double                             minY                = Double.NEGATIVE_INFINITY;
+    /** Initial step length */
+    private double                             step                = DEFAULT_STEP;
+
+    /** Workspace: finite differences */
+    private transient Derivation2D             workspaceDerivation;
+    /** Workspace: gradient */
+    private transient Vector2D                 workspaceGradient;
+    /** Workspace: tangent at the next point */
+    private transient Vector2D                 workspaceNextTangent;
+    /** Workspace: first point */
+    private transient Vector2D                 workspaceOrigin;
+    /** Workspace: tangent at the first point */
+    private transient Vector2D                 workspaceOriginTangent;
+    /** Workspace: point passed to the consumer */
+    private transient Vector2D                 workspaceOutput;
+    /** Workspace: current point */
+    private transient Vector2D                 workspacePoint;
+    /** Workspace: next point */
+    private transient Vector2D                 workspaceProbe;
+    /** Workspace: tangent at the current point */
+    private transient Vector2D                 workspaceTangent;
+
+    /**
+     * Creates a new instance. This variant approximates the gradient.
+     * @param function
+     */
+    public CurveTracer2D(Function2D function) {
+        this(function, null);
+    }
+
+    /**
+     * Creates a new instance
+     * @param function
+     * @param gradient
+     */
+    public CurveTracer2D(Function2D function, Function<Vector2D, Vector2D> gradient) {
+        if (function == null) {
+            throw new IllegalArgumentException("Invalid arguments");
+        }
+        this.function = function;
+        this.gradientFunction = gradient;
+        this.measures = new NewtonRaphsonMeasures();
+    }
+
+    /**
+     * Configures this instance
+     * @param config
+     */
+    public CurveTracer2D configure(NewtonRaphsonConfiguration<?> config) {
+        this.accuracy = config.accuracy;
+        this.iterationsPerTry = config.iterationsPerTry;
+        this.iterationsTotal = config.iterationsTotal;
+        this.timePerTry = config.timePerTry;
+        this.timeTotal = config.timeTotal;
+        this.tries = config.tries;
+        this.conditionLimit = config.conditionLimit;
+        return this;
+    }
+
+    /**
+     * Maximal number of Newton-Raphson iterations per corrector step. Default is 3.
+     * @param corrections
+     */
+    public CurveTracer2D corrections(int corrections) {
+        if (corrections < 1) {
+            throw new IllegalArgumentException("Invalid number of corrections");
+        }
+        this.corrections = corrections;
+        return this;
+    }
+
+    /**
+     * The domain, which is unbounded by default
+     * @param minX
+     * @param maxX
+     * @param minY
+     * @param maxY
+     */
+    public CurveTracer2D domain(double minX, double maxX, double minY, double maxY) {
+        if (!(minX < maxX) || !(minY < maxY)) {
+            throw new IllegalArgumentException("Invalid domain");
+        }
+        this.minX = minX;
+        this.maxX = maxX;
+        this.minY = minY;
+        this.maxY = maxY;
+        return this;
+    }
+
+    /**
+     * Returns measurements for the last run. Iterations are corrector iterations and quality is derived
+     * from the largest absolute value of the function at the points traced. The object is reused by
+     * subsequent runs.
+     */
+    public NewtonRaphsonMeasures getMeasures() {
+        return measures;
+    }
+
+    /**
+     * Maximal angle in radians between the tangents at consecutive points. Default is 0.1.
+     * @param maxAngle
+     */
+    public CurveTracer2D maxAngle(double maxAngle) {
+        if (!(maxAngle > 0d) || maxAngle > Math.PI / 2d) {
+            throw new IllegalArgumentException("Invalid maximal angle");
+        }
+        this.maxAngle = maxAngle;
+        return this;
+    }
+
+    /**
+     * Maximal number of points per curve. Default is 10000.
+     * @param maxPoints
+     */
+    public CurveTracer2D maxPoints(int maxPoints) {
+        if (maxPoints < 2) {
+            throw new IllegalArgumentException("Invalid maximal number of points");
+        }
+        this.maxPoints = maxPoints;
+        return this;
+    }
+
+    /**
+     * Maximal step length. Default is 1.
+     * @param maxStep
+     */
+    public CurveTracer2D maxStep(double maxStep) {
+        if (!(maxStep > 0d) || Double.isInfinite(maxStep)) {
+            throw new IllegalArgumentException("Invalid maximal step length");
+        }
+        this.maxStep = maxStep;
+        return this;
+    }
+
+    /**
+     * Minimal step length, below which tracing ends. Default is 1e-6.
+     * @param minStep
+     */
+    public CurveTracer2D minStep(double minStep) {
+        if (!(minStep > 0d)) {
+            throw new IllegalArgumentException("Invalid minimal step length");
+        }
+        this.minStep = minStep;
+        return this;
+    }
+
+    /**
+     * Initial step length. Default is 0.1.
+     * @param step
+     */
+    public CurveTracer2D step(double step) {
+        if (!(step > 0d) || Double.isInfinite(step)) {
+            throw new IllegalArgumentException("Invalid step length");
+        }
+        this.step = step;
+        return this;
+    }
+
+    /**
+     * Traces the curve through the point closest to the given start value in the direction, in which the
+     * function increases to the left
+     * @param start
+     * @param consumer
+     * @return
+     */
+    public Outcome trace(Vector2D start, CurveConsumer2D consumer) {
+        return trace(start, null, consumer);
+    }
+
+    /**
+     * Traces the curve through the point closest to the given start value in the given direction. To trace
+     * both parts of a curve, which is not closed, trace it a second time in the opposite direction.
+     * @param start
+     * @param direction may be null
+     * @param consumer
+     * @return
+     */
+    public Outcome trace(Vector2D start, Vector2D direction, CurveConsumer2D consumer) {
+
+        // Init workspaces
+        if (this.workspacePoint == null) {
+            this.workspaceDerivation = new Derivation2D();
+            this.workspaceGradient = new Vector2D();
+            this.workspaceNextTangent = new Vector2D();
+            this.workspaceOrigin = new Vector2D();
+            this.workspaceOriginTangent = new Vector2D();
+            this.workspaceOutput = new Vector2D();
+            this.workspacePoint = new Vector2D();
+            this.workspaceProbe = new Vector2D();
+            this.workspaceTangent = new Vector2D();
+        }
+        Vector2D gradient = this.workspaceGradient;
+        Vector2D point = this.workspacePoint;
+        Vector2D probe = this.workspaceProbe;
+        Vector2D tangent = this.workspaceTangent;
+        Vector2D nextTangent = this.workspaceNextTangent;
+        Vector2D origin = this.workspaceOrigin;
+        Vector2D originTangent = this.workspaceOriginTangent;
+        Vector2D output = this.workspaceOutput;
+
+        // Measure
+        long totalStart = System.currentTimeMillis();
+        long deadline = totalStart + timeTotal;
+        int iterations = 0;
+        int evaluations = 0;
+        int singularities = 0;
+        double error = 0d;
+
+        // Project the start value onto the curve
+        point.x = start.x;
+        point.y = start.y;
+        double value = Double.NaN;
+        for (int iteration = 0; iteration <= iterationsPerTry; iteration++) {
+            value = function.evaluate(point);
+            evaluations++;
+            if (Double.isNaN(value) || Math.abs(value) <= accuracy || iteration == iterationsPerTry) {
+                break;
+            }
+            evaluations += gradient(point, value, gradient);
+            iterations++;
+            double norm = gradient.x * gradient.x + gradient.y * gradient.y;
+            if (!(norm > 0d) || Double.isInfinite(norm)) {
+                singularities++;
+                break;
+            }
+            point.x -= value / norm * gradient.x;
+            point.y -= value / norm * gradient.y;
+        }
+        if (!(Math.abs(value) <= accuracy)) {
+            return finish(Outcome.NOT_ON_CURVE, iterations, evaluations, singularities, 1d, totalStart);
+        }
+        if (!isInDomain(point)) {
+            return finish(Outcome.LEFT_DOMAIN, iterations, evaluations, singularities, 1d, totalStart);
+        }
+        evaluations += gradient(point, value, gradient);
+        if (!tangent(gradient, direction, tangent)) {
+            return finish(Outcome.STEP_TOO_SMALL, iterations, evaluations, singularities + 1, 1d, totalStart);
+        }
+        error = Math.abs(value);
+        origin.x = point.x;
+        origin.y = point.y;
+        originTangent.x = tangent.x;
+        originTangent.y = tangent.y;
+        emit(consumer, 0, point, output);
+
+        // Walk
+        double length = Math.min(step, maxStep);
+        int index = 1;
+        while (true) {
+
+            // Limits
+            if (index >= maxPoints) {
+                return finish(Outcome.POINTS_EXHAUSTED, iterations, evaluations, singularities, error, totalStart);
+            }
+            if (System.currentTimeMillis() > deadline) {
+                return finish(Outcome.TIME_EXHAUSTED, iterations, evaluations, singularities, error, totalStart);
+            }
+
+            // Predictor
+            probe.x = point.x + length * tangent.x;
+            probe.y = point.y + length * tangent.y;
+
+            // Corrector on f(x) = 0, t * (x - x0) - h = 0
+            boolean converged = false;
+            int corrected = 0;
+            for (int iteration = 0; iteration <= corrections; iteration++) {
+                value = function.evaluate(probe);
+                evaluations++;
+                if (Double.isNaN(value)) {
+                    break;
+                }
+                double arclength = tangent.x * (probe.x - point.x) + tangent.y * (probe.y - point.y) - length;
+                if (Math.abs(value) <= accuracy && Math.abs(arclength) <= accuracy * Math.max(1d, length)) {
+                    converged = true;
+                    break;
+                }
+                if (iteration == corrections) {
+                    break;
+                }
+                evaluations += gradient(probe, value, gradient);
+                iterations++;
+                corrected++;
+                double determinant = gradient.x * tangent.y - gradient.y * tangent.x;
+                double norm = gradient.x * gradient.x + gradient.y * gradient.y + 1d;
+                if (!(Math.abs(determinant) * conditionLimit > norm)) {
+                    singularities++;
+                    break;
+                }
+                probe.x -= (tangent.y * value - gradient.y * arclength) / determinant;
+                probe.y -= (gradient.x * arclength - tangent.x * value) / determinant;
+            }
+
+            // Check the turn of the tangent
+            double angle = Double.NaN;
+            if (converged) {
+                evaluations += gradient(probe, value, gradient);
+                if (tangent(gradient, tangent, nextTangent)) {
+                    angle = Math.acos(Math.max(-1d, Math.min(1d, tangent.x * nextTangent.x + tangent.y * nextTangent.y)));
+                } else {
+                    singularities++;
+                }
+            }
+            if (!(angle <= maxAngle)) {
+                length *= 0.5d;
+                if (length < minStep) {
+                    return finish(Outcome.STEP_TOO_SMALL, iterations, evaluations, singularities, error, totalStart);
+                }
+                continue;
+            }
+            error = Math.max(error, Math.abs(value));
+
+            // Leave the domain at the boundary
+            if (!isInDomain(probe)) {
+                evaluations += clip(point, probe, gradient, output);
+                value = function.evaluate(output);
+                evaluations++;
+                error = Math.max(error, Math.abs(value));
+                consumer.consume(index, output);
+                return finish(Outcome.LEFT_DOMAIN, iterations, evaluations, singularities, error, totalStart);
+            }
+
+            // Close the curve, if the step passes the first point
+            if (index >= 2 && passes(point, probe, origin, originTangent)) {
+                emit(consumer, index, origin, output);
+                return finish(Outcome.CLOSED, iterations, evaluations, singularities, error, totalStart);
+            }
+
+            // Accept
+            point.x = probe.x;
+            point.y = probe.y;
+            tangent.x = nextTangent.x;
+            tangent.y = nextTangent.y;
+            emit(consumer, index++, point, output);
+
+            // Adapt the step length to the curvature
+            double factor = angle == 0d ? 2d : Math.max(0.5d, Math.min(2d, 0.5d * maxAngle / angle));
+            if (corrected > 2) {
+                factor = Math.min(factor, 1d);
+            }
+            length = Math.max(minStep, Math.min(maxStep, length * factor));
+        }
+    }
+
+    @Override
+    void checkSupported(String setting) {
+        throw new IllegalStateException("Setting " + setting + " is not supported by this solver");
+    }
+
+    /**
+     * Stores the point, at which the curve leaves the domain. The point, at which the segment from the first
+     * point, which is in the domain, to the second point leaves the domain, is moved onto the curve along the
+     * boundary. If this fails, the point on the segment is stored.
+     * @param inside
+     * @param outside
+     * @param gradient workspace
+     * @param result
+     * @return the number of evaluations
+     */
+    private int clip(Vector2D inside, Vector2D outside, Vector2D gradient, Vector2D result) {
+
+        // Intersect the segment with the boundary
+        double dx = outside.x - inside.x;
+        double dy = outside.y - inside.y;
+        double s = 1d;
+        boolean vertical = false;
+        if (outside.x > maxX) {
+            s = (maxX - inside.x) / dx;
+            vertical = true;
+        } else if (outside.x < minX) {
+            s = (minX - inside.x) / dx;
+            vertical = true;
+        }
+        double t = s;
+        if (outside.y > maxY) {
+            t = (maxY - inside.y) / dy;
+        } else if (outside.y < minY) {
+            t = (minY - inside.y) / dy;
+        }
+        if (t < s) {
+            s = t;
+            vertical = false;
+        }
+        result.x = Math.max(minX, Math.min(maxX, inside.x + s * dx));
+        result.y = Math.max(minY, Math.min(maxY, inside.y + s * dy));
+
+        // Move the point along the boundary onto the curve
+        double x = result.x;
+        double y = result.y;
+        int evaluations = 0;
+        for (int iteration = 0; iteration <= corrections; iteration++) {
+            double value = function.evaluate(result);
+            evaluations++;
+            if (Math.abs(value) <= accuracy) {
+                if (isInDomain(result)) {
+                    return evaluations;
+                }
+                break;
+            }
+            if (Double.isNaN(value) || iteration == corrections) {
+                break;
+            }
+            evaluations += gradient(result, value, gradient);
+            double derivative = vertical ? gradient.y : gradient.x;
+            if (!(derivative != 0d) || Double.isInfinite(derivative)) {
+                break;
+            }
+            if (vertical) {
+                result.y -= value / derivative;
+            } else {
+                result.x -= value / derivative;
+            }
+        }
+        result.x = x;
+        result.y = y;
+        return evaluations;
+    }
+
+    /**
+     * Passes a copy of the given point to the consumer
+     * @param consumer
+     * @param index
+     * @param point
+     * @param output
+     */
+    private void emit(CurveConsumer2D consumer, int index, Vector2D point, Vector2D output) {
+        output.x = point.x;
+        output.y = point.y;
+        consumer.consume(index, output);
+    }
+
+    /**
+     * Stores the measures and returns the outcome
+     * @param outcome
+     * @param iterations
+     * @param evaluations
+     * @param singularities
+     * @param error
+     * @param totalStart
+     * @return
+     */
+    private Outcome finish(Outcome outcome, int iterations, int evaluations, int singularities, double error, long totalStart) {
+        this.measures.set(iterations, 1, evaluations, singularities,
+                          (int) (System.currentTimeMillis() - totalStart),
+                          outcome == Outcome.NOT_ON_CURVE ? 0d : 1d - error);
+        return outcome;
+    }
+
+    /**
+     * Stores the gradient at the given point and returns the number of evaluations
+     * @param point
+     * @param value of the function at the point
+     * @param result
+     * @return
+     */
+    private int gradient(Vector2D point, double value, Vector2D result) {
+        if (gradientFunction != null) {
+            Vector2D gradient = gradientFunction.evaluate(point);
+            result.x = gradient.x;
+            result.y = gradient.y;
+            return 1;
+        }
+        result.x = workspaceDerivation.evaluateDerivativeFunction1(function, point, value);
+        result.y = workspaceDerivation.evaluateDerivativeFunction2(function, point, value);
+        return 2;
+    }
+
+    /**
+     * Returns whether the given point is in the domain
+     * @param point
+     * @return
+     */
+    private boolean isInDomain(Vector2D point) {
+        return point.x >= minX && point.x <= maxX && point.y >= minY && point.y <= maxY;
+    }
+
+    /**
+     * Returns whether the segment between the given points passes the origin in the direction of the tangent
+     * at the origin
+     * @param from
+     * @param to
+     * @param origin
+     * @param tangent
+     * @return
+     */
+    private boolean passes(Vector2D from, Vector2D to, Vector2D origin, Vector2D tangent) {
+        double dx = to.x - from.x;
+        double dy = to.y - from.y;
+        double squared = dx * dx + dy * dy;
+        if (squared == 0d || dx * tangent.x + dy * tangent.y <= 0d) {
+            return false;
+        }
+        double s = ((origin.x - from.x) * dx + (origin.y - from.y) * dy) / squared;
+        if (s <= 0d || s > 1d) {
+            return false;
+        }
+        double ex = from.x + s * dx - origin.x;
+        double ey = from.y + s * dy - origin.y;
+        return ex * ex + ey * ey <= 0.0625d * squared;
+    }
+
+    /**
+     * Stores the unit tangent for the given gradient, which is oriented like the given reference, if any
+     * @param gradient
+     * @param reference may be null
+     * @param result
+     * @return whether the gradient does not vanish
+     */
+    private boolean tangent(Vector2D gradient, Vector2D reference, Vector2D result) {
+        double norm = Math.sqrt(gradient.x * gradient.x + gradient.y * gradient.y);
+        if (!(norm > 0d) || Double.isInfinite(norm)) {
+            return false;
+        }
+        result.x = -gradient.y / norm;
+        result.y = gradient.x / norm;
+        if (reference != null && result.x * reference.x + result.y * reference.y < 0d) {
+            result.x = -result.x;
+            result.y = -result.y;
+        }
+        return true;
+    }
+}
@@ -16,14 +16,30 @@
 package de.linearbits.newtonraphson;
 
 /**
- * This class uses the finite difference method to approximate derivatives of functions
+ * This class uses the finite difference method to approximate derivatives of functions. Functions are 
+ * evaluated at separate probe points, the points given are never modified. Instances are not thread-safe.
  * 
  * @author Fabian Prasser
  */
 public class Derivation2D {
 
     /** See http://www.karenkopecky.net/Teaching/eco613614/Notes_NumericalDifferentiation.pdf*/
-    private static final double EPSILON = Math.sqrt(Math.ulp(1d));
+    static final double EPSILON = Math.sqrt(Math.ulp(1d));
+
+    /** Step size for central differences and second derivatives, see the same source */
+    static final double EPSILON_SECOND_ORDER = Math.pow(Math.ulp(1d), 0.25d);
+
+    /**
+     * Returns the step size for the given coordinate
+     * @param value
+     * @return
+     */
+    static double delta(double value) {
+        return EPSILON * Math.max(Math.abs(value), 1);
+    }
+
+    /** Workspace */
+    private final Vector2D probe = new Vector2D();
 
     /**
      * Returns the function derived by the first argument
@@ -70,12 +86,10 @@ public class Derivation2D {
      */
     public double evaluateDerivativeFunction1(Function2D function, Vector2D point, double result) {
         // See http://www.karenkopecky.net/Teaching/eco613614/Notes_NumericalDifferentiation.pdf
-        double delta = EPSILON * Math.max(Math.abs(point.x), 1);
-        double y1 = result;
-        point.x += delta;
-        double y2 = function.evaluate(point);
-        point.x -= delta;
-        return (y2 - y1) / delta;
+        double delta = delta(point.x);
+        probe.x = point.x + delta;
+        probe.y = point.y;
+        return (function.evaluate(probe) - result) / delta;
     }
 
     /**
@@ -97,11 +111,47 @@ public class Derivation2D {
      */
     public double evaluateDerivativeFunction2(Function2D function, Vector2D point, double result) {
         // See http://www.karenkopecky.net/Teaching/eco613614/Notes_NumericalDifferentiation.pdf
-        double delta = EPSILON * Math.max(Math.abs(point.y), 1);
-        double y1 = result;
-        point.y += delta;
-        double y2 = function.evaluate(point);
-        point.y -= delta;
-        return (y2 - y1) / delta;
+        double delta = delta(point.y);
+        probe.y = point.y + delta;
+        probe.x = point.x;
+        return (function.evaluate(probe) - result) / delta;
+    }
+
+    /**
+     * Approximates the gradient and the second derivatives of the given function at the given point with
+     * central differences, using five evaluations of the function
+     * @param function
+     * @param point
+     * @param result value of the function at the point
+     * @param gradient
+     * @param hessian
+     */
+    public void evaluateSecondOrderDerivatives(Function2D function, Vector2D point, double result, Vector2D gradient, SquareMatrix2D hessian) {
+        double deltaX = EPSILON_SECOND_ORDER * Math.max(Math.abs(point.x), 1);
+        double deltaY = EPSILON_SECOND_ORDER * Math.max(Math.abs(point.y), 1);
+        double xPlus = evaluate(function, point.x + deltaX, point.y);
+        double xMinus = evaluate(function, point.x - deltaX, point.y);
+        double yPlus = evaluate(function, point.x, point.y + deltaY);
+        double yMinus = evaluate(function, point.x, point.y - deltaY);
+        double xyPlus = evaluate(function, point.x + deltaX, point.y + deltaY);
+        gradient.x = (xPlus - xMinus) / (2d * deltaX);
+        gradient.y = (yPlus - yMinus) / (2d * deltaY);
+        hessian.x1 = (xPlus - 2d * result + xMinus) / (deltaX * deltaX);
+        hessian.y2 = (yPlus - 2d * result + yMinus) / (deltaY * deltaY);
+        hessian.x2 = (xyPlus - xPlus - yPlus + result) / (deltaX * deltaY);
+        hessian.y1 = hessian.x2;
+    }
+
+    /**
+     * Evaluates the function at the given coordinates
+     * @param function
+     * @param x
+     * @param y
+     * @return
+     */
+    private double evaluate(Function2D function, double x, double y) {
+        probe.x = x;
+        probe.y = y;
+        return function.evaluate(probe);
     }
 }
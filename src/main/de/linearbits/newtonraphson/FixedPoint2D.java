@@ -0,0 +1,451 @@
+/*
+ * Copyright 2015 Fabian Prasser
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.linearbits.newtonraphson;
+
+/**
+ * This class solves fixed-point problems x = g(x) with Anderson acceleration, which does not require any
+ * derivatives. Each iteration evaluates the map once. The next iterate is the combination of the last
+ * iterates and their images, which minimizes the linearized residual g(x) - x in the least-squares sense.
+ * The depth of the memory determines how many previous iterates are combined. With a depth of zero, the
+ * solver performs plain (damped) fixed-point iterations. As the residuals are two-dimensional, at most
+ * two previous iterates are linearly independent, and older iterates are dropped if they do not contribute.<br>
+ * <br>
+ * Accelerated steps are safeguarded: if the residual at an accelerated iterate grows by more than the
+ * given factor, or if the iterate violates the constraints or results in NaN values, the memory is cleared
+ * and a plain fixed-point step is taken instead.<br>
+ * <br>
+ * The solver uses the accuracy, the limits on iterations, time and tries and the start values of its
+ * configuration. The accuracy refers to the residual g(x) - x. The method, the strategy, the profiling interval,
+ * termination policies and samplers are not supported.
+ * Like {@link NewtonRaphson2D}, instances are not thread-safe and do not allocate any memory once warmed up,
+ * as long as the map does not allocate memory either.
+ *
+ * @author Fabian Prasser
+ */
+public class FixedPoint2D extends NewtonRaphsonConfiguration<FixedPoint2D> {
+
+    /** SVUID */
+    private static final long            serialVersionUID = 4386510964127367592L;
+
+    /** Constant */
+    public static final int              DEFAULT_DEPTH     = 2;
+    /** Constant */
+    public static final double           DEFAULT_MIXING    = 1d;
+    /** Constant */
+    public static final double           DEFAULT_SAFEGUARD = 2d;
+
+    /** Constraints */
+    private final Constraint2D[]         constraints;
+    /** Memory depth */
+    private int                          depth             = DEFAULT_DEPTH;
+    /** The map */
+    private final Function<Vector2D, Vector2D> map;
+    /** Measures of the last run */
+    private NewtonRaphsonMeasures        measures;
+    /** Mixing parameter */
+    private double                       mixing            = DEFAULT_MIXING;
+    /** Maximal growth of the residual accepted for accelerated steps */
+    private double                       safeguard         = DEFAULT_SAFEGUARD;
+
+    /** Workspace: differences of residuals, ring buffer */
+    private transient double[][]         workspaceDeltaResidual;
+    /** Workspace: differences of iterates, ring buffer */
+    private transient double[][]         workspaceDeltaPoint;
+    /** Workspace: coefficients */
+    private transient double[]           workspaceGamma;
+    /** Workspace: indices of the columns used */
+    private transient int[]              workspaceColumns;
+    /** Workspace: measures, which are reused across runs */
+    private transient NewtonRaphsonMeasures workspaceMeasures;
+    /** Workspace: point passed to the map and the constraints */
+    private transient Vector2D           workspacePoint;
+    /** Workspace: orthonormal basis */
+    private transient double[][]         workspaceQ;
+    /** Workspace: triangular factor */
+    private transient double[][]         workspaceR;
+
+    /**
+     * Creates a new instance
+     * @param map
+     */
+    public FixedPoint2D(Function<Vector2D, Vector2D> map) {
+        this(map, (Constraint2D[]) null);
+    }
+
+    /**
+     * Creates a new instance
+     * @param map
+     * @param constraints
+     */
+    public FixedPoint2D(Function<Vector2D, Vector2D> map, Constraint2D... constraints) {
+        this.map = map;
+        this.constraints = constraints;
+        this.measures = new NewtonRaphsonMeasures();
+    }
+
+    /**
+     * Configures this instance
+     * @param config
+     */
+    public FixedPoint2D configure(NewtonRaphsonConfiguration<?> config) {
+        this.accuracy = config.accuracy;
+        this.iterationsPerTry = config.iterationsPerTry;
+        this.iterationsTotal = config.iterationsTotal;
+        this.timePerTry = config.timePerTry;
+        this.timeTotal = config.timeTotal;
+        this.tries = config.tries;
+        this.conditionLimit = config.conditionLimit;
+        this.preparedStartValues = config.preparedStartValues;
+        if (this.preparedStartValues != null) {
+            this.iterationsTotal = (this.preparedStartValues.length + 1) * iterationsPerTry; // Includes given start value
+        }
+        return this;
+    }
+
+    /**
+     * Number of previous iterates used for acceleration. Zero disables acceleration. Default is 2.
+     * @param depth
+     */
+    public FixedPoint2D depth(int depth) {
+        if (depth < 0) {
+            throw new IllegalArgumentException("Invalid depth");
+        }
+        this.depth = depth;
+        this.workspaceMeasures = null;
+        return this;
+    }
+
+    /**
+     * @return the memory depth
+     */
+    public int getDepth() {
+        return depth;
+    }
+
+    /**
+     * Returns measurements for the last run. Singularities are not reported.
+     */
+    public NewtonRaphsonMeasures getMeasures() {
+        return measures;
+    }
+
+    /**
+     * @return the mixing parameter
+     */
+    public double getMixing() {
+        return mixing;
+    }
+
+    /**
+     * @return the maximal growth of the residual accepted for accelerated steps
+     */
+    public double getSafeguard() {
+        return safeguard;
+    }
+
+    /**
+     * Mixing parameter in (0, 1], which damps the steps. Default is 1.
+     * @param mixing
+     */
+    public FixedPoint2D mixing(double mixing) {
+        if (!(mixing > 0d && mixing <= 1d)) {
+            throw new IllegalArgumentException("Invalid mixing parameter");
+        }
+        this.mixing = mixing;
+        return this;
+    }
+
+    /**
+     * Maximal factor, by which the residual may grow in an accelerated step. Steps exceeding this
+     * factor are replaced by plain fixed-point steps. Default is 2.
+     * @param safeguard
+     */
+    public FixedPoint2D safeguard(double safeguard) {
+        if (!(safeguard >= 1d)) {
+            throw new IllegalArgumentException("Invalid safeguard");
+        }
+        this.safeguard = safeguard;
+        return this;
+    }
+
+    /**
+     * Returns the fixed point obtained by Anderson acceleration.
+     */
+    public Vector2D solve() {
+        return this.solve(new Vector2D(1.0d, 1.0d));
+    }
+
+    /**
+     * Returns the fixed point obtained by Anderson acceleration.
+     *
+     * @param start
+     */
+    public Vector2D solve(Vector2D start) {
+        Vector2D result = new Vector2D();
+        this.solve(start, result);
+        this.measures = this.measures.clone();
+        return result;
+    }
+
+    /**
+     * Stores the fixed point obtained by Anderson acceleration in the given result vector. If no
+     * fixed point has been found, the result will contain NaN values. This variant reuses workspaces
+     * owned by this instance, including the object returned by {@link #getMeasures()}.
+     *
+     * @param start
+     * @param result
+     * @return whether a fixed point has been found
+     */
+    public boolean solve(Vector2D start, Vector2D result) {
+
+        // Init workspaces
+        if (this.workspaceMeasures == null) {
+            int columns = Math.max(depth, 1);
+            this.workspaceDeltaPoint = new double[columns][2];
+            this.workspaceDeltaResidual = new double[columns][2];
+            this.workspaceQ = new double[columns][2];
+            this.workspaceR = new double[columns][columns];
+            this.workspaceGamma = new double[columns];
+            this.workspaceColumns = new int[columns];
+            this.workspacePoint = new Vector2D();
+            this.workspaceMeasures = new NewtonRaphsonMeasures();
+        }
+
+        // Measure
+        double initX = start.x;
+        double initY = start.y;
+        long totalStart = System.currentTimeMillis();
+        int totalTries = 0;
+        int totalIterations = 0;
+        int totalEvaluations = 0;
+        int preparedStartValuesOffset = 0;
+
+        // Solve
+        outer: while (totalIterations <= this.iterationsTotal && totalTries < this.tries) {
+
+            // Measure
+            totalTries++;
+            long startPerTry = System.currentTimeMillis();
+            int iterations = 0;
+
+            // Init iterate
+            double x;
+            double y;
+            if (totalTries == 1) {
+                x = initX;
+                y = initY;
+            } else if (this.preparedStartValues != null) {
+                x = preparedStartValues[preparedStartValuesOffset][0];
+                y = preparedStartValues[preparedStartValuesOffset++][1];
+            } else {
+                x = (Math.random() * 2d - 1d) * initX;
+                y = (Math.random() * 2d - 1d) * initY;
+            }
+
+            // Evaluate
+            Vector2D image = map.evaluate(point(x, y));
+            totalEvaluations++;
+            double fx = image.x - x;
+            double fy = image.y - y;
+            int size = 0;
+            int newest = -1;
+
+            // Loop
+            while (true) {
+
+                // Measure
+                totalIterations++;
+
+                // Break
+                if (Double.isNaN(fx) || Double.isNaN(fy)) {
+                    break;
+                }
+                if (Math.abs(fx) <= accuracy && Math.abs(fy) <= accuracy) {
+                    finish(totalStart, totalTries, totalIterations, totalEvaluations, 1.0d - Math.sqrt(fx * fx + fy * fy));
+                    result.x = x;
+                    result.y = y;
+                    return true;
+                }
+
+                // Limits
+                long time = System.currentTimeMillis();
+                if (time - totalStart > timeTotal) {
+                    break outer;
+                }
+                if (iterations++ >= iterationsPerTry || time - startPerTry > timePerTry) {
+                    break;
+                }
+
+                // Step
+                double nextX = x + mixing * fx;
+                double nextY = y + mixing * fy;
+                boolean accelerated = false;
+                if (size > 0) {
+                    int used = leastSquares(fx, fy, size, newest);
+                    for (int i = 0; i < used; i++) {
+                        int column = workspaceColumns[i];
+                        double gamma = workspaceGamma[i];
+                        nextX -= (workspaceDeltaPoint[column][0] + mixing * workspaceDeltaResidual[column][0]) * gamma;
+                        nextY -= (workspaceDeltaPoint[column][1] + mixing * workspaceDeltaResidual[column][1]) * gamma;
+                    }
+                    accelerated = used > 0;
+                }
+
+                // Evaluate
+                image = map.evaluate(point(nextX, nextY));
+                totalEvaluations++;
+                double nextFx = image.x - nextX;
+                double nextFy = image.y - nextY;
+
+                // Safeguard
+                if (accelerated && (Double.isNaN(nextFx) || Double.isNaN(nextFy) || !isFeasible(nextX, nextY) ||
+                                    Math.sqrt(nextFx * nextFx + nextFy * nextFy) > safeguard * Math.sqrt(fx * fx + fy * fy))) {
+                    size = 0;
+                    newest = -1;
+                    nextX = x + mixing * fx;
+                    nextY = y + mixing * fy;
+                    image = map.evaluate(point(nextX, nextY));
+                    totalEvaluations++;
+                    nextFx = image.x - nextX;
+                    nextFy = image.y - nextY;
+                }
+
+                // Check constraints
+                if (!isFeasible(nextX, nextY)) {
+                    break;
+                }
+
+                // Remember
+                if (depth > 0) {
+                    newest = (newest + 1) % depth;
+                    workspaceDeltaPoint[newest][0] = nextX - x;
+                    workspaceDeltaPoint[newest][1] = nextY - y;
+                    workspaceDeltaResidual[newest][0] = nextFx - fx;
+                    workspaceDeltaResidual[newest][1] = nextFy - fy;
+                    size = Math.min(size + 1, depth);
+                }
+                x = nextX;
+                y = nextY;
+                fx = nextFx;
+                fy = nextFy;
+            }
+        }
+
+        // Store measures
+        finish(totalStart, totalTries, totalIterations, totalEvaluations, 0d);
+
+        // Nothing found
+        result.x = Double.NaN;
+        result.y = Double.NaN;
+        return false;
+    }
+
+    @Override
+    void checkSupported(String setting) {
+        throw new IllegalStateException("Setting " + setting + " is not supported by this solver");
+    }
+
+    /**
+     * Stores the measures of the last run
+     * @param totalStart
+     * @param tries
+     * @param iterations
+     * @param evaluations
+     * @param quality
+     */
+    private void finish(long totalStart, int tries, int iterations, int evaluations, double quality) {
+        measures = workspaceMeasures;
+        measures.set(iterations, tries, evaluations, 0, (int) (System.currentTimeMillis() - totalStart), quality);
+        measures.setStrategy(null, null);
+    }
+
+    /**
+     * Returns the workspace point, set to the given coordinates
+     * @param x
+     * @param y
+     * @return
+     */
+    private Vector2D point(double x, double y) {
+        workspacePoint.x = x;
+        workspacePoint.y = y;
+        return workspacePoint;
+    }
+
+    /**
+     * Returns whether the given point satisfies all constraints
+     * @param x
+     * @param y
+     * @return
+     */
+    private boolean isFeasible(double x, double y) {
+        if (constraints != null) {
+            Vector2D point = point(x, y);
+            for (Constraint2D constraint : constraints) {
+                if (!constraint.isSatisfied(point)) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Computes the coefficients, which minimize the linearized residual, with a QR decomposition
+     * by modified Gram-Schmidt. Columns are processed from the newest to the oldest and dropped,
+     * if they are almost linearly dependent on the columns processed before.
+     * @param fx
+     * @param fy
+     * @param size
+     * @param newest
+     * @return the number of columns used, whose indices and coefficients are stored in the workspaces
+     */
+    private int leastSquares(double fx, double fy, int size, int newest) {
+
+        // Decompose
+        double tolerance = 1d / Math.sqrt(conditionLimit);
+        int used = 0;
+        for (int i = 0; i < size; i++) {
+            int column = (newest - i + depth) % depth;
+            double vx = workspaceDeltaResidual[column][0];
+            double vy = workspaceDeltaResidual[column][1];
+            double norm = Math.sqrt(vx * vx + vy * vy);
+            for (int j = 0; j < used; j++) {
+                double r = workspaceQ[j][0] * vx + workspaceQ[j][1] * vy;
+                workspaceR[j][used] = r;
+                vx -= r * workspaceQ[j][0];
+                vy -= r * workspaceQ[j][1];
+            }
+            double remainder = Math.sqrt(vx * vx + vy * vy);
+            if (!(remainder > tolerance * norm)) {
+                continue;
+            }
+            workspaceR[used][used] = remainder;
+            workspaceQ[used][0] = vx / remainder;
+            workspaceQ[used][1] = vy / remainder;
+            workspaceColumns[used++] = column;
+        }
+
+        // Back substitution of R * gamma = Q^T * f
+        for (int i = used - 1; i >= 0; i--) {
+            double value = workspaceQ[i][0] * fx + workspaceQ[i][1] * fy;
+            for (int j = i + 1; j < used; j++) {
+                value -= workspaceR[i][j] * workspaceGamma[j];
+            }
+            workspaceGamma[i] = value / workspaceR[i][i];
+        }
+        return used;
+    }
+}
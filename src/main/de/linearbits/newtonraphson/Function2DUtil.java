@@ -15,6 +15,10 @@
  */
 package de.linearbits.newtonraphson;
 
+import java.util.Random;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+
 /**
  * Function utilities
  * @author Fabian Prasser
@@ -22,6 +26,95 @@ package de.linearbits.newtonraphson;
  */
 public class Function2DUtil {
 
+    /**
+     * The state of a concurrent verification
+     * @author Fabian Prasser
+     */
+    private static class Verification {
+
+        /** The first failure */
+        private Throwable                failure;
+        /** Reports per chunk */
+        private final JacobianReport2D[] reports;
+        /** Number of chunks running */
+        private int                      running;
+
+        /**
+         * Creates a new instance
+         * @param chunks
+         */
+        Verification(int chunks) {
+            this.reports = new JacobianReport2D[chunks];
+            this.running = chunks;
+        }
+
+        /**
+         * Marks a chunk as completed
+         * @param chunk
+         * @param report
+         * @param failure
+         */
+        synchronized void complete(int chunk, JacobianReport2D report, Throwable failure) {
+            reports[chunk] = report;
+            if (this.failure == null) {
+                this.failure = failure;
+            }
+            running--;
+            notifyAll();
+        }
+    }
+
+    /** Step size for central differences of first derivatives */
+    private static final double EPSILON_CENTRAL = Math.cbrt(Math.ulp(1d));
+    /** Number of chunks per processor for concurrent verifications */
+    private static final int    CHUNKS          = 4;
+
+    /**
+     * Returns a grid of steps * steps points, which covers the given range including its bounds
+     * @param minX
+     * @param maxX
+     * @param minY
+     * @param maxY
+     * @param steps
+     * @return
+     */
+    public Vector2D[] getGrid(double minX, double maxX, double minY, double maxY, int steps) {
+        if (!(minX <= maxX) || !(minY <= maxY) || steps < 2) {
+            throw new IllegalArgumentException("Invalid grid");
+        }
+        Vector2D[] points = new Vector2D[steps * steps];
+        for (int i = 0; i < steps; i++) {
+            for (int j = 0; j < steps; j++) {
+                points[i * steps + j] = new Vector2D(minX + (maxX - minX) * i / (steps - 1),
+                                                     minY + (maxY - minY) * j / (steps - 1));
+            }
+        }
+        return points;
+    }
+
+    /**
+     * Returns the given number of points, which are sampled uniformly from the given range
+     * @param minX
+     * @param maxX
+     * @param minY
+     * @param maxY
+     * @param count
+     * @param seed
+     * @return
+     */
+    public Vector2D[] getSample(double minX, double maxX, double minY, double maxY, int count, long seed) {
+        if (!(minX <= maxX) || !(minY <= maxY) || count < 0) {
+            throw new IllegalArgumentException("Invalid sample");
+        }
+        Random random = new Random(seed);
+        Vector2D[] points = new Vector2D[count];
+        for (int i = 0; i < count; i++) {
+            points[i] = new Vector2D(minX + (maxX - minX) * random.nextDouble(),
+                                     minY + (maxY - minY) * random.nextDouble());
+        }
+        return points;
+    }
+
     /**
      * Helper function that tries to determine whether the second function is a derivative regarding the first argument
      * of the first function in the range [x1,x2] at y with the given accuracy 
@@ -71,6 +164,149 @@ public class Function2DUtil {
         return isSameFunction2(estimate, derivative, y1, y2, delta, x, accuracy);
     }
 
+    /**
+     * Verifies the Jacobian computed by the given master function against central differences at the given
+     * points. An entry matches, if its absolute error is at most absoluteTolerance + relativeTolerance * the
+     * larger magnitude of the value and the estimate. Points, at which the object functions are not finite
+     * nearby, are skipped.
+     * @param master
+     * @param points
+     * @param absoluteTolerance
+     * @param relativeTolerance
+     * @return
+     */
+    public JacobianReport2D verifyJacobian(Function<Vector2D, Pair<Vector2D, SquareMatrix2D>> master,
+                                           Vector2D[] points,
+                                           double absoluteTolerance,
+                                           double relativeTolerance) {
+        return verifyJacobian(master, points, absoluteTolerance, relativeTolerance, null);
+    }
+
+    /**
+     * Verifies the Jacobian computed by the given master function against central differences at the given
+     * points, which are partitioned into chunks that are checked concurrently by the given executor and the
+     * calling thread. The master function must be thread-safe, if an executor is given.
+     * @param master
+     * @param points
+     * @param absoluteTolerance
+     * @param relativeTolerance
+     * @param executor may be null
+     * @return
+     */
+    public JacobianReport2D verifyJacobian(final Function<Vector2D, Pair<Vector2D, SquareMatrix2D>> master,
+                                           final Vector2D[] points,
+                                           final double absoluteTolerance,
+                                           final double relativeTolerance,
+                                           Executor executor) {
+
+        // Check
+        if (master == null || points == null || !(absoluteTolerance >= 0d) || !(relativeTolerance >= 0d)) {
+            throw new IllegalArgumentException("Invalid arguments");
+        }
+        int chunks = executor == null ? 1 : Math.min(points.length, CHUNKS * Runtime.getRuntime().availableProcessors());
+        if (chunks <= 1) {
+            return verifyJacobian(master, points, 0, points.length, absoluteTolerance, relativeTolerance);
+        }
+
+        // Submit
+        final Verification verification = new Verification(chunks);
+        Runnable[] tasks = new Runnable[chunks];
+        for (int i = 0; i < chunks; i++) {
+            final int chunk = i;
+            final int from = (int) ((long) i * points.length / chunks);
+            final int to = (int) ((long) (i + 1) * points.length / chunks);
+            tasks[i] = new Runnable() {
+                public void run() {
+                    try {
+                        verification.complete(chunk, verifyJacobian(master, points, from, to, absoluteTolerance, relativeTolerance), null);
+                    } catch (Throwable t) {
+                        verification.complete(chunk, null, t);
+                    }
+                }
+            };
+        }
+        for (int i = 1; i < chunks; i++) {
+            try {
+                executor.execute(tasks[i]);
+            } catch (RejectedExecutionException e) {
+                tasks[i].run();
+            }
+        }
+        tasks[0].run();
+
+        // Wait
+        boolean interrupted = false;
+        synchronized (verification) {
+            while (verification.running != 0) {
+                try {
+                    verification.wait();
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+
+        // Rethrow or merge
+        Throwable failure;
+        synchronized (verification) {
+            failure = verification.failure;
+        }
+        if (failure instanceof RuntimeException) {
+            throw (RuntimeException) failure;
+        } else if (failure != null) {
+            throw (Error) failure;
+        }
+        JacobianReport2D report = new JacobianReport2D();
+        for (JacobianReport2D other : verification.reports) {
+            report.add(other);
+        }
+        return report;
+    }
+
+    /**
+     * Verifies the given derivatives of the given object functions against central differences at the given
+     * points. The functions must be thread-safe, if an executor is given.
+     * @param object1
+     * @param object2
+     * @param derivative11
+     * @param derivative12
+     * @param derivative21
+     * @param derivative22
+     * @param points
+     * @param absoluteTolerance
+     * @param relativeTolerance
+     * @param executor may be null
+     * @return
+     * @see #verifyJacobian(Function, Vector2D[], double, double, Executor)
+     */
+    public JacobianReport2D verifyJacobian(final Function2D object1,
+                                           final Function2D object2,
+                                           final Function2D derivative11,
+                                           final Function2D derivative12,
+                                           final Function2D derivative21,
+                                           final Function2D derivative22,
+                                           Vector2D[] points,
+                                           double absoluteTolerance,
+                                           double relativeTolerance,
+                                           Executor executor) {
+        if (object1 == null || object2 == null || derivative11 == null || derivative12 == null ||
+            derivative21 == null || derivative22 == null) {
+            throw new IllegalArgumentException("Invalid arguments");
+        }
+        return verifyJacobian(new Function<Vector2D, Pair<Vector2D, SquareMatrix2D>>() {
+            public Pair<Vector2D, SquareMatrix2D> evaluate(Vector2D input) {
+                return new Pair<Vector2D, SquareMatrix2D>(new Vector2D(object1.evaluate(input), object2.evaluate(input)),
+                                                          new SquareMatrix2D(derivative11.evaluate(input),
+                                                                             derivative12.evaluate(input),
+                                                                             derivative21.evaluate(input),
+                                                                             derivative22.evaluate(input)));
+            }
+        }, points, absoluteTolerance, relativeTolerance, executor);
+    }
+
     /**
      * Helper function that tries to determine whether the second function is equal regarding the first argument
      * in the range [x1,x2] at y with the given accuracy 
@@ -143,4 +379,74 @@ public class Function2DUtil {
         }
         return true;
     }
+
+    /**
+     * Verifies the Jacobian at the given range of points
+     * @param master
+     * @param points
+     * @param from inclusive
+     * @param to exclusive
+     * @param absoluteTolerance
+     * @param relativeTolerance
+     * @return
+     */
+    private JacobianReport2D verifyJacobian(Function<Vector2D, Pair<Vector2D, SquareMatrix2D>> master,
+                                            Vector2D[] points,
+                                            int from,
+                                            int to,
+                                            double absoluteTolerance,
+                                            double relativeTolerance) {
+
+        JacobianReport2D report = new JacobianReport2D();
+        Vector2D probe = new Vector2D();
+        for (int i = from; i < to; i++) {
+
+            // Values are copied, as functions may reuse result objects
+            Vector2D point = points[i];
+            Pair<Vector2D, SquareMatrix2D> result = master.evaluate(point);
+            double value1 = result.first.x;
+            double value2 = result.first.y;
+            double x1 = result.second.x1;
+            double x2 = result.second.x2;
+            double y1 = result.second.y1;
+            double y2 = result.second.y2;
+
+            // Central differences
+            double deltaX = EPSILON_CENTRAL * Math.max(Math.abs(point.x), 1);
+            double deltaY = EPSILON_CENTRAL * Math.max(Math.abs(point.y), 1);
+            probe.x = point.x + deltaX;
+            probe.y = point.y;
+            Vector2D object = master.evaluate(probe).first;
+            double xPlus1 = object.x;
+            double xPlus2 = object.y;
+            probe.x = point.x - deltaX;
+            object = master.evaluate(probe).first;
+            double xMinus1 = object.x;
+            double xMinus2 = object.y;
+            probe.x = point.x;
+            probe.y = point.y + deltaY;
+            object = master.evaluate(probe).first;
+            double yPlus1 = object.x;
+            double yPlus2 = object.y;
+            probe.y = point.y - deltaY;
+            object = master.evaluate(probe).first;
+            double yMinus1 = object.x;
+            double yMinus2 = object.y;
+
+            // Skip points, at which the functions are not finite
+            double sum = value1 + value2 + xPlus1 + xPlus2 + xMinus1 + xMinus2 + yPlus1 + yPlus2 + yMinus1 + yMinus2;
+            if (Double.isNaN(sum) || Double.isInfinite(sum)) {
+                report.skipped();
+                continue;
+            }
+
+            // Check
+            report.checked();
+            report.check(point, 0, 0, x1, (xPlus1 - xMinus1) / (2d * deltaX), absoluteTolerance, relativeTolerance);
+            report.check(point, 0, 1, x2, (yPlus1 - yMinus1) / (2d * deltaY), absoluteTolerance, relativeTolerance);
+            report.check(point, 1, 0, y1, (xPlus2 - xMinus2) / (2d * deltaX), absoluteTolerance, relativeTolerance);
+            report.check(point, 1, 1, y2, (yPlus2 - yMinus2) / (2d * deltaY), absoluteTolerance, relativeTolerance);
+        }
+        return report;
+    }
 }
@@ -0,0 +1,152 @@
+/*
+ * Copyright 2015 Fabian Prasser
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.linearbits.newtonraphson;
+
+/**
+ * An immutable snapshot of a histogram
+ * @author Fabian Prasser
+ */
+public class HistogramSnapshot {
+
+    /** Total number of values */
+    private final long   count;
+    /** Counts per bucket */
+    private final long[] counts;
+    /** Lower bounds per bucket */
+    private final long[] lower;
+    /** Maximal value */
+    private final long   max;
+    /** Sum of all values */
+    private final long   sum;
+    /** Upper bounds per bucket */
+    private final long[] upper;
+
+    /**
+     * Creates a new instance
+     * @param lower
+     * @param upper
+     * @param counts
+     * @param count
+     * @param sum
+     * @param max
+     */
+    HistogramSnapshot(long[] lower, long[] upper, long[] counts, long count, long sum, long max) {
+        this.lower = lower;
+        this.upper = upper;
+        this.counts = counts;
+        this.count = count;
+        this.sum = sum;
+        this.max = max;
+    }
+
+    /**
+     * Returns the number of buckets
+     */
+    public int getBuckets() {
+        return counts.length;
+    }
+
+    /**
+     * Returns the number of values
+     */
+    public long getCount() {
+        return count;
+    }
+
+    /**
+     * Returns the number of values in the given bucket
+     * @param bucket
+     */
+    public long getCount(int bucket) {
+        return counts[bucket];
+    }
+
+    /**
+     * Returns the smallest value mapped to the given bucket
+     * @param bucket
+     */
+    public long getLowerBound(int bucket) {
+        return lower[bucket];
+    }
+
+    /**
+     * Returns the largest value recorded
+     */
+    public long getMax() {
+        return max;
+    }
+
+    /**
+     * Returns the arithmetic mean of all values
+     */
+    public double getMean() {
+        return count == 0 ? 0d : (double) sum / (double) count;
+    }
+
+    /**
+     * Returns an estimate of the given percentile, e.g. 0.99. The estimate is the upper bound of
+     * the bucket containing the percentile, capped at the largest value recorded.
+     * @param percentile
+     */
+    public long getPercentile(double percentile) {
+        if (percentile < 0d || percentile > 1d) {
+            throw new IllegalArgumentException("Invalid percentile");
+        }
+        long total = 0;
+        for (long value : counts) {
+            total += value;
+        }
+        if (total == 0) {
+            return 0;
+        }
+        long rank = Math.max(1L, (long) Math.ceil(percentile * total));
+        long seen = 0;
+        for (int i = 0; i < counts.length; i++) {
+            seen += counts[i];
+            if (seen >= rank) {
+                return Math.min(upper[i], max);
+            }
+        }
+        return max;
+    }
+
+    /**
+     * Returns the sum of all values
+     */
+    public long getSum() {
+        return sum;
+    }
+
+    /**
+     * Returns the largest value mapped to the given bucket
+     * @param bucket
+     */
+    public long getUpperBound(int bucket) {
+        return upper[bucket];
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder builder = new StringBuilder();
+        builder.append("(Count: ").append(count);
+        builder.append(", Mean: ").append(getMean());
+        builder.append(", P50: ").append(getPercentile(0.5d));
+        builder.append(", P99: ").append(getPercentile(0.99d));
+        builder.append(", Max: ").append(max);
+        builder.append(")");
+        return builder.toString();
+    }
+}
@@ -0,0 +1,389 @@
+/*
+ * Copyright 2015 Fabian Prasser
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.linearbits.newtonraphson;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * This class implements homotopy continuation for the system of equations defined by a solver.
+ * For each start value x0, the start system F(x) - F(x0), which has the known root x0, is deformed
+ * into the target system F(x) along the homotopy H(x, t) = F(x) - (1 - t) * F(x0). The resulting
+ * path is tracked from t = 0 to t = 1 with tangent predictor steps and Newton-Raphson corrector
+ * steps, adapting the step size. Paths are independent of each other and are tracked sequentially
+ * by default, or in parallel on a fork/join pool. In contrast to random restarts, the run time is
+ * bounded by the number of paths and the maximal number of steps per path.<br>
+ * <br>
+ * If paths are tracked in parallel, the functions of the solver must be thread-safe, which is not
+ * the case for master functions reusing their results or for polynomial systems. The method, the strategy,
+ * the profiling interval and the termination policy are used for the corrector steps, while samplers are
+ * not supported, as each path is corrected from its predicted point only.
+ *
+ * @author Fabian Prasser
+ */
+public class Homotopy2D extends NewtonRaphsonConfiguration<Homotopy2D> {
+
+    /** Constant */
+    public static final int    DEFAULT_CORRECTIONS = 3;
+    /** Constant */
+    public static final double DEFAULT_MIN_STEP    = 1e-6;
+    /** Constant */
+    public static final int    DEFAULT_PATHS       = 16;
+    /** Constant */
+    public static final int    DEFAULT_STEPS       = 1000;
+    /** SVUID */
+    private static final long  serialVersionUID    = -3914398318094367215L;
+
+    /** Maximal number of corrector iterations per step */
+    private int                               corrections = DEFAULT_CORRECTIONS;
+    /** Measures of the last run */
+    private NewtonRaphsonMeasures             measures;
+    /** Minimal step size */
+    private double                            minStep     = DEFAULT_MIN_STEP;
+    /** Number of paths */
+    private int                               paths       = DEFAULT_PATHS;
+    /** Pool, null for sequential execution */
+    private transient ForkJoinPool            pool        = null;
+    /** Maximal number of steps per path */
+    private int                               steps       = DEFAULT_STEPS;
+    /** The target system */
+    private final NewtonRaphson2D             system;
+
+    /**
+     * Creates a new instance for the system of equations defined by the given solver
+     * @param system
+     */
+    public Homotopy2D(NewtonRaphson2D system) {
+        this.system = system;
+    }
+
+    /**
+     * Maximal number of Newton-Raphson iterations per corrector step. Default is 3.
+     * @param corrections
+     */
+    public Homotopy2D corrections(int corrections) {
+        if (corrections < 1) {
+            throw new IllegalArgumentException("Invalid number of corrections");
+        }
+        this.corrections = corrections;
+        return this;
+    }
+
+    /**
+     * Returns measurements for the last run. Tries are the number of paths tracked, iterations
+     * are the number of predictor and corrector iterations, singularities are the number of
+     * ill-conditioned Jacobians in both and quality is the quality of the worst solution found.
+     */
+    public NewtonRaphsonMeasures getMeasures() {
+        return measures;
+    }
+
+    /**
+     * Minimal step size in [0, 1], below which a path is abandoned. Default is 1e-6.
+     * @param minStep
+     */
+    public Homotopy2D minStep(double minStep) {
+        if (minStep <= 0d || minStep >= 1d) {
+            throw new IllegalArgumentException("Invalid minimal step size");
+        }
+        this.minStep = minStep;
+        return this;
+    }
+
+    /**
+     * Number of paths, if no start values have been prepared. Start values are placed on a regular grid
+     * in the box spanned by the start value and its mirror image. Default is 16.
+     * @param paths
+     */
+    public Homotopy2D paths(int paths) {
+        if (paths < 1) {
+            throw new IllegalArgumentException("Invalid number of paths");
+        }
+        this.paths = paths;
+        return this;
+    }
+
+    /**
+     * The pool used for tracking paths in parallel, which requires thread-safe functions. Pass null
+     * for tracking paths sequentially, which is the default.
+     * @param pool
+     */
+    public Homotopy2D pool(ForkJoinPool pool) {
+        this.pool = pool;
+        return this;
+    }
+
+    /**
+     * Returns all distinct solutions found from the default start value (1, 1)
+     */
+    public Vector2D[] solve() {
+        return solve(new Vector2D(1.0d, 1.0d));
+    }
+
+    /**
+     * Returns all distinct solutions found, which satisfy the constraints of the system
+     * @param start
+     */
+    public Vector2D[] solve(Vector2D start) {
+
+        // Prepare
+        long totalStart = System.currentTimeMillis();
+        double[][] starts = getStartValues(start);
+        final Vector2D[] results = new Vector2D[starts.length];
+        final int[][] counts = new int[starts.length][3];
+        final long deadline = totalStart + timeTotal;
+
+        // Prepare tasks
+        List<RecursiveAction> tasks = new ArrayList<RecursiveAction>();
+        for (int i = 0; i < starts.length; i++) {
+            final int index = i;
+            final Vector2D point = new Vector2D(starts[i][0], starts[i][1]);
+            tasks.add(new RecursiveAction() {
+                private static final long serialVersionUID = 3541457862524335431L;
+                protected void compute() {
+                    results[index] = track(point, deadline, counts[index]);
+                }
+            });
+        }
+
+        // Track paths
+        if (pool == null) {
+            for (RecursiveAction task : tasks) {
+                task.invoke();
+            }
+        } else {
+            pool.invoke(new RecursiveAction() {
+                private static final long serialVersionUID = -4427183924810155744L;
+                protected void compute() {
+                    invokeAll(tasks);
+                }
+            });
+        }
+
+        // Collect distinct solutions
+        List<Vector2D> solutions = new ArrayList<Vector2D>();
+        int iterations = 0;
+        int evaluations = 0;
+        int singularities = 0;
+        double quality = 1d;
+        outer: for (int i = 0; i < results.length; i++) {
+            iterations += counts[i][0];
+            evaluations += counts[i][1];
+            singularities += counts[i][2];
+            Vector2D result = results[i];
+            if (result == null || !system.isFeasible(result)) {
+                continue;
+            }
+            for (Vector2D solution : solutions) {
+                double dx = solution.x - result.x;
+                double dy = solution.y - result.y;
+                if (Math.sqrt(dx * dx + dy * dy) <= Math.sqrt(accuracy) * Math.max(1d, Math.sqrt(result.x * result.x + result.y * result.y))) {
+                    continue outer;
+                }
+            }
+            solutions.add(result);
+        }
+
+        // Quality of the worst solution
+        Vector2D object = new Vector2D();
+        SquareMatrix2D derivatives = new SquareMatrix2D();
+        Derivation2D derivation = new Derivation2D();
+        for (Vector2D solution : solutions) {
+            evaluations += system.evaluate(solution.clone(), object, derivatives, derivation);
+            quality = Math.min(quality, 1.0d - Math.sqrt(object.x * object.x + object.y * object.y));
+        }
+
+        // Store measures
+        measures = new NewtonRaphsonMeasures(iterations,
+                                             starts.length,
+                                             evaluations,
+                                             singularities,
+                                             (int) (System.currentTimeMillis() - totalStart),
+                                             solutions.isEmpty() ? 0d : quality);
+        return solutions.toArray(new Vector2D[solutions.size()]);
+    }
+
+    /**
+     * Maximal number of predictor steps per path. Default is 1000.
+     * @param steps
+     */
+    public Homotopy2D steps(int steps) {
+        if (steps < 1) {
+            throw new IllegalArgumentException("Invalid number of steps");
+        }
+        this.steps = steps;
+        return this;
+    }
+
+    @Override
+    void checkSupported(String setting) {
+        if (setting.equals("sampler")) {
+            throw new IllegalStateException("Setting " + setting + " is not supported by this solver");
+        }
+    }
+
+    /**
+     * Returns the start values of all paths
+     * @param start
+     * @return
+     */
+    private double[][] getStartValues(Vector2D start) {
+        if (preparedStartValues != null) {
+            double[][] result = new double[preparedStartValues.length + 1][];
+            result[0] = new double[] { start.x, start.y };
+            System.arraycopy(preparedStartValues, 0, result, 1, preparedStartValues.length);
+            return result;
+        }
+        int size = (int) Math.ceil(Math.sqrt(paths));
+        double width = Math.max(Math.abs(start.x), 1d);
+        double height = Math.max(Math.abs(start.y), 1d);
+        double[][] result = new double[paths][];
+        for (int i = 0; i < paths; i++) {
+            result[i] = new double[] { (2d * ((i % size) + 0.5d) / size - 1d) * width,
+                                       (2d * ((i / size) + 0.5d) / size - 1d) * height };
+        }
+        return result;
+    }
+
+    /**
+     * Tracks a single path
+     * @param point the start value, which will be overwritten
+     * @param deadline
+     * @param counts iterations, evaluations and singularities
+     * @return the solution or null
+     */
+    private Vector2D track(Vector2D point, long deadline, int[] counts) {
+
+        // Homotopy, which is corrected with the Newton-Raphson method
+        final HomotopyFunction function = new HomotopyFunction(system);
+        NewtonRaphson2D corrector = new NewtonRaphson2D(function).configure(this)
+                                                                 .preparedStartValues(null)
+                                                                 .tries(1)
+                                                                 .iterationsPerTry(corrections)
+                                                                 .iterationsTotal(corrections);
+
+        // Start system
+        Vector2D tangent = new Vector2D();
+        Vector2D previous = new Vector2D();
+        counts[1] += system.evaluate(point.clone(), function.offset, function.derivatives, function.derivation);
+        double scale = Math.max(accuracy, Math.sqrt(function.offset.x * function.offset.x + function.offset.y * function.offset.y));
+        double t = 0d;
+        double step = 1d / 16d;
+
+        // Track
+        for (int i = 0; i < steps && t < 1d; i++) {
+
+            // Time limit
+            if (System.currentTimeMillis() > deadline) {
+                break;
+            }
+
+            // Predictor: dx/dt = -J^-1 * dH/dt = -J^-1 * F(x0)
+            function.t = t;
+            function.evaluate(point);
+            counts[0]++;
+            tangent.x = function.offset.x;
+            tangent.y = function.offset.y;
+            if (function.derivatives.condition() > conditionLimit) {
+                counts[2]++;
+                function.derivatives.pseudoInverse(1d / conditionLimit);
+            } else {
+                function.derivatives.inverse();
+            }
+            tangent.times(function.derivatives);
+
+            // Corrector, reduce step size until it converges
+            previous.x = point.x;
+            previous.y = point.y;
+            double next = Math.min(1d, t + step);
+            function.t = next;
+            point.x = previous.x - (next - t) * tangent.x;
+            point.y = previous.y - (next - t) * tangent.y;
+            corrector.accuracy(next < 1d ? Math.max(accuracy, 1e-3 * scale) : accuracy);
+            boolean success = corrector.solve(point, point);
+            counts[0] += corrector.getMeasures().getIterations();
+            counts[2] += corrector.getMeasures().getSingularities();
+            if (success) {
+                t = next;
+                if (corrector.getMeasures().getIterations() <= 2) {
+                    step = Math.min(1d, step * 2d);
+                }
+            } else {
+                point.x = previous.x;
+                point.y = previous.y;
+                step *= 0.5d;
+                if (step < minStep) {
+                    break;
+                }
+            }
+        }
+
+        // Polish
+        boolean success = false;
+        if (t >= 1d) {
+            function.t = 1d;
+            corrector.accuracy(accuracy).iterationsPerTry(iterationsPerTry).iterationsTotal(iterationsPerTry);
+            success = corrector.solve(point, point);
+            counts[0] += corrector.getMeasures().getIterations();
+            counts[2] += corrector.getMeasures().getSingularities();
+        }
+        counts[1] += function.evaluations;
+        return success ? point : null;
+    }
+
+    /**
+     * The homotopy H(x, t) = F(x) - (1 - t) * F(x0) as a master function
+     *
+     * @author Fabian Prasser
+     */
+    private static class HomotopyFunction implements Function<Vector2D, Pair<Vector2D, SquareMatrix2D>> {
+
+        /** Finite differences */
+        private final Derivation2D                   derivation  = new Derivation2D();
+        /** Derivatives */
+        private final SquareMatrix2D                 derivatives = new SquareMatrix2D();
+        /** Evaluations */
+        private int                                  evaluations;
+        /** Object functions */
+        private final Vector2D                       object      = new Vector2D();
+        /** F(x0) */
+        private final Vector2D                       offset      = new Vector2D();
+        /** Result */
+        private final Pair<Vector2D, SquareMatrix2D> result      = new Pair<Vector2D, SquareMatrix2D>(object, derivatives);
+        /** System */
+        private final NewtonRaphson2D                system;
+        /** Parameter */
+        private double                               t;
+
+        /**
+         * Creates a new instance
+         * @param system
+         */
+        private HomotopyFunction(NewtonRaphson2D system) {
+            this.system = system;
+        }
+
+        @Override
+        public Pair<Vector2D, SquareMatrix2D> evaluate(Vector2D input) {
+            evaluations += system.evaluate(input, object, derivatives, derivation);
+            object.x -= (1d - t) * offset.x;
+            object.y -= (1d - t) * offset.y;
+            return result;
+        }
+    }
+}
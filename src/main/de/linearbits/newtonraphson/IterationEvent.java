@@ -0,0 +1,70 @@
+/*
+ * Copyright 2015 Fabian Prasser
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.linearbits.newtonraphson;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Enabled;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Flight recorder event for a single iteration. As iterations are very frequent, this event
+ * is disabled by default and must be enabled explicitly in the recording settings.
+ * @author Fabian Prasser
+ */
+@Name("de.linearbits.newtonraphson.Iteration")
+@Label("Iteration")
+@Category("Newton-Raphson")
+@Description("A single iteration of the solver")
+@Enabled(false)
+@StackTrace(false)
+final class IterationEvent extends jdk.jfr.Event {
+
+    /** Instance for checking whether events are enabled, which unlike event types does not start the recorder */
+    static final IterationEvent PROBE = new IterationEvent();
+
+    @Label("Try")
+    int                    number;
+
+    @Label("Iteration")
+    int                    iteration;
+
+    @Label("Residual")
+    @Description("Euclidean norm of the object functions")
+    double                 residual;
+
+    @Label("Step")
+    @Description("Euclidean norm of the step")
+    double                 step;
+
+    /**
+     * Commits an event
+     * @param number
+     * @param iteration
+     * @param residual
+     * @param step
+     */
+    static void commit(int number, int iteration, double residual, double step) {
+        IterationEvent event = new IterationEvent();
+        event.number = number;
+        event.iteration = iteration;
+        event.residual = residual;
+        event.step = step;
+        event.commit();
+    }
+}
@@ -0,0 +1,231 @@
+/*
+ * Copyright 2015 Fabian Prasser
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.linearbits.newtonraphson;
+
+/**
+ * The result of verifying a Jacobian against finite differences. It describes the entry with the largest
+ * error relative to the tolerances.
+ * @author Fabian Prasser
+ */
+public class JacobianReport2D {
+
+    /** Column of the worst entry, 0 for x and 1 for y, -1 if none */
+    private int            column   = -1;
+    /** Absolute error of the worst entry */
+    private double         error;
+    /** Estimate of the worst entry */
+    private double         estimate = Double.NaN;
+    /** Value of the worst entry */
+    private double         expected = Double.NaN;
+    /** Number of entries exceeding the tolerances */
+    private int            mismatches;
+    /** Point of the worst entry */
+    private final Vector2D point    = new Vector2D(Double.NaN, Double.NaN);
+    /** Number of points checked */
+    private int            points;
+    /** Row of the worst entry, 0 for the first and 1 for the second object function, -1 if none */
+    private int            row      = -1;
+    /** Error of the worst entry relative to the tolerances */
+    private double         score;
+    /** Number of points skipped, because the functions are not finite nearby */
+    private int            skipped;
+
+    /**
+     * Creates a new instance
+     */
+    JacobianReport2D() {
+        // Empty by design
+    }
+
+    /**
+     * Returns the column of the entry with the largest error, 0 for derivatives regarding x and 1 for
+     * derivatives regarding y, or -1 if no point has been checked
+     * @return
+     */
+    public int getColumn() {
+        return column;
+    }
+
+    /**
+     * Returns the absolute error of the entry with the largest error
+     * @return
+     */
+    public double getError() {
+        return error;
+    }
+
+    /**
+     * Returns the finite difference estimate of the entry with the largest error
+     * @return
+     */
+    public double getEstimate() {
+        return estimate;
+    }
+
+    /**
+     * Returns the value of the entry with the largest error, as computed by the Jacobian
+     * @return
+     */
+    public double getExpected() {
+        return expected;
+    }
+
+    /**
+     * Returns the number of entries, whose errors exceed the tolerances
+     * @return
+     */
+    public int getMismatches() {
+        return mismatches;
+    }
+
+    /**
+     * Returns the point of the entry with the largest error
+     * @return
+     */
+    public Vector2D getPoint() {
+        return point;
+    }
+
+    /**
+     * Returns the number of points checked
+     * @return
+     */
+    public int getPoints() {
+        return points;
+    }
+
+    /**
+     * Returns the row of the entry with the largest error, 0 for the first and 1 for the second object
+     * function, or -1 if no point has been checked
+     * @return
+     */
+    public int getRow() {
+        return row;
+    }
+
+    /**
+     * Returns the number of points skipped, because the object functions are not finite nearby
+     * @return
+     */
+    public int getSkipped() {
+        return skipped;
+    }
+
+    /**
+     * Returns whether all entries are within the tolerances
+     * @return
+     */
+    public boolean isValid() {
+        return mismatches == 0;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder builder = new StringBuilder();
+        builder.append("Jacobian: (Valid: ").append(isValid());
+        builder.append(", Points: ").append(points);
+        builder.append(", Skipped: ").append(skipped);
+        builder.append(", Mismatches: ").append(mismatches);
+        if (row != -1) {
+            builder.append(", Max error: ").append(error);
+            builder.append(" at ").append(point);
+            builder.append(" in (").append(row).append(", ").append(column).append(")");
+            builder.append(", Expected: ").append(expected);
+            builder.append(", Estimate: ").append(estimate);
+        }
+        builder.append(")");
+        return builder.toString();
+    }
+
+    /**
+     * Adds the results of the given report
+     * @param other
+     */
+    void add(JacobianReport2D other) {
+        points += other.points;
+        skipped += other.skipped;
+        mismatches += other.mismatches;
+        if (other.row != -1 && (row == -1 || other.score > score)) {
+            update(other.point, other.row, other.column, other.expected, other.estimate, other.error, other.score);
+        }
+    }
+
+    /**
+     * Checks an entry
+     * @param point
+     * @param row
+     * @param column
+     * @param expected
+     * @param estimate
+     * @param absoluteTolerance
+     * @param relativeTolerance
+     */
+    void check(Vector2D point, int row, int column, double expected, double estimate,
+               double absoluteTolerance, double relativeTolerance) {
+        double error = Math.abs(expected - estimate);
+        double tolerance = absoluteTolerance + relativeTolerance * Math.max(Math.abs(expected), Math.abs(estimate));
+        double score;
+        if (Double.isNaN(error)) {
+            error = Double.POSITIVE_INFINITY;
+            score = Double.POSITIVE_INFINITY;
+        } else if (tolerance == 0d) {
+            score = error == 0d ? 0d : Double.POSITIVE_INFINITY;
+        } else {
+            score = error / tolerance;
+        }
+        if (score > 1d) {
+            mismatches++;
+        }
+        if (this.row == -1 || score > this.score) {
+            update(point, row, column, expected, estimate, error, score);
+        }
+    }
+
+    /**
+     * Counts a point checked
+     */
+    void checked() {
+        points++;
+    }
+
+    /**
+     * Counts a point skipped
+     */
+    void skipped() {
+        skipped++;
+    }
+
+    /**
+     * Updates the worst entry
+     * @param point
+     * @param row
+     * @param column
+     * @param expected
+     * @param estimate
+     * @param error
+     * @param score
+     */
+    private void update(Vector2D point, int row, int column, double expected, double estimate, double error, double score) {
+        this.point.x = point.x;
+        this.point.y = point.y;
+        this.row = row;
+        this.column = column;
+        this.expected = expected;
+        this.estimate = estimate;
+        this.error = error;
+        this.score = score;
+    }
+}
@@ -0,0 +1,462 @@
+/*
+ * Copyright 2015 Fabian Prasser
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.linearbits.newtonraphson;
+
+/**
+ * This class implements the Gauss-Newton algorithm for overdetermined systems of m equations in two
+ * unknowns, which minimizes the sum of squared residuals. Residuals are evaluated into a buffer, and
+ * the m x 2 Jacobian is evaluated or approximated with forward differences into two further buffers.
+ * Each step solves the linearized least-squares problem with a Householder QR decomposition, which is
+ * computed in place. Optionally, steps are damped as proposed by Levenberg, which is also done
+ * automatically for Jacobians that are rank-deficient or ill-conditioned. Steps, which increase the
+ * sum of squared residuals, are halved.<br>
+ * <br>
+ * A solution has been found, if the gradient of the sum of squares or the step is at most the accuracy,
+ * where steps are relative to the magnitude of the solution. The quality is defined based on the root mean
+ * square of the residuals. The method, the strategy, the profiling interval, termination policies and samplers
+ * are not supported. Instances are not thread-safe and do not allocate any memory once warmed up, as long as
+ * the functions provided do not allocate memory either.
+ *
+ * @author Fabian Prasser
+ */
+public class LeastSquares2D extends NewtonRaphsonConfiguration<LeastSquares2D> {
+
+    /** SVUID */
+    private static final long           serialVersionUID = -6094727283839545019L;
+
+    /** Maximal number of times a step is halved */
+    private static final int            HALVINGS         = 30;
+
+    /** Damping */
+    private double                      damping          = 0d;
+    /** Derivatives */
+    private final ResidualDerivatives2D derivatives;
+    /** Number of evaluations per evaluation of the residuals */
+    private final int                   evaluations;
+    /** Number of equations */
+    private final int                   equations;
+    /** Measures of the last run */
+    private NewtonRaphsonMeasures       measures;
+    /** Residuals */
+    private final ResidualFunction2D    residuals;
+
+    /** Workspace: first column of the Jacobian */
+    private transient double[]          workspaceDerivativesX;
+    /** Workspace: second column of the Jacobian */
+    private transient double[]          workspaceDerivativesY;
+    /** Workspace: measures, which are reused across runs */
+    private transient NewtonRaphsonMeasures workspaceMeasures;
+    /** Workspace: residuals */
+    private transient double[]          workspaceResiduals;
+    /** Workspace: residuals at trial points */
+    private transient double[]          workspaceTrial;
+
+    /**
+     * Creates a new instance for the given equations. This variant approximates the Jacobian.
+     * @param residuals
+     */
+    public LeastSquares2D(final Function2D... residuals) {
+        if (residuals == null || residuals.length < 2) {
+            throw new IllegalArgumentException("Invalid number of equations");
+        }
+        this.equations = residuals.length;
+        this.evaluations = residuals.length;
+        this.derivatives = null;
+        this.measures = new NewtonRaphsonMeasures();
+        this.residuals = new ResidualFunction2D() {
+            final Vector2D point = new Vector2D();
+            public void evaluate(double x, double y, double[] result) {
+                for (int i = 0; i < residuals.length; i++) {
+                    point.x = x;
+                    point.y = y;
+                    result[i] = residuals[i].evaluate(point);
+                }
+            }
+        };
+    }
+
+    /**
+     * Creates a new instance for the given number of equations. This variant approximates the Jacobian.
+     * @param equations
+     * @param residuals
+     */
+    public LeastSquares2D(int equations, ResidualFunction2D residuals) {
+        this(equations, residuals, null);
+    }
+
+    /**
+     * Creates a new instance for the given number of equations
+     * @param equations
+     * @param residuals
+     * @param derivatives
+     */
+    public LeastSquares2D(int equations, ResidualFunction2D residuals, ResidualDerivatives2D derivatives) {
+        if (equations < 2) {
+            throw new IllegalArgumentException("Invalid number of equations");
+        }
+        this.equations = equations;
+        this.evaluations = 1;
+        this.residuals = residuals;
+        this.derivatives = derivatives;
+        this.measures = new NewtonRaphsonMeasures();
+    }
+
+    /**
+     * Configures this instance
+     * @param config
+     */
+    public LeastSquares2D configure(NewtonRaphsonConfiguration<?> config) {
+        this.accuracy = config.accuracy;
+        this.iterationsPerTry = config.iterationsPerTry;
+        this.iterationsTotal = config.iterationsTotal;
+        this.timePerTry = config.timePerTry;
+        this.timeTotal = config.timeTotal;
+        this.tries = config.tries;
+        this.conditionLimit = config.conditionLimit;
+        this.preparedStartValues = config.preparedStartValues;
+        if (this.preparedStartValues != null) {
+            this.iterationsTotal = (this.preparedStartValues.length + 1) * iterationsPerTry; // Includes given start value
+        }
+        return this;
+    }
+
+    /**
+     * Levenberg damping, which is added to the diagonal of the normal matrix. Default is 0, i.e. undamped
+     * Gauss-Newton steps.
+     * @param damping
+     */
+    public LeastSquares2D damping(double damping) {
+        if (!(damping >= 0d)) {
+            throw new IllegalArgumentException("Invalid damping");
+        }
+        this.damping = damping;
+        return this;
+    }
+
+    /**
+     * @return the damping
+     */
+    public double getDamping() {
+        return damping;
+    }
+
+    /**
+     * @return the number of equations
+     */
+    public int getEquations() {
+        return equations;
+    }
+
+    /**
+     * Returns measurements for the last run. The quality is one minus the root mean square of the residuals.
+     * Singularities are steps, for which the Jacobian was rank-deficient or ill-conditioned.
+     */
+    public NewtonRaphsonMeasures getMeasures() {
+        return measures;
+    }
+
+    /**
+     * Returns the least-squares solution.
+     */
+    public Vector2D solve() {
+        return this.solve(new Vector2D(1.0d, 1.0d));
+    }
+
+    /**
+     * Returns the least-squares solution.
+     *
+     * @param start
+     */
+    public Vector2D solve(Vector2D start) {
+        Vector2D result = new Vector2D();
+        this.solve(start, result);
+        this.measures = this.measures.clone();
+        return result;
+    }
+
+    /**
+     * Stores the least-squares solution in the given result vector. If no solution has been found, the
+     * result will contain NaN values. This variant reuses workspaces owned by this instance, including the
+     * object returned by {@link #getMeasures()}.
+     *
+     * @param start
+     * @param result
+     * @return whether a solution has been found
+     */
+    public boolean solve(Vector2D start, Vector2D result) {
+
+        // Init workspaces
+        if (this.workspaceMeasures == null) {
+            this.workspaceDerivativesX = new double[equations];
+            this.workspaceDerivativesY = new double[equations];
+            this.workspaceResiduals = new double[equations];
+            this.workspaceTrial = new double[equations];
+            this.workspaceMeasures = new NewtonRaphsonMeasures();
+        }
+        double[] jacobianX = this.workspaceDerivativesX;
+        double[] jacobianY = this.workspaceDerivativesY;
+
+        // Measure
+        double initX = start.x;
+        double initY = start.y;
+        long totalStart = System.currentTimeMillis();
+        int totalTries = 0;
+        int totalIterations = 0;
+        int totalEvaluations = 0;
+        int totalSingularities = 0;
+        int preparedStartValuesOffset = 0;
+
+        // Solve
+        outer: while (totalIterations <= this.iterationsTotal && totalTries < this.tries) {
+
+            // Measure
+            totalTries++;
+            long startPerTry = System.currentTimeMillis();
+            int iterations = 0;
+
+            // Init
+            double x;
+            double y;
+            if (totalTries == 1) {
+                x = initX;
+                y = initY;
+            } else if (this.preparedStartValues != null) {
+                x = preparedStartValues[preparedStartValuesOffset][0];
+                y = preparedStartValues[preparedStartValuesOffset++][1];
+            } else {
+                x = (Math.random() * 2d - 1d) * initX;
+                y = (Math.random() * 2d - 1d) * initY;
+            }
+            double[] residuals = this.workspaceResiduals;
+            double[] trial = this.workspaceTrial;
+            this.residuals.evaluate(x, y, residuals);
+            totalEvaluations += evaluations;
+            double cost = sumOfSquares(residuals);
+
+            // Loop
+            while (true) {
+
+                // Measure
+                totalIterations++;
+                if (Double.isNaN(cost)) {
+                    break;
+                }
+
+                // Jacobian
+                if (derivatives != null) {
+                    derivatives.evaluate(x, y, jacobianX, jacobianY);
+                    totalEvaluations++;
+                } else {
+                    double delta = Derivation2D.delta(x);
+                    this.residuals.evaluate(x + delta, y, jacobianX);
+                    for (int i = 0; i < equations; i++) {
+                        jacobianX[i] = (jacobianX[i] - residuals[i]) / delta;
+                    }
+                    delta = Derivation2D.delta(y);
+                    this.residuals.evaluate(x, y + delta, jacobianY);
+                    for (int i = 0; i < equations; i++) {
+                        jacobianY[i] = (jacobianY[i] - residuals[i]) / delta;
+                    }
+                    totalEvaluations += 2 * evaluations;
+                }
+
+                // Break, if the gradient vanishes
+                double gradientX = 0d;
+                double gradientY = 0d;
+                for (int i = 0; i < equations; i++) {
+                    gradientX += jacobianX[i] * residuals[i];
+                    gradientY += jacobianY[i] * residuals[i];
+                }
+                if (Math.abs(gradientX) <= accuracy && Math.abs(gradientY) <= accuracy) {
+                    return finish(result, x, y, cost, totalStart, totalTries, totalIterations, totalEvaluations, totalSingularities);
+                }
+
+                // Limits
+                long time = System.currentTimeMillis();
+                if (time - totalStart > timeTotal) {
+                    break outer;
+                }
+                if (iterations++ >= iterationsPerTry || time - startPerTry > timePerTry) {
+                    break;
+                }
+
+                // Step
+                double stepX;
+                double stepY;
+
+                // Householder reflection of the first column, applied to the second column and a copy of the residuals
+                System.arraycopy(residuals, 0, trial, 0, equations);
+                double norm = 0d;
+                for (int i = 0; i < equations; i++) {
+                    norm += jacobianX[i] * jacobianX[i];
+                }
+                norm = Math.sqrt(norm);
+                double r11 = jacobianX[0] > 0d ? -norm : norm;
+                jacobianX[0] -= r11;
+                reflect(jacobianX, 0, jacobianY);
+                reflect(jacobianX, 0, trial);
+                double r12 = jacobianY[0];
+
+                // Householder reflection of the remainder of the second column
+                norm = 0d;
+                for (int i = 1; i < equations; i++) {
+                    norm += jacobianY[i] * jacobianY[i];
+                }
+                norm = Math.sqrt(norm);
+                double r22 = jacobianY[1] > 0d ? -norm : norm;
+                jacobianY[1] -= r22;
+                reflect(jacobianY, 1, trial);
+
+                // Damping, automatically for ill-conditioned Jacobians
+                double lambda = damping;
+                double large = Math.max(Math.abs(r11), Math.abs(r22));
+                double small = Math.min(Math.abs(r11), Math.abs(r22));
+                if (!(small * conditionLimit > large)) {
+                    lambda = Math.max(lambda, large > 0d ? large * large / conditionLimit : 1d);
+                    totalSingularities++;
+                }
+                if (lambda == 0d) {
+
+                    // Back substitution of R * step = -Q^T * r
+                    stepY = -trial[1] / r22;
+                    stepX = (-trial[0] - r12 * stepY) / r11;
+
+                } else {
+
+                    // Solve (R^T * R + lambda * I) * step = -R^T * Q^T * r
+                    double a = r11 * r11 + lambda;
+                    double b = r11 * r12;
+                    double c = r12 * r12 + r22 * r22 + lambda;
+                    double u = -r11 * trial[0];
+                    double v = -r12 * trial[0] - r22 * trial[1];
+                    double determinant = a * c - b * b;
+                    stepX = (c * u - b * v) / determinant;
+                    stepY = (a * v - b * u) / determinant;
+                }
+
+                // Halve steps, which do not decrease the sum of squares
+                double trialX = x;
+                double trialY = y;
+                double trialCost = Double.NaN;
+                for (int halving = 0; halving <= HALVINGS; halving++) {
+                    trialX = x + stepX;
+                    trialY = y + stepY;
+                    this.residuals.evaluate(trialX, trialY, trial);
+                    totalEvaluations += evaluations;
+                    trialCost = sumOfSquares(trial);
+                    if (trialCost <= cost) {
+                        break;
+                    }
+                    stepX *= 0.5d;
+                    stepY *= 0.5d;
+                }
+                if (!(trialCost <= cost)) {
+                    break;
+                }
+
+                // Accept
+                this.workspaceTrial = residuals;
+                this.workspaceResiduals = trial;
+                residuals = this.workspaceResiduals;
+                trial = this.workspaceTrial;
+                x = trialX;
+                y = trialY;
+                cost = trialCost;
+
+                // Break, if the step vanishes
+                if (Math.abs(stepX) <= accuracy * Math.max(Math.abs(x), 1d) &&
+                    Math.abs(stepY) <= accuracy * Math.max(Math.abs(y), 1d)) {
+                    return finish(result, x, y, cost, totalStart, totalTries, totalIterations, totalEvaluations, totalSingularities);
+                }
+            }
+        }
+
+        // Store measures
+        measures = workspaceMeasures;
+        measures.set(totalIterations, totalTries, totalEvaluations, totalSingularities, (int) (System.currentTimeMillis() - totalStart), 0d);
+        measures.setStrategy(derivatives != null ? NewtonRaphsonStrategy.DERIVATIVES : NewtonRaphsonStrategy.FINITE_DIFFERENCES, null);
+
+        // Nothing found
+        result.x = Double.NaN;
+        result.y = Double.NaN;
+        return false;
+    }
+
+    /**
+     * Stores the solution and the measures
+     * @param result
+     * @param x
+     * @param y
+     * @param cost
+     * @param totalStart
+     * @param tries
+     * @param iterations
+     * @param evaluations
+     * @param singularities
+     * @return true
+     */
+    private boolean finish(Vector2D result, double x, double y, double cost, long totalStart, int tries,
+                           int iterations, int evaluations, int singularities) {
+        measures = workspaceMeasures;
+        measures.set(iterations, tries, evaluations, singularities, (int) (System.currentTimeMillis() - totalStart),
+                     1.0d - Math.sqrt(cost / equations));
+        measures.setStrategy(derivatives != null ? NewtonRaphsonStrategy.DERIVATIVES : NewtonRaphsonStrategy.FINITE_DIFFERENCES, null);
+        result.x = x;
+        result.y = y;
+        return true;
+    }
+
+    @Override
+    void checkSupported(String setting) {
+        throw new IllegalStateException("Setting " + setting + " is not supported by this solver");
+    }
+
+    /**
+     * Applies the Householder reflection I - 2 * v * v^T / (v^T * v), defined by the vector v stored from
+     * the given offset, to the same range of the given vector
+     * @param v
+     * @param offset
+     * @param vector
+     */
+    private void reflect(double[] v, int offset, double[] vector) {
+        double norm = 0d;
+        double product = 0d;
+        for (int i = offset; i < equations; i++) {
+            norm += v[i] * v[i];
+            product += v[i] * vector[i];
+        }
+        if (norm == 0d) {
+            return;
+        }
+        double factor = 2d * product / norm;
+        for (int i = offset; i < equations; i++) {
+            vector[i] -= factor * v[i];
+        }
+    }
+
+    /**
+     * Returns the sum of squares
+     * @param values
+     * @return
+     */
+    private double sumOfSquares(double[] values) {
+        double result = 0d;
+        for (double value : values) {
+            result += value * value;
+        }
+        return result;
+    }
+}
@@ -0,0 +1,159 @@
+/*
+ * Copyright 2015 Fabian Prasser
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.linearbits.newtonraphson;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A lock-free histogram for non-negative long values with a fixed memory footprint. Values are
+ * mapped to buckets that grow exponentially, each of which is split into a fixed number of linear
+ * sub-buckets. With the default of eight sub-buckets, the relative error is bounded by 12.5%.
+ *
+ * @author Fabian Prasser
+ */
+public class LogLinearHistogram {
+
+    /** Default number of bits used for linear sub-buckets */
+    public static final int    DEFAULT_SUB_BUCKET_BITS = 3;
+
+    /** Counts per bucket */
+    private final AtomicLongArray counts;
+    /** Total number of values */
+    private final LongAdder       count = new LongAdder();
+    /** Maximal value */
+    private final AtomicLong      max   = new AtomicLong();
+    /** Number of bits used for linear sub-buckets */
+    private final int             subBucketBits;
+    /** Sum of all values */
+    private final LongAdder       sum   = new LongAdder();
+
+    /**
+     * Creates a new instance with eight linear sub-buckets per power of two
+     */
+    public LogLinearHistogram() {
+        this(DEFAULT_SUB_BUCKET_BITS);
+    }
+
+    /**
+     * Creates a new instance with 2^subBucketBits linear sub-buckets per power of two
+     * @param subBucketBits
+     */
+    public LogLinearHistogram(int subBucketBits) {
+        if (subBucketBits < 0 || subBucketBits > 10) {
+            throw new IllegalArgumentException("Invalid number of sub-bucket bits");
+        }
+        this.subBucketBits = subBucketBits;
+        this.counts = new AtomicLongArray((64 - subBucketBits) << subBucketBits);
+    }
+
+    /**
+     * Returns the number of buckets
+     * @return
+     */
+    public int getBuckets() {
+        return counts.length();
+    }
+
+    /**
+     * Returns the smallest value mapped to the given bucket
+     * @param bucket
+     * @return
+     */
+    public long getLowerBound(int bucket) {
+        int subBuckets = 1 << subBucketBits;
+        if (bucket < subBuckets) {
+            return bucket;
+        }
+        int shift = (bucket >>> subBucketBits) - 1;
+        long sub = bucket & (subBuckets - 1);
+        return (subBuckets + sub) << shift;
+    }
+
+    /**
+     * Returns the largest value mapped to the given bucket
+     * @param bucket
+     * @return
+     */
+    public long getUpperBound(int bucket) {
+        int subBuckets = 1 << subBucketBits;
+        if (bucket < subBuckets) {
+            return bucket;
+        }
+        int shift = (bucket >>> subBucketBits) - 1;
+        return getLowerBound(bucket) + (1L << shift) - 1L;
+    }
+
+    /**
+     * Records the given value. Negative values are recorded as zero.
+     * @param value
+     */
+    public void record(long value) {
+        if (value < 0) {
+            value = 0;
+        }
+        counts.incrementAndGet(getBucket(value));
+        count.increment();
+        sum.add(value);
+        long current = max.get();
+        while (value > current && !max.compareAndSet(current, value)) {
+            current = max.get();
+        }
+    }
+
+    /**
+     * Resets the histogram. Values recorded concurrently may or may not be retained.
+     */
+    public void reset() {
+        for (int i = 0; i < counts.length(); i++) {
+            counts.set(i, 0L);
+        }
+        count.reset();
+        sum.reset();
+        max.set(0L);
+    }
+
+    /**
+     * Returns a snapshot of the current state
+     * @return
+     */
+    public HistogramSnapshot snapshot() {
+        long[] lower = new long[counts.length()];
+        long[] upper = new long[counts.length()];
+        long[] values = new long[counts.length()];
+        for (int i = 0; i < values.length; i++) {
+            lower[i] = getLowerBound(i);
+            upper[i] = getUpperBound(i);
+            values[i] = counts.get(i);
+        }
+        return new HistogramSnapshot(lower, upper, values, count.sum(), sum.sum(), max.get());
+    }
+
+    /**
+     * Returns the bucket for the given value
+     * @param value
+     * @return
+     */
+    private int getBucket(long value) {
+        int subBuckets = 1 << subBucketBits;
+        if (value < subBuckets) {
+            return (int) value;
+        }
+        int shift = 63 - Long.numberOfLeadingZeros(value) - subBucketBits;
+        return ((shift + 1) << subBucketBits) + (int) ((value >>> shift) - subBuckets);
+    }
+}
@@ -0,0 +1,393 @@
+/*
+ * Copyright 2015 Fabian Prasser
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.linearbits.newtonraphson;
+
+/**
+ * This class minimizes functions RxR -> R with Newton's method, i.e. it solves grad f = 0 using the
+ * Hessian. In contrast to solving for the roots of the gradient with {@link NewtonRaphson2D}, it only
+ * converges to local minima:
+ * <ul>
+ * <li>Hessians, which are not positive definite, are corrected by adding a multiple of the identity
+ * (modified Cholesky), such that each step is a descent direction</li>
+ * <li>Steps are shortened by a backtracking line search, until the function decreases sufficiently</li>
+ * <li>At stationary points, which are saddle points or maxima, a step along the direction of negative
+ * curvature is taken</li>
+ * </ul>
+ * Gradients and Hessians, which are not provided, are approximated with finite differences. The accuracy
+ * refers to the gradient. Singularities are Hessians, which required a correction. The method, the strategy,
+ * the profiling interval, termination policies and samplers are not supported. Instances are not thread-safe
+ * and do not allocate any memory once warmed up, as long as the functions provided do not allocate memory
+ * either.
+ *
+ * @author Fabian Prasser
+ */
+public class Minimizer2D extends NewtonRaphsonConfiguration<Minimizer2D> {
+
+    /** SVUID */
+    private static final long                        serialVersionUID = 2818361873326546117L;
+
+    /** Sufficient decrease required by the line search */
+    private static final double                      ARMIJO           = 1e-4;
+    /** Relative length of steps along directions of negative curvature */
+    private static final double                      ESCAPE           = 1e-3;
+    /** Minimal relative step length of the line search */
+    private static final double                      MIN_STEP         = 1e-10;
+
+    /** Function */
+    private final Function2D                         function;
+    /** Gradient */
+    private final Function<Vector2D, Vector2D>       gradientFunction;
+    /** Hessian */
+    private final Function<Vector2D, SquareMatrix2D> hessianFunction;
+    /** Measures of the last run */
+    private NewtonRaphsonMeasures                    measures;
+
+    /** Workspace: finite differences */
+    private transient Derivation2D                   workspaceDerivation;
+    /** Workspace: gradient */
+    private transient Vector2D                       workspaceGradient;
+    /** Workspace: Hessian */
+    private transient SquareMatrix2D                 workspaceHessian;
+    /** Workspace: measures, which are reused across runs */
+    private transient NewtonRaphsonMeasures          workspaceMeasures;
+    /** Workspace: current point */
+    private transient Vector2D                       workspacePoint;
+    /** Workspace: probe point */
+    private transient Vector2D                       workspaceProbe;
+
+    /**
+     * Creates a new instance. This variant approximates the gradient and the Hessian.
+     * @param function
+     */
+    public Minimizer2D(Function2D function) {
+        this(function, null, null);
+    }
+
+    /**
+     * Creates a new instance. This variant approximates the Hessian.
+     * @param function
+     * @param gradient
+     */
+    public Minimizer2D(Function2D function, Function<Vector2D, Vector2D> gradient) {
+        this(function, gradient, null);
+    }
+
+    /**
+     * Creates a new instance. The first row of the Hessian contains the derivatives of the first
+     * component of the gradient.
+     * @param function
+     * @param gradient
+     * @param hessian
+     */
+    public Minimizer2D(Function2D function, Function<Vector2D, Vector2D> gradient, Function<Vector2D, SquareMatrix2D> hessian) {
+        if (hessian != null && gradient == null) {
+            throw new IllegalArgumentException("Invalid arguments: Hessian without gradient");
+        }
+        this.function = function;
+        this.gradientFunction = gradient;
+        this.hessianFunction = hessian;
+        this.measures = new NewtonRaphsonMeasures();
+    }
+
+    /**
+     * Configures this instance
+     * @param config
+     */
+    public Minimizer2D configure(NewtonRaphsonConfiguration<?> config) {
+        this.accuracy = config.accuracy;
+        this.iterationsPerTry = config.iterationsPerTry;
+        this.iterationsTotal = config.iterationsTotal;
+        this.timePerTry = config.timePerTry;
+        this.timeTotal = config.timeTotal;
+        this.tries = config.tries;
+        this.conditionLimit = config.conditionLimit;
+        this.preparedStartValues = config.preparedStartValues;
+        if (this.preparedStartValues != null) {
+            this.iterationsTotal = (this.preparedStartValues.length + 1) * iterationsPerTry; // Includes given start value
+        }
+        return this;
+    }
+
+    /**
+     * Returns measurements for the last run
+     */
+    public NewtonRaphsonMeasures getMeasures() {
+        return measures;
+    }
+
+    /**
+     * Returns a local minimum.
+     */
+    public Vector2D solve() {
+        return this.solve(new Vector2D(1.0d, 1.0d));
+    }
+
+    /**
+     * Returns a local minimum.
+     *
+     * @param start
+     */
+    public Vector2D solve(Vector2D start) {
+        Vector2D result = new Vector2D();
+        this.solve(start, result);
+        this.measures = this.measures.clone();
+        return result;
+    }
+
+    /**
+     * Stores a local minimum in the given result vector. If no minimum has been found, the result
+     * will contain NaN values. This variant reuses workspaces owned by this instance, including the
+     * object returned by {@link #getMeasures()}.
+     *
+     * @param start
+     * @param result
+     * @return whether a minimum has been found
+     */
+    public boolean solve(Vector2D start, Vector2D result) {
+
+        // Init workspaces
+        if (this.workspaceMeasures == null) {
+            this.workspaceDerivation = new Derivation2D();
+            this.workspaceGradient = new Vector2D();
+            this.workspaceHessian = new SquareMatrix2D();
+            this.workspaceMeasures = new NewtonRaphsonMeasures();
+            this.workspacePoint = new Vector2D();
+            this.workspaceProbe = new Vector2D();
+        }
+        Vector2D point = this.workspacePoint;
+        Vector2D probe = this.workspaceProbe;
+        Vector2D gradient = this.workspaceGradient;
+        SquareMatrix2D hessian = this.workspaceHessian;
+
+        // Measure
+        double initX = start.x;
+        double initY = start.y;
+        long totalStart = System.currentTimeMillis();
+        int totalTries = 0;
+        int totalIterations = 0;
+        int totalEvaluations = 0;
+        int totalSingularities = 0;
+        int preparedStartValuesOffset = 0;
+
+        // Solve
+        outer: while (totalIterations <= this.iterationsTotal && totalTries < this.tries) {
+
+            // Measure
+            totalTries++;
+            long startPerTry = System.currentTimeMillis();
+            int iterations = 0;
+
+            // Init point
+            if (totalTries == 1) {
+                point.x = initX;
+                point.y = initY;
+            } else if (this.preparedStartValues != null) {
+                point.x = preparedStartValues[preparedStartValuesOffset][0];
+                point.y = preparedStartValues[preparedStartValuesOffset++][1];
+            } else {
+                point.x = (Math.random() * 2d - 1d) * initX;
+                point.y = (Math.random() * 2d - 1d) * initY;
+            }
+            double value = function.evaluate(point);
+            totalEvaluations++;
+
+            // Loop
+            while (true) {
+
+                // Measure
+                totalIterations++;
+
+                // Derive
+                if (Double.isNaN(value)) {
+                    break;
+                }
+                totalEvaluations += derive(point, value, gradient, hessian);
+                if (gradient.isNaN()) {
+                    break;
+                }
+
+                // Eigenvalues of the symmetric part of the Hessian
+                double a = hessian.x1;
+                double b = 0.5d * (hessian.x2 + hessian.y1);
+                double c = hessian.y2;
+                double mean = 0.5d * (a + c);
+                double radius = Math.sqrt(0.25d * (a - c) * (a - c) + b * b);
+                double minimum = mean - radius;
+                double maximum = mean + radius;
+                if (Double.isNaN(minimum)) {
+                    break;
+                }
+
+                // Break
+                boolean stationary = Math.abs(gradient.x) <= accuracy && Math.abs(gradient.y) <= accuracy;
+                if (stationary && minimum >= -accuracy) {
+                    measures = workspaceMeasures;
+                    measures.set(totalIterations, totalTries, totalEvaluations, totalSingularities,
+                                 (int) (System.currentTimeMillis() - totalStart),
+                                 1.0d - Math.sqrt(gradient.x * gradient.x + gradient.y * gradient.y));
+                    measures.setStrategy(hessianFunction != null ? NewtonRaphsonStrategy.DERIVATIVES : NewtonRaphsonStrategy.FINITE_DIFFERENCES, null);
+                    result.x = point.x;
+                    result.y = point.y;
+                    return true;
+                }
+
+                // Limits
+                long time = System.currentTimeMillis();
+                if (time - totalStart > timeTotal) {
+                    break outer;
+                }
+                if (iterations++ >= iterationsPerTry || time - startPerTry > timePerTry) {
+                    break;
+                }
+
+                // Direction
+                double dx;
+                double dy;
+                if (stationary) {
+
+                    // Escape along the eigenvector of the smallest eigenvalue
+                    double v1x = b;
+                    double v1y = minimum - a;
+                    double v2x = minimum - c;
+                    double v2y = b;
+                    double norm1 = Math.sqrt(v1x * v1x + v1y * v1y);
+                    double norm2 = Math.sqrt(v2x * v2x + v2y * v2y);
+                    if (norm1 == 0d && norm2 == 0d) {
+                        dx = 1d;
+                        dy = 0d;
+                    } else if (norm1 >= norm2) {
+                        dx = v1x / norm1;
+                        dy = v1y / norm1;
+                    } else {
+                        dx = v2x / norm2;
+                        dy = v2y / norm2;
+                    }
+                    double length = ESCAPE * Math.max(Math.sqrt(point.x * point.x + point.y * point.y), 1d);
+                    if (gradient.x * dx + gradient.y * dy > 0d) {
+                        length = -length;
+                    }
+                    dx *= length;
+                    dy *= length;
+                    totalSingularities++;
+
+                } else {
+
+                    // Newton step with a Hessian, which is shifted to be sufficiently positive definite
+                    double shift = 0d;
+                    double delta = Math.max(Math.abs(minimum), Math.abs(maximum)) / conditionLimit;
+                    if (delta == 0d) {
+                        delta = 1d;
+                    }
+                    if (minimum < delta) {
+                        shift = delta - minimum;
+                        totalSingularities++;
+                    }
+                    double determinant = (a + shift) * (c + shift) - b * b;
+                    dx = -((c + shift) * gradient.x - b * gradient.y) / determinant;
+                    dy = -((a + shift) * gradient.y - b * gradient.x) / determinant;
+                }
+
+                // Backtracking line search
+                double slope = gradient.x * dx + gradient.y * dy;
+                double step = 1d;
+                double trial;
+                while (true) {
+                    probe.x = point.x + step * dx;
+                    probe.y = point.y + step * dy;
+                    trial = function.evaluate(probe);
+                    totalEvaluations++;
+                    if (!Double.isNaN(trial) && trial <= value + ARMIJO * step * slope && (!stationary || trial < value)) {
+                        break;
+                    }
+                    step *= 0.5d;
+                    if (step < MIN_STEP) {
+                        break;
+                    }
+                }
+                if (step < MIN_STEP) {
+                    break;
+                }
+                point.x = probe.x;
+                point.y = probe.y;
+                value = trial;
+            }
+        }
+
+        // Store measures
+        measures = workspaceMeasures;
+        measures.set(totalIterations, totalTries, totalEvaluations, totalSingularities,
+                     (int) (System.currentTimeMillis() - totalStart), 0d);
+        measures.setStrategy(hessianFunction != null ? NewtonRaphsonStrategy.DERIVATIVES : NewtonRaphsonStrategy.FINITE_DIFFERENCES, null);
+
+        // Nothing found
+        result.x = Double.NaN;
+        result.y = Double.NaN;
+        return false;
+    }
+
+    @Override
+    void checkSupported(String setting) {
+        throw new IllegalStateException("Setting " + setting + " is not supported by this solver");
+    }
+
+    /**
+     * Evaluates or approximates the gradient and the Hessian at the given point
+     * @param point
+     * @param value the value of the function at the point
+     * @param gradient
+     * @param hessian
+     * @return the number of function evaluations
+     */
+    private int derive(Vector2D point, double value, Vector2D gradient, SquareMatrix2D hessian) {
+
+        // Approximate both
+        if (gradientFunction == null) {
+            workspaceDerivation.evaluateSecondOrderDerivatives(function, point, value, gradient, hessian);
+            return 5;
+        }
+
+        // Evaluate the gradient
+        Vector2D result = gradientFunction.evaluate(point);
+        gradient.x = result.x;
+        gradient.y = result.y;
+
+        // Evaluate the Hessian
+        if (hessianFunction != null) {
+            SquareMatrix2D second = hessianFunction.evaluate(point);
+            hessian.x1 = second.x1;
+            hessian.x2 = second.x2;
+            hessian.y1 = second.y1;
+            hessian.y2 = second.y2;
+            return 2;
+        }
+
+        // Approximate the Hessian with forward differences of the gradient
+        Vector2D probe = this.workspaceProbe;
+        double delta = Derivation2D.delta(point.x);
+        probe.x = point.x + delta;
+        probe.y = point.y;
+        result = gradientFunction.evaluate(probe);
+        hessian.x1 = (result.x - gradient.x) / delta;
+        hessian.y1 = (result.y - gradient.y) / delta;
+        delta = Derivation2D.delta(point.y);
+        probe.x = point.x;
+        probe.y = point.y + delta;
+        result = gradientFunction.evaluate(probe);
+        hessian.x2 = (result.x - gradient.x) / delta;
+        hessian.y2 = (result.y - gradient.y) / delta;
+        return 3;
+    }
+}
@@ -0,0 +1,358 @@
+/*
+ * Copyright 2015 Fabian Prasser
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.linearbits.newtonraphson;
+
+/**
+ * This class implements the Newton-Raphson algorithm for univariate functions, safeguarded by bisection.
+ * As soon as the iterates bracket a root, i.e. the function changes its sign, steps which leave the
+ * bracket or do not shrink fast enough are replaced by bisection steps. Once a root is bracketed,
+ * convergence is thus guaranteed for continuous functions. Roots are accepted if the absolute value of
+ * the function is at most the accuracy, or if the bracket cannot be narrowed any further.<br>
+ * <br>
+ * Without a derivative function, derivatives are approximated with forward differences. The method, the
+ * strategy, the profiling interval, termination policies and samplers are not supported. Instances are not
+ * thread-safe and do not allocate any memory.
+ *
+ * @author Fabian Prasser
+ */
+public class NewtonRaphson1D extends NewtonRaphsonConfiguration<NewtonRaphson1D> {
+
+    /** SVUID */
+    private static final long     serialVersionUID = -3275108402941561839L;
+
+    /** Relative size of perturbations applied when the derivative is zero */
+    private static final double   PERTURBATION     = 1e-3;
+
+    /** Derivative */
+    private final Function1D      derivative;
+    /** Function */
+    private final Function1D      function;
+    /** Measures of the last run */
+    private NewtonRaphsonMeasures measures         = new NewtonRaphsonMeasures();
+
+    /**
+     * Creates a new instance. This variant will automatically derive the given function.
+     * @param function
+     */
+    public NewtonRaphson1D(Function1D function) {
+        this(function, null);
+    }
+
+    /**
+     * Creates a new instance
+     * @param function
+     * @param derivative
+     */
+    public NewtonRaphson1D(Function1D function, Function1D derivative) {
+        this.function = function;
+        this.derivative = derivative;
+    }
+
+    /**
+     * Configures this instance
+     * @param config
+     */
+    public NewtonRaphson1D configure(NewtonRaphsonConfiguration<?> config) {
+        this.accuracy = config.accuracy;
+        this.iterationsPerTry = config.iterationsPerTry;
+        this.iterationsTotal = config.iterationsTotal;
+        this.timePerTry = config.timePerTry;
+        this.timeTotal = config.timeTotal;
+        this.tries = config.tries;
+        this.conditionLimit = config.conditionLimit;
+        this.preparedStartValues = config.preparedStartValues;
+        if (this.preparedStartValues != null) {
+            this.iterationsTotal = (this.preparedStartValues.length + 1) * iterationsPerTry; // Includes given start value
+        }
+        return this;
+    }
+
+    /**
+     * Returns measurements for the last run. The object is reused by subsequent runs. Singularities
+     * are iterations, in which the derivative was zero.
+     */
+    public NewtonRaphsonMeasures getMeasures() {
+        return measures;
+    }
+
+    /**
+     * Returns a root, starting at the given value, or NaN if no root has been found. Further tries
+     * start at the x-coordinates of the prepared start values or at random values.
+     * @param start
+     * @return
+     */
+    public double solve(double start) {
+        return solve(start, 0d, 0d, 0d, false, 0, System.currentTimeMillis());
+    }
+
+    /**
+     * Solves for each start value. The measures are summed up over all problems, the quality is the minimum.
+     * @param starts
+     * @param results roots, or NaN if no root has been found
+     * @return the number of roots found
+     */
+    public int solve(double[] starts, double[] results) {
+        if (starts.length != results.length) {
+            throw new IllegalArgumentException("Invalid number of results");
+        }
+        long totalStart = System.currentTimeMillis();
+        int solved = 0;
+        int tries = 0;
+        int iterations = 0;
+        int evaluations = 0;
+        int singularities = 0;
+        double quality = 1d;
+        for (int i = 0; i < starts.length; i++) {
+            results[i] = solve(starts[i]);
+            solved += Double.isNaN(results[i]) ? 0 : 1;
+            tries += measures.getTries();
+            iterations += measures.getIterations();
+            evaluations += measures.getEvaluations();
+            singularities += measures.getSingularities();
+            quality = Math.min(quality, measures.getQuality());
+        }
+        measures.set(iterations, tries, evaluations, singularities, (int) (System.currentTimeMillis() - totalStart), quality);
+        return solved;
+    }
+
+    /**
+     * Returns a root within the given interval, at whose bounds the function must have different signs,
+     * or NaN if no root has been found within the limits configured
+     * @param lower
+     * @param upper
+     * @return
+     */
+    public double solve(double lower, double upper) {
+        double result = bracket(lower, upper);
+        if (Double.isNaN(result) && measures.getTries() == 0) {
+            throw new IllegalArgumentException("Invalid bracket");
+        }
+        return result;
+    }
+
+    /**
+     * Solves for each interval. The measures are summed up over all problems, the quality is the minimum.
+     * Intervals, at whose bounds the function does not change its sign, are not solved.
+     * @param lowers
+     * @param uppers
+     * @param results roots, or NaN if no root has been found
+     * @return the number of roots found
+     */
+    public int solve(double[] lowers, double[] uppers, double[] results) {
+        if (lowers.length != uppers.length || lowers.length != results.length) {
+            throw new IllegalArgumentException("Invalid number of bounds or results");
+        }
+        long totalStart = System.currentTimeMillis();
+        int solved = 0;
+        int tries = 0;
+        int iterations = 0;
+        int evaluations = 0;
+        int singularities = 0;
+        double quality = 1d;
+        for (int i = 0; i < lowers.length; i++) {
+            results[i] = bracket(lowers[i], uppers[i]);
+            solved += Double.isNaN(results[i]) ? 0 : 1;
+            tries += measures.getTries();
+            iterations += measures.getIterations();
+            evaluations += measures.getEvaluations();
+            singularities += measures.getSingularities();
+            quality = Math.min(quality, measures.getQuality());
+        }
+        measures.set(iterations, tries, evaluations, singularities, (int) (System.currentTimeMillis() - totalStart), quality);
+        return solved;
+    }
+
+    @Override
+    void checkSupported(String setting) {
+        throw new IllegalStateException("Setting " + setting + " is not supported by this solver");
+    }
+
+    /**
+     * Returns a root within the given interval. If the function does not change its sign, NaN is
+     * returned and zero tries are reported.
+     * @param lower
+     * @param upper
+     * @return
+     */
+    private double bracket(double lower, double upper) {
+
+        // Check
+        long totalStart = System.currentTimeMillis();
+        if (!(lower < upper)) {
+            throw new IllegalArgumentException("Invalid bracket");
+        }
+        double fLower = function.evaluate(lower);
+        double fUpper = function.evaluate(upper);
+        if (Math.abs(fLower) <= accuracy) {
+            finish(totalStart, 1, 0, 2, 0, 1d - Math.abs(fLower));
+            return lower;
+        }
+        if (Math.abs(fUpper) <= accuracy) {
+            finish(totalStart, 1, 0, 2, 0, 1d - Math.abs(fUpper));
+            return upper;
+        }
+        if (!((fLower < 0d && fUpper > 0d) || (fLower > 0d && fUpper < 0d))) {
+            finish(totalStart, 0, 0, 2, 0, 0d);
+            return Double.NaN;
+        }
+
+        // Solve
+        return solve(0.5d * (lower + upper), lower, fLower, upper, true, 2, totalStart);
+    }
+
+    /**
+     * Stores the measures of the last run
+     * @param totalStart
+     * @param tries
+     * @param iterations
+     * @param evaluations
+     * @param singularities
+     * @param quality
+     */
+    private void finish(long totalStart, int tries, int iterations, int evaluations, int singularities, double quality) {
+        measures.set(iterations, tries, evaluations, singularities, (int) (System.currentTimeMillis() - totalStart), quality);
+        measures.setStrategy(derivative != null ? NewtonRaphsonStrategy.DERIVATIVES : NewtonRaphsonStrategy.FINITE_DIFFERENCES, null);
+    }
+
+    /**
+     * Implementation of the safeguarded Newton-Raphson algorithm
+     * @param start
+     * @param lower
+     * @param fLower
+     * @param upper
+     * @param bracketed whether the given interval brackets a root
+     * @param evaluations evaluations performed so far
+     * @param totalStart
+     * @return
+     */
+    private double solve(double start, double lower, double fLower, double upper,
+                         boolean bracketed, int evaluations, long totalStart) {
+
+        // Measure
+        int totalTries = 0;
+        int totalIterations = 0;
+        int totalEvaluations = evaluations;
+        int totalSingularities = 0;
+        int preparedStartValuesOffset = 0;
+
+        // Solve
+        outer: while (totalIterations <= this.iterationsTotal && totalTries < this.tries) {
+
+            // Measure
+            totalTries++;
+            long startPerTry = System.currentTimeMillis();
+            int iterations = 0;
+
+            // Init
+            double x;
+            if (totalTries == 1) {
+                x = start;
+            } else if (this.preparedStartValues != null) {
+                x = preparedStartValues[preparedStartValuesOffset++][0];
+            } else {
+                x = (Math.random() * 2d - 1d) * start;
+            }
+            double a = lower;
+            double fa = fLower;
+            double b = upper;
+            boolean inBracket = bracketed;
+            double step = inBracket ? b - a : Double.MAX_VALUE;
+            double fx = function.evaluate(x);
+            totalEvaluations++;
+
+            // Loop
+            while (true) {
+
+                // Measure
+                totalIterations++;
+
+                // Break
+                if (Double.isNaN(fx)) {
+                    break;
+                }
+                if (Math.abs(fx) <= accuracy || (inBracket && b - a <= 4d * Math.ulp(Math.max(Math.abs(a), Math.abs(b))))) {
+                    finish(totalStart, totalTries, totalIterations, totalEvaluations, totalSingularities, 1d - Math.abs(fx));
+                    return x;
+                }
+
+                // Limits
+                long time = System.currentTimeMillis();
+                if (time - totalStart > timeTotal) {
+                    break outer;
+                }
+                if (iterations++ >= iterationsPerTry || time - startPerTry > timePerTry) {
+                    break;
+                }
+
+                // Derive
+                double slope;
+                if (derivative != null) {
+                    slope = derivative.evaluate(x);
+                } else {
+                    double delta = Derivation2D.delta(x);
+                    slope = (function.evaluate(x + delta) - fx) / delta;
+                }
+                totalEvaluations++;
+                if (slope == 0d) {
+                    totalSingularities++;
+                }
+
+                // Step, bisecting if Newton leaves the bracket or does not halve the step
+                double next = x - fx / slope;
+                if (inBracket) {
+                    double previous = step;
+                    if (!(next > a && next < b) || Math.abs(fx / slope) > 0.5d * previous) {
+                        next = a + 0.5d * (b - a);
+                    }
+                    step = Math.abs(next - x);
+                } else if (slope == 0d || Double.isNaN(next) || Double.isInfinite(next)) {
+                    next = x + (Math.random() * 2d - 1d) * PERTURBATION * Math.max(Math.abs(x), 1d);
+                }
+
+                // Evaluate
+                double fNext = function.evaluate(next);
+                totalEvaluations++;
+
+                // Update the bracket
+                if (inBracket) {
+                    if ((fNext < 0d) == (fa < 0d)) {
+                        a = next;
+                        fa = fNext;
+                    } else {
+                        b = next;
+                    }
+                } else if ((fNext < 0d && fx > 0d) || (fNext > 0d && fx < 0d)) {
+                    inBracket = true;
+                    a = Math.min(x, next);
+                    b = Math.max(x, next);
+                    fa = a == x ? fx : fNext;
+                    step = b - a;
+                }
+                x = next;
+                fx = fNext;
+            }
+
+            // Restarts do not help within a given bracket
+            if (bracketed) {
+                break;
+            }
+        }
+
+        // Nothing found
+        finish(totalStart, totalTries, totalIterations, totalEvaluations, totalSingularities, 0d);
+        return Double.NaN;
+    }
+}
@@ -15,7 +15,9 @@
  */
 package de.linearbits.newtonraphson;
 
+import java.util.concurrent.Executor;
 
+import jdk.jfr.FlightRecorder;
 
 /**
  * The class implements the Newton-Raphson algorithm
@@ -27,6 +29,9 @@ public class NewtonRaphson2D extends NewtonRaphsonConfiguration<NewtonRaphson2D>
     /** SVUID*/
     private static final long serialVersionUID = -2439285310000826600L;
 
+    /** Relative size of perturbations applied when the Jacobian does not yield any direction */
+    private static final double PERTURBATION = 1e-3;
+
     /** Constraints */
     private final Constraint2D[]                                     constraints;
 
@@ -36,9 +41,69 @@ public class NewtonRaphson2D extends NewtonRaphsonConfiguration<NewtonRaphson2D>
     /** A function implementing the object function and the derivate functions */
     private final Function<Vector2D, Pair<Vector2D, SquareMatrix2D>> masterFunction;
 
+    /** Executor for evaluating functions concurrently, may be null */
+    private transient Executor                                       executor;
+
     /** Measures of the last run */
     private NewtonRaphsonMeasures                                    measures;
 
+    /** Workspace: measures, which are reused across runs */
+    private transient NewtonRaphsonMeasures                          workspaceMeasures;
+
+    /** Workspace: finite differences */
+    private transient Derivation2D                                   workspaceDerivation;
+
+    /** Workspace: derivatives */
+    private transient SquareMatrix2D                                 workspaceDerivatives;
+
+    /** Workspace: concurrent evaluation of functions */
+    private transient ConcurrentEvaluator2D                          workspaceEvaluator;
+
+    /** Workspace: start value */
+    private transient Vector2D                                       workspaceInit;
+
+    /** Workspace: approximation of the Jacobian for Broyden's method */
+    private transient SquareMatrix2D                                 workspaceJacobian;
+
+    /** Workspace: object functions at the last point for Broyden's method */
+    private transient Vector2D                                       workspaceLastObject;
+
+    /** Workspace: last point for Broyden's method */
+    private transient Vector2D                                       workspaceLastPoint;
+
+    /** Workspace: object functions */
+    private transient Vector2D                                       workspaceObject;
+
+    /** Workspace: point for finite differences */
+    private transient Vector2D                                       workspaceProbe;
+
+    /** Workspace: object functions for finite differences */
+    private transient Vector2D                                       workspaceProbeObject;
+
+    /** Workspace: point at which the residuals for the termination policy have been evaluated */
+    private transient Vector2D                                       workspacePrevious;
+
+    /** Workspace: residuals for the termination policy */
+    private transient Vector2D                                       workspaceResiduals;
+
+    /** Workspace: trust region */
+    private transient TrustRegion2D                                  workspaceRegion;
+
+    /** Workspace: automatic selection of strategies */
+    private transient StrategySelector2D                             workspaceSelector;
+
+    /** Workspace: solution */
+    private transient Vector2D                                       workspaceSolution;
+
+    /** Workspace: start value, which may be overwritten when the result is stored */
+    private transient Vector2D                                       workspaceStart;
+
+    /** Workspace: solution on the surrogate */
+    private transient Vector2D                                       workspaceSurrogate;
+
+    /** Registry for production metrics, may be null */
+    private transient NewtonRaphsonMetrics                           metrics;
+
     /** First and second function */
     private final Function<Vector2D, Vector2D>                       objectFunction;
 
@@ -48,6 +113,15 @@ public class NewtonRaphson2D extends NewtonRaphsonConfiguration<NewtonRaphson2D>
     /** Second function */
     private final Function2D                                         objectfunction2;
 
+    /** Maximal number of iterations on the exact model, after converging on the surrogate */
+    private int                                                      refinements;
+
+    /** A function implementing the object functions and their first and second derivatives */
+    private final SecondOrderFunction2D                              secondOrderFunction;
+
+    /** Solver for a cheap approximation of the object functions, may be null */
+    private transient NewtonRaphson2D                                surrogate;
+
     /**
      * Creates a new instance
      * @param function
@@ -69,6 +143,32 @@ public class NewtonRaphson2D extends NewtonRaphsonConfiguration<NewtonRaphson2D>
         this.objectFunction1 = null;
         this.objectfunction2 = null;
         this.constraints = constraints;
+        this.secondOrderFunction = null;
+    }
+
+    /**
+     * Creates a new instance, which uses Halley's method by default
+     * @param function
+     */
+    public NewtonRaphson2D(SecondOrderFunction2D function) {
+        this(function, (Constraint2D[])null);
+    }
+
+    /**
+     * Creates a new instance, which uses Halley's method by default
+     * @param function
+     * @param constraints
+     */
+    public NewtonRaphson2D(SecondOrderFunction2D function,
+                           Constraint2D... constraints) {
+        this.secondOrderFunction = function;
+        this.masterFunction = null;
+        this.objectFunction = null;
+        this.derivativeFunction = null;
+        this.objectFunction1 = null;
+        this.objectfunction2 = null;
+        this.constraints = constraints;
+        this.method = NewtonRaphsonMethod.HALLEY;
     }
 
     /**
@@ -96,6 +196,7 @@ public class NewtonRaphson2D extends NewtonRaphsonConfiguration<NewtonRaphson2D>
         this.objectfunction2 = null;
         this.masterFunction = null;
         this.constraints = constraints;
+        this.secondOrderFunction = null;
     }
 
     /**
@@ -123,6 +224,7 @@ public class NewtonRaphson2D extends NewtonRaphsonConfiguration<NewtonRaphson2D>
         this.objectfunction2 = function2;
         this.masterFunction = null;
         this.constraints = constraints;
+        this.secondOrderFunction = null;
     }
 
     /**
@@ -154,6 +256,7 @@ public class NewtonRaphson2D extends NewtonRaphsonConfiguration<NewtonRaphson2D>
         this.objectfunction2 = function2;
         this.masterFunction = null;
         this.constraints = constraints;
+        this.secondOrderFunction = null;
     }
 
     /**
@@ -193,9 +296,16 @@ public class NewtonRaphson2D extends NewtonRaphsonConfiguration<NewtonRaphson2D>
                            final Constraint2D... constraints) {
         this.objectFunction = null;
         this.constraints = constraints;
+        this.secondOrderFunction = null;
         this.derivativeFunction = new Function<Vector2D, SquareMatrix2D>(){
-            SquareMatrix2D result = new SquareMatrix2D();
+            // Thread-local result objects, so that thread-safe derivatives yield a thread-safe function
+            ThreadLocal<SquareMatrix2D> results = new ThreadLocal<SquareMatrix2D>() {
+                protected SquareMatrix2D initialValue() {
+                    return new SquareMatrix2D();
+                }
+            };
             public SquareMatrix2D evaluate(Vector2D input) {
+                SquareMatrix2D result = results.get();
                 result.x1 = derivative11.evaluate(input);
                 result.x2 = derivative12.evaluate(input);
                 result.y1 = derivative21.evaluate(input);
@@ -209,7 +319,7 @@ public class NewtonRaphson2D extends NewtonRaphsonConfiguration<NewtonRaphson2D>
     }
     
     /**
-     * Configures this instance
+     * Configures this instance. The solver uses its own copies of the termination policy and the sampler.
      * @param config
      */
     public NewtonRaphson2D configure(NewtonRaphsonConfiguration<?> config) {
@@ -218,6 +328,13 @@ public class NewtonRaphson2D extends NewtonRaphsonConfiguration<NewtonRaphson2D>
         this.iterationsTotal = config.iterationsTotal;
         this.timePerTry = config.timePerTry;
         this.timeTotal = config.timeTotal;
+        this.tries = config.tries;
+        this.conditionLimit = config.conditionLimit;
+        this.method = config.method;
+        this.strategy = config.strategy;
+        this.profilingInterval = config.profilingInterval;
+        this.termination = config.termination == null ? null : config.termination.copy();
+        this.sampler = config.sampler == null ? null : config.sampler.copy();
         this.preparedStartValues = config.preparedStartValues;
         if (this.preparedStartValues != null) {
             this.iterationsTotal = (this.preparedStartValues.length + 1) * iterationsPerTry; // Includes given start value
@@ -225,6 +342,26 @@ public class NewtonRaphson2D extends NewtonRaphsonConfiguration<NewtonRaphson2D>
         return this;
     }
     
+    /**
+     * Sets an executor, which is used to evaluate the object functions and the probes needed for finite 
+     * differences or the derivative functions concurrently. This is only worthwhile for expensive functions, 
+     * which must be thread-safe. Master functions are always evaluated by the calling thread. To reduce
+     * the time per iteration, the derivatives are evaluated together with the object functions, also in the 
+     * last iteration, unless a trust region method is used. Pass null to evaluate sequentially.
+     * @param executor
+     */
+    public NewtonRaphson2D executor(Executor executor) {
+        this.executor = executor;
+        return this;
+    }
+
+    /**
+     * Returns the executor used for evaluating functions concurrently, if any
+     */
+    public Executor getExecutor() {
+        return executor;
+    }
+
     /**
      * Returns measurements for the last run
      */
@@ -232,6 +369,36 @@ public class NewtonRaphson2D extends NewtonRaphsonConfiguration<NewtonRaphson2D>
         return measures;
     }
 
+    /**
+     * Returns the registry that this solver reports into, if any
+     */
+    public NewtonRaphsonMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * Sets a registry that this solver reports into. Pass null to disable reporting.
+     * @param metrics
+     */
+    public NewtonRaphson2D metrics(NewtonRaphsonMetrics metrics) {
+        this.metrics = metrics;
+        return this;
+    }
+
+    /**
+     * Returns the maximal number of iterations on the exact model after converging on the surrogate
+     */
+    public int getRefinements() {
+        return refinements;
+    }
+
+    /**
+     * Returns the solver for the surrogate, if any
+     */
+    public NewtonRaphson2D getSurrogate() {
+        return surrogate;
+    }
+
     /**
      * Returns the vector of solutions obtained by the Newton-Raphson algorithm.
      */
@@ -245,48 +412,187 @@ public class NewtonRaphson2D extends NewtonRaphsonConfiguration<NewtonRaphson2D>
      * @param start
      */
     public Vector2D solve(Vector2D start) {
-        return this._solve(start);
+        Vector2D result = new Vector2D();
+        this.solve(start, result);
+        this.measures = this.measures.clone();
+        return result;
+    }
+
+    /**
+     * Stores the vector of solutions obtained by the Newton-Raphson algorithm in the given
+     * result vector. If no solution has been found, the result will contain NaN values. This
+     * variant reuses workspaces owned by this instance, including the object returned by 
+     * {@link #getMeasures()}, and does not allocate any memory once warmed up, as long as 
+     * the functions provided do not allocate memory either.
+     * 
+     * @param start
+     * @param result
+     * @return whether a solution has been found
+     */
+    public boolean solve(Vector2D start, Vector2D result) {
+        long nanoStart = metrics != null ? System.nanoTime() : 0L;
+        boolean solved = this.surrogate != null ? this.refine(start, result) : this.solveExact(start, result);
+
+        // Report once per solve, including profiling, refinements and fallbacks
+        if (metrics != null) {
+            metrics.record(solved, measures.getTries(), measures.getIterations(), measures.getEvaluations(), System.nanoTime() - nanoStart);
+        }
+        return solved;
+    }
+
+    /**
+     * Sets a solver for a surrogate, i.e. a cheap approximation of the object functions, e.g. on a coarse
+     * mesh. The search for a solution, including restarts, is performed on the surrogate, with the
+     * configuration and the constraints of its solver. Solutions found are then refined on the exact model
+     * with at most the given number of iterations. If no solution is found on the surrogate or if the
+     * refinement fails, the exact model is solved as usual. Tries and iterations are summed up over both
+     * models, while evaluations are reported separately. Pass null to solve the exact model only.
+     * @param surrogate
+     * @param refinements
+     */
+    public NewtonRaphson2D surrogate(NewtonRaphson2D surrogate, int refinements) {
+        if (surrogate == this) {
+            throw new IllegalArgumentException("Invalid surrogate");
+        }
+        if (surrogate != null && refinements < 1) {
+            throw new IllegalArgumentException("Invalid number of refinements");
+        }
+        this.surrogate = surrogate;
+        this.refinements = refinements;
+        return this;
     }
 
     /**
      * Implementation of the Newton-Raphson algorithm
      * @param start
-     * @param constraints
+     * @param result
+     * @param strategy
+     * @return
+     */
+    boolean _solve(Vector2D start, Vector2D result, NewtonRaphsonStrategy strategy) {
+        return _solve(start, result, strategy, this.tries, this.iterationsPerTry);
+    }
+
+    /**
+     * Implementation of the Newton-Raphson algorithm
+     * @param start
+     * @param result
+     * @param strategy
+     * @param maxTries
+     * @param maxIterationsPerTry
      * @return
      */
-    private Vector2D _solve(Vector2D start) {
+    private boolean _solve(Vector2D start, Vector2D result, NewtonRaphsonStrategy strategy, int maxTries, int maxIterationsPerTry) {
+
+        // Init workspaces
+        if (this.workspaceSolution == null) {
+            this.workspaceInit = new Vector2D();
+            this.workspaceSolution = new Vector2D();
+            this.workspaceObject = new Vector2D();
+            this.workspaceDerivatives = new SquareMatrix2D();
+            this.workspaceDerivation = new Derivation2D();
+            this.workspaceMeasures = new NewtonRaphsonMeasures();
+            this.workspaceJacobian = new SquareMatrix2D();
+            this.workspaceLastObject = new Vector2D();
+            this.workspaceLastPoint = new Vector2D();
+            this.workspaceProbe = new Vector2D();
+            this.workspaceProbeObject = new Vector2D();
+            this.workspacePrevious = new Vector2D();
+            this.workspaceResiduals = new Vector2D();
+        }
+        if (!isAvailable(strategy)) {
+            throw new IllegalStateException("Strategy " + strategy + " is not available for the functions provided");
+        }
+        boolean higherOrder = this.method == NewtonRaphsonMethod.HALLEY || this.method == NewtonRaphsonMethod.CHEBYSHEV;
+        if (higherOrder && (this.secondOrderFunction == null || strategy != NewtonRaphsonStrategy.MASTER_FUNCTION)) {
+            throw new IllegalStateException("Method " + method + " requires second derivatives");
+        }
+        ConcurrentEvaluator2D evaluator = null;
+        if (this.executor != null && (this.objectFunction1 != null || this.objectFunction != null)) {
+            if (this.workspaceEvaluator == null || this.workspaceEvaluator.getExecutor() != this.executor) {
+                this.workspaceEvaluator = new ConcurrentEvaluator2D(executor, objectFunction1, objectfunction2, objectFunction, derivativeFunction);
+            }
+            evaluator = this.workspaceEvaluator;
+        }
+        TrustRegion2D region = null;
+        if (this.method == NewtonRaphsonMethod.LEVENBERG_MARQUARDT || this.method == NewtonRaphsonMethod.DOGLEG) {
+            if (this.workspaceRegion == null) {
+                this.workspaceRegion = new TrustRegion2D();
+            }
+            region = this.workspaceRegion;
+        }
         
         // Init math stuff
-        Vector2D init = start.clone();
-        Vector2D solution = null;
-        Vector2D object = new Vector2D();
-        SquareMatrix2D derivatives = new SquareMatrix2D();
-        Derivation2D derivation = this.derivativeFunction != null ? null : new Derivation2D();
+        Vector2D init = this.workspaceInit;
+        init.x = start.x;
+        init.y = start.y;
+        Vector2D solution = this.workspaceSolution;
+        Vector2D object = this.workspaceObject;
+        SquareMatrix2D derivatives = this.workspaceDerivatives;
+        Derivation2D derivation = this.workspaceDerivation;
+        Vector2D residuals = this.workspaceResiduals;
+        Vector2D previous = this.workspacePrevious;
+        TerminationPolicy2D termination = this.termination;
+        Pair<SquareMatrix2D, SquareMatrix2D> hessians = null;
         
         // Measure
         long totalStart = System.currentTimeMillis();
         int totalTries = 0;
         int totalIterations = 0;
+        int totalEvaluations = 0;
+        int totalSingularities = 0;
         int preparedStartValuesOffset = 0;
 
+        // Flight recorder events, which are only created if enabled. Event classes are not even loaded, unless
+        // the flight recorder has been started, because loading them initializes the flight recorder.
+        boolean recorder = FlightRecorder.isInitialized();
+        SolveEvent solveEvent = null;
+        if (recorder && SolveEvent.PROBE.isEnabled()) {
+            solveEvent = new SolveEvent();
+            solveEvent.begin();
+        }
+        boolean tryEvents = recorder && TryEvent.PROBE.isEnabled();
+        boolean iterationEvents = recorder && IterationEvent.PROBE.isEnabled();
+        TryEvent tryEvent = null;
+
         // Solve
-        outer: while (totalIterations <= this.iterationsTotal) {
+        outer: while (totalIterations <= this.iterationsTotal && totalTries < maxTries) {
+
+            // Measure
+            totalTries++;
 
             // Init timers
             long startPerTry = System.currentTimeMillis();
             int iterations = 0;
+            if (region != null) {
+                region.reset(method, conditionLimit);
+            }
+            if (termination != null) {
+                termination.reset();
+            }
 
             // Init solution
-            if (solution == null) {
-                solution = start;
+            if (totalTries == 1) {
+                solution.x = init.x;
+                solution.y = init.y;
             } else {
                 if (this.preparedStartValues != null) {
-                    solution = new Vector2D(preparedStartValues[preparedStartValuesOffset][0], preparedStartValues[preparedStartValuesOffset++][1]);
+                    solution.x = preparedStartValues[preparedStartValuesOffset][0];
+                    solution.y = preparedStartValues[preparedStartValuesOffset++][1];
+                } else if (this.sampler != null) {
+                    this.sampler.sample(init, constraints, solution);
                 } else {
-                    solution = new Vector2D((Math.random() * 2d - 1d) * init.x, 
-                                            (Math.random() * 2d - 1d) * init.y);
+                    solution.x = (Math.random() * 2d - 1d) * init.x;
+                    solution.y = (Math.random() * 2d - 1d) * init.y;
                 }
             }
+            if (tryEvents) {
+                tryEvent = new TryEvent();
+                tryEvent.begin();
+                tryEvent.number = totalTries;
+                tryEvent.startX = solution.x;
+                tryEvent.startY = solution.y;
+            }
 
             // Loop
             inner: while (true) {
@@ -295,14 +601,22 @@ public class NewtonRaphson2D extends NewtonRaphsonConfiguration<NewtonRaphson2D>
                 totalIterations++;
                 
                 // Without master function
-                if (masterFunction == null) { 
+                if (strategy != NewtonRaphsonStrategy.MASTER_FUNCTION) { 
         
                     // Evaluate object function
-                    if (this.objectFunction == null) {
+                    boolean derived = false;
+                    if (evaluator != null) {
+                        derived = region == null && (strategy == NewtonRaphsonStrategy.DERIVATIVES || strategy == NewtonRaphsonStrategy.FINITE_DIFFERENCES);
+                        totalEvaluations += evaluator.evaluate(solution, object, derivatives, true, derived ? strategy : null);
+                    } else if (this.objectFunction1 != null) {
                         object.x = objectFunction1.evaluate(solution);
                         object.y = objectfunction2.evaluate(solution);
-                    } else {
+                        totalEvaluations += 2;
+                    } else if (this.objectFunction != null) {
                         object = objectFunction.evaluate(solution);
+                        totalEvaluations++;
+                    } else {
+                        totalEvaluations += evaluate(solution, object);
                     }
         
                     // Break
@@ -310,30 +624,59 @@ public class NewtonRaphson2D extends NewtonRaphsonConfiguration<NewtonRaphson2D>
 
                         // Store measures
                         double quality = 1.0d - Math.sqrt(object.x * object.x + object.y * object.y);
-                        measures = new NewtonRaphsonMeasures(totalIterations, 
-                                                             totalTries, 
-                                                             (int)(System.currentTimeMillis() - totalStart),
-                                                             quality);
+                        commit(tryEvent, TryEvent.CONVERGED, iterations);
+                        finish(totalStart, totalTries, totalIterations, totalEvaluations, totalSingularities, quality, strategy, true, solveEvent, solution);
                         
                         // Return
-                        return solution;
+                        result.x = solution.x;
+                        result.y = solution.y;
+                        return true;
                     }
         
-                    // Derive
-                    if (this.derivativeFunction == null) {
-                        derivatives.x1 = derivation.evaluateDerivativeFunction1(objectFunction1, solution, object.x);
-                        derivatives.x2 = derivation.evaluateDerivativeFunction2(objectFunction1, solution, object.x);
-                        derivatives.y1 = derivation.evaluateDerivativeFunction1(objectfunction2, solution, object.y);
-                        derivatives.y2 = derivation.evaluateDerivativeFunction2(objectfunction2, solution, object.y);
-                    } else {
-                        derivatives = this.derivativeFunction.evaluate(solution);
+                    // Update the approximation of the Jacobian with the last step
+                    if (strategy == NewtonRaphsonStrategy.BROYDEN && iterations > 0) {
+                        update(this.workspaceJacobian, solution, object, this.workspaceLastPoint, this.workspaceLastObject);
+                    }
+
+                    // Derive, unless the last step has been rejected
+                    if (region == null || region.accept(solution, object)) {
+                        if (derived) {
+                            // Evaluated concurrently with the object functions
+                        } else if (strategy == NewtonRaphsonStrategy.DERIVATIVES) {
+                            derivatives = this.derivativeFunction.evaluate(solution);
+                            totalEvaluations++;
+                        } else if (strategy == NewtonRaphsonStrategy.FINITE_DIFFERENCES || iterations == 0) {
+                            totalEvaluations += derive(solution, object, derivatives, derivation, evaluator);
+                            if (strategy == NewtonRaphsonStrategy.BROYDEN) {
+                                copy(derivatives, this.workspaceJacobian);
+                            }
+                        } else {
+                            copy(this.workspaceJacobian, derivatives);
+                        }
+                        if (strategy == NewtonRaphsonStrategy.BROYDEN) {
+                            this.workspaceLastPoint.x = solution.x;
+                            this.workspaceLastPoint.y = solution.y;
+                            this.workspaceLastObject.x = object.x;
+                            this.workspaceLastObject.y = object.y;
+                        }
+                        if (region != null) {
+                            region.update(derivatives);
+                        }
                     }
                     
                 // With master function
                 } else {
         
                     // Evaluate object function and derivatives
-                    Pair<Vector2D, SquareMatrix2D> results = masterFunction.evaluate(solution);
+                    Pair<Vector2D, SquareMatrix2D> results;
+                    if (secondOrderFunction == null) {
+                        results = masterFunction.evaluate(solution);
+                    } else {
+                        Pair<Pair<Vector2D, SquareMatrix2D>, Pair<SquareMatrix2D, SquareMatrix2D>> all = secondOrderFunction.evaluate(solution);
+                        results = all.first;
+                        hessians = all.second;
+                    }
+                    totalEvaluations++;
                     object = results.first;
                     derivatives = results.second;
                     
@@ -342,53 +685,516 @@ public class NewtonRaphson2D extends NewtonRaphsonConfiguration<NewtonRaphson2D>
 
                         // Store measures
                         double quality = 1.0d - Math.sqrt(object.x * object.x + object.y * object.y);
-                        measures = new NewtonRaphsonMeasures(totalIterations, 
-                                                             totalTries, 
-                                                             (int)(System.currentTimeMillis() - totalStart),
-                                                             quality);
+                        commit(tryEvent, TryEvent.CONVERGED, iterations);
+                        finish(totalStart, totalTries, totalIterations, totalEvaluations, totalSingularities, quality, strategy, true, solveEvent, solution);
                         
                         // Return
-                        return solution;
+                        result.x = solution.x;
+                        result.y = solution.y;
+                        return true;
+                    }
+                    
+                    // Use the derivatives, unless the last step has been rejected
+                    if (region != null && region.accept(solution, object)) {
+                        region.update(derivatives);
                     }
                 }
         
                 // Compute difference
-                derivatives.inverse();
-                object.times(derivatives);
+                double residual = iterationEvents ? Math.sqrt(object.x * object.x + object.y * object.y) : 0d;
+                if (termination != null) {
+                    residuals.x = object.x;
+                    residuals.y = object.y;
+                    previous.x = solution.x;
+                    previous.y = solution.y;
+                }
+                if (region != null) {
+                    if (region.step(object)) {
+                        totalSingularities++;
+                    }
+                } else {
+                    
+                    // Fall back to the pseudo-inverse for ill-conditioned Jacobians
+                    if (derivatives.condition() > conditionLimit) {
+                        derivatives.pseudoInverse(1d / conditionLimit);
+                        totalSingularities++;
+                    } else {
+                        derivatives.inverse();
+                    }
+                    object.times(derivatives);
+                    
+                    // Correct the Newton step with second derivatives
+                    if (higherOrder) {
+                        correct(object, derivatives, hessians);
+                    }
+                }
+                
+                // Perturb the iterate, if the Jacobian does not yield any direction
+                if (object.x == 0d && object.y == 0d) {
+                    object.x = (Math.random() * 2d - 1d) * PERTURBATION * Math.max(Math.abs(solution.x), 1d);
+                    object.y = (Math.random() * 2d - 1d) * PERTURBATION * Math.max(Math.abs(solution.y), 1d);
+                }
+                if (iterationEvents) {
+                    IterationEvent.commit(totalTries, iterations, residual, Math.sqrt(object.x * object.x + object.y * object.y));
+                }
                 solution.minus(object);
                 
                 // Timing limit
                 long time = System.currentTimeMillis();
                 if (time - totalStart > timeTotal ||
                     (preparedStartValues != null && preparedStartValuesOffset == preparedStartValues.length)) {
+                    commit(tryEvent, time - totalStart > timeTotal ? TryEvent.TOTAL_LIMIT : TryEvent.START_VALUES_USED, iterations);
                     break outer;
                 }
 
                 // Check constraints
                 if (constraints != null) {
                     for (Constraint2D constraint : constraints) {
-                        if (!constraint.evaluate(solution)) {
+                        if (!constraint.isSatisfied(solution)) {
+                            commit(tryEvent, TryEvent.CONSTRAINT_VIOLATED, iterations);
                             break inner;
                         }
                     }
                 }
+
+                // Apply the termination policy
+                if (termination != null && !solution.isNaN()) {
+                    TerminationPolicy2D.Decision decision = termination.evaluate(iterations, solution, residuals, object);
+                    if (decision == TerminationPolicy2D.Decision.CONVERGED) {
+
+                        // Steps of trust-region methods are also short close to stationary points of the merit
+                        // function, which are not roots. Otherwise, residuals are evaluated at the new iterate.
+                        if (termination.isStepBased()) {
+                            if (region != null) {
+                                commit(tryEvent, TryEvent.COLLAPSED, iterations);
+                                break inner;
+                            }
+                            totalEvaluations += evaluate(solution, residuals);
+                        } else {
+
+                            // Return the point, at which the residuals have been checked
+                            solution.x = previous.x;
+                            solution.y = previous.y;
+                        }
+
+                        // Store measures
+                        double quality = 1.0d - Math.sqrt(residuals.x * residuals.x + residuals.y * residuals.y);
+                        commit(tryEvent, TryEvent.CONVERGED, iterations);
+                        finish(totalStart, totalTries, totalIterations, totalEvaluations, totalSingularities, quality, strategy, true, solveEvent, solution);
+
+                        // Return
+                        result.x = solution.x;
+                        result.y = solution.y;
+                        return true;
+                    } else if (decision == TerminationPolicy2D.Decision.ABANDON) {
+                        commit(tryEvent, TryEvent.ABANDONED, iterations);
+                        break inner;
+                    }
+                }
                 
                 // Error or constraint reached
                 if (solution.isNaN() || 
-                    iterations++ >= iterationsPerTry || 
+                    (region != null && region.isCollapsed()) ||
+                    iterations++ >= maxIterationsPerTry || 
                     time - startPerTry > timePerTry) {
+                    if (tryEvent != null) {
+                        commit(tryEvent, solution.isNaN() ? TryEvent.DIVERGED : 
+                                         region != null && region.isCollapsed() ? TryEvent.COLLAPSED :
+                                         iterations > maxIterationsPerTry ? TryEvent.ITERATION_LIMIT : TryEvent.TIME_LIMIT, iterations);
+                    }
                     break inner;
                 }
             }
         }
         
         // Store measures
-        measures = new NewtonRaphsonMeasures(totalIterations, 
-                                             totalTries, 
-                                             (int)(System.currentTimeMillis() - totalStart),
-                                             0d);
+        finish(totalStart, totalTries, totalIterations, totalEvaluations, totalSingularities, 0d, strategy, false, solveEvent, solution);
         
         // Nothing found
-        return new Vector2D(Double.NaN, Double.NaN);
+        result.x = Double.NaN;
+        result.y = Double.NaN;
+        return false;
+    }
+
+    /**
+     * Searches for a solution on the surrogate and refines it on the exact model
+     * @param start
+     * @param result
+     * @return
+     */
+    private boolean refine(Vector2D start, Vector2D result) {
+
+        // Search on the surrogate
+        long totalStart = System.currentTimeMillis();
+        if (this.workspaceSurrogate == null) {
+            this.workspaceStart = new Vector2D();
+            this.workspaceSurrogate = new Vector2D();
+        }
+        Vector2D approximation = this.workspaceSurrogate;
+
+        // The start value may be the result vector, which is overwritten by the refinement
+        this.workspaceStart.x = start.x;
+        this.workspaceStart.y = start.y;
+        start = this.workspaceStart;
+        boolean solved = surrogate.solve(start, approximation);
+        NewtonRaphsonMeasures cheap = surrogate.getMeasures();
+        int surrogateEvaluations = cheap.getEvaluations();
+        int tries = cheap.getTries();
+        int iterations = cheap.getIterations();
+        int singularities = cheap.getSingularities();
+        int evaluations = 0;
+
+        // Refine on the exact model
+        if (solved) {
+            NewtonRaphsonStrategy strategy = this.strategy != null && this.strategy != NewtonRaphsonStrategy.AUTO ? this.strategy : getDefaultStrategy();
+            solved = _solve(approximation, result, strategy, 1, refinements);
+            tries += measures.getTries();
+            iterations += measures.getIterations();
+            evaluations += measures.getEvaluations();
+            singularities += measures.getSingularities();
+        }
+
+        // Fall back to the exact model
+        if (!solved) {
+            solved = solveExact(start, result);
+            tries += measures.getTries();
+            iterations += measures.getIterations();
+            evaluations += measures.getEvaluations();
+            singularities += measures.getSingularities();
+        }
+
+        // Store measures
+        measures.set(iterations, tries, evaluations, singularities, (int) (System.currentTimeMillis() - totalStart), measures.getQuality());
+        measures.setSurrogateEvaluations(surrogateEvaluations);
+        return solved;
+    }
+
+    /**
+     * Solves the exact model
+     * @param start
+     * @param result
+     * @return
+     */
+    private boolean solveExact(Vector2D start, Vector2D result) {
+        if (this.strategy == NewtonRaphsonStrategy.AUTO) {
+            if (this.workspaceSelector == null) {
+                this.workspaceSelector = new StrategySelector2D(this);
+            }
+            return this.workspaceSelector.solve(start, result);
+        }
+        return this._solve(start, result, this.strategy != null ? this.strategy : getDefaultStrategy());
+    }
+
+    /**
+     * Evaluates the object functions and their derivatives at the given point, using the given
+     * instance for finite differences, if needed. This method does not use the workspaces of this 
+     * instance and is thus thread-safe, if the functions provided are thread-safe.
+     * @param point
+     * @param object
+     * @param derivatives
+     * @param derivation
+     * @return the number of function evaluations
+     */
+    int evaluate(Vector2D point, Vector2D object, SquareMatrix2D derivatives, Derivation2D derivation) {
+
+        // With master function
+        if (masterFunction != null || secondOrderFunction != null) {
+            Pair<Vector2D, SquareMatrix2D> results = masterFunction != null ? masterFunction.evaluate(point) : 
+                                                                              secondOrderFunction.evaluate(point).first;
+            object.x = results.first.x;
+            object.y = results.first.y;
+            copy(results.second, derivatives);
+            return 1;
+        }
+
+        // Evaluate object function
+        int evaluations = evaluate(point, object);
+
+        // Derive
+        if (this.derivativeFunction == null) {
+            derivatives.x1 = derivation.evaluateDerivativeFunction1(objectFunction1, point, object.x);
+            derivatives.x2 = derivation.evaluateDerivativeFunction2(objectFunction1, point, object.x);
+            derivatives.y1 = derivation.evaluateDerivativeFunction1(objectfunction2, point, object.y);
+            derivatives.y2 = derivation.evaluateDerivativeFunction2(objectfunction2, point, object.y);
+            evaluations += 4;
+        } else {
+            copy(this.derivativeFunction.evaluate(point), derivatives);
+            evaluations++;
+        }
+        return evaluations;
+    }
+
+    /**
+     * Evaluates the object functions at the given point. With a master function, derivatives are
+     * computed as well, but discarded. This method is thread-safe, if the functions provided are
+     * thread-safe.
+     * @param point
+     * @param object
+     * @return the number of function evaluations
+     */
+    int evaluate(Vector2D point, Vector2D object) {
+
+        // With master function
+        if (masterFunction != null || secondOrderFunction != null) {
+            Vector2D result = masterFunction != null ? masterFunction.evaluate(point).first : 
+                                                       secondOrderFunction.evaluate(point).first.first;
+            object.x = result.x;
+            object.y = result.y;
+            return 1;
+        }
+
+        // Evaluate object function
+        if (this.objectFunction == null) {
+            object.x = objectFunction1.evaluate(point);
+            object.y = objectfunction2.evaluate(point);
+            return 2;
+        } else {
+            Vector2D result = objectFunction.evaluate(point);
+            object.x = result.x;
+            object.y = result.y;
+            return 1;
+        }
+    }
+
+    /**
+     * Evaluates the functions implementing the derivatives at the given point
+     * @param point
+     * @param derivatives
+     * @return the number of function evaluations
+     */
+    int evaluateDerivatives(Vector2D point, SquareMatrix2D derivatives) {
+        copy(this.derivativeFunction.evaluate(point), derivatives);
+        return 1;
+    }
+
+    /**
+     * Returns the strategy implied by the functions provided
+     * @return
+     */
+    NewtonRaphsonStrategy getDefaultStrategy() {
+        if (masterFunction != null || secondOrderFunction != null) {
+            return NewtonRaphsonStrategy.MASTER_FUNCTION;
+        } else if (derivativeFunction != null) {
+            return NewtonRaphsonStrategy.DERIVATIVES;
+        } else {
+            return NewtonRaphsonStrategy.FINITE_DIFFERENCES;
+        }
+    }
+
+    /**
+     * Returns whether the given strategy can be used with the functions provided
+     * @param strategy
+     * @return
+     */
+    boolean isAvailable(NewtonRaphsonStrategy strategy) {
+        switch (strategy) {
+        case MASTER_FUNCTION:
+            return masterFunction != null || secondOrderFunction != null;
+        case DERIVATIVES:
+            return derivativeFunction != null;
+        case FINITE_DIFFERENCES:
+        case BROYDEN:
+            return true;
+        default:
+            return false;
+        }
+    }
+
+    /**
+     * Returns whether the given point satisfies all constraints
+     * @param point
+     * @return
+     */
+    boolean isFeasible(Vector2D point) {
+        if (constraints != null) {
+            for (Constraint2D constraint : constraints) {
+                if (!constraint.isSatisfied(point)) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Approximates the derivatives at the given point with forward differences
+     * @param point
+     * @param object the values of the object functions at the point
+     * @param derivatives
+     * @param derivation
+     * @param evaluator for concurrent evaluation, may be null
+     * @return the number of function evaluations
+     */
+    private int derive(Vector2D point, Vector2D object, SquareMatrix2D derivatives, Derivation2D derivation, ConcurrentEvaluator2D evaluator) {
+
+        // Derive concurrently
+        if (evaluator != null) {
+            return evaluator.evaluate(point, object, derivatives, false, NewtonRaphsonStrategy.FINITE_DIFFERENCES);
+        }
+
+        // Derive each object function separately
+        if (this.objectFunction1 != null) {
+            derivatives.x1 = derivation.evaluateDerivativeFunction1(objectFunction1, point, object.x);
+            derivatives.x2 = derivation.evaluateDerivativeFunction2(objectFunction1, point, object.x);
+            derivatives.y1 = derivation.evaluateDerivativeFunction1(objectfunction2, point, object.y);
+            derivatives.y2 = derivation.evaluateDerivativeFunction2(objectfunction2, point, object.y);
+            return 4;
+        }
+
+        // Derive both object functions at once. Values are copied first, as functions may reuse result objects.
+        double x = object.x;
+        double y = object.y;
+        Vector2D probe = this.workspaceProbe;
+        Vector2D result = this.workspaceProbeObject;
+        double delta = Derivation2D.delta(point.x);
+        probe.x = point.x + delta;
+        probe.y = point.y;
+        int evaluations = evaluate(probe, result);
+        derivatives.x1 = (result.x - x) / delta;
+        derivatives.y1 = (result.y - y) / delta;
+        delta = Derivation2D.delta(point.y);
+        probe.x = point.x;
+        probe.y = point.y + delta;
+        evaluations += evaluate(probe, result);
+        derivatives.x2 = (result.x - x) / delta;
+        derivatives.y2 = (result.y - y) / delta;
+        return evaluations;
+    }
+
+    /**
+     * Commits a flight recorder event for a try
+     * @param event may be null
+     * @param outcome
+     * @param iterations
+     */
+    private void commit(TryEvent event, String outcome, int iterations) {
+        if (event != null) {
+            event.outcome = outcome;
+            event.iterations = iterations;
+            event.commit();
+        }
+    }
+
+    /**
+     * Copies a matrix
+     * @param source
+     * @param target
+     */
+    private void copy(SquareMatrix2D source, SquareMatrix2D target) {
+        target.x1 = source.x1;
+        target.x2 = source.x2;
+        target.y1 = source.y1;
+        target.y2 = source.y2;
+    }
+
+    /**
+     * Transforms a Newton step into a step of Halley's or Chebyshev's method. With the Newton step s, 
+     * the inverse Jacobian J^-1 and the matrix M, whose rows are the products of the second derivatives 
+     * of the object functions with s, we have L = J^-1 * M. Halley's step is (I - L/2)^-1 * s and 
+     * Chebyshev's step is (I + L/2) * s.
+     * @param step the Newton step, which will be overwritten
+     * @param inverse the inverse Jacobian
+     * @param hessians the second derivatives
+     */
+    private void correct(Vector2D step, SquareMatrix2D inverse, Pair<SquareMatrix2D, SquareMatrix2D> hessians) {
+
+        // M = (H1 * s, H2 * s)^T
+        SquareMatrix2D h1 = hessians.first;
+        SquareMatrix2D h2 = hessians.second;
+        double m11 = h1.x1 * step.x + h1.x2 * step.y;
+        double m12 = h1.y1 * step.x + h1.y2 * step.y;
+        double m21 = h2.x1 * step.x + h2.x2 * step.y;
+        double m22 = h2.y1 * step.x + h2.y2 * step.y;
+
+        // L = J^-1 * M
+        double l11 = inverse.x1 * m11 + inverse.x2 * m21;
+        double l12 = inverse.x1 * m12 + inverse.x2 * m22;
+        double l21 = inverse.y1 * m11 + inverse.y2 * m21;
+        double l22 = inverse.y1 * m12 + inverse.y2 * m22;
+
+        if (method == NewtonRaphsonMethod.CHEBYSHEV) {
+            double x = step.x + 0.5d * (l11 * step.x + l12 * step.y);
+            double y = step.y + 0.5d * (l21 * step.x + l22 * step.y);
+            step.x = x;
+            step.y = y;
+        } else {
+            double a11 = 1d - 0.5d * l11;
+            double a12 = -0.5d * l12;
+            double a21 = -0.5d * l21;
+            double a22 = 1d - 0.5d * l22;
+            double det = a11 * a22 - a12 * a21;
+            
+            // Keep the Newton step, if the correction is degenerate
+            if (det != 0d && !Double.isNaN(det)) {
+                double x = (a22 * step.x - a12 * step.y) / det;
+                double y = (a11 * step.y - a21 * step.x) / det;
+                step.x = x;
+                step.y = y;
+            }
+        }
+    }
+
+    /**
+     * Updates the approximation of the Jacobian with Broyden's method, such that it maps the last step
+     * onto the according change of the object functions
+     * @param jacobian
+     * @param point
+     * @param object
+     * @param lastPoint
+     * @param lastObject
+     */
+    private void update(SquareMatrix2D jacobian, Vector2D point, Vector2D object, Vector2D lastPoint, Vector2D lastObject) {
+        double dx = point.x - lastPoint.x;
+        double dy = point.y - lastPoint.y;
+        double norm = dx * dx + dy * dy;
+        if (norm == 0d || Double.isNaN(norm) || object.isNaN()) {
+            return;
+        }
+        double rx = (object.x - lastObject.x - jacobian.x1 * dx - jacobian.x2 * dy) / norm;
+        double ry = (object.y - lastObject.y - jacobian.y1 * dx - jacobian.y2 * dy) / norm;
+        jacobian.x1 += rx * dx;
+        jacobian.x2 += rx * dy;
+        jacobian.y1 += ry * dx;
+        jacobian.y2 += ry * dy;
+    }
+
+    /**
+     * Stores the measures of the last run
+     * @param totalStart
+     * @param tries
+     * @param iterations
+     * @param evaluations
+     * @param singularities
+     * @param quality
+     * @param strategy
+     * @param success
+     * @param event flight recorder event, may be null
+     * @param solution
+     */
+    private void finish(long totalStart, int tries, int iterations, int evaluations, int singularities, double quality, 
+                        NewtonRaphsonStrategy strategy, boolean success, SolveEvent event, Vector2D solution) {
+        measures = workspaceMeasures;
+        measures.set(iterations, 
+                     tries, 
+                     evaluations,
+                     singularities,
+                     (int)(System.currentTimeMillis() - totalStart),
+                     quality);
+        measures.setStrategy(strategy, null);
+        if (event != null) {
+            event.method = method.name();
+            event.strategy = strategy.name();
+            event.startX = workspaceInit.x;
+            event.startY = workspaceInit.y;
+            event.success = success;
+            event.resultX = success ? solution.x : Double.NaN;
+            event.resultY = success ? solution.y : Double.NaN;
+            event.tries = tries;
+            event.iterations = iterations;
+            event.evaluations = evaluations;
+            event.singularities = singularities;
+            event.quality = quality;
+            event.commit();
+        }
     }
 }
@@ -15,6 +15,11 @@
  */
 package de.linearbits.newtonraphson;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
 import java.io.Serializable;
 
 /**
@@ -25,15 +30,21 @@ public class NewtonRaphsonConfiguration<T> implements Serializable {
 
     /** Constant */
     public static final double DEFAULT_ACCURACY           = 10e-6;
+    /** Constant */
+    public static final double DEFAULT_CONDITION_LIMIT    = 1e10;
     
     /** Constant */
     public static final int    DEFAULT_ITERATIONS_PER_TRY = 100;
     /** Constant */
     public static final int    DEFAULT_ITERATIONS_TOTAL   = 1000;
     /** Constant */
+    public static final int    DEFAULT_PROFILING_INTERVAL = 1000;
+    /** Constant */
     public static final int    DEFAULT_TIME_PER_TRY       = 1000;
     /** Constant */
     public static final int    DEFAULT_TIME_TOTAL         = 10000;
+    /** Constant */
+    public static final int    DEFAULT_TRIES              = Integer.MAX_VALUE;
     /** SVUID*/
     private static final long serialVersionUID = -8127035086199045592L;
 
@@ -47,6 +58,8 @@ public class NewtonRaphsonConfiguration<T> implements Serializable {
 
     /** Runtime constraint */
     double     accuracy         = DEFAULT_ACCURACY;
+    /** Numerical parameter */
+    double     conditionLimit   = DEFAULT_CONDITION_LIMIT;
     /** Runtime constraint */
     int        iterationsPerTry = DEFAULT_ITERATIONS_PER_TRY;
     /** Runtime constraint */
@@ -56,7 +69,19 @@ public class NewtonRaphsonConfiguration<T> implements Serializable {
     /** Runtime constraint */
     int        timeTotal        = DEFAULT_TIME_TOTAL;
     /** Runtime constraint */
+    int        tries            = DEFAULT_TRIES;
+    /** Runtime constraint */
     double[][] preparedStartValues      = null;
+    /** Method used for computing steps */
+    NewtonRaphsonMethod method          = NewtonRaphsonMethod.NEWTON;
+    /** Strategy used for obtaining Jacobians, null for the strategy implied by the functions provided */
+    NewtonRaphsonStrategy strategy      = null;
+    /** Number of solves after which the automatic strategy is re-evaluated */
+    int        profilingInterval        = DEFAULT_PROFILING_INTERVAL;
+    /** Policy for terminating tries, null for the absolute accuracy only */
+    TerminationPolicy2D termination     = null;
+    /** Sampler for start values of restarts, null for the default box */
+    StartSampler2D sampler              = null;
     
     /**
      * Constructor
@@ -65,6 +90,153 @@ public class NewtonRaphsonConfiguration<T> implements Serializable {
         // Empty by design
     }
 
+    /**
+     * Checks whether the solver supports the setting with the given name, which is only checked for values
+     * other than the default. The default implementation supports all settings.
+     * @param setting
+     * @throws IllegalStateException if the setting is not supported
+     */
+    void checkSupported(String setting) {
+        // Empty by design
+    }
+
+    /**
+     * Returns a plain configuration with the same settings, which, in contrast to solvers, can be serialized
+     * @return
+     */
+    NewtonRaphsonConfiguration<?> copy() {
+        NewtonRaphsonConfiguration<?> result = create();
+        result.accuracy = accuracy;
+        result.conditionLimit = conditionLimit;
+        result.iterationsPerTry = iterationsPerTry;
+        result.iterationsTotal = iterationsTotal;
+        result.timePerTry = timePerTry;
+        result.timeTotal = timeTotal;
+        result.tries = tries;
+        result.preparedStartValues = preparedStartValues;
+        result.method = method;
+        result.strategy = strategy;
+        result.profilingInterval = profilingInterval;
+        result.termination = termination == null ? null : termination.copy();
+        result.sampler = sampler == null ? null : sampler.copy();
+        return result;
+    }
+
+    /**
+     * Returns a 64-bit FNV-1a hash of the settings, including the start values and the types and parameters
+     * of the termination policy and of the sampler, which is stable across processes
+     * @return
+     */
+    long fingerprint() {
+        long hash = 0xcbf29ce484222325L;
+        hash = fingerprint(hash, Double.doubleToLongBits(accuracy));
+        hash = fingerprint(hash, Double.doubleToLongBits(conditionLimit));
+        hash = fingerprint(hash, iterationsPerTry);
+        hash = fingerprint(hash, iterationsTotal);
+        hash = fingerprint(hash, timePerTry);
+        hash = fingerprint(hash, timeTotal);
+        hash = fingerprint(hash, tries);
+        hash = fingerprint(hash, profilingInterval);
+        hash = fingerprint(hash, method.name());
+        hash = fingerprint(hash, strategy == null ? "" : strategy.name());
+        hash = termination == null ? fingerprint(hash, "") : termination.fingerprint(hash);
+        hash = sampler == null ? fingerprint(hash, "") : sampler.fingerprint(hash);
+        hash = fingerprint(hash, preparedStartValues == null ? -1 : preparedStartValues.length);
+        if (preparedStartValues != null) {
+            for (double[] values : preparedStartValues) {
+                hash = fingerprint(hash, Double.doubleToLongBits(values[0]));
+                hash = fingerprint(hash, Double.doubleToLongBits(values[1]));
+            }
+        }
+        return hash;
+    }
+
+    /**
+     * Returns a deep copy of the given object, which is created by serialization
+     * @param object
+     * @return
+     */
+    @SuppressWarnings("unchecked")
+    static <U extends Serializable> U deepCopy(U object) {
+        try (ObjectInputStream stream = new ObjectInputStream(new ByteArrayInputStream(serialize(object)))) {
+            return (U) stream.readObject();
+        } catch (IOException | ClassNotFoundException e) {
+            throw new IllegalStateException("Object cannot be copied", e);
+        }
+    }
+
+    /**
+     * Adds the given value to the given hash
+     * @param hash
+     * @param value
+     * @return
+     */
+    static long fingerprint(long hash, long value) {
+        for (int i = 0; i < 8; i++) {
+            hash ^= (value >>> (8 * i)) & 0xff;
+            hash *= 0x100000001b3L;
+        }
+        return hash;
+    }
+
+    /**
+     * Adds the given values to the given hash
+     * @param hash
+     * @param values
+     * @return
+     */
+    static long fingerprint(long hash, byte[] values) {
+        hash = fingerprint(hash, values.length);
+        for (byte value : values) {
+            hash ^= value & 0xff;
+            hash *= 0x100000001b3L;
+        }
+        return hash;
+    }
+
+    /**
+     * Adds the given values to the given hash
+     * @param hash
+     * @param values
+     * @return
+     */
+    static long fingerprint(long hash, double... values) {
+        hash = fingerprint(hash, values.length);
+        for (double value : values) {
+            hash = fingerprint(hash, Double.doubleToLongBits(value));
+        }
+        return hash;
+    }
+
+    /**
+     * Adds the given value to the given hash
+     * @param hash
+     * @param value
+     * @return
+     */
+    static long fingerprint(long hash, String value) {
+        hash = fingerprint(hash, value.length());
+        for (int i = 0; i < value.length(); i++) {
+            hash = fingerprint(hash, value.charAt(i));
+        }
+        return hash;
+    }
+
+    /**
+     * Returns the serialized form of the given object
+     * @param object
+     * @return
+     */
+    static byte[] serialize(Serializable object) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ObjectOutputStream stream = new ObjectOutputStream(bytes)) {
+            stream.writeObject(object);
+        } catch (IOException e) {
+            throw new IllegalStateException("Object cannot be serialized", e);
+        }
+        return bytes.toByteArray();
+    }
+
     /**
      * Accuracy. Default is  10e-6.
      */
@@ -74,12 +246,32 @@ public class NewtonRaphsonConfiguration<T> implements Serializable {
         return (T)this;
     }
 
+    /**
+     * Maximal condition number of Jacobians that are inverted directly. Steps for Jacobians
+     * that are singular or worse conditioned are computed with a pseudo-inverse. Default is 1e10.
+     */
+    @SuppressWarnings("unchecked")
+    public T conditionLimit(double conditionLimit) {
+        if (conditionLimit < 1d) {
+            throw new IllegalArgumentException("Invalid condition limit");
+        }
+        this.conditionLimit = conditionLimit;
+        return (T)this;
+    }
+
     /**
      * @return the accuracy
      */
     public double getAccuracy() {
         return accuracy;
     }
+
+    /**
+     * @return the condition limit
+     */
+    public double getConditionLimit() {
+        return conditionLimit;
+    }
     
     /**
      * @return the iterationsPerTry
@@ -95,6 +287,27 @@ public class NewtonRaphsonConfiguration<T> implements Serializable {
         return iterationsTotal;
     }
 
+    /**
+     * @return the method
+     */
+    public NewtonRaphsonMethod getMethod() {
+        return method;
+    }
+
+    /**
+     * @return the number of solves after which the automatic strategy is re-evaluated
+     */
+    public int getProfilingInterval() {
+        return profilingInterval;
+    }
+
+    /**
+     * @return the sampler for start values, null if not set
+     */
+    public StartSampler2D getSampler() {
+        return sampler;
+    }
+
     /**
      * @return the start values
      */
@@ -102,6 +315,20 @@ public class NewtonRaphsonConfiguration<T> implements Serializable {
         return preparedStartValues;
     }
 
+    /**
+     * @return the strategy, null if implied by the functions provided
+     */
+    public NewtonRaphsonStrategy getStrategy() {
+        return strategy;
+    }
+
+    /**
+     * @return the termination policy, null if not set
+     */
+    public TerminationPolicy2D getTermination() {
+        return termination;
+    }
+
     /**
      * @return the timePerTry
      */
@@ -116,6 +343,13 @@ public class NewtonRaphsonConfiguration<T> implements Serializable {
         return timeTotal;
     }
 
+    /**
+     * @return the maximal number of tries
+     */
+    public int getTries() {
+        return tries;
+    }
+
     /**
      * Iterations per try. Default is 100.
      */
@@ -134,6 +368,23 @@ public class NewtonRaphsonConfiguration<T> implements Serializable {
         return (T)this;
     }
 
+    /**
+     * Method used for computing steps. Trust-region methods are more robust for badly scaled 
+     * systems and poor start values. Default is plain Newton-Raphson. Only supported by the
+     * Newton-Raphson solver and by homotopy continuation, others throw an IllegalStateException.
+     */
+    @SuppressWarnings("unchecked")
+    public T method(NewtonRaphsonMethod method) {
+        if (method == null) {
+            throw new NullPointerException("Method must not be null");
+        }
+        if (method != NewtonRaphsonMethod.NEWTON) {
+            checkSupported("method");
+        }
+        this.method = method;
+        return (T)this;
+    }
+
     /**
      * Predefined start values
      */
@@ -153,6 +404,68 @@ public class NewtonRaphsonConfiguration<T> implements Serializable {
         return (T)this;
     }
 
+    /**
+     * Number of solves after which the strategy is re-evaluated in automatic mode. Default is 1000.
+     * Only supported by the Newton-Raphson solver and by homotopy continuation, others throw an
+     * IllegalStateException.
+     */
+    @SuppressWarnings("unchecked")
+    public T profilingInterval(int profilingInterval) {
+        if (profilingInterval < 1) {
+            throw new IllegalArgumentException("Invalid profiling interval");
+        }
+        if (profilingInterval != DEFAULT_PROFILING_INTERVAL) {
+            checkSupported("profilingInterval");
+        }
+        this.profilingInterval = profilingInterval;
+        return (T)this;
+    }
+
+    /**
+     * Sampler used by the Newton-Raphson solver for the start values of restarts, unless start values
+     * have been prepared. Pass null to draw start values from the box spanned by the negated and the
+     * given start value, which is the default. Only supported by the Newton-Raphson solver, others
+     * throw an IllegalStateException.
+     */
+    @SuppressWarnings("unchecked")
+    public T sampler(StartSampler2D sampler) {
+        if (sampler != null) {
+            checkSupported("sampler");
+        }
+        this.sampler = sampler;
+        return (T)this;
+    }
+
+    /**
+     * Strategy used for obtaining Jacobians. Finite differences and Broyden updates are available
+     * for all functions, while the other strategies require the according functions. Pass null
+     * for the strategy implied by the functions provided, which is the default. Only supported by the
+     * Newton-Raphson solver and by homotopy continuation, others throw an IllegalStateException.
+     */
+    @SuppressWarnings("unchecked")
+    public T strategy(NewtonRaphsonStrategy strategy) {
+        if (strategy != null) {
+            checkSupported("strategy");
+        }
+        this.strategy = strategy;
+        return (T)this;
+    }
+
+    /**
+     * Policy, which is evaluated by the Newton-Raphson solver after each step and may accept iterates
+     * or abandon hopeless tries early, e.g. diverging or cycling ones. The absolute accuracy and the
+     * limits are checked in any case. Default is null. Only supported by the Newton-Raphson solver and
+     * by homotopy continuation, others throw an IllegalStateException.
+     */
+    @SuppressWarnings("unchecked")
+    public T termination(TerminationPolicy2D termination) {
+        if (termination != null) {
+            checkSupported("termination");
+        }
+        this.termination = termination;
+        return (T)this;
+    }
+
     /**
      * Time in milliseconds per try. Default is 1000.
      */
@@ -170,4 +483,16 @@ public class NewtonRaphsonConfiguration<T> implements Serializable {
         this.timeTotal = timeTotal;
         return (T)this;
     }
+
+    /**
+     * Maximal number of tries, including the try from the given start value. Default is unlimited.
+     */
+    @SuppressWarnings("unchecked")
+    public T tries(int tries) {
+        if (tries < 1) {
+            throw new IllegalArgumentException("Invalid number of tries");
+        }
+        this.tries = tries;
+        return (T)this;
+    }
 }
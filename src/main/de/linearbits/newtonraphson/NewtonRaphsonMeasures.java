@@ -21,27 +21,53 @@ package de.linearbits.newtonraphson;
  */
 public class NewtonRaphsonMeasures {
 
+    /** Evaluations */
+    private int          evaluations;
     /** Iterations */
-    private final int    iterations;
+    private int          iterations;
+    /** Ill-conditioned Jacobians */
+    private int          singularities;
+    /** Evaluations of the surrogate */
+    private int          surrogateEvaluations;
     /** Time */
-    private final int    time;
+    private int          time;
     /** Tries */
-    private final int    tries;
+    private int          tries;
     /** Result quality */
-    private final double quality;
+    private double       quality;
+    /** Strategy used for obtaining Jacobians */
+    private NewtonRaphsonStrategy strategy;
+    /** Reasoning behind the strategy, if it has been selected automatically */
+    private String       reasoning;
     
+    /**
+     * Creates a new instance
+     */
+    NewtonRaphsonMeasures() {
+        // Empty by design
+    }
+
     /**
      * Creates a new instance
      * @param iterations
      * @param tries
+     * @param evaluations
+     * @param singularities
      * @param time
      * @param quality
      */
-    NewtonRaphsonMeasures(int iterations, int tries, int time, double quality) {
-        this.iterations = iterations;
-        this.tries = tries;
-        this.time = time;
-        this.quality = quality;
+    NewtonRaphsonMeasures(int iterations, int tries, int evaluations, int singularities, int time, double quality) {
+        set(iterations, tries, evaluations, singularities, time, quality);
+    }
+
+    /**
+     * Clone
+     */
+    public NewtonRaphsonMeasures clone() {
+        NewtonRaphsonMeasures result = new NewtonRaphsonMeasures(iterations, tries, evaluations, singularities, time, quality);
+        result.setStrategy(strategy, reasoning);
+        result.setSurrogateEvaluations(surrogateEvaluations);
+        return result;
     }
 
     /**
@@ -51,6 +77,14 @@ public class NewtonRaphsonMeasures {
         return quality;
     }
 
+    /**
+     * Returns the number of function evaluations. Each call to an object function, to a function
+     * implementing the derivatives or to a master function counts as one evaluation.
+     */
+    public int getEvaluations() {
+        return evaluations;
+    }
+
     /**
      * Returns the number of iterations
      */
@@ -58,6 +92,36 @@ public class NewtonRaphsonMeasures {
         return iterations;
     }
 
+    /**
+     * Returns the reasoning behind the strategy, if it has been selected automatically, null otherwise
+     */
+    public String getReasoning() {
+        return reasoning;
+    }
+
+    /**
+     * Returns the number of singular or ill-conditioned Jacobians, for which the step has been
+     * computed with a pseudo-inverse
+     */
+    public int getSingularities() {
+        return singularities;
+    }
+
+    /**
+     * Returns the strategy used for obtaining Jacobians
+     */
+    public NewtonRaphsonStrategy getStrategy() {
+        return strategy;
+    }
+
+    /**
+     * Returns the number of evaluations of the surrogate, if one has been used. Evaluations of
+     * the exact model are returned by {@link #getEvaluations()}.
+     */
+    public int getSurrogateEvaluations() {
+        return surrogateEvaluations;
+    }
+
     /**
      * Returns the total time in milliseconds
      */
@@ -72,13 +136,58 @@ public class NewtonRaphsonMeasures {
         return tries;
     }
     
+    /**
+     * Updates the measures
+     * @param iterations
+     * @param tries
+     * @param evaluations
+     * @param singularities
+     * @param time
+     * @param quality
+     */
+    void set(int iterations, int tries, int evaluations, int singularities, int time, double quality) {
+        this.iterations = iterations;
+        this.tries = tries;
+        this.evaluations = evaluations;
+        this.singularities = singularities;
+        this.time = time;
+        this.quality = quality;
+        this.surrogateEvaluations = 0;
+    }
+
+    /**
+     * Updates the number of evaluations of the surrogate
+     * @param surrogateEvaluations
+     */
+    void setSurrogateEvaluations(int surrogateEvaluations) {
+        this.surrogateEvaluations = surrogateEvaluations;
+    }
+
+    /**
+     * Updates the strategy
+     * @param strategy
+     * @param reasoning
+     */
+    void setStrategy(NewtonRaphsonStrategy strategy, String reasoning) {
+        this.strategy = strategy;
+        this.reasoning = reasoning;
+    }
+
     @Override
     public String toString() {
         StringBuilder builder = new StringBuilder();
         builder.append("Measures: (Time: ").append(time).append(" [ms]");
         builder.append(", Tries: ").append(tries);
         builder.append(", Iterations: ").append(iterations);
+        builder.append(", Evaluations: ").append(evaluations);
+        if (surrogateEvaluations != 0) {
+            builder.append(", Surrogate evaluations: ").append(surrogateEvaluations);
+        }
+        builder.append(", Singularities: ").append(singularities);
         builder.append(", Quality: ").append(quality);
+        if (strategy != null) {
+            builder.append(", Strategy: ").append(strategy);
+        }
         builder.append(")");
         return builder.toString();
     }
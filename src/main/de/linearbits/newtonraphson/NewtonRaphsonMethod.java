@@ -0,0 +1,38 @@
+/*
+ * Copyright 2015 Fabian Prasser
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.linearbits.newtonraphson;
+
+/**
+ * The methods that can be used for computing steps
+ * @author Fabian Prasser
+ */
+public enum NewtonRaphsonMethod {
+
+    /** Plain Newton-Raphson steps */
+    NEWTON,
+
+    /** Levenberg-Marquardt steps with adaptive damping */
+    LEVENBERG_MARQUARDT,
+
+    /** Trust-region steps following Powell's dogleg method */
+    DOGLEG,
+
+    /** Halley's method, which requires second derivatives and converges cubically */
+    HALLEY,
+
+    /** Chebyshev's method, which requires second derivatives and converges cubically */
+    CHEBYSHEV
+}
@@ -0,0 +1,201 @@
+/*
+ * Copyright 2015 Fabian Prasser
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.linearbits.newtonraphson;
+
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * A registry for production metrics, which can be shared by any number of solvers. Recording is
+ * lock-free and only costs a few nanoseconds per solve. The metrics can be exposed as an MXBean
+ * or exported via snapshots.
+ *
+ * @author Fabian Prasser
+ */
+public class NewtonRaphsonMetrics implements NewtonRaphsonMetricsMXBean {
+
+    /** Default domain for JMX object names */
+    public static final String       DEFAULT_DOMAIN      = "de.linearbits.newtonraphson";
+
+    /** Evaluations */
+    private final LongAdder          evaluations         = new LongAdder();
+    /** Failures */
+    private final LongAdder          failures            = new LongAdder();
+    /** Iterations */
+    private final LongAdder          iterations          = new LongAdder();
+    /** Iterations per solve */
+    private final LogLinearHistogram iterationsHistogram = new LogLinearHistogram();
+    /** Latency per solve in nanoseconds */
+    private final LogLinearHistogram latencyHistogram    = new LogLinearHistogram();
+    /** Name under which this registry has been registered, if any */
+    private ObjectName               objectName;
+    /** Restarts */
+    private final LongAdder          restarts            = new LongAdder();
+    /** Solves */
+    private final LongAdder          solves              = new LongAdder();
+
+    @Override
+    public long getEvaluations() {
+        return evaluations.sum();
+    }
+
+    @Override
+    public long getFailures() {
+        return failures.sum();
+    }
+
+    @Override
+    public long getIterations() {
+        return iterations.sum();
+    }
+
+    @Override
+    public double getIterationsMean() {
+        return iterationsHistogram.snapshot().getMean();
+    }
+
+    @Override
+    public long getIterationsP99() {
+        return iterationsHistogram.snapshot().getPercentile(0.99d);
+    }
+
+    @Override
+    public double getLatencyMax() {
+        return latencyHistogram.snapshot().getMax() / 1000d;
+    }
+
+    @Override
+    public double getLatencyMean() {
+        return latencyHistogram.snapshot().getMean() / 1000d;
+    }
+
+    @Override
+    public double getLatencyP50() {
+        return latencyHistogram.snapshot().getPercentile(0.5d) / 1000d;
+    }
+
+    @Override
+    public double getLatencyP90() {
+        return latencyHistogram.snapshot().getPercentile(0.9d) / 1000d;
+    }
+
+    @Override
+    public double getLatencyP99() {
+        return latencyHistogram.snapshot().getPercentile(0.99d) / 1000d;
+    }
+
+    @Override
+    public long getRestarts() {
+        return restarts.sum();
+    }
+
+    @Override
+    public long getSolves() {
+        return solves.sum();
+    }
+
+    /**
+     * Registers this registry at the platform MBean server under the default domain
+     * @param name
+     * @return the object name
+     * @throws JMException
+     */
+    public ObjectName register(String name) throws JMException {
+        return register(new ObjectName(DEFAULT_DOMAIN + ":type=NewtonRaphsonMetrics,name=" + ObjectName.quote(name)));
+    }
+
+    /**
+     * Registers this registry at the platform MBean server
+     * @param name
+     * @return the object name
+     * @throws JMException
+     */
+    public synchronized ObjectName register(ObjectName name) throws JMException {
+        if (this.objectName != null) {
+            throw new IllegalStateException("Already registered as " + this.objectName);
+        }
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        this.objectName = server.registerMBean(this, name).getObjectName();
+        return this.objectName;
+    }
+
+    @Override
+    public void reset() {
+        solves.reset();
+        failures.reset();
+        restarts.reset();
+        iterations.reset();
+        evaluations.reset();
+        latencyHistogram.reset();
+        iterationsHistogram.reset();
+    }
+
+    /**
+     * Returns a snapshot of all metrics
+     * @return
+     */
+    public NewtonRaphsonMetricsSnapshot snapshot() {
+        return new NewtonRaphsonMetricsSnapshot(solves.sum(),
+                                                failures.sum(),
+                                                restarts.sum(),
+                                                iterations.sum(),
+                                                evaluations.sum(),
+                                                latencyHistogram.snapshot(),
+                                                iterationsHistogram.snapshot());
+    }
+
+    @Override
+    public String toString() {
+        return snapshot().toString();
+    }
+
+    /**
+     * Unregisters this registry from the platform MBean server
+     * @throws JMException
+     */
+    public synchronized void unregister() throws JMException {
+        if (this.objectName != null) {
+            ManagementFactory.getPlatformMBeanServer().unregisterMBean(this.objectName);
+            this.objectName = null;
+        }
+    }
+
+    /**
+     * Records a solve
+     * @param success
+     * @param tries
+     * @param iterations
+     * @param evaluations
+     * @param nanos
+     */
+    void record(boolean success, int tries, int iterations, long evaluations, long nanos) {
+        this.solves.increment();
+        if (!success) {
+            this.failures.increment();
+        }
+        if (tries > 1) {
+            this.restarts.add(tries - 1);
+        }
+        this.iterations.add(iterations);
+        this.evaluations.add(evaluations);
+        this.latencyHistogram.record(nanos);
+        this.iterationsHistogram.record(iterations);
+    }
+}
@@ -0,0 +1,62 @@
+/*
+ * Copyright 2015 Fabian Prasser
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.linearbits.newtonraphson;
+
+/**
+ * Management interface of the metrics registry, as exposed via JMX
+ * @author Fabian Prasser
+ */
+public interface NewtonRaphsonMetricsMXBean {
+
+    /** Returns the total number of function evaluations */
+    public long getEvaluations();
+
+    /** Returns the number of solves that did not find a solution */
+    public long getFailures();
+
+    /** Returns the total number of iterations */
+    public long getIterations();
+
+    /** Returns the mean number of iterations per solve */
+    public double getIterationsMean();
+
+    /** Returns the 99th percentile of the number of iterations per solve */
+    public long getIterationsP99();
+
+    /** Returns the maximal solve latency in microseconds */
+    public double getLatencyMax();
+
+    /** Returns the mean solve latency in microseconds */
+    public double getLatencyMean();
+
+    /** Returns the median solve latency in microseconds */
+    public double getLatencyP50();
+
+    /** Returns the 90th percentile of the solve latency in microseconds */
+    public double getLatencyP90();
+
+    /** Returns the 99th percentile of the solve latency in microseconds */
+    public double getLatencyP99();
+
+    /** Returns the total number of restarts, i.e. tries beyond the first one of each solve */
+    public long getRestarts();
+
+    /** Returns the number of solves */
+    public long getSolves();
+
+    /** Resets all metrics */
+    public void reset();
+}
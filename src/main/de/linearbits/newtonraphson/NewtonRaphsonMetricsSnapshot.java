@@ -0,0 +1,127 @@
+/*
+ * Copyright 2015 Fabian Prasser
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.linearbits.newtonraphson;
+
+/**
+ * An immutable snapshot of a metrics registry, e.g. for exporting it to monitoring systems
+ * @author Fabian Prasser
+ */
+public class NewtonRaphsonMetricsSnapshot {
+
+    /** Evaluations */
+    private final long              evaluations;
+    /** Failures */
+    private final long              failures;
+    /** Iterations */
+    private final long              iterations;
+    /** Iterations per solve */
+    private final HistogramSnapshot iterationsHistogram;
+    /** Latency per solve in nanoseconds */
+    private final HistogramSnapshot latencyHistogram;
+    /** Restarts */
+    private final long              restarts;
+    /** Solves */
+    private final long              solves;
+
+    /**
+     * Creates a new instance
+     * @param solves
+     * @param failures
+     * @param restarts
+     * @param iterations
+     * @param evaluations
+     * @param latencyHistogram
+     * @param iterationsHistogram
+     */
+    NewtonRaphsonMetricsSnapshot(long solves,
+                                 long failures,
+                                 long restarts,
+                                 long iterations,
+                                 long evaluations,
+                                 HistogramSnapshot latencyHistogram,
+                                 HistogramSnapshot iterationsHistogram) {
+        this.solves = solves;
+        this.failures = failures;
+        this.restarts = restarts;
+        this.iterations = iterations;
+        this.evaluations = evaluations;
+        this.latencyHistogram = latencyHistogram;
+        this.iterationsHistogram = iterationsHistogram;
+    }
+
+    /**
+     * Returns the total number of function evaluations
+     */
+    public long getEvaluations() {
+        return evaluations;
+    }
+
+    /**
+     * Returns the number of solves that did not find a solution
+     */
+    public long getFailures() {
+        return failures;
+    }
+
+    /**
+     * Returns the total number of iterations
+     */
+    public long getIterations() {
+        return iterations;
+    }
+
+    /**
+     * Returns the distribution of iterations per solve
+     */
+    public HistogramSnapshot getIterationsHistogram() {
+        return iterationsHistogram;
+    }
+
+    /**
+     * Returns the distribution of solve latencies in nanoseconds
+     */
+    public HistogramSnapshot getLatencyHistogram() {
+        return latencyHistogram;
+    }
+
+    /**
+     * Returns the total number of restarts
+     */
+    public long getRestarts() {
+        return restarts;
+    }
+
+    /**
+     * Returns the number of solves
+     */
+    public long getSolves() {
+        return solves;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder builder = new StringBuilder();
+        builder.append("Metrics: (Solves: ").append(solves);
+        builder.append(", Failures: ").append(failures);
+        builder.append(", Restarts: ").append(restarts);
+        builder.append(", Iterations: ").append(iterations);
+        builder.append(", Evaluations: ").append(evaluations);
+        builder.append(", Latency [ns]: ").append(latencyHistogram);
+        builder.append(", Iterations per solve: ").append(iterationsHistogram);
+        builder.append(")");
+        return builder.toString();
+    }
+}
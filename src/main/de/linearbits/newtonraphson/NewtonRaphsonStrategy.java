@@ -0,0 +1,38 @@
+/*
+ * Copyright 2015 Fabian Prasser
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.linearbits.newtonraphson;
+
+/**
+ * The strategies that can be used for obtaining Jacobians
+ * @author Fabian Prasser
+ */
+public enum NewtonRaphsonStrategy {
+
+    /** Object functions and derivatives are obtained from the master function */
+    MASTER_FUNCTION,
+
+    /** Derivatives are obtained from the functions implementing them */
+    DERIVATIVES,
+
+    /** Derivatives are approximated with forward differences of the object functions */
+    FINITE_DIFFERENCES,
+
+    /** The Jacobian is approximated with finite differences once per try and then updated with Broyden's method */
+    BROYDEN,
+
+    /** The cheapest strategy is selected by profiling the functions provided and re-evaluated periodically */
+    AUTO
+}
@@ -0,0 +1,247 @@
+/*
+ * Copyright 2015 Fabian Prasser
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.linearbits.newtonraphson;
+
+import java.nio.ByteBuffer;
+
+/**
+ * This class solves batches of problems, which are read from and written to buffers, e.g. direct buffers
+ * wrapping native memory that is shared with a native producer. Problems and results are accessed in place,
+ * with the byte order of the buffers, which should be the native order for native producers. Records are
+ * stored consecutively, starting at the positions of the buffers, which are not modified.<br>
+ * <br>
+ * Problems consist of a start value followed by the parameters, all of which are doubles:
+ * <pre>
+ * offset  0: double startX
+ * offset  8: double startY
+ * offset 16: double parameters[parameters]
+ * </pre>
+ * Results have a size of 48 bytes:
+ * <pre>
+ * offset  0: double x, NaN if no solution has been found
+ * offset  8: double y, NaN if no solution has been found
+ * offset 16: double quality
+ * offset 24: int    tries
+ * offset 28: int    iterations
+ * offset 32: int    evaluations
+ * offset 36: int    singularities
+ * offset 40: int    time [ms]
+ * offset 44: int    solved, 1 if a solution has been found, 0 otherwise
+ * </pre>
+ * For problems without parameters, a single solver is used and solving does not allocate any memory. For
+ * problems with parameters, the factory is called with the parameters of each problem. The array passed
+ * is reused and must not be retained. Instances are not thread-safe, but multiple instances can solve
+ * disjoint ranges of the same buffers concurrently.
+ *
+ * @author Fabian Prasser
+ */
+public class OffHeapBatch2D {
+
+    /** Offset of the start value in problems */
+    public static final int                          PROBLEM_START        = 0;
+    /** Offset of the parameters in problems */
+    public static final int                          PROBLEM_PARAMETERS   = 16;
+    /** Offset in results */
+    public static final int                          RESULT_X             = 0;
+    /** Offset in results */
+    public static final int                          RESULT_Y             = 8;
+    /** Offset in results */
+    public static final int                          RESULT_QUALITY       = 16;
+    /** Offset in results */
+    public static final int                          RESULT_TRIES         = 24;
+    /** Offset in results */
+    public static final int                          RESULT_ITERATIONS    = 28;
+    /** Offset in results */
+    public static final int                          RESULT_EVALUATIONS   = 32;
+    /** Offset in results */
+    public static final int                          RESULT_SINGULARITIES = 36;
+    /** Offset in results */
+    public static final int                          RESULT_TIME          = 40;
+    /** Offset in results */
+    public static final int                          RESULT_SOLVED        = 44;
+    /** Size of results */
+    public static final int                          RESULT_SIZE          = 48;
+
+    /** Factory, null if a single solver is used */
+    private final Function<double[], NewtonRaphson2D> factory;
+    /** Measures of the last batch */
+    private final NewtonRaphsonMeasures              measures             = new NewtonRaphsonMeasures();
+    /** Number of parameters */
+    private final int                                parameters;
+    /** Solver, null if a factory is used */
+    private final NewtonRaphson2D                    solver;
+    /** Workspace: parameters */
+    private final double[]                           workspaceParameters;
+    /** Workspace: solution */
+    private final Vector2D                           workspaceSolution    = new Vector2D();
+    /** Workspace: start value */
+    private final Vector2D                           workspaceStart       = new Vector2D();
+
+    /**
+     * Creates a new instance for problems with the given number of parameters, which are passed to the factory
+     * @param factory
+     * @param parameters
+     */
+    public OffHeapBatch2D(Function<double[], NewtonRaphson2D> factory, int parameters) {
+        if (factory == null) {
+            throw new NullPointerException("Factory must not be null");
+        }
+        if (parameters < 0) {
+            throw new IllegalArgumentException("Invalid number of parameters");
+        }
+        this.factory = factory;
+        this.solver = null;
+        this.parameters = parameters;
+        this.workspaceParameters = new double[parameters];
+    }
+
+    /**
+     * Creates a new instance for problems without parameters, which are solved with the given solver
+     * @param solver
+     */
+    public OffHeapBatch2D(NewtonRaphson2D solver) {
+        if (solver == null) {
+            throw new NullPointerException("Solver must not be null");
+        }
+        this.factory = null;
+        this.solver = solver;
+        this.parameters = 0;
+        this.workspaceParameters = new double[0];
+    }
+
+    /**
+     * Returns measures of the last batch. The measures are summed up over all problems, the quality is
+     * the minimum. The object is reused by subsequent batches.
+     * @return
+     */
+    public NewtonRaphsonMeasures getMeasures() {
+        return measures;
+    }
+
+    /**
+     * Returns the number of parameters per problem
+     * @return
+     */
+    public int getParameters() {
+        return parameters;
+    }
+
+    /**
+     * Returns the size of problems in bytes
+     * @return
+     */
+    public int getProblemSize() {
+        return PROBLEM_PARAMETERS + 8 * parameters;
+    }
+
+    /**
+     * Solves all problems in the given buffer, whose remaining bytes must be a multiple of the size of
+     * problems, and writes the results to the other buffer
+     * @param problems
+     * @param results
+     * @return the number of problems solved
+     */
+    public int solve(ByteBuffer problems, ByteBuffer results) {
+        int size = getProblemSize();
+        if (problems.remaining() % size != 0) {
+            throw new IllegalArgumentException("Invalid problem buffer");
+        }
+        return solve(problems, results, 0, problems.remaining() / size);
+    }
+
+    /**
+     * Solves the given range of problems in the given buffer and writes the results to the according
+     * range of the other buffer
+     * @param problems
+     * @param results
+     * @param from inclusive
+     * @param to exclusive
+     * @return the number of problems solved
+     */
+    public int solve(ByteBuffer problems, ByteBuffer results, int from, int to) {
+
+        // Check
+        int size = getProblemSize();
+        if (from < 0 || from > to) {
+            throw new IllegalArgumentException("Invalid range");
+        }
+        if ((long) to * size > problems.remaining()) {
+            throw new IllegalArgumentException("Invalid problem buffer");
+        }
+        if ((long) to * RESULT_SIZE > results.remaining()) {
+            throw new IllegalArgumentException("Invalid result buffer");
+        }
+
+        // Prepare
+        long totalStart = System.currentTimeMillis();
+        int problemOffset = problems.position();
+        int resultOffset = results.position();
+        Vector2D start = this.workspaceStart;
+        Vector2D solution = this.workspaceSolution;
+        double[] parameters = this.workspaceParameters;
+        NewtonRaphson2D solver = this.solver;
+        if (solver == null && this.parameters == 0) {
+            solver = factory.evaluate(parameters);
+        }
+
+        // Solve
+        int solved = 0;
+        int tries = 0;
+        int iterations = 0;
+        int evaluations = 0;
+        int singularities = 0;
+        double quality = 1d;
+        for (int i = from; i < to; i++) {
+
+            // Read
+            int problem = problemOffset + i * size;
+            start.x = problems.getDouble(problem + PROBLEM_START);
+            start.y = problems.getDouble(problem + PROBLEM_START + 8);
+            if (this.parameters > 0) {
+                for (int j = 0; j < parameters.length; j++) {
+                    parameters[j] = problems.getDouble(problem + PROBLEM_PARAMETERS + 8 * j);
+                }
+                solver = factory.evaluate(parameters);
+            }
+
+            // Solve
+            boolean success = solver.solve(start, solution);
+            NewtonRaphsonMeasures current = solver.getMeasures();
+
+            // Write
+            int result = resultOffset + i * RESULT_SIZE;
+            results.putDouble(result + RESULT_X, solution.x);
+            results.putDouble(result + RESULT_Y, solution.y);
+            results.putDouble(result + RESULT_QUALITY, current.getQuality());
+            results.putInt(result + RESULT_TRIES, current.getTries());
+            results.putInt(result + RESULT_ITERATIONS, current.getIterations());
+            results.putInt(result + RESULT_EVALUATIONS, current.getEvaluations());
+            results.putInt(result + RESULT_SINGULARITIES, current.getSingularities());
+            results.putInt(result + RESULT_TIME, current.getTime());
+            results.putInt(result + RESULT_SOLVED, success ? 1 : 0);
+
+            // Measure
+            solved += success ? 1 : 0;
+            tries += current.getTries();
+            iterations += current.getIterations();
+            evaluations += current.getEvaluations();
+            singularities += current.getSingularities();
+            quality = Math.min(quality, current.getQuality());
+        }
+        measures.set(iterations, tries, evaluations, singularities, (int) (System.currentTimeMillis() - totalStart), quality);
+        return solved;
+    }
+}
@@ -0,0 +1,560 @@
+/*
+ * Copyright 2015 Fabian Prasser
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.linearbits.newtonraphson;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * This class implements a system of two bivariate polynomial equations. Coefficients are stored in
+ * flat arrays, where the coefficient of x^i * y^j is stored at index i * (degree + 1) + j. Object
+ * functions and exact derivatives are evaluated at the same time with nested Horner schemes.
+ * Instances can be passed to {@link NewtonRaphson2D} as a master function. For systems with a
+ * total degree of at most two, all real roots can be computed without iterating over the system,
+ * based on the resultant of both equations.<br>
+ * <br>
+ * The function interface reuses result objects and is therefore not thread-safe. Use
+ * {@link #evaluate(Vector2D, Vector2D, SquareMatrix2D)} for concurrent evaluation.
+ *
+ * @author Fabian Prasser
+ */
+public class PolynomialSystem2D implements Function<Vector2D, Pair<Vector2D, SquareMatrix2D>> {
+
+    /** Relative tolerance used for detecting multiple roots */
+    private static final double          MULTIPLE_ROOT_TOLERANCE = 1e-10;
+    /** Number of Newton-Raphson steps used for polishing roots */
+    private static final int             POLISHING_STEPS         = 3;
+
+    /** Coefficients of the first equation */
+    private final double[]               coefficients1;
+    /** Coefficients of the second equation */
+    private final double[]               coefficients2;
+    /** Degree in each variable */
+    private final int                    degree;
+    /** Result object */
+    private final SquareMatrix2D         derivatives             = new SquareMatrix2D();
+    /** Result object */
+    private final Vector2D               object                  = new Vector2D();
+    /** Result object */
+    private final Pair<Vector2D, SquareMatrix2D> result          = new Pair<Vector2D, SquareMatrix2D>(object, derivatives);
+
+    /**
+     * Creates a new instance. The coefficient of x^i * y^j is expected at index i * (degree + 1) + j.
+     * @param degree maximal degree in each variable
+     * @param coefficients1
+     * @param coefficients2
+     */
+    public PolynomialSystem2D(int degree, double[] coefficients1, double[] coefficients2) {
+        if (degree < 0 || coefficients1 == null || coefficients2 == null ||
+            coefficients1.length != (degree + 1) * (degree + 1) ||
+            coefficients2.length != (degree + 1) * (degree + 1)) {
+            throw new IllegalArgumentException("Invalid coefficients");
+        }
+        this.degree = degree;
+        this.coefficients1 = coefficients1.clone();
+        this.coefficients2 = coefficients2.clone();
+    }
+
+    /**
+     * Creates a system of two quadratic equations of the form
+     * a * x^2 + b * x * y + c * y^2 + d * x + e * y + f = 0. Each array contains the
+     * coefficients (a, b, c, d, e, f).
+     * @param quadratic1
+     * @param quadratic2
+     * @return
+     */
+    public static PolynomialSystem2D quadratic(double[] quadratic1, double[] quadratic2) {
+        return new PolynomialSystem2D(2, toCoefficients(quadratic1), toCoefficients(quadratic2));
+    }
+
+    /**
+     * Converts the coefficients (a, b, c, d, e, f) of a quadratic equation into the flat representation
+     * @param quadratic
+     * @return
+     */
+    private static double[] toCoefficients(double[] quadratic) {
+        if (quadratic == null || quadratic.length != 6) {
+            throw new IllegalArgumentException("Invalid coefficients");
+        }
+        double[] result = new double[9];
+        result[2 * 3 + 0] = quadratic[0];
+        result[1 * 3 + 1] = quadratic[1];
+        result[0 * 3 + 2] = quadratic[2];
+        result[1 * 3 + 0] = quadratic[3];
+        result[0 * 3 + 1] = quadratic[4];
+        result[0 * 3 + 0] = quadratic[5];
+        return result;
+    }
+
+    @Override
+    public Pair<Vector2D, SquareMatrix2D> evaluate(Vector2D input) {
+        evaluate(input, object, derivatives);
+        return result;
+    }
+
+    /**
+     * Evaluates the object functions and their derivatives at the given point. This method is
+     * thread-safe.
+     * @param input
+     * @param object
+     * @param derivatives
+     */
+    public void evaluate(Vector2D input, Vector2D object, SquareMatrix2D derivatives) {
+        evaluate(coefficients1, input.x, input.y, object, derivatives, true);
+        evaluate(coefficients2, input.x, input.y, object, derivatives, false);
+    }
+
+    /**
+     * Returns the coefficient of x^i * y^j in the given equation
+     * @param equation 1 or 2
+     * @param i
+     * @param j
+     * @return
+     */
+    public double getCoefficient(int equation, int i, int j) {
+        if (i < 0 || j < 0 || i > degree || j > degree) {
+            return 0d;
+        }
+        return (equation == 1 ? coefficients1 : coefficients2)[i * (degree + 1) + j];
+    }
+
+    /**
+     * Returns the maximal degree in each variable
+     * @return
+     */
+    public int getDegree() {
+        return degree;
+    }
+
+    /**
+     * Returns the total degree of the system
+     * @return
+     */
+    public int getTotalDegree() {
+        int result = 0;
+        for (int i = 0; i <= degree; i++) {
+            for (int j = 0; j <= degree; j++) {
+                if (getCoefficient(1, i, j) != 0d || getCoefficient(2, i, j) != 0d) {
+                    result = Math.max(result, i + j);
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Returns all real roots of a system with a total degree of at most two, without iterating over
+     * the system. The resultant of both equations with respect to x is a univariate polynomial of degree
+     * at most four in y, whose real roots are isolated between the roots of its derivatives. The according
+     * values of x are obtained by back-substitution and all roots are polished with a few Newton-Raphson steps.
+     * Returns an empty array if there are no or infinitely many roots.
+     * @param accuracy
+     * @return
+     */
+    public Vector2D[] roots(double accuracy) {
+
+        // Check
+        if (getTotalDegree() > 2) {
+            throw new IllegalStateException("Closed-form solutions are only supported for systems with a total degree of at most two");
+        }
+
+        // Roots of the resultant with respect to x
+        List<Vector2D> candidates = new ArrayList<Vector2D>();
+        double[] resultant = resultant(false);
+        if (resultant != null) {
+            for (double y : roots(resultant)) {
+                for (double x : backSubstitute(y, false)) {
+                    candidates.add(new Vector2D(x, y));
+                }
+            }
+        } else {
+
+            // Retry with respect to y, if the equations do not depend on x
+            resultant = resultant(true);
+            if (resultant == null) {
+                return new Vector2D[0];
+            }
+            for (double x : roots(resultant)) {
+                for (double y : backSubstitute(x, true)) {
+                    candidates.add(new Vector2D(x, y));
+                }
+            }
+        }
+
+        // Polish, verify and remove duplicates
+        List<Vector2D> result = new ArrayList<Vector2D>();
+        Vector2D object = new Vector2D();
+        SquareMatrix2D derivatives = new SquareMatrix2D();
+        outer: for (Vector2D candidate : candidates) {
+            for (int i = 0; i < POLISHING_STEPS; i++) {
+                evaluate(candidate, object, derivatives);
+                if (derivatives.condition() > NewtonRaphsonConfiguration.DEFAULT_CONDITION_LIMIT) {
+                    break;
+                }
+                derivatives.inverse();
+                object.times(derivatives);
+                candidate.minus(object);
+            }
+            evaluate(candidate, object, derivatives);
+            if (candidate.isNaN() || Math.abs(object.x) > accuracy || Math.abs(object.y) > accuracy) {
+                continue;
+            }
+            for (Vector2D root : result) {
+                if (Math.abs(root.x - candidate.x) <= Math.sqrt(accuracy) * Math.max(1d, Math.abs(root.x)) &&
+                    Math.abs(root.y - candidate.y) <= Math.sqrt(accuracy) * Math.max(1d, Math.abs(root.y))) {
+                    continue outer;
+                }
+            }
+            result.add(candidate);
+        }
+        return result.toArray(new Vector2D[result.size()]);
+    }
+
+    /**
+     * Returns the values of one variable, for which both equations vanish, given the value of the other variable
+     * @param value
+     * @param swap whether the value is x instead of y
+     * @return
+     */
+    private double[] backSubstitute(double value, boolean swap) {
+
+        // Coefficients of both equations as quadratic polynomials in the unknown variable
+        double[] first = new double[3];
+        double[] second = new double[3];
+        for (int k = 0; k <= 2; k++) {
+            first[k] = evaluate(getPolynomial(1, k, swap), value);
+            second[k] = evaluate(getPolynomial(2, k, swap), value);
+        }
+
+        // Solve the first equation and check the second one, or vice versa
+        double[] candidates = roots(first);
+        double[] check = second;
+        if (candidates == null) {
+            candidates = roots(second);
+            check = first;
+            if (candidates == null) {
+                return new double[0];
+            }
+        }
+        double[] result = new double[candidates.length];
+        int count = 0;
+        for (double candidate : candidates) {
+            double residual = evaluate(check, candidate);
+            double scale = Math.abs(check[0]) + Math.abs(check[1] * candidate) + Math.abs(check[2] * candidate * candidate);
+            if (Math.abs(residual) <= Math.sqrt(MULTIPLE_ROOT_TOLERANCE) * Math.max(scale, 1d)) {
+                result[count++] = candidate;
+            }
+        }
+        return Arrays.copyOf(result, count);
+    }
+
+    /**
+     * Evaluates one equation and its derivatives with nested Horner schemes
+     * @param coefficients
+     * @param x
+     * @param y
+     * @param object
+     * @param derivatives
+     * @param first
+     */
+    private void evaluate(double[] coefficients, double x, double y, Vector2D object, SquareMatrix2D derivatives, boolean first) {
+        int size = degree + 1;
+        double value = 0d, dx = 0d, dy = 0d;
+        for (int i = degree; i >= 0; i--) {
+            double q = 0d, qy = 0d;
+            int offset = i * size;
+            for (int j = degree; j >= 0; j--) {
+                qy = qy * y + q;
+                q = q * y + coefficients[offset + j];
+            }
+            dx = dx * x + value;
+            value = value * x + q;
+            dy = dy * x + qy;
+        }
+        if (first) {
+            object.x = value;
+            derivatives.x1 = dx;
+            derivatives.x2 = dy;
+        } else {
+            object.y = value;
+            derivatives.y1 = dx;
+            derivatives.y2 = dy;
+        }
+    }
+
+    /**
+     * Returns the coefficient of u^k of the given equation as a polynomial in the other variable v,
+     * where u is x and v is y, or vice versa, if swapped.
+     * @param equation
+     * @param k
+     * @param swap
+     * @return
+     */
+    private double[] getPolynomial(int equation, int k, boolean swap) {
+        double[] result = new double[3];
+        for (int l = 0; l <= 2; l++) {
+            result[l] = swap ? getCoefficient(equation, l, k) : getCoefficient(equation, k, l);
+        }
+        return result;
+    }
+
+    /**
+     * Computes the resultant of both equations with respect to x, or with respect to y, if swapped.
+     * Returns null, if it vanishes identically.
+     * @param swap
+     * @return
+     */
+    private double[] resultant(boolean swap) {
+
+        // Coefficients of both equations as polynomials in the variable to eliminate
+        double[][] p = new double[3][];
+        double[][] q = new double[3][];
+        for (int k = 0; k <= 2; k++) {
+            p[k] = getPolynomial(1, k, swap);
+            q[k] = getPolynomial(2, k, swap);
+        }
+        int m = isZero(p[2]) ? (isZero(p[1]) ? 0 : 1) : 2;
+        int n = isZero(q[2]) ? (isZero(q[1]) ? 0 : 1) : 2;
+
+        // Sylvester resultants for all combinations of degrees
+        double[] result;
+        if (m == 0 && n == 0) {
+            return null;
+        } else if (m == 0) {
+            result = p[0];
+        } else if (n == 0) {
+            result = q[0];
+        } else if (m == 1 && n == 1) {
+            result = subtract(multiply(p[1], q[0]), multiply(q[1], p[0]));
+        } else if (m == 1) {
+            result = add(subtract(multiply(q[2], multiply(p[0], p[0])), multiply(q[1], multiply(p[1], p[0]))), multiply(q[0], multiply(p[1], p[1])));
+        } else if (n == 1) {
+            result = add(subtract(multiply(p[2], multiply(q[0], q[0])), multiply(p[1], multiply(q[1], q[0]))), multiply(p[0], multiply(q[1], q[1])));
+        } else {
+            double[] ac = subtract(multiply(p[2], q[0]), multiply(q[2], p[0]));
+            double[] ab = subtract(multiply(p[2], q[1]), multiply(q[2], p[1]));
+            double[] bc = subtract(multiply(p[1], q[0]), multiply(q[1], p[0]));
+            result = subtract(multiply(ac, ac), multiply(ab, bc));
+        }
+        return isZero(result) ? null : result;
+    }
+
+    /**
+     * Returns all real roots of the given univariate polynomial with coefficients stored from the lowest
+     * to the highest degree, or null if the polynomial vanishes identically. Roots are isolated between
+     * the real roots of the derivative.
+     * @param polynomial
+     * @return
+     */
+    private double[] roots(double[] polynomial) {
+
+        polynomial = trim(polynomial);
+        if (polynomial == null) {
+            return null;
+        }
+        int n = polynomial.length - 1;
+        if (n == 0) {
+            return new double[0];
+        } else if (n == 1) {
+            return new double[] { -polynomial[0] / polynomial[1] };
+        } else if (n == 2) {
+            double a = polynomial[2], b = polynomial[1], c = polynomial[0];
+            double discriminant = b * b - 4d * a * c;
+            if (discriminant < 0d) {
+                // Multiple root, which may be missed because of rounding errors
+                if (-discriminant <= MULTIPLE_ROOT_TOLERANCE * b * b) {
+                    return new double[] { -b / (2d * a) };
+                }
+                return new double[0];
+            }
+            // Numerically stable variant
+            double temp = -0.5d * (b + Math.copySign(Math.sqrt(discriminant), b));
+            if (temp == 0d) {
+                return new double[] { 0d };
+            }
+            double root1 = temp / a;
+            double root2 = c / temp;
+            return root1 < root2 ? new double[] { root1, root2 } : new double[] { root2, root1 };
+        }
+
+        // Critical points
+        double[] derivative = new double[n];
+        for (int i = 1; i <= n; i++) {
+            derivative[i - 1] = i * polynomial[i];
+        }
+        double[] critical = roots(derivative);
+        Arrays.sort(critical);
+
+        // Cauchy bound
+        double bound = 0d;
+        for (int i = 0; i < n; i++) {
+            bound = Math.max(bound, Math.abs(polynomial[i] / polynomial[n]));
+        }
+        bound += 1d;
+
+        // Isolate roots
+        double[] points = new double[critical.length + 2];
+        points[0] = -bound;
+        System.arraycopy(critical, 0, points, 1, critical.length);
+        points[points.length - 1] = bound;
+        double[] result = new double[n];
+        int count = 0;
+        for (int i = 0; i < points.length; i++) {
+
+            // Multiple roots at critical points
+            if (i > 0 && i < points.length - 1) {
+                double value = evaluate(polynomial, points[i]);
+                if (Math.abs(value) <= MULTIPLE_ROOT_TOLERANCE * scale(polynomial, points[i])) {
+                    if (count == 0 || result[count - 1] != points[i]) {
+                        result[count++] = points[i];
+                    }
+                    continue;
+                }
+            }
+
+            // Sign changes between critical points
+            if (i < points.length - 1) {
+                double lower = points[i];
+                double upper = points[i + 1];
+                double valueLower = evaluate(polynomial, lower);
+                double valueUpper = evaluate(polynomial, upper);
+                if (valueLower != 0d && valueUpper != 0d && (valueLower < 0d) != (valueUpper < 0d)) {
+                    while (true) {
+                        double middle = 0.5d * (lower + upper);
+                        if (middle <= lower || middle >= upper) {
+                            break;
+                        }
+                        double value = evaluate(polynomial, middle);
+                        if (value == 0d) {
+                            lower = upper = middle;
+                            break;
+                        } else if ((value < 0d) == (valueLower < 0d)) {
+                            lower = middle;
+                        } else {
+                            upper = middle;
+                        }
+                    }
+                    if (count < result.length) {
+                        result[count++] = 0.5d * (lower + upper);
+                    }
+                }
+            }
+        }
+        return Arrays.copyOf(result, count);
+    }
+
+    /**
+     * Evaluates the given univariate polynomial
+     * @param polynomial
+     * @param x
+     * @return
+     */
+    private static double evaluate(double[] polynomial, double x) {
+        double result = 0d;
+        for (int i = polynomial.length - 1; i >= 0; i--) {
+            result = result * x + polynomial[i];
+        }
+        return result;
+    }
+
+    /**
+     * Returns the sum of the absolute values of all terms of the given polynomial at the given point
+     * @param polynomial
+     * @param x
+     * @return
+     */
+    private static double scale(double[] polynomial, double x) {
+        double result = 0d;
+        double power = 1d;
+        for (int i = 0; i < polynomial.length; i++) {
+            result += Math.abs(polynomial[i]) * power;
+            power *= Math.abs(x);
+        }
+        return result;
+    }
+
+    /**
+     * Returns whether all coefficients are zero
+     * @param polynomial
+     * @return
+     */
+    private static boolean isZero(double[] polynomial) {
+        for (double coefficient : polynomial) {
+            if (coefficient != 0d) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Adds two polynomials
+     * @param p1
+     * @param p2
+     * @return
+     */
+    private static double[] add(double[] p1, double[] p2) {
+        double[] result = new double[Math.max(p1.length, p2.length)];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = (i < p1.length ? p1[i] : 0d) + (i < p2.length ? p2[i] : 0d);
+        }
+        return result;
+    }
+
+    /**
+     * Multiplies two polynomials
+     * @param p1
+     * @param p2
+     * @return
+     */
+    private static double[] multiply(double[] p1, double[] p2) {
+        double[] result = new double[p1.length + p2.length - 1];
+        for (int i = 0; i < p1.length; i++) {
+            for (int j = 0; j < p2.length; j++) {
+                result[i + j] += p1[i] * p2[j];
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Subtracts two polynomials
+     * @param p1
+     * @param p2
+     * @return
+     */
+    private static double[] subtract(double[] p1, double[] p2) {
+        double[] result = new double[Math.max(p1.length, p2.length)];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = (i < p1.length ? p1[i] : 0d) - (i < p2.length ? p2[i] : 0d);
+        }
+        return result;
+    }
+
+    /**
+     * Removes leading zero coefficients. Returns null if all coefficients are zero.
+     * @param polynomial
+     * @return
+     */
+    private static double[] trim(double[] polynomial) {
+        int length = polynomial.length;
+        while (length > 0 && polynomial[length - 1] == 0d) {
+            length--;
+        }
+        return length == 0 ? null : Arrays.copyOf(polynomial, length);
+    }
+}
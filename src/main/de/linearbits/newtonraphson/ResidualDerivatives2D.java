@@ -0,0 +1,26 @@
+/*
+ * Copyright 2015 Fabian Prasser
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.linearbits.newtonraphson;
+
+/**
+ * This interface defines the derivatives of a {@link ResidualFunction2D}, i.e. the columns of the m x 2
+ * Jacobian, which are stored in two buffers
+ * @author Fabian Prasser
+ * 
+ */
+public interface ResidualDerivatives2D {
+    public void evaluate(double x, double y, double[] derivativesX, double[] derivativesY);
+}
@@ -0,0 +1,299 @@
+/*
+ * Copyright 2015 Fabian Prasser
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.linearbits.newtonraphson;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.util.BitSet;
+import java.util.zip.CRC32;
+
+/**
+ * This class solves batches of problems and appends the result of each problem to a journal, which is
+ * synchronized with the storage device periodically. If a batch is solved again with the same journal,
+ * e.g. after the process has been terminated, the results in the journal are delivered again and only
+ * the remaining problems are solved. Journals are bound to the configuration, the factory and the problems,
+ * and are rejected if any of them changed. Incomplete records at the end of a journal are discarded.<br>
+ * <br>
+ * The journal consists of a header followed by records in the order in which problems have been solved.
+ * All values are written in network byte order:
+ * <pre>
+ *   header := int magic, int version, long configuration, long problems, int count
+ *   record := int index, byte solved, double x, double y, int tries, int iterations, int evaluations,
+ *             int singularities, int time, double quality, int crc
+ * </pre>
+ * The configuration is a hash of the settings, including the parameters of the termination policy and of
+ * the sampler, and of the name of the factory, the problems are a hash of all problems. The CRC-32 of each
+ * record covers all preceding values of the record.
+ *
+ * @author Fabian Prasser
+ */
+public class ResumableBatch2D {
+
+    /** Constant */
+    public static final int                          DEFAULT_SYNC_INTERVAL = 1000;
+    /** Constant */
+    private static final int                         HEADER_SIZE           = 28;
+    /** Constant */
+    private static final int                         MAGIC                 = 0x4E524A32;
+    /** Constant */
+    private static final int                         RECORD_SIZE           = 53;
+    /** Constant */
+    private static final int                         VERSION               = 1;
+
+    /** Configuration */
+    private final NewtonRaphsonConfiguration<?>      configuration;
+    /** Factory */
+    private final Function<double[], NewtonRaphson2D> factory;
+    /** Journal */
+    private final File                               journal;
+    /** Number of results recovered from the journal by the last batch */
+    private int                                      recovered;
+    /** Interval in milliseconds, in which the journal is synchronized */
+    private int                                      syncInterval          = DEFAULT_SYNC_INTERVAL;
+
+    /**
+     * Creates a new instance
+     * @param factory
+     * @param configuration
+     * @param journal
+     */
+    public ResumableBatch2D(Function<double[], NewtonRaphson2D> factory,
+                            NewtonRaphsonConfiguration<?> configuration,
+                            File journal) {
+        if (factory == null || configuration == null || journal == null) {
+            throw new IllegalArgumentException("Invalid arguments");
+        }
+        this.factory = factory;
+        this.configuration = configuration.copy();
+        this.journal = journal;
+    }
+
+    /**
+     * Returns the journal
+     * @return
+     */
+    public File getJournal() {
+        return journal;
+    }
+
+    /**
+     * Returns the number of results, which have been recovered from the journal by the last batch
+     * @return
+     */
+    public int getRecovered() {
+        return recovered;
+    }
+
+    /**
+     * Returns the interval in milliseconds, in which the journal is synchronized
+     * @return
+     */
+    public int getSyncInterval() {
+        return syncInterval;
+    }
+
+    /**
+     * Solves the given problems and passes the results to the consumer. Each problem consists of the start
+     * value followed by the parameters passed to the factory. Results recovered from the journal are passed
+     * first, in the order in which they have been journaled, followed by the remaining results in order.
+     * Results are journaled before they are passed to the consumer.
+     * @param problems
+     * @param consumer
+     * @throws IOException if the journal cannot be accessed or belongs to a different batch
+     */
+    public void solve(double[][] problems, BatchConsumer2D consumer) throws IOException {
+
+        // Check
+        for (double[] problem : problems) {
+            if (problem == null || problem.length < 2) {
+                throw new IllegalArgumentException("Invalid problem");
+            }
+        }
+
+        // Hashes
+        long configuration = NewtonRaphsonConfiguration.fingerprint(this.configuration.fingerprint(), factory.getClass().getName());
+        long hash = 0xcbf29ce484222325L;
+        for (double[] problem : problems) {
+            hash = NewtonRaphsonConfiguration.fingerprint(hash, problem.length);
+            for (double value : problem) {
+                hash = NewtonRaphsonConfiguration.fingerprint(hash, Double.doubleToLongBits(value));
+            }
+        }
+
+        // Recover
+        BitSet completed = new BitSet(problems.length);
+        ByteBuffer record = ByteBuffer.allocate(RECORD_SIZE);
+        CRC32 crc = new CRC32();
+        recovered = 0;
+        if (journal.length() >= HEADER_SIZE) {
+            long valid = recover(problems.length, configuration, hash, completed, record, crc, consumer);
+            try (RandomAccessFile file = new RandomAccessFile(journal, "rw")) {
+                file.setLength(valid);
+            }
+        } else {
+            FileOutputStream file = new FileOutputStream(journal);
+            try (DataOutputStream out = new DataOutputStream(file)) {
+                out.writeInt(MAGIC);
+                out.writeInt(VERSION);
+                out.writeLong(configuration);
+                out.writeLong(hash);
+                out.writeInt(problems.length);
+                out.flush();
+                file.getFD().sync();
+            }
+        }
+
+        // Solve
+        FileOutputStream file = new FileOutputStream(journal, true);
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(file))) {
+            NewtonRaphson2D shared = null;
+            long synced = System.currentTimeMillis();
+            for (int i = completed.nextClearBit(0); i < problems.length; i = completed.nextClearBit(i + 1)) {
+
+                // Solve
+                double[] problem = problems[i];
+                NewtonRaphson2D solver;
+                if (problem.length == 2) {
+                    if (shared == null) {
+                        shared = factory.evaluate(new double[0]).configure(this.configuration);
+                    }
+                    solver = shared;
+                } else {
+                    double[] parameters = new double[problem.length - 2];
+                    System.arraycopy(problem, 2, parameters, 0, parameters.length);
+                    solver = factory.evaluate(parameters).configure(this.configuration);
+                }
+                Vector2D solution = new Vector2D();
+                solver.solve(new Vector2D(problem[0], problem[1]), solution);
+                NewtonRaphsonMeasures measures = solver.getMeasures().clone();
+
+                // Journal
+                record.clear();
+                record.putInt(i);
+                record.put((byte) (solution.isNaN() ? 0 : 1));
+                record.putDouble(solution.x);
+                record.putDouble(solution.y);
+                record.putInt(measures.getTries());
+                record.putInt(measures.getIterations());
+                record.putInt(measures.getEvaluations());
+                record.putInt(measures.getSingularities());
+                record.putInt(measures.getTime());
+                record.putDouble(measures.getQuality());
+                crc.reset();
+                crc.update(record.array(), 0, RECORD_SIZE - 4);
+                record.putInt((int) crc.getValue());
+                out.write(record.array(), 0, RECORD_SIZE);
+                long time = System.currentTimeMillis();
+                if (time - synced >= syncInterval) {
+                    out.flush();
+                    file.getFD().sync();
+                    synced = time;
+                }
+
+                // Deliver
+                consumer.consume(i, solution, measures);
+            }
+            out.flush();
+            file.getFD().sync();
+        }
+    }
+
+    /**
+     * Interval in milliseconds, in which the journal is synchronized with the storage device. Results
+     * journaled within the last interval may be lost, if the system fails. Default is 1000.
+     * @param syncInterval
+     */
+    public ResumableBatch2D syncInterval(int syncInterval) {
+        if (syncInterval < 0) {
+            throw new IllegalArgumentException("Invalid sync interval");
+        }
+        this.syncInterval = syncInterval;
+        return this;
+    }
+
+    /**
+     * Reads the journal, marks and delivers the results found and returns the length of the valid prefix
+     * @param count
+     * @param configuration
+     * @param hash
+     * @param completed
+     * @param record
+     * @param crc
+     * @param consumer
+     * @return
+     * @throws IOException
+     */
+    private long recover(int count, long configuration, long hash, BitSet completed, ByteBuffer record,
+                         CRC32 crc, BatchConsumer2D consumer) throws IOException {
+
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(journal)))) {
+
+            // Header
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                throw new IOException("Invalid journal");
+            }
+            if (in.readLong() != configuration) {
+                throw new IOException("Journal was written with a different configuration");
+            }
+            if (in.readLong() != hash || in.readInt() != count) {
+                throw new IOException("Journal was written for different problems");
+            }
+
+            // Records
+            long valid = HEADER_SIZE;
+            while (true) {
+                try {
+                    in.readFully(record.array(), 0, RECORD_SIZE);
+                } catch (EOFException e) {
+                    return valid;
+                }
+                crc.reset();
+                crc.update(record.array(), 0, RECORD_SIZE - 4);
+                record.clear();
+                int index = record.getInt();
+                boolean solved = record.get() != 0;
+                double x = record.getDouble();
+                double y = record.getDouble();
+                int tries = record.getInt();
+                int iterations = record.getInt();
+                int evaluations = record.getInt();
+                int singularities = record.getInt();
+                int time = record.getInt();
+                double quality = record.getDouble();
+                if (record.getInt() != (int) crc.getValue() || index < 0 || index >= count) {
+                    return valid;
+                }
+                valid += RECORD_SIZE;
+                if (!completed.get(index)) {
+                    completed.set(index);
+                    recovered++;
+                    consumer.consume(index,
+                                     solved ? new Vector2D(x, y) : new Vector2D(Double.NaN, Double.NaN),
+                                     new NewtonRaphsonMeasures(iterations, tries, evaluations, singularities, time, quality));
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,272 @@
+/*
+ * Copyright 2015 Fabian Prasser
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.linearbits.newtonraphson;
+
+/**
+ * This class tracks a root of a system of equations, whose parameters drift over time, e.g. because
+ * the functions of the solver read live inputs. The tracker keeps the last two roots and the Jacobian
+ * at the last root. On each update, the new root is predicted with a secant step through the last two
+ * roots. The prediction is corrected with a chord step, which reuses the stored Jacobian, followed by
+ * Newton-Raphson steps. In the common case, an update thus costs two evaluations of the object functions
+ * and one evaluation of the Jacobian. A full solve with restarts is only performed, if tracking fails.<br>
+ * <br>
+ * Like the solver, instances are not thread-safe. Once warmed up, updates do not allocate any memory,
+ * as long as the functions provided do not allocate memory either.
+ *
+ * @author Fabian Prasser
+ */
+public class RootTracker2D {
+
+    /** Constant */
+    public static final int             DEFAULT_CORRECTIONS = 2;
+
+    /** Maximal number of Newton-Raphson iterations per update, including the chord step */
+    private int                         corrections         = DEFAULT_CORRECTIONS;
+    /** Workspace */
+    private final SquareMatrix2D        derivatives         = new SquareMatrix2D();
+    /** Workspace */
+    private final Derivation2D          derivation          = new Derivation2D();
+    /** Number of full solves */
+    private long                        fallbacks;
+    /** Inverse of the Jacobian at the current root */
+    private final SquareMatrix2D        inverse             = new SquareMatrix2D();
+    /** Measures of the last update */
+    private final NewtonRaphsonMeasures measures            = new NewtonRaphsonMeasures();
+    /** Workspace */
+    private final Vector2D              object              = new Vector2D();
+    /** Workspace */
+    private final Vector2D              point               = new Vector2D();
+    /** Previous root */
+    private final Vector2D              previous            = new Vector2D();
+    /** Whether a previous root is available */
+    private boolean                     hasPrevious;
+    /** Current root, or the start value for the next full solve */
+    private final Vector2D              root                = new Vector2D(1d, 1d);
+    /** Whether a current root is available */
+    private boolean                     hasRoot;
+    /** The system */
+    private final NewtonRaphson2D       system;
+    /** Number of updates */
+    private long                        updates;
+
+    /**
+     * Creates a new instance for the system of equations defined by the given solver. The accuracy
+     * and condition limit of the solver are used for tracking, its remaining configuration for full solves.
+     * @param system
+     */
+    public RootTracker2D(NewtonRaphson2D system) {
+        this.system = system;
+    }
+
+    /**
+     * Maximal number of Newton-Raphson iterations per update, before falling back to a full solve.
+     * The first iteration reuses the Jacobian at the last root. Default is 2.
+     * @param corrections
+     */
+    public RootTracker2D corrections(int corrections) {
+        if (corrections < 1) {
+            throw new IllegalArgumentException("Invalid number of corrections");
+        }
+        this.corrections = corrections;
+        return this;
+    }
+
+    /**
+     * Returns the number of updates, which required a full solve
+     * @return
+     */
+    public long getFallbacks() {
+        return fallbacks;
+    }
+
+    /**
+     * Returns measurements for the last update. The object is reused by subsequent updates.
+     * @return
+     */
+    public NewtonRaphsonMeasures getMeasures() {
+        return measures;
+    }
+
+    /**
+     * Returns the current root, or null if no root is being tracked
+     * @return
+     */
+    public Vector2D getRoot() {
+        return hasRoot ? root.clone() : null;
+    }
+
+    /**
+     * Returns the number of updates
+     * @return
+     */
+    public long getUpdates() {
+        return updates;
+    }
+
+    /**
+     * Forgets the current root. The next update will perform a full solve.
+     */
+    public void reset() {
+        hasRoot = false;
+        hasPrevious = false;
+    }
+
+    /**
+     * Starts tracking at the root closest to the given start value, found by a full solve
+     * @param start
+     * @return whether a root has been found
+     */
+    public boolean start(Vector2D start) {
+        reset();
+        root.x = start.x;
+        root.y = start.y;
+        return update(new Vector2D());
+    }
+
+    /**
+     * Updates the root after the parameters of the system have changed and returns it
+     * @return the root, or null if no root has been found
+     */
+    public Vector2D update() {
+        Vector2D result = new Vector2D();
+        return update(result) ? result : null;
+    }
+
+    /**
+     * Updates the root after the parameters of the system have changed and stores it in the given vector.
+     * If no root has been found, the result will contain NaN values.
+     * @param result
+     * @return whether a root has been found
+     */
+    public boolean update(Vector2D result) {
+
+        long totalStart = System.currentTimeMillis();
+        double accuracy = system.getAccuracy();
+        updates++;
+
+        // Track
+        if (hasRoot) {
+
+            // Predict with a secant step
+            point.x = root.x;
+            point.y = root.y;
+            if (hasPrevious) {
+                point.x += root.x - previous.x;
+                point.y += root.y - previous.y;
+            }
+
+            // Correct, starting with a chord step
+            int evaluations = 0;
+            int singularities = 0;
+            for (int iteration = 0; iteration <= corrections; iteration++) {
+
+                // Evaluate
+                if (iteration == 0) {
+                    evaluations += system.evaluate(point, object);
+                } else {
+                    evaluations += system.evaluate(point, object, derivatives, derivation);
+                }
+
+                // Check
+                if (object.isNaN()) {
+                    break;
+                }
+                if (Math.abs(object.x) <= accuracy && Math.abs(object.y) <= accuracy) {
+                    if (!system.isFeasible(point)) {
+                        break;
+                    }
+                    if (iteration != 0 && !invert(derivatives)) {
+                        singularities++;
+                    }
+                    accept(result, 1, iteration, evaluations, singularities, totalStart);
+                    return true;
+                }
+                if (iteration == corrections) {
+                    break;
+                }
+
+                // Step
+                if (iteration != 0 && !invert(derivatives)) {
+                    singularities++;
+                }
+                object.times(inverse);
+                point.minus(object);
+            }
+        }
+
+        // Fall back to a full solve, starting at the last root
+        fallbacks++;
+        hasRoot = false;
+        hasPrevious = false;
+        boolean solved = system.solve(root, point);
+        NewtonRaphsonMeasures solve = system.getMeasures();
+        if (!solved) {
+            result.x = Double.NaN;
+            result.y = Double.NaN;
+            measures.set(solve.getIterations(), 1 + solve.getTries(), solve.getEvaluations(), solve.getSingularities(),
+                         (int) (System.currentTimeMillis() - totalStart), 0d);
+            return false;
+        }
+
+        // Store the Jacobian at the new root
+        int evaluations = solve.getEvaluations() + system.evaluate(point, object, derivatives, derivation);
+        int singularities = solve.getSingularities() + (invert(derivatives) ? 0 : 1);
+        accept(result, 1 + solve.getTries(), solve.getIterations(), evaluations, singularities, totalStart);
+        return true;
+    }
+
+    /**
+     * Accepts the current point as the new root
+     * @param result
+     * @param tries
+     * @param iterations
+     * @param evaluations
+     * @param singularities
+     * @param totalStart
+     */
+    private void accept(Vector2D result, int tries, int iterations, int evaluations, int singularities, long totalStart) {
+        previous.x = root.x;
+        previous.y = root.y;
+        hasPrevious = hasRoot;
+        root.x = point.x;
+        root.y = point.y;
+        hasRoot = true;
+        result.x = point.x;
+        result.y = point.y;
+        measures.set(iterations, tries, evaluations, singularities,
+                     (int) (System.currentTimeMillis() - totalStart),
+                     1.0d - Math.sqrt(object.x * object.x + object.y * object.y));
+    }
+
+    /**
+     * Stores the inverse of the given Jacobian, falling back to the pseudo-inverse, if it is
+     * ill-conditioned.
+     * @param derivatives
+     * @return whether the Jacobian is well-conditioned
+     */
+    private boolean invert(SquareMatrix2D derivatives) {
+        inverse.x1 = derivatives.x1;
+        inverse.x2 = derivatives.x2;
+        inverse.y1 = derivatives.y1;
+        inverse.y2 = derivatives.y2;
+        if (inverse.condition() > system.getConditionLimit()) {
+            inverse.pseudoInverse(1d / system.getConditionLimit());
+            return false;
+        }
+        inverse.inverse();
+        return true;
+    }
+}
@@ -0,0 +1,30 @@
+/*
+ * Copyright 2015 Fabian Prasser
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.linearbits.newtonraphson;
+
+/**
+ * This interface defines a master function that evaluates the object functions, their first 
+ * derivatives and their second derivatives at the same time. The result is a pair of pairs:<br>
+ * ((object functions, first derivatives), (second derivatives of the first object function, 
+ * second derivatives of the second object function)).<br>
+ * The matrix of second derivatives of a function f is defined as (d/dx(d/dx(f)) d/dy(d/dx(f))), 
+ * (d/dx(d/dy(f)) d/dy(d/dy(f))).
+ * 
+ * @author Fabian Prasser
+ */
+public interface SecondOrderFunction2D extends Function<Vector2D, Pair<Pair<Vector2D, SquareMatrix2D>, Pair<SquareMatrix2D, SquareMatrix2D>>> {
+    public Pair<Pair<Vector2D, SquareMatrix2D>, Pair<SquareMatrix2D, SquareMatrix2D>> evaluate(Vector2D input);
+}
@@ -0,0 +1,139 @@
+/*
+ * Copyright 2015 Fabian Prasser
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.linearbits.newtonraphson;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+/**
+ * The binary protocol used between clients and services. All values are written in network byte order.
+ * Requests are identified by the client and may be answered in any order.
+ * <pre>
+ * Client to service:
+ *   hello      := int magic, int version
+ *   solve      := byte SOLVE, int request, utf system, int count, count * (int length, double[length] problem)
+ *   statistics := byte STATISTICS, int request
+ *   shutdown   := byte SHUTDOWN
+ * Service to client:
+ *   result     := byte RESULT, int request, int count, count * (byte solved, double x, double y, int tries,
+ *                 int iterations, int evaluations, int singularities, int time, double quality)
+ *   error      := byte ERROR, int request, utf message
+ *   statistics := byte STATISTICS, int request, long requests, long problems, long batches, long elapsed,
+ *                 histogram latency, histogram batch sizes
+ *   histogram  := int buckets, buckets * (long lower, long upper, long count), long count, long sum, long max
+ * </pre>
+ * Problems and results are encoded as in the {@link BatchProtocol}.
+ *
+ * @author Fabian Prasser
+ */
+final class ServiceProtocol {
+
+    /** Constant */
+    static final byte ERROR      = 4;
+    /** Constant */
+    static final int  MAGIC      = 0x4E523253;
+    /** Constant */
+    static final byte RESULT     = 2;
+    /** Constant */
+    static final byte SHUTDOWN   = 3;
+    /** Constant */
+    static final byte SOLVE      = 1;
+    /** Constant */
+    static final byte STATISTICS = 5;
+    /** Constant */
+    static final int  VERSION    = 1;
+
+    /**
+     * No instances
+     */
+    private ServiceProtocol() {
+        // Empty by design
+    }
+
+    /**
+     * Reads statistics
+     * @param in
+     * @return
+     * @throws IOException
+     */
+    static SolverServiceStatistics readStatistics(DataInputStream in) throws IOException {
+        long requests = in.readLong();
+        long problems = in.readLong();
+        long batches = in.readLong();
+        long elapsed = in.readLong();
+        HistogramSnapshot latency = readHistogram(in);
+        HistogramSnapshot batchSizes = readHistogram(in);
+        return new SolverServiceStatistics(requests, problems, batches, elapsed, latency, batchSizes);
+    }
+
+    /**
+     * Writes statistics
+     * @param out
+     * @param statistics
+     * @throws IOException
+     */
+    static void writeStatistics(DataOutputStream out, SolverServiceStatistics statistics) throws IOException {
+        out.writeLong(statistics.getRequests());
+        out.writeLong(statistics.getProblems());
+        out.writeLong(statistics.getBatches());
+        out.writeLong(statistics.getElapsed());
+        writeHistogram(out, statistics.getLatencyHistogram());
+        writeHistogram(out, statistics.getBatchSizeHistogram());
+    }
+
+    /**
+     * Reads a histogram
+     * @param in
+     * @return
+     * @throws IOException
+     */
+    private static HistogramSnapshot readHistogram(DataInputStream in) throws IOException {
+        int buckets = in.readInt();
+        if (buckets < 0 || buckets > 1 << 16) {
+            throw new IOException("Invalid histogram");
+        }
+        long[] lower = new long[buckets];
+        long[] upper = new long[buckets];
+        long[] counts = new long[buckets];
+        for (int i = 0; i < buckets; i++) {
+            lower[i] = in.readLong();
+            upper[i] = in.readLong();
+            counts[i] = in.readLong();
+        }
+        long count = in.readLong();
+        long sum = in.readLong();
+        return new HistogramSnapshot(lower, upper, counts, count, sum, in.readLong());
+    }
+
+    /**
+     * Writes a histogram
+     * @param out
+     * @param histogram
+     * @throws IOException
+     */
+    private static void writeHistogram(DataOutputStream out, HistogramSnapshot histogram) throws IOException {
+        out.writeInt(histogram.getBuckets());
+        for (int i = 0; i < histogram.getBuckets(); i++) {
+            out.writeLong(histogram.getLowerBound(i));
+            out.writeLong(histogram.getUpperBound(i));
+            out.writeLong(histogram.getCount(i));
+        }
+        out.writeLong(histogram.getCount());
+        out.writeLong(histogram.getSum());
+        out.writeLong(histogram.getMax());
+    }
+}
@@ -0,0 +1,72 @@
+/*
+ * Copyright 2015 Fabian Prasser
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.linearbits.newtonraphson;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * Flight recorder event covering a complete solve
+ * @author Fabian Prasser
+ */
+@Name("de.linearbits.newtonraphson.Solve")
+@Label("Solve")
+@Category("Newton-Raphson")
+@Description("A system of equations has been solved")
+final class SolveEvent extends jdk.jfr.Event {
+
+    /** Instance for checking whether events are enabled, which unlike event types does not start the recorder */
+    static final SolveEvent PROBE = new SolveEvent();
+
+    @Label("Method")
+    String                 method;
+
+    @Label("Strategy")
+    String                 strategy;
+
+    @Label("Start X")
+    double                 startX;
+
+    @Label("Start Y")
+    double                 startY;
+
+    @Label("Success")
+    boolean                success;
+
+    @Label("Result X")
+    double                 resultX;
+
+    @Label("Result Y")
+    double                 resultY;
+
+    @Label("Tries")
+    int                    tries;
+
+    @Label("Iterations")
+    int                    iterations;
+
+    @Label("Evaluations")
+    int                    evaluations;
+
+    @Label("Singularities")
+    @Description("Number of ill-conditioned Jacobians")
+    int                    singularities;
+
+    @Label("Quality")
+    double                 quality;
+}
@@ -0,0 +1,329 @@
+/*
+ * Copyright 2015 Fabian Prasser
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.linearbits.newtonraphson;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * This class implements clients of a {@link SolverService2D}. Clients are thread-safe, and concurrent requests
+ * are sent over a single connection, so that the service can solve them in the same batches.
+ *
+ * @author Fabian Prasser
+ */
+public class SolverClient2D implements Closeable {
+
+    /**
+     * A request, which awaits its response
+     * @author Fabian Prasser
+     */
+    private static class Call {
+
+        /** Number of problems */
+        private final int               count;
+        /** Whether the response has been received */
+        private boolean                 done;
+        /** Error message sent by the service */
+        private String                  error;
+        /** Results */
+        private NewtonRaphsonMeasures[] measures;
+        /** Results */
+        private Vector2D[]              solutions;
+        /** Statistics */
+        private SolverServiceStatistics statistics;
+
+        /**
+         * Creates a new instance
+         * @param count
+         */
+        Call(int count) {
+            this.count = count;
+        }
+    }
+
+    /** Constant */
+    public static final int         DEFAULT_TIMEOUT = 60000;
+
+    /** Pending calls */
+    private final Map<Integer, Call> calls          = new HashMap<Integer, Call>();
+    /** The failure of the connection */
+    private IOException             failure;
+    /** Identifier of the next request */
+    private int                     next;
+    /** Output */
+    private final DataOutputStream  out;
+    /** Socket */
+    private final Socket            socket;
+    /** Timeout in milliseconds */
+    private volatile int            timeout         = DEFAULT_TIMEOUT;
+
+    /**
+     * Creates a new instance, which connects to the service at the given address
+     * @param address
+     * @throws IOException
+     */
+    public SolverClient2D(InetSocketAddress address) throws IOException {
+        this.socket = new Socket();
+        this.socket.connect(address, DEFAULT_TIMEOUT);
+        this.socket.setTcpNoDelay(true);
+        this.out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+        this.out.writeInt(ServiceProtocol.MAGIC);
+        this.out.writeInt(ServiceProtocol.VERSION);
+        this.out.flush();
+        final DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+        Thread thread = new Thread(new Runnable() {
+            public void run() {
+                receive(in);
+            }
+        }, "SolverClient2D-" + address);
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Closes the connection. Pending requests fail.
+     */
+    @Override
+    public void close() throws IOException {
+        try {
+            synchronized (out) {
+                out.writeByte(ServiceProtocol.SHUTDOWN);
+                out.flush();
+            }
+        } catch (IOException e) {
+            // Ignore
+        } finally {
+            socket.close();
+        }
+    }
+
+    /**
+     * Returns a snapshot of the statistics of the service
+     * @return
+     * @throws IOException
+     */
+    public SolverServiceStatistics getStatistics() throws IOException {
+        int id = register(new Call(0));
+        synchronized (out) {
+            out.writeByte(ServiceProtocol.STATISTICS);
+            out.writeInt(id);
+            out.flush();
+        }
+        return await(id).statistics;
+    }
+
+    /**
+     * Returns the timeout in milliseconds
+     * @return
+     */
+    public int getTimeout() {
+        return timeout;
+    }
+
+    /**
+     * Solves the given problems of the given system and passes the results to the consumer in order. Each problem
+     * consists of the start value followed by the parameters passed to the factory. The consumer is called by the
+     * calling thread.
+     * @param system
+     * @param problems
+     * @param consumer
+     * @throws IOException if the service failed or reported an error
+     */
+    public void solve(String system, double[][] problems, BatchConsumer2D consumer) throws IOException {
+        for (double[] problem : problems) {
+            if (problem == null || problem.length < 2) {
+                throw new IllegalArgumentException("Invalid problem");
+            }
+        }
+        Call call = request(system, problems);
+        for (int i = 0; i < problems.length; i++) {
+            consumer.consume(i, call.solutions[i], call.measures[i]);
+        }
+    }
+
+    /**
+     * Solves a problem of the given system. Returns a solution or <code>(NaN, NaN)</code>.
+     * @param system
+     * @param start
+     * @param parameters
+     * @return
+     * @throws IOException if the service failed or reported an error
+     */
+    public Vector2D solve(String system, Vector2D start, double... parameters) throws IOException {
+        double[] problem = new double[parameters.length + 2];
+        problem[0] = start.x;
+        problem[1] = start.y;
+        System.arraycopy(parameters, 0, problem, 2, parameters.length);
+        return request(system, new double[][] { problem }).solutions[0];
+    }
+
+    /**
+     * Timeout in milliseconds for waiting for responses, 0 for no timeout. Default is 60000.
+     * @param timeout
+     */
+    public SolverClient2D timeout(int timeout) {
+        if (timeout < 0) {
+            throw new IllegalArgumentException("Invalid timeout");
+        }
+        this.timeout = timeout;
+        return this;
+    }
+
+    /**
+     * Waits for the response to the given request
+     * @param id
+     * @return
+     * @throws IOException
+     */
+    private synchronized Call await(int id) throws IOException {
+        Call call = calls.get(id);
+        long deadline = System.currentTimeMillis() + timeout;
+        try {
+            while (!call.done) {
+                if (failure != null) {
+                    throw new IOException("Connection failed", failure);
+                }
+                if (timeout == 0) {
+                    wait();
+                    continue;
+                }
+                long wait = deadline - System.currentTimeMillis();
+                if (wait <= 0) {
+                    throw new IOException("Timeout");
+                }
+                wait(wait);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted", e);
+        } finally {
+            calls.remove(id);
+        }
+        if (call.error != null) {
+            throw new IOException(call.error);
+        }
+        return call;
+    }
+
+    /**
+     * Receives responses until the connection is closed
+     * @param in
+     */
+    private void receive(DataInputStream in) {
+        try {
+            while (true) {
+                byte type = in.readByte();
+                int id = in.readInt();
+                Call call;
+                synchronized (this) {
+                    call = calls.get(id);
+                }
+                Vector2D[] solutions = null;
+                NewtonRaphsonMeasures[] measures = null;
+                SolverServiceStatistics statistics = null;
+                String error = null;
+                if (type == ServiceProtocol.RESULT) {
+                    in.mark(4);
+                    int count = in.readInt();
+                    in.reset();
+                    if (call != null && count != call.count) {
+                        throw new IOException("Invalid number of results");
+                    }
+                    solutions = new Vector2D[count];
+                    measures = new NewtonRaphsonMeasures[count];
+                    BatchProtocol.readResults(in, solutions, measures);
+                } else if (type == ServiceProtocol.STATISTICS) {
+                    statistics = ServiceProtocol.readStatistics(in);
+                } else if (type == ServiceProtocol.ERROR) {
+                    error = in.readUTF();
+                } else {
+                    throw new IOException("Invalid message");
+                }
+                if (call == null) {
+                    // The request has timed out
+                    continue;
+                }
+                synchronized (this) {
+                    call.solutions = solutions;
+                    call.measures = measures;
+                    call.statistics = statistics;
+                    call.error = error;
+                    call.done = true;
+                    notifyAll();
+                }
+            }
+        } catch (IOException e) {
+            synchronized (this) {
+                failure = e;
+                notifyAll();
+            }
+            try {
+                socket.close();
+            } catch (IOException e2) {
+                // Ignore
+            }
+        }
+    }
+
+    /**
+     * Registers a call and returns its identifier
+     * @param call
+     * @return
+     * @throws IOException
+     */
+    private synchronized int register(Call call) throws IOException {
+        if (failure != null) {
+            throw new IOException("Connection failed", failure);
+        }
+        int id = next++;
+        calls.put(id, call);
+        return id;
+    }
+
+    /**
+     * Sends a request to solve the given problems and waits for the response
+     * @param system
+     * @param problems
+     * @return
+     * @throws IOException
+     */
+    private Call request(String system, double[][] problems) throws IOException {
+        int id = register(new Call(problems.length));
+        try {
+            synchronized (out) {
+                out.writeByte(ServiceProtocol.SOLVE);
+                out.writeInt(id);
+                out.writeUTF(system);
+                BatchProtocol.writeProblems(out, problems, 0, problems.length);
+                out.flush();
+            }
+        } catch (IOException e) {
+            synchronized (this) {
+                calls.remove(id);
+            }
+            throw e;
+        }
+        return await(id);
+    }
+}
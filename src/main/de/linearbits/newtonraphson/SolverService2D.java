@@ -0,0 +1,623 @@
+/*
+ * Copyright 2015 Fabian Prasser
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.linearbits.newtonraphson;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * This class implements an embeddable service, which solves problems of registered systems on behalf of
+ * {@link SolverClient2D}s in other processes, sharing a warmed-up JVM and a fixed pool of threads. Each system
+ * is registered under a name with a factory and a configuration. As for {@link BatchWorker2D}s, each problem
+ * consists of a start value followed by the parameters passed to the factory.<br>
+ * <br>
+ * Problems of concurrent requests for the same system are gathered into micro-batches: a batch is solved as soon
+ * as it contains the maximal number of problems, or when the oldest problem has waited for the latency window.
+ * Large requests are split into several batches. The service records live statistics about requests, problems,
+ * batches and latencies.<br>
+ * <br>
+ * The service listens on the loopback interface only.
+ *
+ * @author Fabian Prasser
+ */
+public class SolverService2D implements Closeable {
+
+    /**
+     * A connection to a client
+     * @author Fabian Prasser
+     */
+    private static class Connection {
+
+        /** Output */
+        private final DataOutputStream out;
+
+        /**
+         * Creates a new instance
+         * @param socket
+         * @throws IOException
+         */
+        Connection(Socket socket) throws IOException {
+            this.out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+        }
+
+        /**
+         * Sends an error
+         * @param request
+         * @param message
+         */
+        synchronized void error(int request, String message) {
+            try {
+                out.writeByte(ServiceProtocol.ERROR);
+                out.writeInt(request);
+                out.writeUTF(message);
+                out.flush();
+            } catch (IOException e) {
+                // The client has gone
+            }
+        }
+
+        /**
+         * Sends a result
+         * @param request
+         * @param solutions
+         * @param measures
+         */
+        synchronized void result(int request, Vector2D[] solutions, NewtonRaphsonMeasures[] measures) {
+            try {
+                out.writeByte(ServiceProtocol.RESULT);
+                out.writeInt(request);
+                BatchProtocol.writeResults(out, solutions, measures);
+                out.flush();
+            } catch (IOException e) {
+                // The client has gone
+            }
+        }
+
+        /**
+         * Sends statistics
+         * @param request
+         * @param statistics
+         */
+        synchronized void statistics(int request, SolverServiceStatistics statistics) {
+            try {
+                out.writeByte(ServiceProtocol.STATISTICS);
+                out.writeInt(request);
+                ServiceProtocol.writeStatistics(out, statistics);
+                out.flush();
+            } catch (IOException e) {
+                // The client has gone
+            }
+        }
+    }
+
+    /**
+     * A registered system
+     * @author Fabian Prasser
+     */
+    private static class Registration {
+
+        /** Configuration */
+        private final NewtonRaphsonConfiguration<?>       configuration;
+        /** Factory */
+        private final Function<double[], NewtonRaphson2D> factory;
+        /** Requests with problems, which have not been assigned to a batch */
+        private final ArrayDeque<Request>                 pending = new ArrayDeque<Request>();
+        /** Number of problems, which have not been assigned to a batch */
+        private int                                       size;
+
+        /**
+         * Creates a new instance
+         * @param factory
+         * @param configuration
+         */
+        Registration(Function<double[], NewtonRaphson2D> factory, NewtonRaphsonConfiguration<?> configuration) {
+            this.factory = factory;
+            this.configuration = configuration;
+        }
+    }
+
+    /**
+     * A request
+     * @author Fabian Prasser
+     */
+    private static class Request {
+
+        /** Connection */
+        private final Connection              connection;
+        /** The first failure */
+        private String                        failure;
+        /** Identifier */
+        private final int                     id;
+        /** Results */
+        private final NewtonRaphsonMeasures[] measures;
+        /** Index of the first problem, which has not been assigned to a batch */
+        private int                           next;
+        /** Problems */
+        private final double[][]              problems;
+        /** Time at which the request has been received */
+        private final long                    received;
+        /** Number of problems, which have not been solved */
+        private int                           remaining;
+        /** Results */
+        private final Vector2D[]              solutions;
+
+        /**
+         * Creates a new instance
+         * @param connection
+         * @param id
+         * @param problems
+         */
+        Request(Connection connection, int id, double[][] problems) {
+            this.connection = connection;
+            this.id = id;
+            this.problems = problems;
+            this.remaining = problems.length;
+            this.solutions = new Vector2D[problems.length];
+            this.measures = new NewtonRaphsonMeasures[problems.length];
+            this.received = System.nanoTime();
+        }
+
+        /**
+         * Marks the given number of problems as solved and returns whether the request is complete
+         * @param count
+         * @param failure
+         * @return
+         */
+        synchronized boolean complete(int count, String failure) {
+            if (this.failure == null) {
+                this.failure = failure;
+            }
+            remaining -= count;
+            return remaining == 0;
+        }
+    }
+
+    /** Constant */
+    public static final int                 DEFAULT_LATENCY_WINDOW = 1000;
+    /** Constant */
+    public static final int                 DEFAULT_MAX_BATCH_SIZE = 64;
+
+    /** Problems per batch */
+    private final LogLinearHistogram        batchSizeHistogram     = new LogLinearHistogram();
+    /** Batches */
+    private final LongAdder                 batches                = new LongAdder();
+    /** Whether the service has been closed */
+    private boolean                         closed;
+    /** Open connections */
+    private final Set<Socket>               connections            = new HashSet<Socket>();
+    /** Dispatcher */
+    private Thread                          dispatcher;
+    /** Pool */
+    private final ExecutorService           executor;
+    /** Latency per request in nanoseconds */
+    private final LogLinearHistogram        latencyHistogram       = new LogLinearHistogram();
+    /** Latency window in microseconds */
+    private int                             latencyWindow          = DEFAULT_LATENCY_WINDOW;
+    /** Maximal number of problems per batch */
+    private int                             maxBatchSize           = DEFAULT_MAX_BATCH_SIZE;
+    /** Problems */
+    private final LongAdder                 problems               = new LongAdder();
+    /** Registered systems */
+    private final Map<String, Registration> registrations          = new HashMap<String, Registration>();
+    /** Requests */
+    private final LongAdder                 requests               = new LongAdder();
+    /** Time at which the statistics have been reset */
+    private volatile long                   reset                  = System.nanoTime();
+    /** Server */
+    private final ServerSocket              server;
+
+    /**
+     * Creates a new instance, which listens on the given port of the loopback interface and solves batches
+     * with the given number of threads. Pass 0 for an ephemeral port.
+     * @param port
+     * @param threads
+     * @throws IOException
+     */
+    public SolverService2D(int port, int threads) throws IOException {
+        if (threads < 1) {
+            throw new IllegalArgumentException("Invalid number of threads");
+        }
+        this.server = new ServerSocket(port, 50, InetAddress.getLoopbackAddress());
+        this.executor = Executors.newFixedThreadPool(threads, new ThreadFactory() {
+            private int count;
+            public synchronized Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "SolverService2D-" + getPort() + "-" + (count++));
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    }
+
+    /**
+     * Stops accepting connections, closes all open connections and stops all threads. Pending requests
+     * are discarded.
+     */
+    @Override
+    public void close() throws IOException {
+        synchronized (this) {
+            closed = true;
+            notifyAll();
+        }
+        server.close();
+        executor.shutdownNow();
+        synchronized (connections) {
+            for (Socket socket : connections) {
+                socket.close();
+            }
+            connections.clear();
+        }
+    }
+
+    /**
+     * Returns the latency window in microseconds
+     * @return
+     */
+    public int getLatencyWindow() {
+        return latencyWindow;
+    }
+
+    /**
+     * Returns the maximal number of problems per batch
+     * @return
+     */
+    public int getMaxBatchSize() {
+        return maxBatchSize;
+    }
+
+    /**
+     * Returns the port, on which this service listens
+     * @return
+     */
+    public int getPort() {
+        return server.getLocalPort();
+    }
+
+    /**
+     * Returns a snapshot of the statistics
+     * @return
+     */
+    public SolverServiceStatistics getStatistics() {
+        return new SolverServiceStatistics(requests.sum(),
+                                           problems.sum(),
+                                           batches.sum(),
+                                           System.nanoTime() - reset,
+                                           latencyHistogram.snapshot(),
+                                           batchSizeHistogram.snapshot());
+    }
+
+    /**
+     * Time in microseconds, for which problems wait for further problems to be solved in the same batch.
+     * Longer windows increase batch sizes and latencies. Default is 1000.
+     * @param latencyWindow
+     */
+    public synchronized SolverService2D latencyWindow(int latencyWindow) {
+        if (latencyWindow < 0) {
+            throw new IllegalArgumentException("Invalid latency window");
+        }
+        this.latencyWindow = latencyWindow;
+        notifyAll();
+        return this;
+    }
+
+    /**
+     * Maximal number of problems per batch. Default is 64.
+     * @param maxBatchSize
+     */
+    public synchronized SolverService2D maxBatchSize(int maxBatchSize) {
+        if (maxBatchSize < 1) {
+            throw new IllegalArgumentException("Invalid maximal batch size");
+        }
+        this.maxBatchSize = maxBatchSize;
+        notifyAll();
+        return this;
+    }
+
+    /**
+     * Registers a system under the given name, replacing any system registered under the same name
+     * @param name
+     * @param factory
+     * @param configuration
+     * @return this service
+     */
+    public synchronized SolverService2D register(String name,
+                                                 Function<double[], NewtonRaphson2D> factory,
+                                                 NewtonRaphsonConfiguration<?> configuration) {
+        if (name == null || factory == null || configuration == null) {
+            throw new IllegalArgumentException("Invalid arguments");
+        }
+        Registration previous = registrations.put(name, new Registration(factory, configuration.copy()));
+        if (previous != null && !closed) {
+            while (previous.size > 0) {
+                dispatch(previous);
+            }
+        }
+        return this;
+    }
+
+    /**
+     * Resets the statistics. Values recorded concurrently may or may not be retained.
+     */
+    public void reset() {
+        requests.reset();
+        problems.reset();
+        batches.reset();
+        latencyHistogram.reset();
+        batchSizeHistogram.reset();
+        reset = System.nanoTime();
+    }
+
+    /**
+     * Accepts connections until this service is closed
+     */
+    public void run() {
+        synchronized (this) {
+            if (dispatcher == null) {
+                dispatcher = new Thread(new Runnable() {
+                    public void run() {
+                        dispatch();
+                    }
+                }, "SolverService2D-" + getPort() + "-dispatcher");
+                dispatcher.setDaemon(true);
+                dispatcher.start();
+            }
+        }
+        while (!server.isClosed()) {
+            final Socket socket;
+            try {
+                socket = server.accept();
+            } catch (IOException e) {
+                return;
+            }
+            synchronized (connections) {
+                if (server.isClosed()) {
+                    try {
+                        socket.close();
+                    } catch (IOException e) {
+                        // Ignore
+                    }
+                    return;
+                }
+                connections.add(socket);
+            }
+            Thread thread = new Thread(new Runnable() {
+                public void run() {
+                    try {
+                        serve(socket);
+                    } catch (IOException e) {
+                        // Pending results are discarded
+                    } finally {
+                        synchronized (connections) {
+                            connections.remove(socket);
+                        }
+                        try {
+                            socket.close();
+                        } catch (IOException e) {
+                            // Ignore
+                        }
+                    }
+                }
+            }, "SolverService2D-" + socket.getRemoteSocketAddress());
+            thread.setDaemon(true);
+            thread.start();
+        }
+    }
+
+    /**
+     * Accepts connections in a background thread until this service is closed
+     * @return this service
+     */
+    public SolverService2D start() {
+        Thread thread = new Thread(new Runnable() {
+            public void run() {
+                SolverService2D.this.run();
+            }
+        }, "SolverService2D-" + getPort());
+        thread.setDaemon(true);
+        thread.start();
+        return this;
+    }
+
+    /**
+     * Dispatches batches until this service is closed
+     */
+    private synchronized void dispatch() {
+        while (!closed) {
+
+            // Dispatch full batches and batches, whose window has passed
+            long now = System.nanoTime();
+            long window = latencyWindow * 1000L;
+            long wait = Long.MAX_VALUE;
+            for (Registration registration : registrations.values()) {
+                while (registration.size >= maxBatchSize ||
+                       (registration.size > 0 && now - registration.pending.peekFirst().received >= window)) {
+                    dispatch(registration);
+                }
+                if (registration.size > 0) {
+                    wait = Math.min(wait, registration.pending.peekFirst().received + window - now);
+                }
+            }
+
+            // Wait for requests or for the next window to pass
+            try {
+                if (wait == Long.MAX_VALUE) {
+                    wait();
+                } else {
+                    TimeUnit.NANOSECONDS.timedWait(this, Math.max(wait, 1L));
+                }
+            } catch (InterruptedException e) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Assigns up to the maximal number of pending problems of the given system to a batch and submits it
+     * @param registration
+     */
+    private void dispatch(final Registration registration) {
+
+        // Assign problems
+        final List<Request> requests = new ArrayList<Request>();
+        final List<int[]> ranges = new ArrayList<int[]>();
+        int count = 0;
+        while (count < maxBatchSize && !registration.pending.isEmpty()) {
+            Request request = registration.pending.peekFirst();
+            int length = Math.min(request.problems.length - request.next, maxBatchSize - count);
+            requests.add(request);
+            ranges.add(new int[] { request.next, request.next + length });
+            request.next += length;
+            count += length;
+            if (request.next == request.problems.length) {
+                registration.pending.pollFirst();
+            }
+        }
+        registration.size -= count;
+
+        // Submit
+        final int size = count;
+        executor.execute(new Runnable() {
+            public void run() {
+                solve(registration, requests, ranges, size);
+            }
+        });
+    }
+
+    /**
+     * Serves a connection
+     * @param socket
+     * @throws IOException
+     */
+    private void serve(Socket socket) throws IOException {
+
+        socket.setTcpNoDelay(true);
+        DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+        Connection connection = new Connection(socket);
+
+        // Hello
+        if (in.readInt() != ServiceProtocol.MAGIC || in.readInt() != ServiceProtocol.VERSION) {
+            throw new IOException("Invalid protocol");
+        }
+
+        // Requests
+        while (true) {
+            byte type = in.readByte();
+            if (type == ServiceProtocol.SHUTDOWN) {
+                return;
+            } else if (type == ServiceProtocol.STATISTICS) {
+                connection.statistics(in.readInt(), getStatistics());
+            } else if (type == ServiceProtocol.SOLVE) {
+                int id = in.readInt();
+                String name = in.readUTF();
+                Request request = new Request(connection, id, BatchProtocol.readProblems(in));
+                synchronized (this) {
+                    Registration registration = registrations.get(name);
+                    if (registration == null) {
+                        connection.error(id, "Unknown system: " + name);
+                    } else if (request.problems.length == 0) {
+                        respond(request);
+                    } else {
+                        registration.pending.addLast(request);
+                        registration.size += request.problems.length;
+                        notifyAll();
+                    }
+                }
+            } else {
+                throw new IOException("Invalid message");
+            }
+        }
+    }
+
+    /**
+     * Sends the response to the given request
+     * @param request
+     */
+    private void respond(Request request) {
+
+        // Record before sending, such that clients observe statistics including their requests
+        requests.increment();
+        latencyHistogram.record(System.nanoTime() - request.received);
+        if (request.failure != null) {
+            request.connection.error(request.id, request.failure);
+        } else {
+            request.connection.result(request.id, request.solutions, request.measures);
+        }
+    }
+
+    /**
+     * Solves a batch
+     * @param registration
+     * @param requests
+     * @param ranges
+     * @param size
+     */
+    private void solve(Registration registration, List<Request> requests, List<int[]> ranges, int size) {
+        NewtonRaphson2D shared = null;
+        List<Request> completed = new ArrayList<Request>();
+        for (int i = 0; i < requests.size(); i++) {
+            Request request = requests.get(i);
+            int[] range = ranges.get(i);
+            String failure = null;
+            try {
+                for (int j = range[0]; j < range[1]; j++) {
+                    double[] problem = request.problems[j];
+                    NewtonRaphson2D solver;
+                    if (problem.length == 2) {
+                        if (shared == null) {
+                            shared = registration.factory.evaluate(new double[0]).configure(registration.configuration);
+                        }
+                        solver = shared;
+                    } else {
+                        solver = registration.factory.evaluate(Arrays.copyOfRange(problem, 2, problem.length))
+                                                     .configure(registration.configuration);
+                    }
+                    request.solutions[j] = solver.solve(new Vector2D(problem[0], problem[1]));
+                    request.measures[j] = solver.getMeasures().clone();
+                }
+            } catch (RuntimeException e) {
+                failure = "Solving failed: " + e;
+            }
+            if (request.complete(range[1] - range[0], failure)) {
+                completed.add(request);
+            }
+        }
+        problems.add(size);
+        batches.increment();
+        batchSizeHistogram.record(size);
+        for (Request request : completed) {
+            respond(request);
+        }
+    }
+}
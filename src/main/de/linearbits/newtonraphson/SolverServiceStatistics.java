@@ -0,0 +1,122 @@
+/*
+ * Copyright 2015 Fabian Prasser
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.linearbits.newtonraphson;
+
+/**
+ * An immutable snapshot of the statistics of a {@link SolverService2D}
+ * @author Fabian Prasser
+ */
+public class SolverServiceStatistics {
+
+    /** Batches */
+    private final long              batches;
+    /** Problems per batch */
+    private final HistogramSnapshot batchSizeHistogram;
+    /** Nanoseconds since the statistics have been reset */
+    private final long              elapsed;
+    /** Latency per request in nanoseconds */
+    private final HistogramSnapshot latencyHistogram;
+    /** Problems */
+    private final long              problems;
+    /** Requests */
+    private final long              requests;
+
+    /**
+     * Creates a new instance
+     * @param requests
+     * @param problems
+     * @param batches
+     * @param elapsed
+     * @param latencyHistogram
+     * @param batchSizeHistogram
+     */
+    SolverServiceStatistics(long requests,
+                            long problems,
+                            long batches,
+                            long elapsed,
+                            HistogramSnapshot latencyHistogram,
+                            HistogramSnapshot batchSizeHistogram) {
+        this.requests = requests;
+        this.problems = problems;
+        this.batches = batches;
+        this.elapsed = elapsed;
+        this.latencyHistogram = latencyHistogram;
+        this.batchSizeHistogram = batchSizeHistogram;
+    }
+
+    /**
+     * Returns the number of batches solved
+     */
+    public long getBatches() {
+        return batches;
+    }
+
+    /**
+     * Returns the distribution of the number of problems per batch
+     */
+    public HistogramSnapshot getBatchSizeHistogram() {
+        return batchSizeHistogram;
+    }
+
+    /**
+     * Returns the number of nanoseconds since the statistics have been reset
+     */
+    public long getElapsed() {
+        return elapsed;
+    }
+
+    /**
+     * Returns the distribution of request latencies in nanoseconds, from receiving a request to sending
+     * the response
+     */
+    public HistogramSnapshot getLatencyHistogram() {
+        return latencyHistogram;
+    }
+
+    /**
+     * Returns the number of problems solved
+     */
+    public long getProblems() {
+        return problems;
+    }
+
+    /**
+     * Returns the number of requests answered
+     */
+    public long getRequests() {
+        return requests;
+    }
+
+    /**
+     * Returns the number of problems solved per second since the statistics have been reset
+     */
+    public double getThroughput() {
+        return elapsed == 0 ? 0d : problems * 1e9d / elapsed;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder builder = new StringBuilder();
+        builder.append("Statistics: (Requests: ").append(requests);
+        builder.append(", Problems: ").append(problems);
+        builder.append(", Batches: ").append(batches);
+        builder.append(", Throughput [1/s]: ").append((long) getThroughput());
+        builder.append(", Latency [ns]: ").append(latencyHistogram);
+        builder.append(", Problems per batch: ").append(batchSizeHistogram);
+        builder.append(")");
+        return builder.toString();
+    }
+}
@@ -51,6 +51,21 @@ public class SquareMatrix2D {
         this.y2 = y2;
     }
 
+    /**
+     * Returns the condition number with respect to the euclidean norm. It is computed from the 
+     * identity ||A||_F^2 / |det(A)| = k + 1/k, which holds for 2x2 matrices. Returns infinity 
+     * for singular matrices.
+     * @return
+     */
+    public double condition() {
+        double det = Math.abs(det());
+        if (det == 0d) {
+            return Double.POSITIVE_INFINITY;
+        }
+        double ratio = (x1 * x1 + x2 * x2 + y1 * y1 + y2 * y2) / det;
+        return 0.5d * (ratio + Math.sqrt(Math.max(0d, ratio * ratio - 4d)));
+    }
+
     /**
      * Returns the determinant
      * @return
@@ -71,6 +86,48 @@ public class SquareMatrix2D {
         this.y2 = x1 * scalar;
     }
 
+    /**
+     * Computes the Moore-Penrose pseudo-inverse based on a singular value decomposition. Singular
+     * values smaller than tolerance times the largest singular value are treated as zero.
+     * For well-conditioned matrices, the result equals the inverse matrix.
+     * @param tolerance
+     */
+    public void pseudoInverse(double tolerance) {
+
+        // Eigen decomposition of A^T * A, which yields the right singular vectors
+        double p = x1 * x1 + y1 * y1;
+        double q = x1 * x2 + y1 * y2;
+        double r = x2 * x2 + y2 * y2;
+        double mean = 0.5d * (p + r);
+        double radius = Math.sqrt(0.25d * (p - r) * (p - r) + q * q);
+        double lambda1 = mean + radius;
+        double lambda2 = Math.max(0d, mean - radius);
+        double angle = 0.5d * Math.atan2(2d * q, p - r);
+        double cos = Math.cos(angle);
+        double sin = Math.sin(angle);
+
+        // Compute V * Sigma^-2 * V^T, ignoring small singular values
+        double m11 = 0d, m12 = 0d, m22 = 0d;
+        double threshold = tolerance * tolerance * lambda1;
+        if (lambda1 > 0d && lambda1 > threshold) {
+            m11 += cos * cos / lambda1;
+            m12 += cos * sin / lambda1;
+            m22 += sin * sin / lambda1;
+        }
+        if (lambda2 > 0d && lambda2 > threshold) {
+            m11 += sin * sin / lambda2;
+            m12 -= cos * sin / lambda2;
+            m22 += cos * cos / lambda2;
+        }
+
+        // Multiply with A^T
+        double x1 = this.x1, x2 = this.x2, y1 = this.y1, y2 = this.y2;
+        this.x1 = m11 * x1 + m12 * x2;
+        this.x2 = m11 * y1 + m12 * y2;
+        this.y1 = m12 * x1 + m22 * x2;
+        this.y2 = m12 * y1 + m22 * y2;
+    }
+
     /**
      * Returns a string representation
      */
@@ -0,0 +1,326 @@
+/*
+ * Copyright 2015 Fabian Prasser
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.linearbits.newtonraphson;
+
+import java.io.Serializable;
+
+/**
+ * A sampler for the start values of restarts, i.e. of all tries except the first one, if no start values
+ * have been prepared. Without a sampler, start values are drawn uniformly from the box spanned by the
+ * negated and the given start value, regardless of any constraints. Samplers draw start values from the
+ * feasible region instead, which can be given as a box or as half-spaces, or which can be learned by
+ * rejection sampling against the constraints of the solver.<br>
+ * <br>
+ * Like solvers, instances are not thread-safe and must not be shared between solvers used concurrently.
+ * Solvers configured from a common configuration use their own copies of the sampler.
+ * The built-in samplers do not allocate any memory while solving.
+ *
+ * @author Fabian Prasser
+ */
+public abstract class StartSampler2D implements Serializable {
+
+    /**
+     * Sampling from a box
+     * @author Fabian Prasser
+     */
+    private static final class Box extends StartSampler2D {
+
+        /** SVUID */
+        private static final long serialVersionUID = 7362412810981406155L;
+
+        /** Bounds */
+        private final double      maxX;
+        /** Bounds */
+        private final double      maxY;
+        /** Bounds */
+        private final double      minX;
+        /** Bounds */
+        private final double      minY;
+
+        /**
+         * Creates a new instance
+         * @param minX
+         * @param maxX
+         * @param minY
+         * @param maxY
+         */
+        private Box(double minX, double maxX, double minY, double maxY) {
+            this.minX = minX;
+            this.maxX = maxX;
+            this.minY = minY;
+            this.maxY = maxY;
+        }
+
+        @Override
+        public StartSampler2D copy() {
+            return new Box(minX, maxX, minY, maxY);
+        }
+
+        @Override
+        long fingerprint(long hash) {
+            return NewtonRaphsonConfiguration.fingerprint(NewtonRaphsonConfiguration.fingerprint(hash, "box"), minX, maxX, minY, maxY);
+        }
+
+        @Override
+        public void sample(Vector2D start, Constraint2D[] constraints, Vector2D result) {
+            result.x = minX + Math.random() * (maxX - minX);
+            result.y = minY + Math.random() * (maxY - minY);
+        }
+    }
+
+    /**
+     * Rejection sampling against half-spaces
+     * @author Fabian Prasser
+     */
+    private static final class HalfSpaces extends Rejection {
+
+        /** SVUID */
+        private static final long  serialVersionUID = -3061582016411287893L;
+
+        /** Normals */
+        private final double[][]   normals;
+        /** Offsets */
+        private final double[]     offsets;
+
+        /**
+         * Creates a new instance
+         * @param normals
+         * @param offsets
+         */
+        private HalfSpaces(double[][] normals, double[] offsets) {
+            this.normals = normals;
+            this.offsets = offsets;
+        }
+
+        @Override
+        public StartSampler2D copy() {
+            return new HalfSpaces(normals, offsets);
+        }
+
+        @Override
+        long fingerprint(long hash) {
+            hash = NewtonRaphsonConfiguration.fingerprint(hash, "halfSpaces");
+            for (int i = 0; i < normals.length; i++) {
+                hash = NewtonRaphsonConfiguration.fingerprint(hash, normals[i][0], normals[i][1], offsets[i]);
+            }
+            return hash;
+        }
+
+        @Override
+        boolean isFeasible(Vector2D point, Constraint2D[] constraints) {
+            for (int i = 0; i < normals.length; i++) {
+                if (normals[i][0] * point.x + normals[i][1] * point.y > offsets[i]) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+
+    /**
+     * Rejection sampling, which narrows the box from which candidates are drawn to the bounding box
+     * of the accepted candidates
+     * @author Fabian Prasser
+     */
+    private static class Rejection extends StartSampler2D {
+
+        /** SVUID */
+        private static final long   serialVersionUID = 2180217665155744302L;
+
+        /** Maximal number of candidates per start value */
+        private static final int    ATTEMPTS         = 1000;
+        /** Number of accepted candidates, after which the box is narrowed */
+        private static final int    LEARNING         = 32;
+        /** Relative margin added to the bounding box of accepted candidates */
+        private static final double MARGIN           = 0.03d;
+
+        /** Number of accepted candidates */
+        private long                accepted;
+        /** Bounding box of accepted candidates, relative to the start value */
+        private double              maxX             = -1d;
+        /** Bounding box of accepted candidates, relative to the start value */
+        private double              maxY             = -1d;
+        /** Bounding box of accepted candidates, relative to the start value */
+        private double              minX             = 1d;
+        /** Bounding box of accepted candidates, relative to the start value */
+        private double              minY             = 1d;
+        /** Number of candidates */
+        private long                proposed;
+
+        @Override
+        public StartSampler2D copy() {
+            return new Rejection();
+        }
+
+        @Override
+        long fingerprint(long hash) {
+            return NewtonRaphsonConfiguration.fingerprint(hash, "rejection");
+        }
+
+        @Override
+        public double getAcceptanceRate() {
+            return proposed == 0 ? 1d : (double) accepted / (double) proposed;
+        }
+
+        @Override
+        public void sample(Vector2D start, Constraint2D[] constraints, Vector2D result) {
+
+            // Box relative to the start value
+            double lowerX = -1d;
+            double upperX = 1d;
+            double lowerY = -1d;
+            double upperY = 1d;
+            if (accepted >= LEARNING) {
+                double marginX = MARGIN * (maxX - minX) + MARGIN / LEARNING;
+                double marginY = MARGIN * (maxY - minY) + MARGIN / LEARNING;
+                lowerX = Math.max(minX - marginX, -1d);
+                upperX = Math.min(maxX + marginX, 1d);
+                lowerY = Math.max(minY - marginY, -1d);
+                upperY = Math.min(maxY + marginY, 1d);
+            }
+
+            // Sample
+            for (int i = 0; i < ATTEMPTS; i++) {
+                double x = lowerX + Math.random() * (upperX - lowerX);
+                double y = lowerY + Math.random() * (upperY - lowerY);
+                result.x = x * start.x;
+                result.y = y * start.y;
+                proposed++;
+                if (isFeasible(result, constraints)) {
+                    accepted++;
+                    minX = Math.min(minX, x);
+                    maxX = Math.max(maxX, x);
+                    minY = Math.min(minY, y);
+                    maxY = Math.max(maxY, y);
+                    return;
+                }
+            }
+        }
+
+        /**
+         * Returns whether the given candidate is feasible
+         * @param point
+         * @param constraints
+         * @return
+         */
+        boolean isFeasible(Vector2D point, Constraint2D[] constraints) {
+            if (constraints != null) {
+                for (Constraint2D constraint : constraints) {
+                    if (!constraint.isSatisfied(point)) {
+                        return false;
+                    }
+                }
+            }
+            return true;
+        }
+    }
+
+    /** SVUID */
+    private static final long serialVersionUID = -6650264463950223880L;
+
+    /**
+     * Draws start values uniformly from the given box
+     * @param minX
+     * @param maxX
+     * @param minY
+     * @param maxY
+     * @return
+     */
+    public static StartSampler2D box(double minX, double maxX, double minY, double maxY) {
+        if (!(minX <= maxX) || !(minY <= maxY)) {
+            throw new IllegalArgumentException("Invalid box");
+        }
+        return new Box(minX, maxX, minY, maxY);
+    }
+
+    /**
+     * Draws start values from the default box, which satisfy normal[0] * x + normal[1] * y <= offset
+     * for all given normals and offsets
+     * @param normals
+     * @param offsets
+     * @return
+     */
+    public static StartSampler2D halfSpaces(double[][] normals, double[] offsets) {
+        if (normals == null || offsets == null || normals.length == 0 || normals.length != offsets.length) {
+            throw new IllegalArgumentException("Invalid half-spaces");
+        }
+        double[][] copy = new double[normals.length][];
+        for (int i = 0; i < normals.length; i++) {
+            if (normals[i] == null || normals[i].length != 2) {
+                throw new IllegalArgumentException("Invalid half-spaces");
+            }
+            copy[i] = normals[i].clone();
+        }
+        return new HalfSpaces(copy, offsets.clone());
+    }
+
+    /**
+     * Draws start values from the default box, which satisfy the constraints of the solver. The box
+     * from which candidates are drawn is narrowed to the bounding box of the accepted candidates
+     * over time, which increases the acceptance rate, e.g. if the feasible region is a quadrant. If no
+     * candidate is accepted within 1000 attempts, the last candidate is used.
+     * @return
+     */
+    public static StartSampler2D rejection() {
+        return new Rejection();
+    }
+
+    /**
+     * Constructor
+     */
+    protected StartSampler2D() {
+        // Empty by design
+    }
+
+    /**
+     * Returns an instance with the same parameters, which can be used by another solver concurrently.
+     * Solvers configured from a configuration use copies of its sampler. The built-in samplers return new
+     * instances, which have not learned anything yet. The default implementation returns a deep copy, which
+     * is created by serialization, and should be overridden by samplers, which are copied frequently.
+     * @return
+     */
+    public StartSampler2D copy() {
+        return NewtonRaphsonConfiguration.deepCopy(this);
+    }
+
+    /**
+     * Adds the type and the parameters of this sampler to the given hash, which must be stable across
+     * processes. The default implementation adds the name of the class and the serialized form.
+     * @param hash
+     * @return
+     */
+    long fingerprint(long hash) {
+        hash = NewtonRaphsonConfiguration.fingerprint(hash, getClass().getName());
+        return NewtonRaphsonConfiguration.fingerprint(hash, NewtonRaphsonConfiguration.serialize(this));
+    }
+
+    /**
+     * Returns the fraction of candidates, which have been accepted so far, or 1 for samplers
+     * which do not reject candidates
+     * @return
+     */
+    public double getAcceptanceRate() {
+        return 1d;
+    }
+
+    /**
+     * Samples a start value
+     * @param start the start value of the first try, which spans the default box
+     * @param constraints the constraints of the solver, may be null
+     * @param result
+     */
+    public abstract void sample(Vector2D start, Constraint2D[] constraints, Vector2D result);
+}
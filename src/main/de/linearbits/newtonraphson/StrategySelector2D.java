@@ -0,0 +1,272 @@
+/*
+ * Copyright 2015 Fabian Prasser
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.linearbits.newtonraphson;
+
+/**
+ * This class selects the cheapest strategy for obtaining Jacobians. When profiling, the functions
+ * provided are timed and the cost per iteration of each available strategy is estimated:
+ * <ul>
+ * <li>Master function: one evaluation of the master function</li>
+ * <li>Derivatives: one evaluation of the object functions and of the derivatives</li>
+ * <li>Finite differences: three evaluations of the object functions</li>
+ * <li>Broyden: one evaluation of the object functions, plus two per try for the initial Jacobian</li>
+ * </ul>
+ * Each strategy is then used for solving the current problem, and the strategy with the lowest
+ * estimated cost for the iterations needed is selected among the strategies that converged.
+ * Profiling is repeated periodically and when the selected strategy fails. If failures persist, e.g. because
+ * problems have no solution, the number of solves until profiling is repeated doubles with every failure.
+ * The solution found with the selected strategy when profiling is returned without solving again, and
+ * evaluations needed for profiling are included in the measures of the solve that triggered it.
+ *
+ * @author Fabian Prasser
+ */
+class StrategySelector2D {
+
+    /** Number of batches used for timing a function */
+    private static final int               BATCHES     = 3;
+    /** Number of evaluations per batch */
+    private static final int               EVALUATIONS = 8;
+    /** Strategies in order of preference, if costs are equal */
+    private static final NewtonRaphsonStrategy[] STRATEGIES = { NewtonRaphsonStrategy.MASTER_FUNCTION,
+                                                                NewtonRaphsonStrategy.DERIVATIVES,
+                                                                NewtonRaphsonStrategy.FINITE_DIFFERENCES,
+                                                                NewtonRaphsonStrategy.BROYDEN };
+
+    /** Number of solves by which profiling is postponed after the next failure */
+    private int                            backoff;
+    /** Workspace for the reasoning */
+    private final StringBuilder            builder     = new StringBuilder();
+    /** Workspace */
+    private final Vector2D                 current     = new Vector2D();
+    /** Workspace */
+    private final Derivation2D             derivation  = new Derivation2D();
+    /** Workspace */
+    private final SquareMatrix2D           derivatives = new SquareMatrix2D();
+    /** Number of solves after which profiling is repeated */
+    private int                            due;
+    /** Evaluations needed for the last profiling */
+    private int                            evaluations;
+    /** Strategy, whose solve during the last profiling is kept, null if none */
+    private NewtonRaphsonStrategy          kept;
+    /** Measures of the kept solve */
+    private int                            keptIterations;
+    /** Measures of the kept solve */
+    private double                         keptQuality;
+    /** Measures of the kept solve */
+    private int                            keptSingularities;
+    /** Whether the kept solve has found a solution */
+    private boolean                        keptSolved;
+    /** Measures of the kept solve */
+    private int                            keptTries;
+    /** Workspace */
+    private final Vector2D                 object      = new Vector2D();
+    /** Workspace */
+    private final Vector2D                 point       = new Vector2D();
+    /** Reasoning behind the selected strategy */
+    private String                         reasoning;
+    /** Solution of the kept solve */
+    private final Vector2D                 solution    = new Vector2D();
+    /** Number of solves since the last profiling */
+    private int                            solves;
+    /** The solver */
+    private final NewtonRaphson2D          solver;
+    /** The selected strategy, null if profiling is required */
+    private NewtonRaphsonStrategy          strategy;
+
+    /**
+     * Creates a new instance
+     * @param solver
+     */
+    StrategySelector2D(NewtonRaphson2D solver) {
+        this.solver = solver;
+    }
+
+    /**
+     * Solves with the selected strategy, profiling first, if required. When profiling, the solve with
+     * the selected strategy is not repeated.
+     * @param start
+     * @param result
+     * @return whether a solution has been found
+     */
+    boolean solve(Vector2D start, Vector2D result) {
+
+        // Profile
+        long time = System.currentTimeMillis();
+        boolean profiled = strategy == null || solves >= due;
+        if (profiled) {
+            profile(start);
+            solves = 0;
+            due = solver.getProfilingInterval();
+        }
+
+        // Solve, unless the selected strategy has already been used for solving when profiling
+        solves++;
+        boolean solved;
+        NewtonRaphsonMeasures measures;
+        if (profiled && kept == strategy) {
+            result.x = solution.x;
+            result.y = solution.y;
+            solved = keptSolved;
+            measures = solver.getMeasures();
+            measures.set(keptIterations, keptTries, evaluations, keptSingularities,
+                         (int) (System.currentTimeMillis() - time), keptQuality);
+        } else {
+            solved = solver._solve(start, result, strategy);
+            measures = solver.getMeasures();
+            if (profiled) {
+                measures.set(measures.getIterations(), measures.getTries(), measures.getEvaluations() + evaluations,
+                             measures.getSingularities(), (int) (System.currentTimeMillis() - time), measures.getQuality());
+            }
+        }
+        measures.setStrategy(strategy, reasoning);
+
+        // Profile again after failures, postponing further while they persist
+        if (solved) {
+            backoff = 0;
+        } else if (due > solves + backoff) {
+            due = solves + backoff;
+            backoff = Math.min(Math.max(2 * backoff, 1), solver.getProfilingInterval());
+        }
+        return solved;
+    }
+
+    /**
+     * Keeps the solution and the measures of the last solve
+     * @param strategy
+     * @param solved
+     */
+    private void keep(NewtonRaphsonStrategy strategy, boolean solved) {
+        NewtonRaphsonMeasures measures = solver.getMeasures();
+        kept = strategy;
+        keptSolved = solved;
+        keptIterations = measures.getIterations();
+        keptTries = measures.getTries();
+        keptSingularities = measures.getSingularities();
+        keptQuality = measures.getQuality();
+        solution.x = current.x;
+        solution.y = current.y;
+    }
+
+    /**
+     * Profiles all available strategies at the given start value and selects the cheapest one. The solve
+     * with the selected strategy, or with the default strategy if none converged, is kept.
+     * @param start
+     */
+    private void profile(Vector2D start) {
+
+        // Cost of evaluating the functions provided
+        evaluations = 0;
+        kept = null;
+        double costObject = time(start, null);
+        double costDerivatives = solver.isAvailable(NewtonRaphsonStrategy.DERIVATIVES) ? time(start, NewtonRaphsonStrategy.DERIVATIVES) : 0d;
+        double costMaster = solver.isAvailable(NewtonRaphsonStrategy.MASTER_FUNCTION) ? time(start, NewtonRaphsonStrategy.MASTER_FUNCTION) : 0d;
+
+        // Higher-order methods require second derivatives
+        boolean higherOrder = solver.getMethod() == NewtonRaphsonMethod.HALLEY || solver.getMethod() == NewtonRaphsonMethod.CHEBYSHEV;
+
+        // Estimate costs
+        builder.setLength(0);
+        NewtonRaphsonStrategy fallback = solver.getDefaultStrategy();
+        NewtonRaphsonStrategy selected = null;
+        double minimum = Double.MAX_VALUE;
+        for (NewtonRaphsonStrategy candidate : STRATEGIES) {
+            if (!solver.isAvailable(candidate) || (higherOrder && candidate != NewtonRaphsonStrategy.MASTER_FUNCTION)) {
+                continue;
+            }
+
+            // Cost per iteration and try
+            double perIteration;
+            double perTry = 0d;
+            switch (candidate) {
+            case MASTER_FUNCTION:
+                perIteration = costMaster;
+                break;
+            case DERIVATIVES:
+                perIteration = costObject + costDerivatives;
+                break;
+            case FINITE_DIFFERENCES:
+                perIteration = 3d * costObject;
+                break;
+            default:
+                perIteration = costObject;
+                perTry = 2d * costObject;
+                break;
+            }
+
+            // Iterations needed
+            if (builder.length() != 0) {
+                builder.append(", ");
+            }
+            builder.append(candidate).append(": ");
+            if (!solver._solve(start, current, candidate)) {
+                evaluations += solver.getMeasures().getEvaluations();
+                builder.append("no convergence");
+                if (selected == null && candidate == fallback) {
+                    keep(candidate, false);
+                }
+                continue;
+            }
+            NewtonRaphsonMeasures measures = solver.getMeasures();
+            evaluations += measures.getEvaluations();
+            double cost = perIteration * measures.getIterations() + perTry * measures.getTries();
+            builder.append(measures.getIterations()).append(" iterations x ");
+            builder.append(Math.round(perIteration)).append(" [ns] = ").append(Math.round(cost)).append(" [ns]");
+            if (cost < minimum) {
+                minimum = cost;
+                selected = candidate;
+                keep(candidate, true);
+            }
+        }
+
+        // Select
+        if (selected == null) {
+            selected = fallback;
+            builder.append(". No strategy converged, using ").append(selected);
+        } else {
+            builder.append(". Selected ").append(selected);
+        }
+        this.strategy = selected;
+        this.reasoning = builder.toString();
+    }
+
+    /**
+     * Returns the average time in nanoseconds needed for evaluating the object functions, the
+     * derivatives or the master function at the given point. The minimum over several batches is
+     * used to reduce noise.
+     * @param start
+     * @param function null for the object functions
+     * @return
+     */
+    private double time(Vector2D start, NewtonRaphsonStrategy function) {
+        long minimum = Long.MAX_VALUE;
+        for (int batch = 0; batch < BATCHES; batch++) {
+            long time = System.nanoTime();
+            for (int i = 0; i < EVALUATIONS; i++) {
+                point.x = start.x;
+                point.y = start.y;
+                if (function == null) {
+                    evaluations += solver.evaluate(point, object);
+                } else if (function == NewtonRaphsonStrategy.DERIVATIVES) {
+                    evaluations += solver.evaluateDerivatives(point, derivatives);
+                } else {
+                    evaluations += solver.evaluate(point, object, derivatives, derivation);
+                }
+            }
+            minimum = Math.min(minimum, System.nanoTime() - time);
+        }
+        return (double) minimum / (double) EVALUATIONS;
+    }
+}
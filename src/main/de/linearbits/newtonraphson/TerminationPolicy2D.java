@@ -0,0 +1,587 @@
+/*
+ * Copyright 2015 Fabian Prasser
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.linearbits.newtonraphson;
+
+import java.io.Serializable;
+
+/**
+ * A policy which decides after each iteration whether a try has converged, should be continued or
+ * should be abandoned, in which case the solver restarts from the next start value. Policies complement
+ * the absolute accuracy and the limits of the configuration, which are always checked.<br>
+ * <br>
+ * Policies are evaluated after each step, with the new iterate, the residuals at the previous iterate and
+ * the step, none of which must be modified. They may keep state, which is reset at the beginning of each try.
+ * If a policy accepts an iterate based on its residuals, the solver returns the previous iterate, at which
+ * they have been evaluated. If it accepts an iterate based on the step, see {@link #isStepBased()}, the solver
+ * returns the new iterate, unless it uses a trust-region method, in which case the try is restarted.
+ * Like solvers, instances are not thread-safe and must not be shared between solvers used concurrently.
+ * Solvers configured from a common configuration use their own copies of the policy.
+ * The built-in policies do not allocate any memory while solving.
+ *
+ * @author Fabian Prasser
+ */
+public abstract class TerminationPolicy2D implements Serializable {
+
+    /**
+     * Decisions of a policy
+     * @author Fabian Prasser
+     */
+    public static enum Decision {
+
+        /** The try continues */
+        CONTINUE,
+
+        /** The try has converged to a root */
+        CONVERGED,
+
+        /** The try is hopeless and abandoned */
+        ABANDON
+    }
+
+    /**
+     * Combination of policies
+     * @author Fabian Prasser
+     */
+    private static final class Any extends TerminationPolicy2D {
+
+        /** SVUID */
+        private static final long          serialVersionUID = 3641979153467620370L;
+
+        /** Policy, which made the last decision */
+        private transient TerminationPolicy2D decisive;
+        /** Policies */
+        private final TerminationPolicy2D[] policies;
+
+        /**
+         * Creates a new instance
+         * @param policies
+         */
+        private Any(TerminationPolicy2D[] policies) {
+            this.policies = policies;
+        }
+
+        @Override
+        public TerminationPolicy2D copy() {
+            TerminationPolicy2D[] copies = new TerminationPolicy2D[policies.length];
+            for (int i = 0; i < policies.length; i++) {
+                copies[i] = policies[i].copy();
+            }
+            return new Any(copies);
+        }
+
+        @Override
+        public Decision evaluate(int iteration, Vector2D point, Vector2D residuals, Vector2D step) {
+            Decision result = Decision.CONTINUE;
+            decisive = null;
+            for (TerminationPolicy2D policy : policies) {
+                Decision decision = policy.evaluate(iteration, point, residuals, step);
+                if (result == Decision.CONTINUE) {
+                    result = decision;
+                    decisive = policy;
+                }
+            }
+            return result;
+        }
+
+        @Override
+        long fingerprint(long hash) {
+            hash = NewtonRaphsonConfiguration.fingerprint(hash, "any");
+            hash = NewtonRaphsonConfiguration.fingerprint(hash, policies.length);
+            for (TerminationPolicy2D policy : policies) {
+                hash = policy.fingerprint(hash);
+            }
+            return hash;
+        }
+
+        @Override
+        protected boolean isStepBased() {
+            return decisive != null && decisive.isStepBased();
+        }
+
+        @Override
+        public void reset() {
+            decisive = null;
+            for (TerminationPolicy2D policy : policies) {
+                policy.reset();
+            }
+        }
+    }
+
+    /**
+     * Detection of cycles
+     * @author Fabian Prasser
+     */
+    private static final class Cycle extends TerminationPolicy2D {
+
+        /** SVUID */
+        private static final long serialVersionUID = -4917466049731815215L;
+
+        /** Number of consecutive iterations that matched the iterate one period before, per period */
+        private final int[]       matches;
+        /** Maximal period */
+        private final int         period;
+        /** Relative tolerance */
+        private final double      tolerance;
+        /** Recent iterates, x-coordinates */
+        private final double[]    x;
+        /** Recent iterates, y-coordinates */
+        private final double[]    y;
+        /** Number of iterates seen */
+        private int               count;
+
+        /**
+         * Creates a new instance
+         * @param period
+         * @param tolerance
+         */
+        private Cycle(int period, double tolerance) {
+            this.period = period;
+            this.tolerance = tolerance;
+            this.matches = new int[period + 1];
+            this.x = new double[period + 1];
+            this.y = new double[period + 1];
+        }
+
+        @Override
+        public TerminationPolicy2D copy() {
+            return new Cycle(period, tolerance);
+        }
+
+        @Override
+        public Decision evaluate(int iteration, Vector2D point, Vector2D residuals, Vector2D step) {
+
+            // Compare with the iterates one period before
+            int length = x.length;
+            int index = count % length;
+            double scaleX = tolerance * Math.max(Math.abs(point.x), 1d);
+            double scaleY = tolerance * Math.max(Math.abs(point.y), 1d);
+            Decision result = Decision.CONTINUE;
+            boolean moving = Math.abs(step.x) > scaleX || Math.abs(step.y) > scaleY;
+            for (int k = 2; k <= period && k <= count; k++) {
+                int previous = (index - k + length) % length;
+                if (moving && Math.abs(point.x - x[previous]) <= scaleX && Math.abs(point.y - y[previous]) <= scaleY) {
+
+                    // Abandon, once the complete cycle has been repeated
+                    if (++matches[k] >= k) {
+                        result = Decision.ABANDON;
+                    }
+                } else {
+                    matches[k] = 0;
+                }
+            }
+
+            // Store
+            x[index] = point.x;
+            y[index] = point.y;
+            count++;
+            return result;
+        }
+
+        @Override
+        long fingerprint(long hash) {
+            return NewtonRaphsonConfiguration.fingerprint(NewtonRaphsonConfiguration.fingerprint(hash, "cycle"), period, tolerance);
+        }
+
+        @Override
+        public void reset() {
+            count = 0;
+            for (int k = 0; k < matches.length; k++) {
+                matches[k] = 0;
+            }
+        }
+    }
+
+    /**
+     * Detection of divergence
+     * @author Fabian Prasser
+     */
+    private static final class Growth extends TerminationPolicy2D {
+
+        /** SVUID */
+        private static final long serialVersionUID = 8014391532707337461L;
+
+        /** Factor */
+        private final double      factor;
+        /** Number of iterations */
+        private final int         iterations;
+        /** Number of consecutive iterations, in which the residual grew */
+        private int               count;
+        /** Last residual norm */
+        private double            last;
+
+        /**
+         * Creates a new instance
+         * @param factor
+         * @param iterations
+         */
+        private Growth(double factor, int iterations) {
+            this.factor = factor;
+            this.iterations = iterations;
+        }
+
+        @Override
+        public TerminationPolicy2D copy() {
+            return new Growth(factor, iterations);
+        }
+
+        @Override
+        public Decision evaluate(int iteration, Vector2D point, Vector2D residuals, Vector2D step) {
+            double norm = Math.sqrt(residuals.x * residuals.x + residuals.y * residuals.y);
+            if (iteration > 0 && norm > factor * last) {
+                count++;
+            } else {
+                count = 0;
+            }
+            last = norm;
+            return count >= iterations ? Decision.ABANDON : Decision.CONTINUE;
+        }
+
+        @Override
+        long fingerprint(long hash) {
+            return NewtonRaphsonConfiguration.fingerprint(NewtonRaphsonConfiguration.fingerprint(hash, "growth"), factor, iterations);
+        }
+
+        @Override
+        public void reset() {
+            count = 0;
+            last = 0d;
+        }
+    }
+
+    /**
+     * Convergence of scaled residuals
+     * @author Fabian Prasser
+     */
+    private static final class Residual extends TerminationPolicy2D {
+
+        /** SVUID */
+        private static final long serialVersionUID = -1508935209183417282L;
+
+        /** Scale of the first function */
+        private final double      scaleX;
+        /** Scale of the second function */
+        private final double      scaleY;
+        /** Tolerance */
+        private final double      tolerance;
+
+        /**
+         * Creates a new instance
+         * @param scaleX
+         * @param scaleY
+         * @param tolerance
+         */
+        private Residual(double scaleX, double scaleY, double tolerance) {
+            this.scaleX = scaleX;
+            this.scaleY = scaleY;
+            this.tolerance = tolerance;
+        }
+
+        @Override
+        public TerminationPolicy2D copy() {
+            return new Residual(scaleX, scaleY, tolerance);
+        }
+
+        @Override
+        public Decision evaluate(int iteration, Vector2D point, Vector2D residuals, Vector2D step) {
+            double x = residuals.x / scaleX;
+            double y = residuals.y / scaleY;
+            return Math.sqrt(x * x + y * y) <= tolerance ? Decision.CONVERGED : Decision.CONTINUE;
+        }
+
+        @Override
+        long fingerprint(long hash) {
+            return NewtonRaphsonConfiguration.fingerprint(NewtonRaphsonConfiguration.fingerprint(hash, "scaledResidual"), scaleX, scaleY, tolerance);
+        }
+    }
+
+    /**
+     * Detection of stagnation
+     * @author Fabian Prasser
+     */
+    private static final class Stagnation extends TerminationPolicy2D {
+
+        /** SVUID */
+        private static final long serialVersionUID = 5566393318165826431L;
+
+        /** Factor */
+        private final double      factor;
+        /** Number of iterations */
+        private final int         iterations;
+        /** Number of iterations without sufficient decrease */
+        private int               count;
+        /** Residual norm, which must be decreased */
+        private double            reference;
+
+        /**
+         * Creates a new instance
+         * @param factor
+         * @param iterations
+         */
+        private Stagnation(double factor, int iterations) {
+            this.factor = factor;
+            this.iterations = iterations;
+        }
+
+        @Override
+        public TerminationPolicy2D copy() {
+            return new Stagnation(factor, iterations);
+        }
+
+        @Override
+        public Decision evaluate(int iteration, Vector2D point, Vector2D residuals, Vector2D step) {
+            double norm = Math.sqrt(residuals.x * residuals.x + residuals.y * residuals.y);
+            if (iteration == 0 || norm < factor * reference) {
+                reference = norm;
+                count = 0;
+            } else {
+                count++;
+            }
+            return count >= iterations ? Decision.ABANDON : Decision.CONTINUE;
+        }
+
+        @Override
+        long fingerprint(long hash) {
+            return NewtonRaphsonConfiguration.fingerprint(NewtonRaphsonConfiguration.fingerprint(hash, "stagnation"), factor, iterations);
+        }
+
+        @Override
+        public void reset() {
+            count = 0;
+            reference = 0d;
+        }
+    }
+
+    /**
+     * Convergence of steps
+     * @author Fabian Prasser
+     */
+    private static final class Step extends TerminationPolicy2D {
+
+        /** SVUID */
+        private static final long serialVersionUID = -7306386497733416417L;
+
+        /** Absolute tolerance */
+        private final double      absolute;
+        /** Relative tolerance */
+        private final double      relative;
+
+        /**
+         * Creates a new instance
+         * @param absolute
+         * @param relative
+         */
+        private Step(double absolute, double relative) {
+            this.absolute = absolute;
+            this.relative = relative;
+        }
+
+        @Override
+        public TerminationPolicy2D copy() {
+            return new Step(absolute, relative);
+        }
+
+        @Override
+        public Decision evaluate(int iteration, Vector2D point, Vector2D residuals, Vector2D step) {
+            double norm = Math.sqrt(step.x * step.x + step.y * step.y);
+            double scale = Math.sqrt(point.x * point.x + point.y * point.y);
+            return norm <= absolute + relative * scale ? Decision.CONVERGED : Decision.CONTINUE;
+        }
+
+        @Override
+        long fingerprint(long hash) {
+            return NewtonRaphsonConfiguration.fingerprint(NewtonRaphsonConfiguration.fingerprint(hash, "step"), absolute, relative);
+        }
+
+        @Override
+        protected boolean isStepBased() {
+            return true;
+        }
+    }
+
+    /** SVUID */
+    private static final long serialVersionUID = -2046101541829812447L;
+
+    /**
+     * Combines the given policies. All policies are evaluated in each iteration, and the first decision
+     * other than CONTINUE is returned.
+     * @param policies
+     * @return
+     */
+    public static TerminationPolicy2D any(TerminationPolicy2D... policies) {
+        if (policies == null || policies.length == 0) {
+            throw new IllegalArgumentException("Invalid policies");
+        }
+        for (TerminationPolicy2D policy : policies) {
+            if (policy == null) {
+                throw new IllegalArgumentException("Invalid policies");
+            }
+        }
+        return new Any(policies.clone());
+    }
+
+    /**
+     * Abandons tries, which are caught in a cycle, i.e. which repeat iterates with a period of two up
+     * to the given period within the given relative tolerance for a full period. Such cycles occur if
+     * Newton steps overshoot symmetrically, e.g. around extrema of functions. Iterates reached by steps
+     * within the tolerance are not considered, as they indicate convergence rather than cycling.
+     * @param period
+     * @param tolerance
+     * @return
+     */
+    public static TerminationPolicy2D cycle(int period, double tolerance) {
+        if (period < 2) {
+            throw new IllegalArgumentException("Invalid period");
+        }
+        if (!(tolerance >= 0d)) {
+            throw new IllegalArgumentException("Invalid tolerance");
+        }
+        return new Cycle(period, tolerance);
+    }
+
+    /**
+     * Abandons tries, in which the norm of the residuals grew by more than the given factor in each of
+     * the given number of consecutive iterations.
+     * @param factor
+     * @param iterations
+     * @return
+     */
+    public static TerminationPolicy2D growth(double factor, int iterations) {
+        if (!(factor >= 1d)) {
+            throw new IllegalArgumentException("Invalid factor");
+        }
+        if (iterations < 1) {
+            throw new IllegalArgumentException("Invalid number of iterations");
+        }
+        return new Growth(factor, iterations);
+    }
+
+    /**
+     * Accepts iterates, if the step leading to them was at most the given tolerance relative to
+     * the norm of the iterate. With trust-region methods, such tries are restarted instead.
+     * @param tolerance
+     * @return
+     */
+    public static TerminationPolicy2D relativeStep(double tolerance) {
+        if (!(tolerance >= 0d)) {
+            throw new IllegalArgumentException("Invalid tolerance");
+        }
+        return new Step(0d, tolerance);
+    }
+
+    /**
+     * Accepts iterates, if the norm of the residuals divided by the given scales, i.e. the typical
+     * magnitudes of the functions, was at most the given tolerance
+     * @param scaleX
+     * @param scaleY
+     * @param tolerance
+     * @return
+     */
+    public static TerminationPolicy2D scaledResidual(double scaleX, double scaleY, double tolerance) {
+        if (!(scaleX > 0d) || !(scaleY > 0d)) {
+            throw new IllegalArgumentException("Invalid scale");
+        }
+        if (!(tolerance >= 0d)) {
+            throw new IllegalArgumentException("Invalid tolerance");
+        }
+        return new Residual(scaleX, scaleY, tolerance);
+    }
+
+    /**
+     * Abandons tries, in which the norm of the residuals did not decrease below the given factor of
+     * the last sufficiently decreased norm within the given number of iterations
+     * @param factor
+     * @param iterations
+     * @return
+     */
+    public static TerminationPolicy2D stagnation(double factor, int iterations) {
+        if (!(factor > 0d && factor <= 1d)) {
+            throw new IllegalArgumentException("Invalid factor");
+        }
+        if (iterations < 1) {
+            throw new IllegalArgumentException("Invalid number of iterations");
+        }
+        return new Stagnation(factor, iterations);
+    }
+
+    /**
+     * Accepts iterates, if the norm of the step leading to them was at most the given tolerance. With
+     * trust-region methods, such tries are restarted instead.
+     * @param tolerance
+     * @return
+     */
+    public static TerminationPolicy2D step(double tolerance) {
+        if (!(tolerance >= 0d)) {
+            throw new IllegalArgumentException("Invalid tolerance");
+        }
+        return new Step(tolerance, 0d);
+    }
+
+    /**
+     * Constructor
+     */
+    protected TerminationPolicy2D() {
+        // Empty by design
+    }
+
+    /**
+     * Returns an instance with the same parameters, which can be used by another solver concurrently.
+     * Solvers configured from a configuration use copies of its policy. The built-in policies return new
+     * instances without state. The default implementation returns a deep copy, which is created by
+     * serialization, and should be overridden by policies, which are copied frequently.
+     * @return
+     */
+    public TerminationPolicy2D copy() {
+        return NewtonRaphsonConfiguration.deepCopy(this);
+    }
+
+    /**
+     * Decides about the try after an iteration
+     * @param iteration the number of the iteration within the try, starting at zero
+     * @param point the new iterate
+     * @param residuals the values of the functions at the previous iterate
+     * @param step the step, which has been subtracted from the previous iterate
+     * @return
+     */
+    public abstract Decision evaluate(int iteration, Vector2D point, Vector2D residuals, Vector2D step);
+
+    /**
+     * Adds the type and the parameters of this policy to the given hash, which must be stable across
+     * processes. The default implementation adds the name of the class and the serialized form.
+     * @param hash
+     * @return
+     */
+    long fingerprint(long hash) {
+        hash = NewtonRaphsonConfiguration.fingerprint(hash, getClass().getName());
+        return NewtonRaphsonConfiguration.fingerprint(hash, NewtonRaphsonConfiguration.serialize(this));
+    }
+
+    /**
+     * Returns whether the last decision has been based on the step rather than on the residuals. Short steps
+     * do not indicate roots with trust-region methods, as their steps are also short close to stationary points
+     * of the merit function. The default implementation returns false.
+     * @return
+     */
+    protected boolean isStepBased() {
+        return false;
+    }
+
+    /**
+     * Resets the state at the beginning of a try. The default implementation does nothing.
+     */
+    public void reset() {
+        // Empty by design
+    }
+}
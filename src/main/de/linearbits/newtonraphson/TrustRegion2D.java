@@ -0,0 +1,282 @@
+/*
+ * Copyright 2015 Fabian Prasser
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.linearbits.newtonraphson;
+
+/**
+ * This class implements the state of trust-region methods, i.e. Levenberg-Marquardt with adaptive
+ * damping and Powell's dogleg method. Steps are computed for the merit function 0.5 * |F(x)|^2 and
+ * rejected if the actual reduction of the merit function is not positive.
+ *
+ * @author Fabian Prasser
+ */
+class TrustRegion2D {
+
+    /** Initial damping relative to the largest diagonal element of J^T * J */
+    private static final double       INITIAL_DAMPING = 1e-3;
+    /** Levenberg-Marquardt: smallest factor by which the damping is decreased after a successful step */
+    private static final double       MIN_DECREASE    = 1e-2;
+    /** Levenberg-Marquardt: damping at which the trust region is considered to have collapsed */
+    private static final double       MAX_DAMPING     = 1e12;
+    /** Dogleg: relative radius at which the trust region is considered to have collapsed */
+    private static final double       MIN_RADIUS      = 1e-12;
+    /** Relative reduction of the merit function below which progress is considered to have stalled */
+    private static final double       MIN_REDUCTION   = 1e-10;
+    /** Minimal scaling of the damping term */
+    private static final double       MIN_SCALING     = 1e-12;
+
+    /** Condition limit */
+    private double                    conditionLimit;
+    /** Merit function at the current point */
+    private double                    cost;
+    /** Levenberg-Marquardt: damping */
+    private double                    damping;
+    /** Levenberg-Marquardt: growth factor of the damping */
+    private double                    growth;
+    /** Jacobian at the current point */
+    private final SquareMatrix2D      jacobian = new SquareMatrix2D();
+    /** Method */
+    private NewtonRaphsonMethod       method;
+    /** Current point */
+    private final Vector2D            point    = new Vector2D();
+    /** Predicted reduction of the merit function by the last step */
+    private double                    predicted;
+    /** Dogleg: radius of the trust region */
+    private double                    radius;
+    /** Residual at the current point */
+    private final Vector2D            residual = new Vector2D();
+    /** Whether the last accepted step did not make progress */
+    private boolean                   stalled;
+    /** Length of the last step */
+    private double                    stepLength;
+    /** Whether there is a current point */
+    private boolean                   valid;
+    /** Workspace */
+    private final SquareMatrix2D      workspace = new SquareMatrix2D();
+
+    /**
+     * Creates a new instance
+     */
+    TrustRegion2D() {
+        // Empty by design
+    }
+
+    /**
+     * Decides whether to accept the given point, which results from the last step. If the point
+     * is rejected, the given point and residual are reset to the current values and the trust
+     * region is reduced.
+     * @param solution
+     * @param object
+     * @return whether the point has been accepted
+     */
+    boolean accept(Vector2D solution, Vector2D object) {
+
+        // Compute merit function
+        double cost = 0.5d * (object.x * object.x + object.y * object.y);
+
+        // First point of a try
+        if (!valid) {
+            store(solution, object, cost);
+            valid = true;
+            return true;
+        }
+
+        // Ratio of actual and predicted reduction
+        double ratio = (this.cost - cost) / predicted;
+        if (cost < this.cost && !Double.isNaN(ratio)) {
+            if (method == NewtonRaphsonMethod.LEVENBERG_MARQUARDT) {
+                double factor = 2d * ratio - 1d;
+                damping *= Math.max(MIN_DECREASE, 1d - factor * factor * factor);
+                growth = 2d;
+            } else {
+                if (ratio < 0.25d) {
+                    radius = 0.5d * stepLength;
+                } else if (ratio > 0.75d) {
+                    radius = Math.max(radius, 3d * stepLength);
+                }
+            }
+            stalled = this.cost - cost <= MIN_REDUCTION * this.cost;
+            store(solution, object, cost);
+            return true;
+        }
+
+        // Reject
+        if (method == NewtonRaphsonMethod.LEVENBERG_MARQUARDT) {
+            damping *= growth;
+            growth *= 2d;
+        } else {
+            radius = 0.25d * stepLength;
+        }
+        solution.x = point.x;
+        solution.y = point.y;
+        object.x = residual.x;
+        object.y = residual.y;
+        return false;
+    }
+
+    /**
+     * Returns whether the trust region has collapsed or progress has stalled, which indicates 
+     * that the current point is close to a local minimum of the merit function that is not a solution
+     * @return
+     */
+    boolean isCollapsed() {
+        if (stalled) {
+            return true;
+        } else if (method == NewtonRaphsonMethod.LEVENBERG_MARQUARDT) {
+            return damping > MAX_DAMPING;
+        } else {
+            return radius < MIN_RADIUS * Math.max(1d, Math.sqrt(point.x * point.x + point.y * point.y));
+        }
+    }
+
+    /**
+     * Resets the state at the beginning of a try
+     * @param method
+     * @param conditionLimit
+     */
+    void reset(NewtonRaphsonMethod method, double conditionLimit) {
+        this.method = method;
+        this.conditionLimit = conditionLimit;
+        this.valid = false;
+        this.stalled = false;
+        this.damping = Double.NaN;
+        this.growth = 2d;
+        this.radius = Double.NaN;
+    }
+
+    /**
+     * Computes the next step for the current point and residual. The step is stored in the
+     * given vector, which must contain the residual at the current point. The step must be
+     * subtracted from the current point.
+     * @param object
+     * @return whether the Jacobian was ill-conditioned
+     */
+    boolean step(Vector2D object) {
+
+        // Gradient g = J^T * F and approximate Hessian A = J^T * J
+        SquareMatrix2D j = jacobian;
+        double gx = j.x1 * object.x + j.y1 * object.y;
+        double gy = j.x2 * object.x + j.y2 * object.y;
+        double a11 = j.x1 * j.x1 + j.y1 * j.y1;
+        double a12 = j.x1 * j.x2 + j.y1 * j.y2;
+        double a22 = j.x2 * j.x2 + j.y2 * j.y2;
+
+        // Condition of the Jacobian
+        workspace.x1 = j.x1;
+        workspace.x2 = j.x2;
+        workspace.y1 = j.y1;
+        workspace.y2 = j.y2;
+        boolean singular = workspace.condition() > conditionLimit;
+
+        double dx, dy;
+        if (method == NewtonRaphsonMethod.LEVENBERG_MARQUARDT) {
+
+            // Solve (A + damping * max(diag(A)) * I) * d = g. Scaling with diag(A) would not damp
+            // directions in which the Jacobian is close to singular, where steps are longest
+            double scaling = Math.max(Math.max(a11, a22), MIN_SCALING);
+            if (Double.isNaN(damping)) {
+                damping = INITIAL_DAMPING;
+            }
+            double m11 = a11 + damping * scaling;
+            double m22 = a22 + damping * scaling;
+            double det = m11 * m22 - a12 * a12;
+            dx = (m22 * gx - a12 * gy) / det;
+            dy = (m11 * gy - a12 * gx) / det;
+
+        } else {
+
+            // Gauss-Newton step
+            if (singular) {
+                workspace.pseudoInverse(1d / conditionLimit);
+            } else {
+                workspace.inverse();
+            }
+            double nx = workspace.x1 * object.x + workspace.x2 * object.y;
+            double ny = workspace.y1 * object.x + workspace.y2 * object.y;
+            double newton = Math.sqrt(nx * nx + ny * ny);
+            if (Double.isNaN(radius)) {
+                radius = Math.max(1d, Math.sqrt(point.x * point.x + point.y * point.y));
+            }
+
+            if (newton <= radius) {
+                dx = nx;
+                dy = ny;
+            } else if (gx == 0d && gy == 0d) {
+
+                // Without a gradient, e.g. if it underflows, the Newton step is clipped to the trust region
+                double scaling = newton < Double.POSITIVE_INFINITY ? radius / newton : 0d;
+                dx = scaling * nx;
+                dy = scaling * ny;
+            } else {
+
+                // Cauchy point along the gradient
+                double gradient = Math.sqrt(gx * gx + gy * gy);
+                double curvature = gx * (a11 * gx + a12 * gy) + gy * (a12 * gx + a22 * gy);
+                double alpha = curvature > 0d ? (gradient * gradient) / curvature : Double.POSITIVE_INFINITY;
+                double cx = alpha * gx;
+                double cy = alpha * gy;
+                double cauchy = alpha * gradient;
+
+                if (cauchy >= radius || Double.isNaN(newton)) {
+                    dx = radius * gx / gradient;
+                    dy = radius * gy / gradient;
+                } else {
+
+                    // Intersection of the dogleg path with the boundary of the trust region
+                    double ex = nx - cx;
+                    double ey = ny - cy;
+                    double a = ex * ex + ey * ey;
+                    double b = 2d * (cx * ex + cy * ey);
+                    double c = cauchy * cauchy - radius * radius;
+                    double tau = (-b + Math.sqrt(b * b - 4d * a * c)) / (2d * a);
+                    dx = cx + tau * ex;
+                    dy = cy + tau * ey;
+                }
+            }
+        }
+
+        // Predicted reduction of the merit function
+        predicted = dx * gx + dy * gy - 0.5d * (dx * (a11 * dx + a12 * dy) + dy * (a12 * dx + a22 * dy));
+        stepLength = Math.sqrt(dx * dx + dy * dy);
+        object.x = dx;
+        object.y = dy;
+        return singular;
+    }
+
+    /**
+     * Stores the Jacobian at the current point
+     * @param derivatives
+     */
+    void update(SquareMatrix2D derivatives) {
+        jacobian.x1 = derivatives.x1;
+        jacobian.x2 = derivatives.x2;
+        jacobian.y1 = derivatives.y1;
+        jacobian.y2 = derivatives.y2;
+    }
+
+    /**
+     * Stores the current point
+     * @param solution
+     * @param object
+     * @param cost
+     */
+    private void store(Vector2D solution, Vector2D object, double cost) {
+        point.x = solution.x;
+        point.y = solution.y;
+        residual.x = object.x;
+        residual.y = object.y;
+        this.cost = cost;
+    }
+}
@@ -0,0 +1,70 @@
+/*
+ * Copyright 2015 Fabian Prasser
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.linearbits.newtonraphson;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * Flight recorder event covering a single try, i.e. the iterations from one start value
+ * @author Fabian Prasser
+ */
+@Name("de.linearbits.newtonraphson.Try")
+@Label("Try")
+@Category("Newton-Raphson")
+@Description("A try from a single start value, including the reason for restarting")
+final class TryEvent extends jdk.jfr.Event {
+
+    /** Outcome */
+    static final String    ABANDONED            = "Abandoned by termination policy";
+    /** Outcome */
+    static final String    COLLAPSED            = "Trust region collapsed";
+    /** Outcome */
+    static final String    CONSTRAINT_VIOLATED  = "Constraint violated";
+    /** Outcome */
+    static final String    CONVERGED            = "Converged";
+    /** Outcome */
+    static final String    DIVERGED             = "Diverged";
+    /** Outcome */
+    static final String    ITERATION_LIMIT      = "Iteration limit per try";
+    /** Outcome */
+    static final String    START_VALUES_USED    = "Prepared start values exhausted";
+    /** Outcome */
+    static final String    TIME_LIMIT           = "Time limit per try";
+    /** Outcome */
+    static final String    TOTAL_LIMIT          = "Total time limit";
+
+    /** Instance for checking whether events are enabled, which unlike event types does not start the recorder */
+    static final TryEvent  PROBE                = new TryEvent();
+
+    @Label("Try")
+    int                    number;
+
+    @Label("Start X")
+    double                 startX;
+
+    @Label("Start Y")
+    double                 startY;
+
+    @Label("Iterations")
+    int                    iterations;
+
+    @Label("Outcome")
+    @Description("Why the try ended, which is the reason for restarting, unless it converged")
+    String                 outcome;
+}
@@ -0,0 +1,279 @@
+/*
+ * Copyright 2015 Fabian Prasser
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.linearbits.newtonraphson;
+
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * This class implements an index of solutions of parameterized problems, which provides start values
+ * for new problems from the solutions of the nearest problems solved before. Parameter space is divided
+ * into a grid of cells, each of which stores the solution recorded last. Cells are mapped to a fixed number
+ * of slots by hashing, and cells sharing a slot replace each other, which bounds memory. Lookups search the
+ * cell of the parameters and its neighbours within the configured radius, and return the solution of the
+ * nearest parameters found.<br>
+ * <br>
+ * Instances are thread-safe. Lookups neither lock nor allocate memory, records allocate a single entry.
+ *
+ * @author Fabian Prasser
+ */
+public class WarmStartIndex2D {
+
+    /**
+     * An entry, which is immutable
+     * @author Fabian Prasser
+     */
+    private static final class Entry {
+
+        /** Key of the cell */
+        private final long     key;
+        /** Parameters */
+        private final double[] parameters;
+        /** Solution */
+        private final double   x;
+        /** Solution */
+        private final double   y;
+
+        /**
+         * Creates a new instance
+         * @param key
+         * @param parameters
+         * @param x
+         * @param y
+         */
+        private Entry(long key, double[] parameters, double x, double y) {
+            this.key = key;
+            this.parameters = parameters;
+            this.x = x;
+            this.y = y;
+        }
+    }
+
+    /** Constant */
+    public static final int                   DEFAULT_RADIUS = 1;
+
+    /** Sizes of cells */
+    private final double[]                    cellSizes;
+    /** Mask for slots */
+    private final int                         mask;
+    /** Radius of the neighbourhood searched, in cells */
+    private volatile int                      radius         = DEFAULT_RADIUS;
+    /** Slots */
+    private final AtomicReferenceArray<Entry> slots;
+
+    /**
+     * Creates a new instance for parameters with the given number of dimensions, which are divided into
+     * cells of the given sizes. The capacity is rounded up to the next power of two.
+     * @param cellSizes
+     * @param capacity
+     */
+    public WarmStartIndex2D(double[] cellSizes, int capacity) {
+        if (cellSizes == null || cellSizes.length == 0) {
+            throw new IllegalArgumentException("Invalid cell sizes");
+        }
+        for (double size : cellSizes) {
+            if (!(size > 0d) || Double.isInfinite(size)) {
+                throw new IllegalArgumentException("Invalid cell sizes");
+            }
+        }
+        if (capacity < 1 || capacity > 1 << 30) {
+            throw new IllegalArgumentException("Invalid capacity");
+        }
+        int slots = Integer.highestOneBit(capacity);
+        slots = slots < capacity ? slots << 1 : slots;
+        this.cellSizes = cellSizes.clone();
+        this.mask = slots - 1;
+        this.slots = new AtomicReferenceArray<Entry>(slots);
+    }
+
+    /**
+     * Removes all entries
+     */
+    public void clear() {
+        for (int i = 0; i < slots.length(); i++) {
+            slots.set(i, null);
+        }
+    }
+
+    /**
+     * Returns the number of slots
+     * @return
+     */
+    public int getCapacity() {
+        return slots.length();
+    }
+
+    /**
+     * Returns the number of dimensions of parameters
+     * @return
+     */
+    public int getDimensions() {
+        return cellSizes.length;
+    }
+
+    /**
+     * Returns the radius of the neighbourhood searched
+     * @return
+     */
+    public int getRadius() {
+        return radius;
+    }
+
+    /**
+     * Stores the solution of the nearest parameters recorded in the neighbourhood of the given
+     * parameters in the result
+     * @param parameters
+     * @param result
+     * @return whether a solution has been found
+     */
+    public boolean lookup(double[] parameters, Vector2D result) {
+
+        // Check
+        int dimensions = check(parameters);
+        int radius = this.radius;
+        int width = 2 * radius + 1;
+        int cells = 1;
+        for (int i = 0; i < dimensions; i++) {
+            cells *= width;
+        }
+
+        // Search
+        Entry nearest = null;
+        double distance = Double.MAX_VALUE;
+        for (int cell = 0; cell < cells; cell++) {
+            long key = 0x9E3779B97F4A7C15L;
+            int offsets = cell;
+            for (int i = 0; i < dimensions; i++) {
+                key = mix(key, coordinate(parameters, i) + offsets % width - radius);
+                offsets /= width;
+            }
+            Entry entry = slots.get(slot(key));
+            if (entry != null && entry.key == key) {
+                double current = 0d;
+                for (int i = 0; i < dimensions; i++) {
+                    double delta = (entry.parameters[i] - parameters[i]) / cellSizes[i];
+                    current += delta * delta;
+                }
+                if (current < distance) {
+                    nearest = entry;
+                    distance = current;
+                }
+            }
+        }
+
+        // Return
+        if (nearest == null) {
+            return false;
+        }
+        result.x = nearest.x;
+        result.y = nearest.y;
+        return true;
+    }
+
+    /**
+     * Radius of the neighbourhood searched, in cells. Larger radii find solutions for sparser records,
+     * but lookups examine (2 * radius + 1)^dimensions cells. Default is 1.
+     * @param radius
+     */
+    public WarmStartIndex2D radius(int radius) {
+        if (radius < 0) {
+            throw new IllegalArgumentException("Invalid radius");
+        }
+        this.radius = radius;
+        return this;
+    }
+
+    /**
+     * Records the solution for the given parameters, replacing the solution recorded for the same cell or
+     * for a cell sharing its slot. Solutions containing NaN values are ignored.
+     * @param parameters
+     * @param solution
+     */
+    public void record(double[] parameters, Vector2D solution) {
+        int dimensions = check(parameters);
+        if (solution.isNaN()) {
+            return;
+        }
+        long key = 0x9E3779B97F4A7C15L;
+        for (int i = 0; i < dimensions; i++) {
+            key = mix(key, coordinate(parameters, i));
+        }
+        slots.set(slot(key), new Entry(key, parameters.clone(), solution.x, solution.y));
+    }
+
+    /**
+     * Solves the given problem, starting at the solution of the nearest parameters recorded, or at the given
+     * start value if none has been found, and records the solution. The solver must not be used concurrently.
+     * @param solver
+     * @param parameters
+     * @param start
+     * @param result
+     * @return whether a solution has been found
+     */
+    public boolean solve(NewtonRaphson2D solver, double[] parameters, Vector2D start, Vector2D result) {
+        Vector2D warm = new Vector2D();
+        if (!lookup(parameters, warm)) {
+            warm.x = start.x;
+            warm.y = start.y;
+        }
+        boolean solved = solver.solve(warm, result);
+        if (solved) {
+            record(parameters, result);
+        }
+        return solved;
+    }
+
+    /**
+     * Checks the given parameters and returns the number of dimensions
+     * @param parameters
+     * @return
+     */
+    private int check(double[] parameters) {
+        if (parameters == null || parameters.length != cellSizes.length) {
+            throw new IllegalArgumentException("Invalid parameters");
+        }
+        return parameters.length;
+    }
+
+    /**
+     * Returns the coordinate of the cell containing the given parameters in the given dimension
+     * @param parameters
+     * @param dimension
+     * @return
+     */
+    private long coordinate(double[] parameters, int dimension) {
+        return (long) Math.floor(parameters[dimension] / cellSizes[dimension]);
+    }
+
+    /**
+     * Mixes the given coordinate into the given key
+     * @param key
+     * @param coordinate
+     * @return
+     */
+    private long mix(long key, long coordinate) {
+        key = (key ^ coordinate) * 0xBF58476D1CE4E5B9L;
+        return key ^ (key >>> 31);
+    }
+
+    /**
+     * Returns the slot of the given key
+     * @param key
+     * @return
+     */
+    private int slot(long key) {
+        return (int) (key ^ (key >>> 32)) & mask;
+    }
+}
@@ -0,0 +1,260 @@
+/*
+ * Copyright 2015 Fabian Prasser
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.linearbits.newtonraphson.tests;
+
+import java.lang.management.ManagementFactory;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+import de.linearbits.newtonraphson.Constraint2D;
+import de.linearbits.newtonraphson.CurveConsumer2D;
+import de.linearbits.newtonraphson.CurveTracer2D;
+import de.linearbits.newtonraphson.Function;
+import de.linearbits.newtonraphson.Function2D;
+import de.linearbits.newtonraphson.NewtonRaphson2D;
+import de.linearbits.newtonraphson.NewtonRaphsonMethod;
+import de.linearbits.newtonraphson.NewtonRaphsonMetrics;
+import de.linearbits.newtonraphson.OffHeapBatch2D;
+import de.linearbits.newtonraphson.Pair;
+import de.linearbits.newtonraphson.SquareMatrix2D;
+import de.linearbits.newtonraphson.StartSampler2D;
+import de.linearbits.newtonraphson.TerminationPolicy2D;
+import de.linearbits.newtonraphson.Vector2D;
+
+/**
+ * Regression test, which makes sure that warmed-up solves do not allocate any memory
+ * @author Fabian Prasser
+ */
+public class AllocationTests {
+
+    /** Number of solves used for warming up */
+    private static final int WARMUP      = 200000;
+    /** Number of solves measured */
+    private static final int REPETITIONS = 100000;
+
+    /**
+     * Entry point
+     * @param args
+     */
+    public static void main(String[] args) {
+
+        com.sun.management.ThreadMXBean bean = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        if (!bean.isThreadAllocatedMemorySupported()) {
+            System.out.println("Allocation measurement not supported, skipping");
+            return;
+        }
+        bean.setThreadAllocatedMemoryEnabled(true);
+
+        // We want a solution in the negative range, which requires restarts
+        Constraint2D constraint = new Constraint2D(){
+            public Boolean evaluate(Vector2D input) {
+                return input.x < 0 && input.y < 0;
+            }
+        };
+
+        check(bean, "Newton", new NewtonRaphson2D(getMasterFunction())
+                                                  .accuracy(1e-6)
+                                                  .iterationsPerTry(1000)
+                                                  .iterationsTotal(100000));
+        check(bean, "Newton with constraints", new NewtonRaphson2D(getMasterFunction(), constraint)
+                                                                   .accuracy(1e-6)
+                                                                   .iterationsPerTry(1000)
+                                                                   .iterationsTotal(100000));
+        check(bean, "Newton with sampling and policies", new NewtonRaphson2D(getMasterFunction(), constraint)
+                                                                             .sampler(StartSampler2D.rejection())
+                                                                             .termination(TerminationPolicy2D.any(TerminationPolicy2D.cycle(4, 1e-9),
+                                                                                                                  TerminationPolicy2D.growth(2d, 5)))
+                                                                             .accuracy(1e-6)
+                                                                             .iterationsPerTry(1000)
+                                                                             .iterationsTotal(100000));
+        check(bean, "Dogleg with metrics", new NewtonRaphson2D(getMasterFunction())
+                                                               .method(NewtonRaphsonMethod.DOGLEG)
+                                                               .metrics(new NewtonRaphsonMetrics())
+                                                               .accuracy(1e-6)
+                                                               .iterationsPerTry(1000)
+                                                               .iterationsTotal(100000));
+        check(bean, "Off-heap batch", new OffHeapBatch2D(new NewtonRaphson2D(getMasterFunction())
+                                                                            .accuracy(1e-6)
+                                                                            .iterationsPerTry(1000)
+                                                                            .iterationsTotal(100000)));
+        check(bean, "Curve tracer", new CurveTracer2D(new Function2D() {
+            public Double evaluate(Vector2D input) {
+                return 3d * input.x * input.x + 2d * input.y * input.y - 35d;
+            }
+        }).accuracy(1e-6));
+    }
+
+    /**
+     * Checks that the given tracer does not allocate memory
+     * @param bean
+     * @param label
+     * @param tracer
+     */
+    private static void check(com.sun.management.ThreadMXBean bean, String label, CurveTracer2D tracer) {
+
+        Vector2D start = new Vector2D(1d, 1d);
+        final int[] points = new int[1];
+        CurveConsumer2D consumer = new CurveConsumer2D() {
+            public void consume(int index, Vector2D point) {
+                points[0]++;
+            }
+        };
+        long thread = Thread.currentThread().getId();
+        int repetitions = REPETITIONS / 100;
+
+        // Warm up
+        for (int i = 0; i < WARMUP / 100; i++) {
+            tracer.trace(start, consumer);
+        }
+
+        // Overhead of the measurement itself
+        long overhead = bean.getThreadAllocatedBytes(thread);
+        overhead = bean.getThreadAllocatedBytes(thread) - overhead;
+
+        // Measure
+        long before = bean.getThreadAllocatedBytes(thread);
+        int closed = 0;
+        points[0] = 0;
+        for (int i = 0; i < repetitions; i++) {
+            closed += tracer.trace(start, consumer) == CurveTracer2D.Outcome.CLOSED ? 1 : 0;
+        }
+        long allocated = bean.getThreadAllocatedBytes(thread) - before - overhead;
+
+        System.out.println(label + ": " + allocated + " bytes allocated by " + repetitions + " traces of " + (points[0] / repetitions) + " points, " + closed + " closed, " + tracer.getMeasures());
+        if (closed != repetitions) {
+            throw new IllegalStateException(label + ": not all curves closed");
+        }
+        if (allocated > 0) {
+            throw new IllegalStateException(label + ": tracing allocates memory");
+        }
+    }
+
+    /**
+     * Checks that the given batch does not allocate memory
+     * @param bean
+     * @param label
+     * @param batch
+     */
+    private static void check(com.sun.management.ThreadMXBean bean, String label, OffHeapBatch2D batch) {
+
+        ByteBuffer problems = ByteBuffer.allocateDirect(REPETITIONS * batch.getProblemSize()).order(ByteOrder.nativeOrder());
+        ByteBuffer results = ByteBuffer.allocateDirect(REPETITIONS * OffHeapBatch2D.RESULT_SIZE).order(ByteOrder.nativeOrder());
+        for (int i = 0; i < REPETITIONS; i++) {
+            problems.putDouble(1d).putDouble(1d);
+        }
+        problems.flip();
+        long thread = Thread.currentThread().getId();
+
+        // Warm up
+        for (int i = 0; i < WARMUP / REPETITIONS; i++) {
+            batch.solve(problems, results);
+        }
+
+        // Overhead of the measurement itself
+        long overhead = bean.getThreadAllocatedBytes(thread);
+        overhead = bean.getThreadAllocatedBytes(thread) - overhead;
+
+        // Measure
+        long before = bean.getThreadAllocatedBytes(thread);
+        int solved = batch.solve(problems, results);
+        long allocated = bean.getThreadAllocatedBytes(thread) - before - overhead;
+
+        System.out.println(label + ": " + allocated + " bytes allocated by " + REPETITIONS + " solves, " + solved + " solved, " + batch.getMeasures());
+        if (solved != REPETITIONS) {
+            throw new IllegalStateException(label + ": not all problems solved");
+        }
+        if (allocated > 0) {
+            throw new IllegalStateException(label + ": solving allocates memory");
+        }
+    }
+
+    /**
+     * Checks that the given solver does not allocate memory
+     * @param bean
+     * @param label
+     * @param solver
+     */
+    private static void check(com.sun.management.ThreadMXBean bean, String label, NewtonRaphson2D solver) {
+
+        Vector2D start = new Vector2D(1d, 1d);
+        Vector2D result = new Vector2D();
+        long thread = Thread.currentThread().getId();
+
+        // Warm up
+        for (int i = 0; i < WARMUP; i++) {
+            solver.solve(start, result);
+        }
+
+        // Overhead of the measurement itself
+        long overhead = bean.getThreadAllocatedBytes(thread);
+        overhead = bean.getThreadAllocatedBytes(thread) - overhead;
+
+        // Measure
+        long before = bean.getThreadAllocatedBytes(thread);
+        int solved = 0;
+        for (int i = 0; i < REPETITIONS; i++) {
+            solved += solver.solve(start, result) ? 1 : 0;
+        }
+        long allocated = bean.getThreadAllocatedBytes(thread) - before - overhead;
+
+        System.out.println(label + ": " + allocated + " bytes allocated by " + REPETITIONS + " solves, " + solved + " solved, " + solver.getMeasures());
+        if (solved != REPETITIONS) {
+            throw new IllegalStateException(label + ": not all problems solved");
+        }
+        if (allocated > 0) {
+            throw new IllegalStateException(label + ": solving allocates memory");
+        }
+    }
+
+    /**
+     * Returns the master function
+     * @return
+     */
+    private static Function<Vector2D, Pair<Vector2D, SquareMatrix2D>> getMasterFunction() {
+
+        // Return function
+        return new Function<Vector2D, Pair<Vector2D, SquareMatrix2D>>() {
+
+            // Prepare result objects
+            private final SquareMatrix2D                 derivatives  = new SquareMatrix2D();
+            private final Vector2D                       object       = new Vector2D();
+            private final Pair<Vector2D, SquareMatrix2D> result       = new Pair<Vector2D, SquareMatrix2D>(object, derivatives);
+
+            /**
+             * Eval
+             * @param input
+             * @return
+             */
+            public Pair<Vector2D, SquareMatrix2D> evaluate(Vector2D input) {
+
+                // Prepare
+                double xSquare = input.x * input.x;
+                double ySquare = input.y * input.y;
+
+                // Compute
+                object.x = 3d * xSquare + 2d * ySquare - 35d;
+                object.y = 4d * xSquare - 3d * ySquare - 24d;
+                derivatives.x1 = + 6d * input.x;
+                derivatives.x2 = + 4d * input.y;
+                derivatives.y1 = + 8d * input.x;
+                derivatives.y2 = - 6d * input.y;
+
+                // Return
+                return result;
+            }
+        };
+    }
+}
@@ -0,0 +1,112 @@
+/*
+ * Copyright 2015 Fabian Prasser
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.linearbits.newtonraphson.tests;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+
+import de.linearbits.newtonraphson.BatchConsumer2D;
+import de.linearbits.newtonraphson.BatchCoordinator2D;
+import de.linearbits.newtonraphson.BatchWorker2D;
+import de.linearbits.newtonraphson.Function;
+import de.linearbits.newtonraphson.NewtonRaphson2D;
+import de.linearbits.newtonraphson.NewtonRaphsonConfiguration;
+import de.linearbits.newtonraphson.NewtonRaphsonMeasures;
+import de.linearbits.newtonraphson.PolynomialSystem2D;
+import de.linearbits.newtonraphson.Vector2D;
+
+/**
+ * Test, which solves a batch of problems on several workers, one of which fails while solving
+ * @author Fabian Prasser
+ */
+public class DistributedTests {
+
+    /**
+     * Creates solvers for the system 3 * x^2 + 2 * y^2 - c = 0, 4 * x^2 - 3 * y^2 - 24 = 0
+     * @author Fabian Prasser
+     */
+    public static class Factory implements Function<double[], NewtonRaphson2D> {
+        public NewtonRaphson2D evaluate(double[] parameters) {
+            return new NewtonRaphson2D(PolynomialSystem2D.quadratic(new double[] { 3d, 0d, 2d, 0d, 0d, -parameters[0] },
+                                                                    new double[] { 4d, 0d, -3d, 0d, 0d, -24d }));
+        }
+    }
+
+    /** Number of problems */
+    private static final int PROBLEMS = 2000;
+
+    /**
+     * Entry point
+     * @param args
+     * @throws IOException
+     */
+    public static void main(String[] args) throws IOException {
+
+        // Workers
+        final BatchWorker2D[] workers = new BatchWorker2D[3];
+        InetSocketAddress[] addresses = new InetSocketAddress[workers.length];
+        for (int i = 0; i < workers.length; i++) {
+            workers[i] = new BatchWorker2D(0).start();
+            addresses[i] = new InetSocketAddress("localhost", workers[i].getPort());
+        }
+
+        // Problems, with start values of increasing distance to the roots
+        final double[][] problems = new double[PROBLEMS][];
+        for (int i = 0; i < PROBLEMS; i++) {
+            double distance = 1d + 100d * i / PROBLEMS;
+            problems[i] = new double[] { distance, distance, 20d + 40d * i / PROBLEMS };
+        }
+
+        // Solve, while closing the first worker
+        NewtonRaphsonConfiguration<?> configuration = new Factory().evaluate(new double[] { 35d })
+                                                                   .accuracy(1e-9)
+                                                                   .iterationsPerTry(1000)
+                                                                   .iterationsTotal(100000);
+        final int[] delivered = new int[] { 0 };
+        long time = System.currentTimeMillis();
+        new BatchCoordinator2D(Factory.class, configuration, addresses).chunkSize(16).solve(problems, new BatchConsumer2D() {
+            public void consume(int index, Vector2D solution, NewtonRaphsonMeasures measures) {
+                if (index != delivered[0]++) {
+                    throw new IllegalStateException("Result delivered out of order: " + index);
+                }
+                if (index == PROBLEMS / 10) {
+                    try {
+                        workers[0].close();
+                    } catch (IOException e) {
+                        throw new IllegalStateException(e);
+                    }
+                }
+                double c = problems[index][2];
+                double x2 = solution.x * solution.x;
+                double y2 = solution.y * solution.y;
+                double residual = Math.max(Math.abs(3d * x2 + 2d * y2 - c), Math.abs(4d * x2 - 3d * y2 - 24d));
+                if (solution.isNaN() || residual > 1e-6 || Math.abs(x2 - (3d * c + 48d) / 17d) > 1e-6) {
+                    throw new IllegalStateException("Invalid solution for problem " + index + ": " + solution);
+                }
+            }
+        });
+        time = System.currentTimeMillis() - time;
+
+        // Check
+        if (delivered[0] != PROBLEMS) {
+            throw new IllegalStateException("Expected " + PROBLEMS + " results, found " + delivered[0]);
+        }
+        System.out.println("Distributed: " + PROBLEMS + " problems on " + workers.length + " workers in " + time + " [ms]");
+        for (BatchWorker2D worker : workers) {
+            worker.close();
+        }
+    }
+}
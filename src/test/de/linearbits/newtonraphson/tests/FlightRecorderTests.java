@@ -0,0 +1,127 @@
+/*
+ * Copyright 2015 Fabian Prasser
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.linearbits.newtonraphson.tests;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.Map;
+
+import jdk.jfr.FlightRecorder;
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+
+import de.linearbits.newtonraphson.Constraint2D;
+import de.linearbits.newtonraphson.NewtonRaphson2D;
+import de.linearbits.newtonraphson.PolynomialSystem2D;
+import de.linearbits.newtonraphson.Vector2D;
+
+/**
+ * Test, which makes sure that solves, tries and iterations are recorded by the flight recorder, which is not
+ * initialized by solving otherwise
+ * @author Fabian Prasser
+ */
+public class FlightRecorderTests {
+
+    /** Number of solves */
+    private static final int SOLVES = 100;
+
+    /**
+     * Entry point
+     * @param args
+     * @throws IOException
+     */
+    public static void main(String[] args) throws IOException {
+
+        // We want a solution in the negative range, which requires restarts
+        Constraint2D constraint = new Constraint2D(){
+            public Boolean evaluate(Vector2D input) {
+                return input.x < 0 && input.y < 0;
+            }
+        };
+        PolynomialSystem2D system = PolynomialSystem2D.quadratic(new double[] { 3d, 0d, 2d, 0d, 0d, -35d },
+                                                                 new double[] { 4d, 0d, -3d, 0d, 0d, -24d });
+        NewtonRaphson2D solver = new NewtonRaphson2D(system, constraint)
+                                                     .accuracy(1e-6)
+                                                     .iterationsPerTry(1000)
+                                                     .iterationsTotal(100000);
+
+        // Solving without recordings must not initialize the flight recorder, which loads about a hundred classes
+        long loaded = ManagementFactory.getClassLoadingMXBean().getTotalLoadedClassCount();
+        solver.solve(new Vector2D(1d, 1d));
+        loaded = ManagementFactory.getClassLoadingMXBean().getTotalLoadedClassCount() - loaded;
+        System.out.println("Classes loaded by the first solve: " + loaded);
+        if (FlightRecorder.isInitialized() || loaded > 50) {
+            throw new IllegalStateException("Solving has initialized the flight recorder");
+        }
+
+        // Record
+        Path file = Files.createTempFile("newtonraphson", ".jfr");
+        int tries = 0;
+        int iterations = 0;
+        try (Recording recording = new Recording()) {
+            recording.enable("de.linearbits.newtonraphson.Solve");
+            recording.enable("de.linearbits.newtonraphson.Try");
+            recording.enable("de.linearbits.newtonraphson.Iteration");
+            recording.start();
+            for (int i = 0; i < SOLVES; i++) {
+                solver.solve(new Vector2D(1d, 1d));
+                tries += solver.getMeasures().getTries();
+                iterations += solver.getMeasures().getIterations();
+            }
+            recording.stop();
+            recording.dump(file);
+        }
+
+        // Count
+        Map<String, Integer> counts = new HashMap<String, Integer>();
+        Map<String, Integer> outcomes = new HashMap<String, Integer>();
+        for (RecordedEvent event : RecordingFile.readAllEvents(file)) {
+            String name = event.getEventType().getName();
+            counts.put(name, counts.containsKey(name) ? counts.get(name) + 1 : 1);
+            if (event.hasField("outcome")) {
+                String outcome = event.getString("outcome");
+                outcomes.put(outcome, outcomes.containsKey(outcome) ? outcomes.get(outcome) + 1 : 1);
+            }
+        }
+        Files.delete(file);
+
+        System.out.println("Events  : " + counts);
+        System.out.println("Outcomes: " + outcomes);
+        check(counts, "de.linearbits.newtonraphson.Solve", SOLVES);
+        check(counts, "de.linearbits.newtonraphson.Try", tries);
+        check(counts, "de.linearbits.newtonraphson.Iteration", iterations - SOLVES);
+        if (outcomes.get("Converged") != SOLVES) {
+            throw new IllegalStateException("Not all solves converged");
+        }
+    }
+
+    /**
+     * Checks the number of events recorded
+     * @param counts
+     * @param name
+     * @param expected
+     */
+    private static void check(Map<String, Integer> counts, String name, int expected) {
+        int count = counts.containsKey(name) ? counts.get(name) : 0;
+        if (count != expected) {
+            throw new IllegalStateException(name + ": expected " + expected + " events, found " + count);
+        }
+    }
+}
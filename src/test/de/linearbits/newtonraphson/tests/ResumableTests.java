@@ -0,0 +1,144 @@
+/*
+ * Copyright 2015 Fabian Prasser
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.linearbits.newtonraphson.tests;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+import de.linearbits.newtonraphson.BatchConsumer2D;
+import de.linearbits.newtonraphson.NewtonRaphson2D;
+import de.linearbits.newtonraphson.NewtonRaphsonMeasures;
+import de.linearbits.newtonraphson.ResumableBatch2D;
+import de.linearbits.newtonraphson.StartSampler2D;
+import de.linearbits.newtonraphson.TerminationPolicy2D;
+import de.linearbits.newtonraphson.Vector2D;
+
+/**
+ * Test, which interrupts a journaled batch, damages the end of the journal and resumes the batch
+ * @author Fabian Prasser
+ */
+public class ResumableTests {
+
+    /** Number of problems */
+    private static final int PROBLEMS    = 2000;
+    /** Index of the problem, after which the batch is interrupted */
+    private static final int INTERRUPTED = 700;
+
+    /**
+     * Entry point
+     * @param args
+     * @throws IOException
+     */
+    public static void main(String[] args) throws IOException {
+
+        // Problems
+        final double[][] problems = new double[PROBLEMS][];
+        for (int i = 0; i < PROBLEMS; i++) {
+            problems[i] = new double[] { 1d, 1d, 20d + 40d * i / PROBLEMS };
+        }
+        File journal = File.createTempFile("newtonraphson", ".journal");
+        journal.deleteOnExit();
+        NewtonRaphson2D configuration = new DistributedTests.Factory().evaluate(new double[] { 35d }).accuracy(1e-9);
+
+        // Solve, until interrupted
+        final int[] delivered = new int[PROBLEMS];
+        BatchConsumer2D consumer = new BatchConsumer2D() {
+            public void consume(int index, Vector2D solution, NewtonRaphsonMeasures measures) {
+                delivered[index]++;
+                double c = problems[index][2];
+                double x2 = solution.x * solution.x;
+                double y2 = solution.y * solution.y;
+                if (solution.isNaN() || Math.abs(x2 - (3d * c + 48d) / 17d) > 1e-6 || Math.abs(y2 - (4d * c - 72d) / 17d) > 1e-6) {
+                    throw new IllegalStateException("Invalid solution for problem " + index + ": " + solution);
+                }
+            }
+        };
+        try {
+            new ResumableBatch2D(new DistributedTests.Factory(), configuration, journal).solve(problems, new BatchConsumer2D() {
+                public void consume(int index, Vector2D solution, NewtonRaphsonMeasures measures) {
+                    if (index == INTERRUPTED) {
+                        throw new IllegalStateException("Interrupted");
+                    }
+                    delivered[index]++;
+                }
+            });
+            throw new IllegalStateException("Batch has not been interrupted");
+        } catch (IllegalStateException e) {
+            if (!e.getMessage().equals("Interrupted")) {
+                throw e;
+            }
+        }
+
+        // Damage the end of the journal
+        try (FileOutputStream out = new FileOutputStream(journal, true)) {
+            out.write(new byte[] { 0, 0, 1, 2, 3, 4, 5 });
+        }
+
+        // Resume
+        for (int i = 0; i < PROBLEMS; i++) {
+            delivered[i] = 0;
+        }
+        ResumableBatch2D batch = new ResumableBatch2D(new DistributedTests.Factory(), configuration, journal);
+        batch.solve(problems, consumer);
+        for (int i = 0; i < PROBLEMS; i++) {
+            if (delivered[i] != 1) {
+                throw new IllegalStateException("Result for problem " + i + " delivered " + delivered[i] + " times");
+            }
+        }
+        if (batch.getRecovered() != INTERRUPTED + 1) {
+            throw new IllegalStateException("Expected " + (INTERRUPTED + 1) + " recovered results, found " + batch.getRecovered());
+        }
+
+        // Resume with a different configuration
+        try {
+            new ResumableBatch2D(new DistributedTests.Factory(), configuration.accuracy(1e-6), journal).solve(problems, consumer);
+            throw new IllegalStateException("Journal of a different configuration accepted");
+        } catch (IOException e) {
+            // Expected
+        }
+
+        // Resume with different parameters of the termination policy and the sampler
+        File policies = File.createTempFile("newtonraphson", ".journal");
+        policies.deleteOnExit();
+        configuration.termination(TerminationPolicy2D.any(TerminationPolicy2D.cycle(4, 1e-9), TerminationPolicy2D.growth(2d, 5)))
+                     .sampler(StartSampler2D.box(-10d, 10d, -10d, 10d));
+        new ResumableBatch2D(new DistributedTests.Factory(), configuration, policies).solve(problems, consumer);
+        NewtonRaphson2D[] variants = new NewtonRaphson2D[3];
+        for (int i = 0; i < variants.length; i++) {
+            variants[i] = new DistributedTests.Factory().evaluate(new double[] { 35d }).configure(configuration);
+        }
+        variants[0].termination(TerminationPolicy2D.any(TerminationPolicy2D.cycle(4, 1e-9), TerminationPolicy2D.growth(3d, 5)));
+        variants[1].termination(TerminationPolicy2D.any(TerminationPolicy2D.cycle(4, 1e-9)));
+        variants[2].sampler(StartSampler2D.box(-10d, 10d, -10d, 20d));
+        for (NewtonRaphson2D variant : variants) {
+            try {
+                new ResumableBatch2D(new DistributedTests.Factory(), variant, policies).solve(problems, consumer);
+                throw new IllegalStateException("Journal of a different policy or sampler accepted");
+            } catch (IOException e) {
+                // Expected
+            }
+        }
+        configuration.termination(TerminationPolicy2D.any(TerminationPolicy2D.cycle(4, 1e-9), TerminationPolicy2D.growth(2d, 5)))
+                     .sampler(StartSampler2D.box(-10d, 10d, -10d, 10d));
+        ResumableBatch2D same = new ResumableBatch2D(new DistributedTests.Factory(), configuration, policies);
+        same.solve(problems, consumer);
+        if (same.getRecovered() != PROBLEMS) {
+            throw new IllegalStateException("Journal of equal policies and samplers rejected");
+        }
+        System.out.println("Resumable: " + batch.getRecovered() + " of " + PROBLEMS + " problems recovered, journal has " + journal.length() + " bytes");
+    }
+}
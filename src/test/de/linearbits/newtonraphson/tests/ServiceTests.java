@@ -0,0 +1,131 @@
+/*
+ * Copyright 2015 Fabian Prasser
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.linearbits.newtonraphson.tests;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+
+import de.linearbits.newtonraphson.BatchConsumer2D;
+import de.linearbits.newtonraphson.NewtonRaphsonMeasures;
+import de.linearbits.newtonraphson.SolverClient2D;
+import de.linearbits.newtonraphson.SolverService2D;
+import de.linearbits.newtonraphson.SolverServiceStatistics;
+import de.linearbits.newtonraphson.Vector2D;
+
+/**
+ * Test, which sends concurrent requests to a local service and checks that they are solved in micro-batches
+ * @author Fabian Prasser
+ */
+public class ServiceTests {
+
+    /** Number of threads sending single requests */
+    private static final int THREADS  = 16;
+    /** Number of single requests per thread */
+    private static final int REQUESTS = 250;
+    /** Number of problems in the batch request */
+    private static final int PROBLEMS = 2000;
+
+    /**
+     * Entry point
+     * @param args
+     * @throws Exception
+     */
+    public static void main(String[] args) throws Exception {
+
+        // Service
+        SolverService2D service = new SolverService2D(0, 4).latencyWindow(500).maxBatchSize(32).start();
+        service.register("quadratic", new DistributedTests.Factory(), new DistributedTests.Factory().evaluate(new double[] { 35d }).accuracy(1e-9));
+        final SolverClient2D client = new SolverClient2D(new InetSocketAddress("localhost", service.getPort()));
+
+        // Concurrent single requests
+        final Exception[] failures = new Exception[THREADS];
+        Thread[] threads = new Thread[THREADS];
+        for (int i = 0; i < THREADS; i++) {
+            final int thread = i;
+            threads[i] = new Thread(new Runnable() {
+                public void run() {
+                    try {
+                        for (int j = 0; j < REQUESTS; j++) {
+                            double c = 20d + 40d * (thread * REQUESTS + j) / (THREADS * REQUESTS);
+                            check(c, client.solve("quadratic", new Vector2D(1d, 1d), c));
+                        }
+                    } catch (Exception e) {
+                        failures[thread] = e;
+                    }
+                }
+            });
+            threads[i].start();
+        }
+        for (int i = 0; i < THREADS; i++) {
+            threads[i].join();
+            if (failures[i] != null) {
+                throw failures[i];
+            }
+        }
+        SolverServiceStatistics statistics = client.getStatistics();
+        if (statistics.getProblems() != THREADS * REQUESTS || statistics.getBatches() >= statistics.getProblems()) {
+            throw new IllegalStateException("Requests have not been batched: " + statistics);
+        }
+        if (statistics.getRequests() != THREADS * REQUESTS ||
+            statistics.getLatencyHistogram().getCount() != statistics.getRequests() ||
+            statistics.getBatchSizeHistogram().getCount() != statistics.getBatches()) {
+            throw new IllegalStateException("Statistics are incomplete: " + statistics);
+        }
+        System.out.println("Service: " + statistics.getProblems() + " single requests in " + statistics.getBatches() + " batches");
+
+        // Batch request
+        final double[][] problems = new double[PROBLEMS][];
+        for (int i = 0; i < PROBLEMS; i++) {
+            problems[i] = new double[] { 1d, 1d, 20d + 40d * i / PROBLEMS };
+        }
+        final int[] delivered = new int[] { 0 };
+        client.solve("quadratic", problems, new BatchConsumer2D() {
+            public void consume(int index, Vector2D solution, NewtonRaphsonMeasures measures) {
+                if (index != delivered[0]++) {
+                    throw new IllegalStateException("Result delivered out of order: " + index);
+                }
+                check(problems[index][2], solution);
+            }
+        });
+        if (delivered[0] != PROBLEMS) {
+            throw new IllegalStateException("Expected " + PROBLEMS + " results, found " + delivered[0]);
+        }
+
+        // Unknown system
+        try {
+            client.solve("unknown", new Vector2D(1d, 1d), 35d);
+            throw new IllegalStateException("Unknown system accepted");
+        } catch (IOException e) {
+            // Expected
+        }
+        System.out.println(client.getStatistics());
+        client.close();
+        service.close();
+    }
+
+    /**
+     * Checks a solution of the system 3 * x^2 + 2 * y^2 - c = 0, 4 * x^2 - 3 * y^2 - 24 = 0
+     * @param c
+     * @param solution
+     */
+    private static void check(double c, Vector2D solution) {
+        double x2 = solution.x * solution.x;
+        double y2 = solution.y * solution.y;
+        if (solution.isNaN() || Math.abs(x2 - (3d * c + 48d) / 17d) > 1e-6 || Math.abs(y2 - (4d * c - 72d) / 17d) > 1e-6) {
+            throw new IllegalStateException("Invalid solution for c = " + c + ": " + solution);
+        }
+    }
+}
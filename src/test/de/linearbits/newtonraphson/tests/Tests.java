@@ -15,16 +15,44 @@
  */
 package de.linearbits.newtonraphson.tests;
 
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
 import java.text.DecimalFormat;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
 
 import de.linearbits.newtonraphson.Constraint2D;
+import de.linearbits.newtonraphson.CurveConsumer2D;
+import de.linearbits.newtonraphson.CurveTracer2D;
+import de.linearbits.newtonraphson.FixedPoint2D;
 import de.linearbits.newtonraphson.Function;
+import de.linearbits.newtonraphson.Function1D;
 import de.linearbits.newtonraphson.Function2D;
 import de.linearbits.newtonraphson.Function2DUtil;
+import de.linearbits.newtonraphson.Homotopy2D;
+import de.linearbits.newtonraphson.LeastSquares2D;
+import de.linearbits.newtonraphson.Minimizer2D;
+import de.linearbits.newtonraphson.NewtonRaphson1D;
 import de.linearbits.newtonraphson.NewtonRaphson2D;
+import de.linearbits.newtonraphson.NewtonRaphsonConfiguration;
+import de.linearbits.newtonraphson.NewtonRaphsonMethod;
+import de.linearbits.newtonraphson.NewtonRaphsonMetrics;
+import de.linearbits.newtonraphson.NewtonRaphsonStrategy;
+import de.linearbits.newtonraphson.OffHeapBatch2D;
 import de.linearbits.newtonraphson.Pair;
+import de.linearbits.newtonraphson.PolynomialSystem2D;
+import de.linearbits.newtonraphson.ResidualDerivatives2D;
+import de.linearbits.newtonraphson.ResidualFunction2D;
+import de.linearbits.newtonraphson.RootTracker2D;
+import de.linearbits.newtonraphson.SecondOrderFunction2D;
 import de.linearbits.newtonraphson.SquareMatrix2D;
+import de.linearbits.newtonraphson.StartSampler2D;
+import de.linearbits.newtonraphson.TerminationPolicy2D;
 import de.linearbits.newtonraphson.Vector2D;
+import de.linearbits.newtonraphson.WarmStartIndex2D;
 
 /**
  * Some very basic tests
@@ -75,6 +103,18 @@ public class Tests {
         
         solve(object1, object2, solver, 1000000);
         
+        // Restart within the feasible region
+        solver = new NewtonRaphson2D(object1, object2, constraint)
+                                     .sampler(StartSampler2D.rejection())
+                                     .accuracy(1e-6)
+                                     .iterationsPerTry(1000)
+                                     .iterationsTotal(100000);
+        
+        solve(object1, object2, solver, 1000000);
+        if (new NewtonRaphson2D(object1, object2, constraint).configure(solver).getSampler() == solver.getSampler()) {
+            throw new IllegalStateException("Sampler shared between solvers");
+        }
+        
         /* *************************
          *  Solve with derivatives *
          ***************************/
@@ -97,7 +137,19 @@ public class Tests {
         System.out.println("Is derivative: " + util.isDerivativeFunction2(object1, derivative12, 0.01, 100, 0.001, 0.1d, 0.01d));
         System.out.println("Is derivative: " + util.isDerivativeFunction1(object2, derivative21, 0.01, 100, 0.001, 0.1d, 0.01d));
         System.out.println("Is derivative: " + util.isDerivativeFunction2(object2, derivative22, 0.01, 100, 0.001, 0.1d, 0.01d));
-        
+
+        // Verify the full Jacobian on a grid, concurrently, and with a wrong derivative
+        ExecutorService verifier = Executors.newFixedThreadPool(4);
+        Vector2D[] grid = util.getGrid(-100d, 100d, -100d, 100d, 200);
+        System.out.println(util.verifyJacobian(object1, object2, derivative11, derivative12, derivative21, derivative22, grid, 1e-6, 1e-6, verifier));
+        Function2D wrong = new Function2D() {
+            public Double evaluate(Vector2D input) {
+                return input.y < 50d ? 4d * input.y : 4.01d * input.y;
+            }
+        };
+        System.out.println(util.verifyJacobian(object1, object2, derivative11, wrong, derivative21, derivative22, grid, 1e-6, 1e-6, verifier));
+        verifier.shutdown();
+
         solve(object1, object2, solver, 1000000);
         
         /* *****************************
@@ -111,6 +163,664 @@ public class Tests {
                                      .iterationsTotal(100000);
         
         solve(object1, object2, solver, 1000000);
+        
+        /* ************************************************************
+         *  Solve with second derivatives, compare with plain Newton *
+         **************************************************************/
+        
+        SecondOrderFunction2D secondOrder = getSecondOrderFunction();
+        Vector2D start = new Vector2D(10d, 10d);
+        for (NewtonRaphsonMethod method : new NewtonRaphsonMethod[] { NewtonRaphsonMethod.NEWTON,
+                                                                      NewtonRaphsonMethod.HALLEY,
+                                                                      NewtonRaphsonMethod.CHEBYSHEV }) {
+            solver = new NewtonRaphson2D(secondOrder)
+                                         .method(method)
+                                         .accuracy(1e-6)
+                                         .iterationsPerTry(1000)
+                                         .iterationsTotal(100000);
+            System.out.println("\nMethod: " + method);
+            solve(object1, object2, solver, start, 1000000);
+        }
+
+        /* ************************************************************
+         *  Solve from poor start values with trust-region methods   *
+         **************************************************************/
+
+        // Start values close to the axis x = 0, where the Jacobian is singular
+        System.out.println("\nTrust regions (evaluations per successful solve)");
+        double[] evaluations = new double[3];
+        NewtonRaphsonMethod[] methods = new NewtonRaphsonMethod[] { NewtonRaphsonMethod.NEWTON,
+                                                                    NewtonRaphsonMethod.LEVENBERG_MARQUARDT,
+                                                                    NewtonRaphsonMethod.DOGLEG };
+        for (int i = 0; i < methods.length; i++) {
+            solver = new NewtonRaphson2D(object1, object2).method(methods[i]).accuracy(1e-9);
+            Random poor = new Random(0);
+            Vector2D poorResult = new Vector2D();
+            long total = 0;
+            int solved = 0;
+            for (int j = 0; j < 2000; j++) {
+                if (solver.solve(new Vector2D((poor.nextDouble() * 2d - 1d) * 1e-3, (poor.nextDouble() * 2d - 1d) * 10d), poorResult)) {
+                    solved++;
+                }
+                total += solver.getMeasures().getEvaluations();
+            }
+            evaluations[i] = (double) total / solved;
+            System.out.println(methods[i] + ": " + new DecimalFormat("0.0").format(evaluations[i]) + " (" + solved + " of 2000 solved)");
+        }
+        if (evaluations[1] > evaluations[0] || evaluations[2] > evaluations[0]) {
+            throw new IllegalStateException("Trust-region methods need more evaluations than Newton-Raphson: " + Arrays.toString(evaluations));
+        }
+
+        // The Jacobian of ((x - y)^2, x + y - 2) is singular at (3, 3), which all methods count
+        Function2D square = new Function2D() {
+            public Double evaluate(Vector2D input) {
+                return (input.x - input.y) * (input.x - input.y);
+            }
+        };
+        Function2D sum = new Function2D() {
+            public Double evaluate(Vector2D input) {
+                return input.x + input.y - 2d;
+            }
+        };
+        for (NewtonRaphsonMethod method : methods) {
+            solver = new NewtonRaphson2D(square, sum).method(method);
+            solver.solve(new Vector2D(3d, 3d));
+            if (solver.getMeasures().getSingularities() == 0) {
+                throw new IllegalStateException("Singular Jacobian not counted by " + method);
+            }
+        }
+
+        // The gradient J^T * F underflows, so the dogleg step must not be computed along it
+        final double tiny = 1e-175;
+        Function2D underflow = new Function2D() {
+            public Double evaluate(Vector2D input) {
+                return tiny * (input.x - 1e26);
+            }
+        };
+        Function2D scaled = new Function2D() {
+            public Double evaluate(Vector2D input) {
+                return 1e-130 * input.y;
+            }
+        };
+        solver = new NewtonRaphson2D(underflow, scaled,
+                                     new Function2D() { public Double evaluate(Vector2D input) { return tiny; } },
+                                     new Function2D() { public Double evaluate(Vector2D input) { return 0d; } },
+                                     new Function2D() { public Double evaluate(Vector2D input) { return 0d; } },
+                                     new Function2D() { public Double evaluate(Vector2D input) { return 1e-130; } })
+                                     .method(NewtonRaphsonMethod.DOGLEG)
+                                     .accuracy(1e-160)
+                                     .conditionLimit(1e50)
+                                     .tries(1);
+        Vector2D far = solver.solve(new Vector2D(1e25, 0d));
+        if (Math.abs(far.x / 1e26 - 1d) > 1e-9 || far.y != 0d) {
+            throw new IllegalStateException("Dogleg failed without a gradient: " + far);
+        }
+
+        /* ************************************************************
+         *  Solve from singular and ill-conditioned Jacobians        *
+         **************************************************************/
+
+        // The pseudo-inverse of [[1, 2], [2, 4]] is [[1, 2], [2, 4]] / 25
+        SquareMatrix2D rankOne = new SquareMatrix2D(1d, 2d, 2d, 4d);
+        rankOne.pseudoInverse(1e-12);
+        if (Math.abs(rankOne.x1 - 0.04d) > 1e-12 || Math.abs(rankOne.x2 - 0.08d) > 1e-12 ||
+            Math.abs(rankOne.y1 - 0.08d) > 1e-12 || Math.abs(rankOne.y2 - 0.16d) > 1e-12) {
+            throw new IllegalStateException("Invalid pseudo-inverse: " + rankOne);
+        }
+
+        // The Jacobian vanishes at (0, 0), has rank one at (0, 1) and is ill-conditioned at (1e-12, 1)
+        System.out.println("\nSingular Jacobians");
+        for (Vector2D singular : new Vector2D[] { new Vector2D(0d, 0d), new Vector2D(0d, 1d), new Vector2D(1e-12d, 1d) }) {
+            solver = new NewtonRaphson2D(object1, object2,
+                                         derivative11, derivative12,
+                                         derivative21, derivative22)
+                                         .accuracy(1e-9)
+                                         .iterationsPerTry(1000)
+                                         .iterationsTotal(100000);
+            Vector2D root = solver.solve(singular.clone());
+            System.out.println("Start   : " + singular + ", Result: " + root + ", Singularities: " + solver.getMeasures().getSingularities());
+            if (Math.abs(Math.abs(root.x) - 3d) > 1e-6 || Math.abs(Math.abs(root.y) - 2d) > 1e-6) {
+                throw new IllegalStateException("No root found from singular Jacobian at " + singular + ": " + root);
+            }
+            if (solver.getMeasures().getSingularities() == 0) {
+                throw new IllegalStateException("Singular Jacobian at " + singular + " not counted");
+            }
+        }
+
+        /* *********************************
+         *  Solve with a polynomial system *
+         ***********************************/
+
+        PolynomialSystem2D polynomial = PolynomialSystem2D.quadratic(new double[] { 3d, 0d, 2d, 0d, 0d, -35d },
+                                                                     new double[] { 4d, 0d, -3d, 0d, 0d, -24d });
+        solver = new NewtonRaphson2D(polynomial)
+                                     .accuracy(1e-6)
+                                     .iterationsPerTry(1000)
+                                     .iterationsTotal(100000);
+        System.out.println("\nPolynomial system");
+        solve(object1, object2, solver, 1000000);
+
+        System.out.println("\nClosed-form roots");
+        for (Vector2D root : polynomial.roots(1e-6)) {
+            System.out.println(" - " + root);
+        }
+
+        /* ******************************************
+         *  Find all roots by homotopy continuation *
+         ********************************************/
+
+        // Polynomial systems are not thread-safe, so paths are tracked sequentially, which is the default
+        Vector2D[] closedForm = polynomial.roots(1e-6);
+        Homotopy2D homotopy = new Homotopy2D(new NewtonRaphson2D(polynomial)).accuracy(1e-9).paths(16);
+        check(closedForm, homotopy.solve(new Vector2D(5d, 5d)));
+        System.out.println("\nHomotopy");
+        System.out.println(homotopy.getMeasures());
+
+        // The object functions are thread-safe, so paths can be tracked in parallel. Paths starting on the
+        // axes, where the Jacobian is singular, are counted as singularities.
+        ForkJoinPool pool = new ForkJoinPool(4);
+        homotopy = new Homotopy2D(new NewtonRaphson2D(object1, object2)).accuracy(1e-9).paths(9).pool(pool);
+        check(closedForm, homotopy.solve(new Vector2D(5d, 5d)));
+        System.out.println(homotopy.getMeasures());
+        if (homotopy.getMeasures().getSingularities() == 0) {
+            throw new IllegalStateException("Singular Jacobians not counted");
+        }
+        pool.shutdown();
+
+        // Termination policies are used by the corrector, while samplers are rejected
+        new Homotopy2D(new NewtonRaphson2D(polynomial)).termination(TerminationPolicy2D.step(1e-12));
+        try {
+            new Homotopy2D(new NewtonRaphson2D(polynomial)).sampler(StartSampler2D.rejection());
+            throw new IllegalStateException("Unsupported sampler has been accepted");
+        } catch (IllegalStateException e) {
+            if (!e.getMessage().contains("sampler")) {
+                throw e;
+            }
+        }
+
+        /* ****************************************
+         *  Track a root while parameters change *
+         ******************************************/
+
+        final double[] parameter = new double[] { 35d };
+        Function2D drifting = new Function2D() {
+            public Double evaluate(Vector2D input) {
+                return 3d * input.x * input.x + 2d * input.y * input.y - parameter[0];
+            }
+        };
+        solver = new NewtonRaphson2D(drifting, object2)
+                                     .accuracy(1e-6)
+                                     .iterationsPerTry(1000)
+                                     .iterationsTotal(100000);
+        RootTracker2D tracker = new RootTracker2D(solver);
+        tracker.start(new Vector2D(1d, 1d));
+        int updates = 100000;
+        long time = System.currentTimeMillis();
+        for (int i = 0; i < updates; i++) {
+            parameter[0] = 35d + 5d * Math.sin(i * 0.001d);
+            tracker.update(start);
+        }
+        System.out.println("\nTracking");
+        System.out.println("Time     : " + new DecimalFormat("0.000000").format((System.currentTimeMillis() - time) / (double) updates));
+        System.out.println(tracker.getMeasures());
+        System.out.println("Fallbacks: " + tracker.getFallbacks() + " of " + tracker.getUpdates());
+        System.out.println("Result   : " + start);
+
+        /* *********************************************
+         *  Select the cheapest strategy automatically *
+         ***********************************************/
+
+        solver = new NewtonRaphson2D(object1, object2, getDerivativeFunction())
+                                     .strategy(NewtonRaphsonStrategy.AUTO)
+                                     .accuracy(1e-6)
+                                     .iterationsPerTry(1000)
+                                     .iterationsTotal(100000);
+        System.out.println("\nAutomatic strategy");
+        solve(object1, object2, solver, 1000000);
+        System.out.println("Reasoning: " + solver.getMeasures().getReasoning());
+
+        // x^2 + y^2 + 1 = 0 has no solution, so profiling is postponed while solves keep failing
+        final int[] counted = new int[1];
+        Function2D unsolvable1 = new Function2D() {
+            public Double evaluate(Vector2D input) {
+                counted[0]++;
+                return input.x * input.x + input.y * input.y + 1d;
+            }
+        };
+        Function2D unsolvable2 = new Function2D() {
+            public Double evaluate(Vector2D input) {
+                counted[0]++;
+                return input.x - input.y;
+            }
+        };
+        long[] reported = new long[2];
+        for (NewtonRaphsonStrategy strategy : new NewtonRaphsonStrategy[] { NewtonRaphsonStrategy.FINITE_DIFFERENCES, NewtonRaphsonStrategy.AUTO }) {
+            solver = new NewtonRaphson2D(unsolvable1, unsolvable2).strategy(strategy).iterationsTotal(100);
+            counted[0] = 0;
+            for (int i = 0; i < 100; i++) {
+                solver.solve(new Vector2D(1d, 1d));
+                reported[strategy == NewtonRaphsonStrategy.AUTO ? 1 : 0] += solver.getMeasures().getEvaluations();
+            }
+            if (counted[0] != reported[strategy == NewtonRaphsonStrategy.AUTO ? 1 : 0]) {
+                throw new IllegalStateException("Evaluations with strategy " + strategy + " not reported: " + counted[0] + " vs. " + reported[strategy == NewtonRaphsonStrategy.AUTO ? 1 : 0]);
+            }
+        }
+        System.out.println("Unsolvable: " + reported[1] + " evaluations with automatic strategy, " + reported[0] + " with finite differences");
+        if (reported[1] > 2 * reported[0]) {
+            throw new IllegalStateException("Failed solves are profiled too often");
+        }
+
+        // x^2 + y^2 - 2 = 0, x - y = 0: the solve with the selected strategy is not repeated after profiling,
+        // which times 3 x 8 evaluations of both object functions
+        Function2D circle = new Function2D() {
+            public Double evaluate(Vector2D input) {
+                counted[0]++;
+                return input.x * input.x + input.y * input.y - 2d;
+            }
+        };
+        int profiling = 48;
+        for (NewtonRaphsonStrategy strategy : new NewtonRaphsonStrategy[] { NewtonRaphsonStrategy.FINITE_DIFFERENCES, NewtonRaphsonStrategy.BROYDEN }) {
+            counted[0] = 0;
+            new NewtonRaphson2D(circle, unsolvable2).strategy(strategy).solve(new Vector2D(2d, 1d));
+            profiling += counted[0];
+        }
+        counted[0] = 0;
+        solver = new NewtonRaphson2D(circle, unsolvable2).strategy(NewtonRaphsonStrategy.AUTO);
+        Vector2D profiled = solver.solve(new Vector2D(2d, 1d));
+        if (counted[0] != profiling || solver.getMeasures().getEvaluations() != profiling ||
+            Math.abs(profiled.x - 1d) > 1e-6 || Math.abs(profiled.y - 1d) > 1e-6) {
+            throw new IllegalStateException("Solve repeated after profiling: " + counted[0] + " evaluations instead of " + profiling + ", " + profiled);
+        }
+
+        /* *************************************************
+         *  Evaluate expensive functions concurrently      *
+         ***************************************************/
+
+        Function2D slow1 = getSlowFunction(object1);
+        Function2D slow2 = getSlowFunction(object2);
+        solver = new NewtonRaphson2D(slow1, slow2)
+                                     .accuracy(1e-6)
+                                     .iterationsPerTry(1000)
+                                     .iterationsTotal(100000);
+        System.out.println("\nExpensive functions");
+        solve(object1, object2, solver, 10);
+
+        ExecutorService executor = Executors.newFixedThreadPool(5);
+        solver.executor(executor);
+        System.out.println("\nExpensive functions evaluated concurrently");
+        solve(object1, object2, solver, 10);
+        executor.shutdown();
+
+        /* ****************************************
+         *  Solve the system as a fixed point     *
+         ******************************************/
+
+        // x = sqrt((35 - 2 * y^2) / 3), y = sqrt((4 * x^2 - 24) / 3)
+        Function<Vector2D, Vector2D> map = new Function<Vector2D, Vector2D>() {
+            Vector2D result = new Vector2D();
+            public Vector2D evaluate(Vector2D input) {
+                result.x = Math.sqrt(Math.abs(35d - 2d * input.y * input.y) / 3d);
+                result.y = Math.sqrt(Math.abs(4d * input.x * input.x - 24d) / 3d);
+                return result;
+            }
+        };
+        for (int depth : new int[] { 0, FixedPoint2D.DEFAULT_DEPTH }) {
+            FixedPoint2D fixedPoint = new FixedPoint2D(map)
+                                                  .depth(depth)
+                                                  .accuracy(1e-6)
+                                                  .iterationsPerTry(1000)
+                                                  .iterationsTotal(100000);
+            System.out.println("\nFixed point with depth " + depth);
+            Vector2D result = fixedPoint.solve();
+            System.out.println(fixedPoint.getMeasures());
+            System.out.println("Result  : " + result);
+        }
+
+        // Settings, which the solver would ignore, are rejected, while defaults are accepted
+        new FixedPoint2D(map).method(NewtonRaphsonMethod.NEWTON).profilingInterval(NewtonRaphsonConfiguration.DEFAULT_PROFILING_INTERVAL);
+        try {
+            new FixedPoint2D(map).termination(TerminationPolicy2D.step(1e-8));
+            throw new IllegalStateException("Unsupported termination policy has been accepted");
+        } catch (IllegalStateException e) {
+            if (!e.getMessage().contains("termination")) {
+                throw e;
+            }
+        }
+
+        /* ****************************************
+         *  Solve univariate equations            *
+         ******************************************/
+
+        // x^3 - 2 * x - 5 = 0
+        Function1D cubic = new Function1D() {
+            public double evaluate(double x) {
+                return x * x * x - 2d * x - 5d;
+            }
+        };
+        Function1D cubicDerivative = new Function1D() {
+            public double evaluate(double x) {
+                return 3d * x * x - 2d;
+            }
+        };
+        NewtonRaphson1D solver1D = new NewtonRaphson1D(cubic, cubicDerivative).accuracy(1e-12);
+        System.out.println("\nUnivariate");
+        System.out.println("Result  : " + solver1D.solve(1d));
+        System.out.println(solver1D.getMeasures());
+        System.out.println("Bracket : " + solver1D.solve(2d, 3d));
+        System.out.println(solver1D.getMeasures());
+
+        // Plain Newton-Raphson diverges for atan(x) when starting at |x| > 1.39
+        Function1D atan = new Function1D() {
+            public double evaluate(double x) {
+                return Math.atan(x);
+            }
+        };
+        solver1D = new NewtonRaphson1D(atan).accuracy(1e-12);
+        System.out.println("Bracket : " + solver1D.solve(-1d, 10d));
+        System.out.println(solver1D.getMeasures());
+
+        // Batch
+        double[] starts = new double[1000];
+        double[] roots = new double[starts.length];
+        for (int i = 0; i < starts.length; i++) {
+            starts[i] = -10d + 20d * i / starts.length;
+        }
+        solver1D = new NewtonRaphson1D(cubic, cubicDerivative).accuracy(1e-12);
+        System.out.println("Batch   : " + solver1D.solve(starts, roots) + " of " + starts.length + " solved");
+        System.out.println(solver1D.getMeasures());
+
+        /* ****************************************
+         *  Minimize a function with a saddle     *
+         ******************************************/
+
+        // f = x^4 / 4 - x^2 / 2 + y^2 has a saddle point at (0, 0) and minima at (+-1, 0)
+        Function2D saddle = new Function2D() {
+            public Double evaluate(Vector2D input) {
+                return 0.25d * Math.pow(input.x, 4) - 0.5d * input.x * input.x + input.y * input.y;
+            }
+        };
+        Function2D gradient1 = new Function2D() {
+            public Double evaluate(Vector2D input) {
+                return input.x * input.x * input.x - input.x;
+            }
+        };
+        Function2D gradient2 = new Function2D() {
+            public Double evaluate(Vector2D input) {
+                return 2d * input.y;
+            }
+        };
+        System.out.println("\nRoot of the gradient");
+        System.out.println("Result  : " + new NewtonRaphson2D(gradient1, gradient2).accuracy(1e-6).solve(new Vector2D(0d, 0.5d)));
+        Minimizer2D minimizer = new Minimizer2D(saddle)
+                                               .accuracy(1e-6)
+                                               .iterationsPerTry(1000)
+                                               .iterationsTotal(100000);
+        System.out.println("\nMinimization");
+        System.out.println("Result  : " + minimizer.solve(new Vector2D(0d, 0.5d)));
+        System.out.println(minimizer.getMeasures());
+
+        /* *********************************************
+         *  Fit a curve to noisy data (least squares)  *
+         ***********************************************/
+
+        // v = 2.5 * exp(-1.3 * t) + noise
+        final int samples = 10000;
+        final double[] times = new double[samples];
+        final double[] values = new double[samples];
+        Random random = new Random(0);
+        for (int i = 0; i < samples; i++) {
+            times[i] = 3d * i / samples;
+            values[i] = 2.5d * Math.exp(-1.3d * times[i]) + 0.01d * random.nextGaussian();
+        }
+        ResidualFunction2D residuals = new ResidualFunction2D() {
+            public void evaluate(double x, double y, double[] residuals) {
+                for (int i = 0; i < samples; i++) {
+                    residuals[i] = x * Math.exp(y * times[i]) - values[i];
+                }
+            }
+        };
+        ResidualDerivatives2D jacobian = new ResidualDerivatives2D() {
+            public void evaluate(double x, double y, double[] derivativesX, double[] derivativesY) {
+                for (int i = 0; i < samples; i++) {
+                    derivativesX[i] = Math.exp(y * times[i]);
+                    derivativesY[i] = x * times[i] * derivativesX[i];
+                }
+            }
+        };
+        LeastSquares2D leastSquares = new LeastSquares2D(samples, residuals, jacobian)
+                                                        .accuracy(1e-9)
+                                                        .iterationsPerTry(1000)
+                                                        .iterationsTotal(100000);
+        System.out.println("\nLeast squares");
+        System.out.println("Result  : " + leastSquares.solve());
+        System.out.println(leastSquares.getMeasures());
+
+        // Three equations with the solutions (+-3, +-2)
+        leastSquares = new LeastSquares2D(object1, object2, new Function2D() {
+            public Double evaluate(Vector2D input) {
+                return input.x * input.x + input.y * input.y - 13d;
+            }
+        }).accuracy(1e-9);
+        System.out.println("Result  : " + leastSquares.solve());
+        System.out.println(leastSquares.getMeasures());
+
+        /* *********************************************
+         *  Abandon hopeless tries early               *
+         ***********************************************/
+
+        // Newton steps for x^3 - 2x + 2 cycle between 0 and 1
+        Function2D cycling = new Function2D() {
+            public Double evaluate(Vector2D input) {
+                return input.x * input.x * input.x - 2d * input.x + 2d;
+            }
+        };
+        Function2D linear = new Function2D() {
+            public Double evaluate(Vector2D input) {
+                return input.y - 1d;
+            }
+        };
+        System.out.println("\nTermination policies");
+        solver = new NewtonRaphson2D(cycling, linear).iterationsPerTry(1000);
+        System.out.println("Result  : " + solver.solve(new Vector2D(1d, 3d)));
+        System.out.println(solver.getMeasures());
+        solver = new NewtonRaphson2D(cycling, linear).iterationsPerTry(1000)
+                                                     .termination(TerminationPolicy2D.any(TerminationPolicy2D.cycle(4, 1e-9),
+                                                                                          TerminationPolicy2D.stagnation(0.9d, 10),
+                                                                                          TerminationPolicy2D.growth(2d, 5)));
+        System.out.println("Result  : " + solver.solve(new Vector2D(1d, 3d)));
+        System.out.println(solver.getMeasures());
+
+        // Solvers configured from another one use their own copies of its policy
+        NewtonRaphson2D configured = new NewtonRaphson2D(cycling, linear).configure(solver);
+        if (configured.getTermination() == solver.getTermination()) {
+            throw new IllegalStateException("Termination policy shared between solvers");
+        }
+        System.out.println("Result  : " + configured.solve(new Vector2D(1d, 3d)));
+        System.out.println(configured.getMeasures());
+
+        // Results accepted by policies are returned with the residuals, from which the quality has been computed
+        for (TerminationPolicy2D policy : new TerminationPolicy2D[] { TerminationPolicy2D.scaledResidual(35d, 24d, 1e-6),
+                                                                      TerminationPolicy2D.step(1e-8) }) {
+            solver = new NewtonRaphson2D(object1, object2).accuracy(0d).termination(policy);
+            Vector2D accepted = solver.solve(new Vector2D(1d, 1d));
+            double residual = Math.sqrt(Math.pow(object1.evaluate(accepted), 2) + Math.pow(object2.evaluate(accepted), 2));
+            System.out.println("Result  : " + accepted + ", Residual: " + residual);
+            if (accepted.isNaN() || Math.abs(1d - residual - solver.getMeasures().getQuality()) > 1e-12) {
+                throw new IllegalStateException("Quality does not match the result: " + solver.getMeasures());
+            }
+        }
+
+        // x^2 + 1 = 0 has no solution, but steps of trust-region methods become short close to x = 0
+        Function2D rootless = new Function2D() {
+            public Double evaluate(Vector2D input) {
+                return input.x * input.x + 1d;
+            }
+        };
+        Function2D identity = new Function2D() {
+            public Double evaluate(Vector2D input) {
+                return input.y;
+            }
+        };
+        for (NewtonRaphsonMethod method : new NewtonRaphsonMethod[] { NewtonRaphsonMethod.NEWTON,
+                                                                      NewtonRaphsonMethod.LEVENBERG_MARQUARDT,
+                                                                      NewtonRaphsonMethod.DOGLEG }) {
+            solver = new NewtonRaphson2D(rootless, identity).method(method).termination(TerminationPolicy2D.step(1e-8)).iterationsTotal(1000);
+            Vector2D rejected = solver.solve(new Vector2D(1d, 1d));
+            if (!rejected.isNaN()) {
+                throw new IllegalStateException("Method " + method + " accepted a stationary point as a root: " + rejected);
+            }
+        }
+
+        /* *********************************************
+         *  Solve batches in native memory             *
+         ***********************************************/
+
+        // 3 * x^2 + 2 * y^2 - c = 0, 4 * x^2 - 3 * y^2 - 24 = 0, with the solution (3, 2) for c = 35
+        final int problems = 100000;
+        OffHeapBatch2D batch = new OffHeapBatch2D(new Function<double[], NewtonRaphson2D>() {
+            public NewtonRaphson2D evaluate(double[] parameters) {
+                return new NewtonRaphson2D(PolynomialSystem2D.quadratic(new double[] { 3d, 0d, 2d, 0d, 0d, -parameters[0] },
+                                                                        new double[] { 4d, 0d, -3d, 0d, 0d, -24d }));
+            }
+        }, 1);
+        ByteBuffer input = ByteBuffer.allocateDirect(problems * batch.getProblemSize()).order(ByteOrder.nativeOrder());
+        ByteBuffer output = ByteBuffer.allocateDirect(problems * OffHeapBatch2D.RESULT_SIZE).order(ByteOrder.nativeOrder());
+        for (int i = 0; i < problems; i++) {
+            input.putDouble(1d).putDouble(1d).putDouble(35d + i % 10);
+        }
+        input.flip();
+        System.out.println("\nOff-heap batch");
+        System.out.println("Solved  : " + batch.solve(input, output) + " of " + problems);
+        System.out.println("Result  : " + new Vector2D(output.getDouble(OffHeapBatch2D.RESULT_X), output.getDouble(OffHeapBatch2D.RESULT_Y)));
+        System.out.println(batch.getMeasures());
+
+        /* *********************************************
+         *  Search on a surrogate, refine exactly      *
+         ***********************************************/
+
+        // A cheap approximation of the object functions with slightly perturbed coefficients
+        Function2D surrogate1 = new Function2D() {
+            public Double evaluate(Vector2D input) {
+                return 3.05d * input.x * input.x + 2d * input.y * input.y - 35d;
+            }
+        };
+        Function2D surrogate2 = new Function2D() {
+            public Double evaluate(Vector2D input) {
+                return 4d * input.x * input.x - 2.95d * input.y * input.y - 24.2d;
+            }
+        };
+        System.out.println("\nSurrogate");
+        solver = new NewtonRaphson2D(object1, object2, constraint).accuracy(1e-9);
+        System.out.println("Result  : " + solver.solve());
+        System.out.println(solver.getMeasures());
+        solver = new NewtonRaphson2D(object1, object2, constraint).accuracy(1e-9)
+                                    .surrogate(new NewtonRaphson2D(surrogate1, surrogate2, constraint).accuracy(1e-3), 5);
+        System.out.println("Result  : " + solver.solve());
+        System.out.println(solver.getMeasures());
+
+        // A single refinement fails, so the exact model is solved from the start value, which is also the result vector
+        solver = new NewtonRaphson2D(object1, object2, constraint).accuracy(1e-12)
+                                    .surrogate(new NewtonRaphson2D(surrogate1, surrogate2, constraint).accuracy(1e-3), 1);
+        Vector2D inPlace = new Vector2D(1d, 1d);
+        if (!solver.solve(inPlace, inPlace)) {
+            throw new IllegalStateException("Fallback from the surrogate started from an overwritten start value");
+        }
+        System.out.println("In place: " + inPlace);
+        System.out.println(solver.getMeasures());
+
+        /* *********************************************
+         *  Report into a metrics registry             *
+         ***********************************************/
+
+        // Each solve is reported once, including profiling, refinements on the exact model and fallbacks
+        NewtonRaphsonMetrics metrics = new NewtonRaphsonMetrics();
+        NewtonRaphson2D[] reporting = new NewtonRaphson2D[] { new NewtonRaphson2D(object1, object2, getDerivativeFunction()).strategy(NewtonRaphsonStrategy.AUTO).profilingInterval(3),
+                                                              new NewtonRaphson2D(object1, object2, constraint).accuracy(1e-12)
+                                                                                 .surrogate(new NewtonRaphson2D(surrogate1, surrogate2, constraint).accuracy(1e-3), 1),
+                                                              new NewtonRaphson2D(unsolvable1, unsolvable2).strategy(NewtonRaphsonStrategy.AUTO).iterationsTotal(100) };
+        long[] expected = new long[4];
+        for (NewtonRaphson2D instance : reporting) {
+            instance.metrics(metrics);
+            for (int i = 0; i < 10; i++) {
+                if (!instance.solve(new Vector2D(1d, 1d), new Vector2D())) {
+                    expected[1]++;
+                }
+                expected[0]++;
+                expected[2] += instance.getMeasures().getIterations();
+                expected[3] += instance.getMeasures().getEvaluations();
+            }
+        }
+        System.out.println("\nMetrics");
+        System.out.println(metrics.snapshot());
+        if (metrics.getSolves() != expected[0] || metrics.getFailures() != expected[1] ||
+            metrics.getIterations() != expected[2] || metrics.getEvaluations() != expected[3]) {
+            throw new IllegalStateException("Invalid metrics, expected " + Arrays.toString(expected) + ": " + metrics.snapshot());
+        }
+
+        /* *********************************************
+         *  Warm starts from nearby problems           *
+         ***********************************************/
+
+        // Parameterized problems: 3x^2 + 2y^2 = a, 4x^2 - 3y^2 = b
+        random = new Random(0);
+        WarmStartIndex2D index = new WarmStartIndex2D(new double[] { 1d, 1d }, 1024);
+        Vector2D solution = new Vector2D();
+        Vector2D defaultStart = new Vector2D(1d, 1d);
+        int[] coldIterations = new int[2000];
+        int[] warmIterations = new int[2000];
+        for (int i = 0; i < coldIterations.length; i++) {
+            double[] parameters = new double[] { 20d + 40d * random.nextDouble(), 10d + 30d * random.nextDouble() };
+            solver = new NewtonRaphson2D(PolynomialSystem2D.quadratic(new double[] { 3d, 0d, 2d, 0d, 0d, -parameters[0] },
+                                                                      new double[] { 4d, 0d, -3d, 0d, 0d, -parameters[1] })).accuracy(1e-9);
+            solver.solve(defaultStart, solution);
+            coldIterations[i] = solver.getMeasures().getIterations();
+            index.solve(solver, parameters, defaultStart, solution);
+            warmIterations[i] = solver.getMeasures().getIterations();
+        }
+        Arrays.sort(coldIterations);
+        Arrays.sort(warmIterations);
+        System.out.println("\nWarm starts");
+        System.out.println("Median iterations (default start): " + coldIterations[coldIterations.length / 2]);
+        System.out.println("Median iterations (warm start)   : " + warmIterations[warmIterations.length / 2]);
+
+        /* *********************************************
+         *  Trace the zero sets of the object functions *
+         ***********************************************/
+
+        // Points and the largest residual along each curve
+        final Function2D traced1 = object1;
+        final Function2D traced2 = object2;
+        final double[] curve = new double[3];
+        CurveConsumer2D consumer1 = new CurveConsumer2D() {
+            public void consume(int index, Vector2D point) {
+                curve[0] = index + 1;
+                curve[1] = Math.max(curve[1], Math.abs(traced1.evaluate(point)));
+            }
+        };
+        CurveConsumer2D consumer2 = new CurveConsumer2D() {
+            public void consume(int index, Vector2D point) {
+                curve[0] = index + 1;
+                curve[1] = Math.max(curve[1], Math.abs(traced2.evaluate(point)));
+                curve[2] = Math.max(curve[2], Math.max(Math.abs(point.x), Math.abs(point.y)));
+            }
+        };
+        System.out.println("\nCurve tracing");
+        CurveTracer2D tracer = new CurveTracer2D(object1).accuracy(1e-9);
+        System.out.println("Ellipse : " + tracer.trace(new Vector2D(1d, 1d), consumer1) + ", Points: " + (int) curve[0] + ", Max residual: " + curve[1]);
+        System.out.println(tracer.getMeasures());
+        Arrays.fill(curve, 0d);
+        tracer = new CurveTracer2D(object2, new Function<Vector2D, Vector2D>() {
+            private final Vector2D gradient = new Vector2D();
+            public Vector2D evaluate(Vector2D input) {
+                gradient.x = 8d * input.x;
+                gradient.y = -6d * input.y;
+                return gradient;
+            }
+        }).accuracy(1e-9).domain(-10d, 10d, -10d, 10d);
+        System.out.println("Branch  : " + tracer.trace(new Vector2D(3d, 0d), new Vector2D(0d, 1d), consumer2) + ", Points: " + (int) curve[0] + ", Max residual: " + curve[1] + ", Max coordinate: " + curve[2]);
+        Arrays.fill(curve, 0d);
+        System.out.println("Branch  : " + tracer.trace(new Vector2D(3d, 0d), new Vector2D(0d, -1d), consumer2) + ", Points: " + (int) curve[0] + ", Max residual: " + curve[1] + ", Max coordinate: " + curve[2]);
+        System.out.println(tracer.getMeasures());
     }
     
     /**
@@ -165,6 +875,23 @@ public class Tests {
         };
     }
     
+    /**
+     * Returns an implementation of all derivatives
+     * @return
+     */
+    private static Function<Vector2D, SquareMatrix2D> getDerivativeFunction() {
+        return new Function<Vector2D, SquareMatrix2D>() {
+            private final SquareMatrix2D result = new SquareMatrix2D();
+            public SquareMatrix2D evaluate(Vector2D input) {
+                result.x1 = + 6d * input.x;
+                result.x2 = + 4d * input.y;
+                result.y1 = + 8d * input.x;
+                result.y2 = - 6d * input.y;
+                return result;
+            }
+        };
+    }
+
     /**
      * Returns the master function
      * @return
@@ -204,6 +931,49 @@ public class Tests {
         };
     }
     
+    /**
+     * Returns the master function including second derivatives
+     * @return
+     */
+    private static SecondOrderFunction2D getSecondOrderFunction() {
+        
+        // Return function
+        return new SecondOrderFunction2D() {
+
+            // Prepare result objects
+            private final SquareMatrix2D                 derivatives  = new SquareMatrix2D();
+            private final SquareMatrix2D                 hessian1     = new SquareMatrix2D(6d, 0d, 0d, 4d);
+            private final SquareMatrix2D                 hessian2     = new SquareMatrix2D(8d, 0d, 0d, -6d);
+            private final Vector2D                       object       = new Vector2D();
+            private final Pair<Pair<Vector2D, SquareMatrix2D>, Pair<SquareMatrix2D, SquareMatrix2D>> result = 
+                    new Pair<Pair<Vector2D, SquareMatrix2D>, Pair<SquareMatrix2D, SquareMatrix2D>>(new Pair<Vector2D, SquareMatrix2D>(object, derivatives),
+                                                                                                   new Pair<SquareMatrix2D, SquareMatrix2D>(hessian1, hessian2));
+
+            /**
+             * Eval
+             * @param input
+             * @return
+             */
+            public Pair<Pair<Vector2D, SquareMatrix2D>, Pair<SquareMatrix2D, SquareMatrix2D>> evaluate(Vector2D input) {
+                
+                // Prepare
+                double xSquare = input.x * input.x;
+                double ySquare = input.y * input.y;
+                
+                // Compute
+                object.x = 3d * xSquare + 2d * ySquare - 35d;
+                object.y = 4d * xSquare - 3d * ySquare - 24d;
+                derivatives.x1 = + 6d * input.x;
+                derivatives.x2 = + 4d * input.y;
+                derivatives.y1 = + 8d * input.x;
+                derivatives.y2 = - 6d * input.y;
+                
+                // Return
+                return result;
+            }
+        };
+    }
+    
     /**
      * Returns an implementation of the first object function:<br>
      * 3 * x^2 + 2 * y^2 - 35 = 0 
@@ -230,6 +1000,43 @@ public class Tests {
         };
     }
     
+    /**
+     * Returns a variant of the given function, which takes about a millisecond to evaluate
+     * @param function
+     * @return
+     */
+    private static Function2D getSlowFunction(final Function2D function) {
+        return new Function2D() {
+            public Double evaluate(Vector2D input) {
+                try {
+                    Thread.sleep(1);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                return function.evaluate(input);
+            }
+        };
+    }
+    
+    /**
+     * Checks that the given solutions are the given roots, in any order
+     * @param roots
+     * @param solutions
+     */
+    private static void check(Vector2D[] roots, Vector2D[] solutions) {
+        if (solutions.length != roots.length) {
+            throw new IllegalStateException("Expected " + roots.length + " solutions, found " + Arrays.toString(solutions));
+        }
+        outer: for (Vector2D root : roots) {
+            for (Vector2D solution : solutions) {
+                if (Math.abs(solution.x - root.x) <= 1e-6 && Math.abs(solution.y - root.y) <= 1e-6) {
+                    continue outer;
+                }
+            }
+            throw new IllegalStateException("Root " + root + " not found in " + Arrays.toString(solutions));
+        }
+    }
+
     /**
      * Solves and prints measures
      * @param object1
@@ -237,11 +1044,22 @@ public class Tests {
      * @param solver
      */
     private static void solve(Function2D object1, Function2D object2, NewtonRaphson2D solver, int repetitions) {
+        solve(object1, object2, solver, null, repetitions);
+    }
+    
+    /**
+     * Solves from the given start value and prints measures
+     * @param object1
+     * @param object2
+     * @param solver
+     * @param startValue
+     */
+    private static void solve(Function2D object1, Function2D object2, NewtonRaphson2D solver, Vector2D startValue, int repetitions) {
         
         Vector2D result = null;
         long start = System.currentTimeMillis();
         for (int i=0; i< repetitions; i++) {
-            result = solver.solve();
+            result = startValue == null ? solver.solve() : solver.solve(startValue.clone());
         }
         
         System.out.println("\nResults");